@@ -24,6 +24,8 @@ import static org.apache.usergrid.java.client.utils.UrlUtils.addQueryParams;
 import static org.apache.usergrid.java.client.utils.UrlUtils.encodeParams;
 import static org.apache.usergrid.java.client.utils.UrlUtils.path;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -32,7 +34,9 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
@@ -40,6 +44,8 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.apache.usergrid.java.client.entities.Activity;
@@ -85,8 +91,28 @@ public class Client {
 
     private String currentOrganization = null;
 
+    /**
+     * Binary JSON encoding the server can send and accept in place of JSON
+     */
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private boolean smileEnabled = false;
+
     static RestTemplate restTemplate = new RestTemplate();
 
+    static {
+        MappingJackson2HttpMessageConverter smileConverter = new MappingJackson2HttpMessageConverter();
+        smileConverter.setObjectMapper(smileMapper);
+        smileConverter.setSupportedMediaTypes(Collections.singletonList(APPLICATION_SMILE));
+
+        List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
+        converters.add(smileConverter);
+        converters.addAll(restTemplate.getMessageConverters());
+        restTemplate.setMessageConverters(converters);
+    }
+
     /**
      * Default constructor for instantiating a client.
      */
@@ -288,6 +314,23 @@ public class Client {
         this.currentOrganization = currentOrganization;
     }
 
+    /**
+     * @return true if requests and responses are encoded as Smile instead of
+     *         JSON
+     */
+    public boolean isSmileEnabled() {
+        return smileEnabled;
+    }
+
+    /**
+     * @param smileEnabled
+     *            encode requests and responses as Smile, a binary form of
+     *            JSON that is smaller and faster to parse (default: false)
+     */
+    public void setSmileEnabled(boolean smileEnabled) {
+        this.smileEnabled = smileEnabled;
+    }
+
     /**
      * Low-level HTTP request method. Synchronous, blocks till response or
      * timeout.
@@ -307,8 +350,9 @@ public class Client {
     public <T> T httpRequest(HttpMethod method, Class<T> cls,
             Map<String, Object> params, Object data, String... segments) {
         HttpHeaders requestHeaders = new HttpHeaders();
-        requestHeaders.setAccept(Collections
-                .singletonList(MediaType.APPLICATION_JSON));
+        MediaType jsonType = smileEnabled ? APPLICATION_SMILE
+                : MediaType.APPLICATION_JSON;
+        requestHeaders.setAccept(Collections.singletonList(jsonType));
         if (accessToken != null) {
             String auth = "Bearer " + accessToken;
             requestHeaders.set("Authorization", auth);
@@ -316,7 +360,7 @@ public class Client {
         }
         String url = path(apiUrl, segments);
 
-        MediaType contentType = MediaType.APPLICATION_JSON;
+        MediaType contentType = jsonType;
         if (method.equals(HttpMethod.POST) && isEmpty(data) && !isEmpty(params)) {
             data = encodeParams(params);
             contentType = MediaType.APPLICATION_FORM_URLENCODED;
@@ -361,7 +405,7 @@ public class Client {
         } catch (HttpClientErrorException e) {
             log.error("Client.apiRequest(): HTTP error: "
                     + e.getLocalizedMessage());
-            response = parse(e.getResponseBodyAsString(), ApiResponse.class);
+            response = parseError(e);
             if ((response != null) && !isEmpty(response.getError())) {
                 log.error("Client.apiRequest(): Response error: "
                         + response.getError());
@@ -374,6 +418,22 @@ public class Client {
         return response;
     }
 
+    private ApiResponse parseError(HttpClientErrorException e) {
+        byte[] body = e.getResponseBodyAsByteArray();
+        // Smile content always starts with the ":)\n" header
+        if (smileEnabled && (body.length > 2) && (body[0] == ':')
+                && (body[1] == ')') && (body[2] == '\n')) {
+            try {
+                return smileMapper.readValue(body, ApiResponse.class);
+            } catch (IOException ioe) {
+                log.error("Client.apiRequest(): unable to parse error: "
+                        + ioe.getLocalizedMessage());
+                return null;
+            }
+        }
+        return parse(e.getResponseBodyAsString(), ApiResponse.class);
+    }
+
     protected void assertValidApplicationId() {
         if (isEmpty(applicationId)) {
             throw new IllegalArgumentException("No application id specified");
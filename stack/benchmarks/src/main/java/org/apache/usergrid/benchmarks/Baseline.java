@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+
+import org.apache.usergrid.utils.JsonUtils;
+
+
+/**
+ * The recorded scores of a benchmark run, keyed by benchmark and parameters.  Baselines are stored as json so they can
+ * be tracked next to the benchmarks and diffed in review.  All benchmarks in this module measure time per operation,
+ * so a higher score is a slower run.
+ */
+public class Baseline {
+
+    private final Map<String, Double> scores = new TreeMap<String, Double>();
+
+
+    public Baseline() {
+    }
+
+
+    public Baseline( Collection<RunResult> results ) {
+        for ( RunResult result : results ) {
+            scores.put( key( result.getParams() ), result.getPrimaryResult().getScore() );
+        }
+    }
+
+
+    /** The key of a benchmark, the benchmark name followed by its parameters, e.g. <code>Bench.method[size=10]</code> */
+    public static String key( BenchmarkParams params ) {
+        StringBuilder key = new StringBuilder( params.getBenchmark() );
+
+        List<String> names = new ArrayList<String>( params.getParamsKeys() );
+
+        if ( names.isEmpty() ) {
+            return key.toString();
+        }
+
+        Collections.sort( names );
+
+        key.append( '[' );
+
+        for ( int i = 0; i < names.size(); i++ ) {
+            if ( i > 0 ) {
+                key.append( ',' );
+            }
+            key.append( names.get( i ) ).append( '=' ).append( params.getParam( names.get( i ) ) );
+        }
+
+        return key.append( ']' ).toString();
+    }
+
+
+    public Map<String, Double> getScores() {
+        return scores;
+    }
+
+
+    public void put( String key, double score ) {
+        scores.put( key, score );
+    }
+
+
+    public Double get( String key ) {
+        return scores.get( key );
+    }
+
+
+    /**
+     * Compare a run against this baseline
+     *
+     * @param current The scores of the run
+     * @param tolerance The fraction a score may exceed its baseline by, e.g. 0.1 for 10%
+     *
+     * @return A description of each benchmark that regressed.  Benchmarks missing from either side are ignored
+     */
+    public List<String> regressions( Baseline current, double tolerance ) {
+        List<String> regressions = new ArrayList<String>();
+
+        for ( Map.Entry<String, Double> score : current.scores.entrySet() ) {
+            Double baseline = scores.get( score.getKey() );
+
+            if ( baseline == null || baseline <= 0 ) {
+                continue;
+            }
+
+            if ( score.getValue() > baseline * ( 1 + tolerance ) ) {
+                regressions.add( String.format( "%s: %.3f -> %.3f (+%.1f%%)", score.getKey(), baseline,
+                        score.getValue(), ( score.getValue() / baseline - 1 ) * 100 ) );
+            }
+        }
+
+        return regressions;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public static Baseline read( File file ) throws IOException {
+        Baseline baseline = new Baseline();
+
+        Object json = JsonUtils.parse( FileUtils.readFileToString( file, "UTF-8" ) );
+
+        if ( !( json instanceof Map ) ) {
+            throw new IOException( "Baseline " + file + " is not a json object" );
+        }
+
+        for ( Map.Entry<String, Object> score : ( ( Map<String, Object> ) json ).entrySet() ) {
+            if ( score.getValue() instanceof Number ) {
+                baseline.put( score.getKey(), ( ( Number ) score.getValue() ).doubleValue() );
+            }
+        }
+
+        return baseline;
+    }
+
+
+    public void write( File file ) throws IOException {
+        FileUtils.writeStringToFile( file, JsonUtils.mapToFormattedJsonString( scores ) + "\n", "UTF-8" );
+    }
+}
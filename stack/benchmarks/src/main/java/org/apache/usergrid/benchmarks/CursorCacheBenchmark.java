@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.persistence.cassandra.CursorCache;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.apache.usergrid.utils.ConversionUtils.bytebuffer;
+
+
+/**
+ * Measures encoding and decoding the cursors returned with every page of query results.  A query has a cursor slice
+ * for every index bucket it scans.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class CursorCacheBenchmark {
+
+    @Param( { "1", "20", "100" } )
+    public int slices;
+
+    private ByteBuffer[] cursors;
+    private String encoded;
+
+
+    @Setup
+    public void setup() {
+        cursors = new ByteBuffer[slices];
+
+        for ( int i = 0; i < slices; i++ ) {
+            cursors[i] = bytebuffer( UUIDUtils.newTimeUUID() );
+        }
+
+        encoded = encode();
+    }
+
+
+    @Benchmark
+    public String encode() {
+        CursorCache cache = new CursorCache();
+
+        for ( int i = 0; i < slices; i++ ) {
+            cache.setNextCursor( i, cursors[i].duplicate() );
+        }
+
+        return cache.asString();
+    }
+
+
+    @Benchmark
+    public CursorCache decode() {
+        return new CursorCache( encoded );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( CursorCacheBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.persistence.geo.GeocellManager;
+import org.apache.usergrid.persistence.geo.GeocellUtils;
+import org.apache.usergrid.persistence.geo.model.BoundingBox;
+import org.apache.usergrid.persistence.geo.model.DefaultCostFunction;
+import org.apache.usergrid.persistence.geo.model.Point;
+
+
+/**
+ * Measures the geocell math of location indexing and "within" queries.  Every located entity computes its cells at
+ * all resolutions when it's written, and every query computes the cells covering its search box.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class GeocellBenchmark {
+
+    private final Point point = new Point( 37.428526, -122.140916 );
+    private final Point other = new Point( 37.774929, -122.419416 );
+    private final BoundingBox box = new BoundingBox( 37.5, -122.0, 37.3, -122.3 );
+    private final DefaultCostFunction costFunction = new DefaultCostFunction();
+
+
+    @Benchmark
+    public List<String> generateGeoCell() {
+        return GeocellManager.generateGeoCell( point );
+    }
+
+
+    @Benchmark
+    public List<String> bestBboxSearchCells() {
+        return GeocellManager.bestBboxSearchCells( box, costFunction );
+    }
+
+
+    @Benchmark
+    public double distance() {
+        return GeocellUtils.distance( point, other );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( GeocellBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.utils.JsonUtils;
+import org.apache.usergrid.utils.UUIDUtils;
+
+
+/**
+ * Measures the json mapping of request and response bodies, and of the binary json property values.  The document is
+ * a page of 10 entities.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class JsonBenchmark {
+
+    private Map<String, Object> page;
+    private String json;
+    private ByteBuffer binary;
+
+
+    @Setup
+    public void setup() {
+        List<Object> entities = new ArrayList<Object>();
+
+        for ( int i = 0; i < 10; i++ ) {
+            Map<String, Object> location = new LinkedHashMap<String, Object>();
+            location.put( "latitude", 37.428526 );
+            location.put( "longitude", -122.140916 );
+
+            Map<String, Object> entity = new LinkedHashMap<String, Object>();
+            entity.put( "uuid", UUIDUtils.newTimeUUID().toString() );
+            entity.put( "type", "restaurant" );
+            entity.put( "created", System.currentTimeMillis() );
+            entity.put( "modified", System.currentTimeMillis() );
+            entity.put( "name", "restaurant" + i );
+            entity.put( "rating", 4.5 );
+            entity.put( "open", true );
+            entity.put( "location", location );
+
+            entities.add( entity );
+        }
+
+        page = new LinkedHashMap<String, Object>();
+        page.put( "action", "get" );
+        page.put( "path", "/restaurants" );
+        page.put( "entities", entities );
+        page.put( "count", entities.size() );
+
+        json = JsonUtils.mapToJsonString( page );
+        binary = JsonUtils.toByteBuffer( page );
+    }
+
+
+    @Benchmark
+    public String mapToJsonString() {
+        return JsonUtils.mapToJsonString( page );
+    }
+
+
+    @Benchmark
+    public Object parse() {
+        return JsonUtils.parse( json );
+    }
+
+
+    @Benchmark
+    public ByteBuffer toByteBuffer() {
+        return JsonUtils.toByteBuffer( page );
+    }
+
+
+    @Benchmark
+    public Object fromByteBuffer() {
+        return JsonUtils.normalizeJsonTree( JsonUtils.fromByteBuffer( binary.duplicate() ) );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( JsonBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
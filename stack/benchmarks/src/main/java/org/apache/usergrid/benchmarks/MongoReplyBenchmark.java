@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.mongo.protocol.OpReply;
+import org.apache.usergrid.mongo.utils.BSONWriter;
+import org.apache.usergrid.persistence.DynamicEntity;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.apache.usergrid.utils.JsonUtils.toJsonMap;
+import static org.apache.usergrid.utils.MapUtils.entry;
+import static org.apache.usergrid.utils.MapUtils.map;
+
+
+/**
+ * Measures encoding a mongo emulator reply of 1000 entities, first converted to maps and encoded by the driver's
+ * encoder, and written directly as BSON.  Run with the gc profiler, main does, and compare gc.alloc.rate.norm for the
+ * bytes allocated per reply.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class MongoReplyBenchmark {
+
+    private List<Entity> entities;
+
+
+    @Setup
+    public void setup() {
+        entities = new ArrayList<Entity>();
+
+        for ( int i = 0; i < 1000; i++ ) {
+            Map<String, Object> location = new LinkedHashMap<String, Object>();
+            location.put( "latitude", 37.428526 );
+            location.put( "longitude", -122.140916 );
+
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "created", System.currentTimeMillis() );
+            properties.put( "modified", System.currentTimeMillis() );
+            properties.put( "name", "restaurant" + i );
+            properties.put( "rating", 4.5 );
+            properties.put( "open", true );
+            properties.put( "location", location );
+            properties.put( "tags", Arrays.asList( "pizza", "pasta" ) );
+
+            entities.add( new DynamicEntity( "restaurant", UUIDUtils.newTimeUUID(), properties ) );
+        }
+    }
+
+
+    @Benchmark
+    public ChannelBuffer maps() {
+        OpReply reply = new OpReply();
+
+        for ( Entity entity : entities ) {
+            reply.addDocument( map( entry( "_id", BSONWriter.getMongoId( entity ) ), toJsonMap( entity ),
+                    entry( Schema.PROPERTY_UUID, entity.getUuid().toString() ) ) );
+        }
+
+        return reply.encode( null );
+    }
+
+
+    @Benchmark
+    public ChannelBuffer direct() {
+        OpReply reply = new OpReply();
+
+        for ( Entity entity : entities ) {
+            reply.addEntity( entity );
+        }
+
+        return reply.encode( null );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( MongoReplyBenchmark.class.getSimpleName() )
+                                        .addProfiler( GCProfiler.class ).build() ).run();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.security.shiro.CustomPermission;
+
+
+/**
+ * Measures matching the permissions of a role against a request, done for every permission of every role of the
+ * caller on every request.  The challenge is built per request, the permissions of the roles are cached.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class PermissionBenchmark {
+
+    private static final String APP = "applications:get:00000000-0000-0000-0000-000000000001:";
+
+    private final CustomPermission exact = new CustomPermission( APP + "/users/edanuff" );
+    private final CustomPermission wildcard = new CustomPermission( APP + "/users/*" );
+    private final CustomPermission deep = new CustomPermission( APP + "/users/**" );
+    private final CustomPermission nested = new CustomPermission( APP + "/users/*/activities/*" );
+    private final CustomPermission miss = new CustomPermission( APP + "/groups/**" );
+
+
+    private CustomPermission challenge( String path ) {
+        return new CustomPermission( APP + path );
+    }
+
+
+    @Benchmark
+    public boolean exact() {
+        return exact.implies( challenge( "/users/edanuff" ) );
+    }
+
+
+    @Benchmark
+    public boolean wildcard() {
+        return wildcard.implies( challenge( "/users/edanuff" ) );
+    }
+
+
+    @Benchmark
+    public boolean deepWildcard() {
+        return deep.implies( challenge( "/users/edanuff/activities/3b270ee0-a2d7-11e2-b8ac-f14ec968db08" ) );
+    }
+
+
+    @Benchmark
+    public boolean nestedWildcard() {
+        return nested.implies( challenge( "/users/edanuff/activities/3b270ee0-a2d7-11e2-b8ac-f14ec968db08" ) );
+    }
+
+
+    @Benchmark
+    public boolean noMatch() {
+        return miss.implies( challenge( "/users/edanuff" ) );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( PermissionBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Options;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks and compares them against a tracked baseline, exiting with a non zero status when any of them
+ * regressed by more than the tolerance.  The baseline is only recorded when asked to with <code>-update</code>, a
+ * missing baseline is an error so a mistyped path can't pass the check.  Baselines are only comparable on the machine
+ * they were recorded on.
+ * <p/>
+ * <code>java -cp target/benchmarks.jar org.apache.usergrid.benchmarks.RegressionCheck -baseline baselines/baseline.json
+ * -tolerance 0.1 -include Schema</code>
+ */
+public class RegressionCheck {
+
+    public static final String DEFAULT_BASELINE = "baselines/baseline.json";
+    public static final double DEFAULT_TOLERANCE = 0.1;
+
+    /** The exit status when there is no baseline to compare with */
+    public static final int MISSING_BASELINE = 2;
+
+
+    public static void main( String[] args ) throws Exception {
+        Options options = new Options();
+        options.addOption( "baseline", true, "The baseline file, defaults to " + DEFAULT_BASELINE );
+        options.addOption( "tolerance", true, "The allowed slowdown as a fraction, defaults to " + DEFAULT_TOLERANCE );
+        options.addOption( "include", true, "A regex of the benchmarks to run, defaults to all of them" );
+        options.addOption( "update", false, "Record the run as the new baseline" );
+
+        CommandLine line = new GnuParser().parse( options, args );
+
+        File file = new File( line.getOptionValue( "baseline", DEFAULT_BASELINE ) );
+        double tolerance =
+                Double.parseDouble( line.getOptionValue( "tolerance", String.valueOf( DEFAULT_TOLERANCE ) ) );
+        boolean update = line.hasOption( "update" );
+
+        //checked before running, the benchmarks take minutes
+        if ( !update && !file.exists() ) {
+            System.err.println( "No baseline at " + file + ", record one with -update" );
+            System.exit( MISSING_BASELINE );
+        }
+
+        OptionsBuilder jmh = new OptionsBuilder();
+        jmh.include( line.getOptionValue( "include", "org.apache.usergrid" ) );
+
+        Collection<RunResult> results = new Runner( jmh.build() ).run();
+        Baseline current = new Baseline( results );
+
+        if ( update ) {
+            current.write( file );
+            System.out.println( "Recorded baseline " + file );
+            return;
+        }
+
+        List<String> regressions = Baseline.read( file ).regressions( current, tolerance );
+
+        if ( regressions.isEmpty() ) {
+            System.out.println( "No regressions against " + file );
+            return;
+        }
+
+        System.out.println( "Regressions against " + file + ":" );
+        for ( String regression : regressions ) {
+            System.out.println( "  " + regression );
+        }
+
+        System.exit( 1 );
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.utils.UUIDUtils;
+
+
+/**
+ * Measures the serialization of entity properties to and from their column values, which every entity read and write
+ * goes through.  The entity is a user with a mix of schema and dynamic properties.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class SchemaBenchmark {
+
+    private static final String TYPE = "user";
+
+    private Map<String, Object> properties;
+    private Map<String, ByteBuffer> columns;
+
+
+    @Setup
+    public void setup() {
+        Map<String, Object> address = new LinkedHashMap<String, Object>();
+        address.put( "street", "1 Main St" );
+        address.put( "city", "Palo Alto" );
+        address.put( "zip", 94301 );
+
+        properties = new LinkedHashMap<String, Object>();
+        properties.put( "uuid", UUIDUtils.newTimeUUID() );
+        properties.put( "type", TYPE );
+        properties.put( "created", System.currentTimeMillis() );
+        properties.put( "modified", System.currentTimeMillis() );
+        properties.put( "username", "edanuff" );
+        properties.put( "email", "ed@anuff.com" );
+        properties.put( "name", "Ed Anuff" );
+        properties.put( "activated", true );
+        properties.put( "age", 42 );
+        properties.put( "tags", Arrays.asList( "admin", "beta", "early" ) );
+        properties.put( "address", address );
+
+        columns = serialize();
+    }
+
+
+    @Benchmark
+    public Map<String, ByteBuffer> serialize() {
+        Map<String, ByteBuffer> serialized = new HashMap<String, ByteBuffer>();
+
+        for ( Map.Entry<String, Object> property : properties.entrySet() ) {
+            serialized.put( property.getKey(),
+                    Schema.serializeEntityProperty( TYPE, property.getKey(), property.getValue() ) );
+        }
+
+        return serialized;
+    }
+
+
+    @Benchmark
+    public Map<String, Object> deserialize() {
+        Map<String, ByteBuffer> read = new HashMap<String, ByteBuffer>();
+
+        //every read gets fresh buffers from the client
+        for ( Map.Entry<String, ByteBuffer> column : columns.entrySet() ) {
+            read.put( column.getKey(), column.getValue().duplicate() );
+        }
+
+        return Schema.deserializeEntityProperties( read );
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( SchemaBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
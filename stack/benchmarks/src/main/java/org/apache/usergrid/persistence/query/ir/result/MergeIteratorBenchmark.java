@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir.result;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
+
+/**
+ * Measures merging the pages of two index scans, as the query planner does for "and" and "or" criteria.  Half of the
+ * ids of the right scan are also in the left scan.  The iterator benchmarks drain the merged iterator, the set
+ * benchmarks join a single page.  The hash set benchmarks are the operations the iterators performed before {@link
+ * SortedIdSet}.
+ * <p/>
+ * In the package of the iterators, the columns they merge aren't public.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class MergeIteratorBenchmark {
+
+    private static final int PAGE_SIZE = 1000;
+
+    @Param( { "1000", "10000", "100000" } )
+    public int size;
+
+    private List<ScanColumn> left;
+    private List<ScanColumn> right;
+
+    private Set<ScanColumn> leftSet;
+    private Set<ScanColumn> rightSet;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random( 42 );
+
+        UUIDCursorGenerator<UUIDColumn> cursorGenerator = new UUIDCursorGenerator<UUIDColumn>( 1 );
+
+        left = new ArrayList<ScanColumn>( size );
+        right = new ArrayList<ScanColumn>( size );
+
+        //time uuids are generated in order, so both scans are sorted like an index slice
+        for ( int i = 0; i < size; i++ ) {
+            UUID shared = UUIDUtils.newTimeUUID();
+            UUID other = UUIDUtils.newTimeUUID();
+
+            left.add( new UUIDColumn( shared, 1, cursorGenerator ) );
+            right.add( new UUIDColumn( random.nextBoolean() ? shared : other, 1, cursorGenerator ) );
+        }
+
+        leftSet = new LinkedHashSet<ScanColumn>( left );
+        rightSet = new LinkedHashSet<ScanColumn>( right );
+    }
+
+
+    @Benchmark
+    public int intersection() {
+        return drain( new IntersectionIterator( PAGE_SIZE ) );
+    }
+
+
+    @Benchmark
+    public int union() {
+        return drain( new UnionIterator( PAGE_SIZE, 1, null ) );
+    }
+
+
+    @Benchmark
+    public Set<ScanColumn> hashIntersection() {
+        return new LinkedHashSet<ScanColumn>( Sets.intersection( leftSet, rightSet ) );
+    }
+
+
+    @Benchmark
+    public BitSet sortedIntersection() {
+        BitSet matches = new BitSet( size );
+
+        SortedIdSet.of( leftSet ).markMatches( SortedIdSet.of( rightSet ), matches );
+
+        return matches;
+    }
+
+
+    @Benchmark
+    public Set<ScanColumn> hashSubtraction() {
+        Set<ScanColumn> keep = new LinkedHashSet<ScanColumn>( leftSet );
+
+        keep.removeAll( rightSet );
+
+        return keep;
+    }
+
+
+    @Benchmark
+    public BitSet sortedSubtraction() {
+        BitSet removed = new BitSet( size );
+
+        SortedIdSet.of( leftSet ).markMatches( SortedIdSet.of( rightSet ), removed );
+
+        removed.flip( 0, size );
+
+        return removed;
+    }
+
+
+    private int drain( MultiIterator merge ) {
+        merge.addIterator( new PagedIterator( left ) );
+        merge.addIterator( new PagedIterator( right ) );
+
+        int count = 0;
+
+        while ( merge.hasNext() ) {
+            count += merge.next().size();
+        }
+
+        return count;
+    }
+
+
+    /** Returns the columns a page at a time, like a scan of an index row */
+    private static class PagedIterator implements ResultIterator {
+
+        private final List<ScanColumn> columns;
+        private Iterator<List<ScanColumn>> pages;
+
+
+        private PagedIterator( List<ScanColumn> columns ) {
+            this.columns = columns;
+            reset();
+        }
+
+
+        @Override
+        public void reset() {
+            pages = Iterables.partition( columns, PAGE_SIZE ).iterator();
+        }
+
+
+        @Override
+        public Iterator<Set<ScanColumn>> iterator() {
+            return this;
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return pages.hasNext();
+        }
+
+
+        @Override
+        public Set<ScanColumn> next() {
+            return new LinkedHashSet<ScanColumn>( pages.next() );
+        }
+
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( MergeIteratorBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
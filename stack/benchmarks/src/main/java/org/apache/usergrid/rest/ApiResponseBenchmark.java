@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.apache.usergrid.persistence.DynamicEntity;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.services.ServiceResults;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import org.apache.commons.lang.RandomStringUtils;
+
+
+/**
+ * Compares writing a collection read as a single {@link ApiResponse} with writing it through a {@link
+ * StreamingApiResponse}.  Reading a page builds its entities, the way loading them from Cassandra would, so the
+ * buffered response holds every entity while the streaming response holds one page.
+ * <p/>
+ * The timeToFirstByte benchmarks stop at the first byte handed to the output stream.  Run with "-prof gc" to compare
+ * the allocations per response.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class ApiResponseBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param( { "100", "1000" } )
+    public int limit;
+
+    /** The size in bytes of each entity's text property */
+    @Param( { "100", "10000" } )
+    public int entitySize;
+
+    /** Configured the same way as the {@link JacksonCustomMapperProvider} mapper */
+    private final ObjectMapper indentingMapper = new JacksonCustomMapperProvider().getContext( ApiResponse.class );
+
+
+    @Benchmark
+    public void buffered() throws IOException {
+        writeBuffered( new NullOutputStream() );
+    }
+
+
+    @Benchmark
+    public void streamed() throws IOException {
+        stream().write( new NullOutputStream() );
+    }
+
+
+    @Benchmark
+    public void timeToFirstByteBuffered() throws IOException {
+        try {
+            writeBuffered( new FirstByteOutputStream() );
+        }
+        catch ( FirstByteException e ) {
+            //expected
+        }
+    }
+
+
+    @Benchmark
+    public void timeToFirstByteStreamed() throws IOException {
+        try {
+            stream().write( new FirstByteOutputStream() );
+        }
+        catch ( FirstByteException e ) {
+            //expected
+        }
+    }
+
+
+    private void writeBuffered( OutputStream output ) throws IOException {
+        ApiResponse response = new ApiResponse();
+        response.setAction( "get" );
+        response.setResults( readPage( limit ) );
+        response.setCount( limit );
+
+        indentingMapper.writeValue( output, response );
+    }
+
+
+    private StreamingApiResponse stream() {
+        ApiResponse response = new ApiResponse();
+        response.setAction( "get" );
+
+        StreamingApiResponse.PageReader reader = new StreamingApiResponse.PageReader() {
+            @Override
+            public ServiceResults readPage( String cursor, int pageLimit ) {
+                return ApiResponseBenchmark.this.readPage( pageLimit );
+            }
+        };
+
+        return new StreamingApiResponse( response, readPage( Math.min( limit, PAGE_SIZE ) ), reader, limit,
+                PAGE_SIZE, false );
+    }
+
+
+    private ServiceResults readPage( int size ) {
+        List<Entity> entities = new ArrayList<Entity>( size );
+
+        for ( int i = 0; i < size; i++ ) {
+            DynamicEntity entity = new DynamicEntity( "item", UUIDUtils.newTimeUUID() );
+            entity.setProperty( "name", "item" + i );
+            entity.setProperty( "ordinal", i );
+            entity.setProperty( "text", RandomStringUtils.randomAlphanumeric( entitySize ) );
+            entities.add( entity );
+        }
+
+        Results results = Results.fromEntities( entities );
+        results.setCursor( "cursor" );
+
+        return ServiceResults.simpleServiceResults( ServiceResults.Type.COLLECTION, results );
+    }
+
+
+    private static final class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write( int b ) {
+        }
+
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+        }
+    }
+
+
+    /** Fails the response as soon as anything is written */
+    private static final class FirstByteOutputStream extends OutputStream {
+
+        @Override
+        public void write( int b ) throws IOException {
+            throw FirstByteException.INSTANCE;
+        }
+
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+            throw FirstByteException.INSTANCE;
+        }
+    }
+
+
+    private static final class FirstByteException extends IOException {
+
+        private static final FirstByteException INSTANCE = new FirstByteException();
+
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+
+    public static void main( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder().include( ApiResponseBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks;
+
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class BaselineTest {
+
+    @Test
+    public void regressionsAboveTolerance() {
+        Baseline baseline = new Baseline();
+        baseline.put( "a", 10 );
+        baseline.put( "b", 10 );
+        baseline.put( "c", 10 );
+
+        Baseline current = new Baseline();
+        current.put( "a", 10.5 );
+        current.put( "b", 12 );
+        current.put( "c", 5 );
+        current.put( "d", 100 );
+
+        List<String> regressions = baseline.regressions( current, 0.1 );
+
+        assertEquals( 1, regressions.size() );
+        assertTrue( regressions.get( 0 ).startsWith( "b:" ) );
+    }
+
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File file = File.createTempFile( "baseline", ".json" );
+        file.deleteOnExit();
+
+        Baseline baseline = new Baseline();
+        baseline.put( "SchemaBenchmark.serialize", 1.25 );
+        baseline.put( "CursorCacheBenchmark.encode[slices=20]", 3 );
+        baseline.write( file );
+
+        Baseline read = Baseline.read( file );
+
+        assertEquals( baseline.getScores(), read.getScores() );
+    }
+}
@@ -32,6 +32,7 @@ package org.apache.usergrid.persistence.query.tree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Query.SelectFunction;
 import org.apache.usergrid.persistence.Query.SortPredicate;
 
 }
@@ -324,8 +325,16 @@ select_assign
 
 };
 
+//count(*) and exists(*).  Not keywords, otherwise properties named count could no longer be selected
+select_function
+  : ID '(' '*' ')' { SelectFunction.find($ID.text) != null }? {
+
+  query.setSelectFunction(SelectFunction.find($ID.text));
+
+};
+
 select_expr 
-  : ('*' | select_subject (',' select_subject) * | '{' select_assign (',' select_assign) * '}');  
+  : ('*' | select_function | select_subject (',' select_subject) * | '{' select_assign (',' select_assign) * '}');  
    
 //end select clauses
 
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.changes;
+
+
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * An entity or queue message change that has been written to Cassandra.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE, MESSAGE
+    }
+
+
+    private final Type type;
+    private final UUID applicationId;
+    private final String path;
+    private final UUID uuid;
+    private final String entityType;
+    private final Map<String, Object> properties;
+
+
+    /**
+     * @param type The kind of change
+     * @param applicationId The application the change happened in
+     * @param path The collection name for entities, or the normalized queue path for messages
+     * @param uuid The id of the entity or message
+     * @param entityType The entity type, null for messages
+     * @param properties The written properties.  Only the changed properties for updates, and null for deletes
+     */
+    public ChangeEvent( Type type, UUID applicationId, String path, UUID uuid, String entityType,
+                        Map<String, Object> properties ) {
+        this.type = type;
+        this.applicationId = applicationId;
+        this.path = path;
+        this.uuid = uuid;
+        this.entityType = entityType;
+        this.properties = properties;
+    }
+
+
+    public static ChangeEvent entityChange( Type type, UUID applicationId, String collectionName, UUID entityId,
+                                            String entityType, Map<String, Object> properties ) {
+        return new ChangeEvent( type, applicationId, collectionName, entityId, entityType, properties );
+    }
+
+
+    public static ChangeEvent queueMessage( UUID applicationId, String queuePath, UUID messageId,
+                                            Map<String, Object> properties ) {
+        return new ChangeEvent( Type.MESSAGE, applicationId, queuePath, messageId, null, properties );
+    }
+
+
+    public Type getType() {
+        return type;
+    }
+
+
+    public UUID getApplicationId() {
+        return applicationId;
+    }
+
+
+    public String getPath() {
+        return path;
+    }
+
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+
+    public boolean isQueueMessage() {
+        return type == Type.MESSAGE;
+    }
+
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{type=" + type + ", applicationId=" + applicationId + ", path='" + path + "', uuid=" + uuid
+                + "}";
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.changes;
+
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * In process feed of entity and queue changes.  Writers publish events after their mutations have been executed and
+ * return immediately, a single daemon thread hands the events to the registered listeners.  The pending events are
+ * bounded, when the listeners fall behind new events are dropped rather than holding up writes.
+ * <p/>
+ * Nothing is queued while there are no listeners, so the feed costs nothing unless something like the websocket
+ * server is subscribed.
+ */
+public class ChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger( ChangeFeed.class );
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+    private final BlockingQueue<ChangeEvent> events;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private Thread dispatcher;
+
+
+    public ChangeFeed() {
+        this( DEFAULT_CAPACITY );
+    }
+
+
+    /** @param capacity The maximum number of events waiting to be dispatched */
+    public ChangeFeed( int capacity ) {
+        events = new LinkedBlockingQueue<ChangeEvent>( capacity );
+    }
+
+
+    public synchronized void addListener( ChangeListener listener ) {
+        listeners.add( listener );
+
+        if ( dispatcher == null ) {
+            dispatcher = new Thread( new Dispatcher(), "usergrid-change-feed" );
+            dispatcher.setDaemon( true );
+            dispatcher.start();
+        }
+    }
+
+
+    public void removeListener( ChangeListener listener ) {
+        listeners.remove( listener );
+    }
+
+
+    /** True if anything is listening.  Callers can skip building events when this is false */
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+
+    /** Queue the event for the listeners.  Never blocks, the event is dropped if the feed is full */
+    public void publish( ChangeEvent event ) {
+        if ( listeners.isEmpty() ) {
+            return;
+        }
+
+        if ( events.offer( event ) ) {
+            publishedCount.incrementAndGet();
+            return;
+        }
+
+        if ( droppedCount.incrementAndGet() % 1000 == 1 ) {
+            logger.warn( "Change feed is full, {} events have been dropped", droppedCount.get() );
+        }
+    }
+
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+
+    public synchronized void destroy() {
+        listeners.clear();
+
+        if ( dispatcher != null ) {
+            dispatcher.interrupt();
+            dispatcher = null;
+        }
+
+        events.clear();
+    }
+
+
+    private class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            while ( !Thread.currentThread().isInterrupted() ) {
+                ChangeEvent event;
+
+                try {
+                    event = events.take();
+                }
+                catch ( InterruptedException e ) {
+                    return;
+                }
+
+                for ( ChangeListener listener : listeners ) {
+                    try {
+                        listener.onChange( event );
+                    }
+                    catch ( Exception e ) {
+                        logger.error( "Change listener {} failed on {}", new Object[] { listener, event, e } );
+                    }
+                }
+            }
+        }
+    }
+}
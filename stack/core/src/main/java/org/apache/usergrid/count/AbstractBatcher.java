@@ -19,14 +19,20 @@ package org.apache.usergrid.count;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import org.apache.usergrid.count.common.Count;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Counter;
@@ -40,6 +46,8 @@ import com.yammer.metrics.core.TimerContext;
  * @author zznate
  */
 public abstract class AbstractBatcher implements Batcher {
+    private static final Logger logger = LoggerFactory.getLogger( AbstractBatcher.class );
+
     protected BatchSubmitter batchSubmitter;
 
     private volatile Batch batch;
@@ -52,6 +60,10 @@ public abstract class AbstractBatcher implements Batcher {
     protected int batchSize = 500;
     private final AtomicLong batchSubmissionCount = new AtomicLong();
     private final AtomicBoolean lock = new AtomicBoolean( false );
+    /** Batches that have been submitted but may not have been saved yet */
+    private final Queue<Future> submitted = new ConcurrentLinkedQueue<Future>();
+    /** Batches that could not be saved since the last flush */
+    private final AtomicInteger failed = new AtomicInteger();
 
 
     public void setBatchSize( int batchSize ) {
@@ -114,6 +126,60 @@ public abstract class AbstractBatcher implements Batcher {
     }
 
 
+    public int flush() {
+        Batch active = batch;
+
+        if ( active != null ) {
+            synchronized ( this ) {
+                if ( active.getCapacity() < batchSize ) {
+                    active.flush();
+                }
+            }
+        }
+
+        Future f;
+        while ( ( f = submitted.poll() ) != null ) {
+            await( f );
+        }
+
+        return failed.getAndSet( 0 );
+    }
+
+
+    private void track( Future f ) {
+        if ( f == null ) {
+            return;
+        }
+
+        //forget the batches that are already done so the queue stays small
+        for ( Future done : submitted ) {
+            if ( done.isDone() && submitted.remove( done ) ) {
+                await( done );
+            }
+        }
+
+        submitted.add( f );
+    }
+
+
+    /** Wait for a batch to be saved, failures are logged and counted until the next flush */
+    private void await( Future f ) {
+        try {
+            f.get();
+        }
+        catch ( InterruptedException e ) {
+            //keep the flag, the batches still outstanding fail straight away
+            Thread.currentThread().interrupt();
+            logger.error( "Interrupted waiting for a batch of counts to be saved" );
+            failed.incrementAndGet();
+        }
+        catch ( ExecutionException e ) {
+            logger.error( "Unable to save a batch of counts", e.getCause() );
+            failed.incrementAndGet();
+        }
+    }
+
+
     class Batch {
         private BlockingQueue<Count> counts;
         private final AtomicInteger localCallCounter = new AtomicInteger();
@@ -134,7 +200,7 @@ public abstract class AbstractBatcher implements Batcher {
         void flush() {
             ArrayList<Count> flushed = new ArrayList<Count>( batchSize );
             counts.drainTo( flushed );
-            batchSubmitter.submit( flushed );
+            track( batchSubmitter.submit( flushed ) );
             batchSubmissionCount.incrementAndGet();
             opCount.incrementAndGet();
             localCallCounter.incrementAndGet();
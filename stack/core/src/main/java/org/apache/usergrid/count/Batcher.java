@@ -33,4 +33,11 @@ public interface Batcher {
     long getOpCount();
 
     long getBatchSubmissionCount();
+
+    /**
+     * Submit the counts that haven't filled a batch yet, and wait until every submitted batch has been saved
+     *
+     * @return The number of batches that could not be saved, the failures are logged
+     */
+    int flush();
 }
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.batch.job.OnlyOnceJob;
+import org.apache.usergrid.batch.service.SchedulerService;
+import org.apache.usergrid.locking.Lock;
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.cassandra.CounterUtils;
+import org.apache.usergrid.persistence.entities.JobData;
+
+
+/**
+ * Rolls the MINUTE aggregate counters of every application up into the coarser resolutions when
+ * {@link CounterUtils#setRollups(boolean)} is on.  The job reschedules itself every interval, and only rolls up
+ * minutes older than the lag so that counts still in flight, including those held by the {@link Batcher}, are not
+ * missed.
+ */
+public class CounterRollupJob extends OnlyOnceJob {
+
+    public static final String JOB_NAME = "counterRollupJob";
+
+    private static final Logger logger = LoggerFactory.getLogger( CounterRollupJob.class );
+
+    private EntityManagerFactory emf;
+    private CassandraService cass;
+    private CounterUtils counterUtils;
+    private LockManager lockManager;
+    private SchedulerService schedulerService;
+
+    private long interval = 60 * 1000;
+    private long lag = 5 * 60 * 1000;
+
+
+    public void setEntityManagerFactory( EntityManagerFactory emf ) {
+        this.emf = emf;
+    }
+
+
+    public void setCassandraService( CassandraService cass ) {
+        this.cass = cass;
+    }
+
+
+    public void setCounterUtils( CounterUtils counterUtils ) {
+        this.counterUtils = counterUtils;
+    }
+
+
+    public void setLockManager( LockManager lockManager ) {
+        this.lockManager = lockManager;
+    }
+
+
+    public void setSchedulerService( SchedulerService schedulerService ) {
+        this.schedulerService = schedulerService;
+    }
+
+
+    /** The time in milliseconds between rollups */
+    public void setInterval( long interval ) {
+        this.interval = interval;
+    }
+
+
+    /**
+     * How long in milliseconds after a minute ends before it is rolled up.  Must be longer than the counter batch
+     * interval plus the clock skew between nodes, counts arriving later than this are not rolled up.
+     */
+    public void setLag( long lag ) {
+        this.lag = lag;
+    }
+
+
+    /** Create the recurring job if rollups are on and it doesn't exist yet */
+    public void schedule() {
+        if ( !counterUtils.getRollups() ) {
+            return;
+        }
+
+        try {
+            if ( schedulerService.queryJobData( Query.searchForProperty( "jobName", JOB_NAME ) ).isEmpty() ) {
+                schedulerService.createJob( JOB_NAME, System.currentTimeMillis() + interval, new JobData() );
+                logger.info( "Scheduled the aggregate counter rollup every {} ms", interval );
+            }
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to schedule the aggregate counter rollup", e );
+        }
+    }
+
+
+    @Override
+    protected void doJob( JobExecution execution ) throws Exception {
+        long until = System.currentTimeMillis() - lag;
+
+        for ( UUID applicationId : emf.getApplications().values() ) {
+            execution.heartbeat();
+
+            // each application is locked as well, in case more than one rollup job was scheduled
+            Lock lock = lockManager.createLock( applicationId, "/counters/rollup" );
+            if ( !lock.tryLock( 0, TimeUnit.MILLISECONDS ) ) {
+                continue;
+            }
+
+            try {
+                int rows = counterUtils.rollup( cass.getApplicationKeyspace( applicationId ), applicationId, until );
+                if ( rows > 0 ) {
+                    logger.debug( "Rolled up {} counter rows of application {}", rows, applicationId );
+                }
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to roll up the counters of application " + applicationId, e );
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        execution.delay( interval );
+    }
+
+
+    @Override
+    protected long getDelay( JobExecution execution ) throws Exception {
+        return interval;
+    }
+
+
+    @Override
+    public void dead( JobExecution execution ) throws Exception {
+        logger.error( "Aggregate counter rollup job {} is dead, counters are no longer rolled up",
+                execution.getJobId() );
+    }
+}
@@ -21,6 +21,7 @@ import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.usergrid.changes.ChangeFeed;
 import org.apache.usergrid.locking.LockManager;
 import org.apache.usergrid.mq.QueueManager;
 import org.apache.usergrid.mq.QueueManagerFactory;
@@ -40,6 +41,7 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
     private CounterUtils counterUtils;
     private LockManager lockManager;
     private int lockTimeout;
+    private ChangeFeed changeFeed;
 
     /**
      * Must be constructed with a CassandraClientPool.
@@ -55,6 +57,12 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
     }
 
 
+    /** The feed new queue messages are published to */
+    public void setChangeFeed( ChangeFeed changeFeed ) {
+        this.changeFeed = changeFeed;
+    }
+
+
     @Override
     public String getImpementationDescription() throws Exception {
         return IMPLEMENTATION_DESCRIPTION;
@@ -65,6 +73,7 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
     public QueueManager getQueueManager( UUID applicationId ) {
         QueueManagerImpl qm = new QueueManagerImpl();
         qm.init( cass, counterUtils, lockManager, applicationId, lockTimeout );
+        qm.setChangeFeed( changeFeed );
         return qm;
         //return applicationContext.getAutowireCapableBeanFactory()
         //		.createBean(QueueManagerImpl.class)
@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +32,8 @@ import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.usergrid.changes.ChangeEvent;
+import org.apache.usergrid.changes.ChangeFeed;
 import org.apache.usergrid.locking.LockManager;
 import org.apache.usergrid.mq.CounterQuery;
 import org.apache.usergrid.mq.Message;
@@ -148,6 +151,7 @@ public class QueueManagerImpl implements QueueManager {
     private CounterUtils counterUtils;
     private LockManager lockManager;
     private int lockTimeout;
+    private ChangeFeed changeFeed;
 
 
 
@@ -166,6 +170,11 @@ public class QueueManagerImpl implements QueueManager {
     }
 
 
+    public void setChangeFeed( ChangeFeed changeFeed ) {
+        this.changeFeed = changeFeed;
+    }
+
+
     @Override
     public Message getMessage( UUID messageId ) {
         SliceQuery<UUID, String, ByteBuffer> q =
@@ -263,6 +272,11 @@ public class QueueManagerImpl implements QueueManager {
             }
         }
 
+        if ( changeFeed != null && changeFeed.hasListeners() ) {
+            changeFeed.publish( ChangeEvent.queueMessage( applicationId, queuePath, message.getUuid(),
+                    new LinkedHashMap<String, Object>( message.getProperties() ) ) );
+        }
+
         return message;
     }
 
@@ -84,6 +84,22 @@ public interface EntityManager {
      */
     public Entity create( UUID importId, String entityType, Map<String, Object> properties ) throws Exception;
 
+    /**
+     * Creates many entities with the ids they were exported with, in batches of at most the mutation flush size. The
+     * unique values of each entity type are verified with a single read of the unique index, and entities with a
+     * duplicate value are skipped. Unlike {@link #create(UUID, String, Map)} no unique locks are taken, so this is not
+     * meant for applications that are being written to.
+     *
+     * @param entities the properties of each entity, including its uuid and type
+     * @param fresh true if the application holds none of the entities or their unique values yet. Nothing is read
+     * before the writes
+     *
+     * @return the entities that were created
+     *
+     * @throws Exception the exception
+     */
+    public List<Entity> importEntities( List<Map<String, Object>> entities, boolean fresh ) throws Exception;
+
     public void createApplicationCollection( String entityType ) throws Exception;
 
     public EntityRef getAlias( String aliasType, String alias ) throws Exception;
@@ -186,6 +202,15 @@ public interface EntityManager {
      */
     public void update( Entity entity ) throws Exception;
 
+    /**
+     * Rewrites the index entries of the indexed properties of the entities, as they're currently stored. The stale
+     * entries of each property are removed, but the properties themselves are not written again. Used to rebuild the
+     * indexes of entities that were written before a change to the indexing.
+     *
+     * @param entities the entities, loaded with all their properties
+     */
+    public void reindex( List<Entity> entities ) throws Exception;
+
     /**
      * Gets the value for a named entity property. Entity properties must be defined in the schema
      *
@@ -303,6 +328,21 @@ public interface EntityManager {
 
     public Set<String> getDictionaries( EntityRef entity ) throws Exception;
 
+    /**
+     * Gets the keys of one of the default dictionaries, such as {@link Schema#DICTIONARY_SETS} or {@link
+     * Schema#DICTIONARY_CONNECTED_TYPES}, for many entities with a single read. Bulk readers use this to skip the per
+     * entity reads for entities that have nothing stored in the dictionary.
+     *
+     * @param entityIds the entities to read
+     * @param dictionaryName one of the names in {@link Schema#DEFAULT_DICTIONARIES}
+     *
+     * @return the keys of each entity's dictionary. Entities with an empty dictionary are not included.
+     *
+     * @throws Exception the exception
+     */
+    public Map<UUID, Set<String>> getDictionaryKeys( Collection<UUID> entityIds, String dictionaryName )
+            throws Exception;
+
     /**
      * Deletes the specified entity.
      *
@@ -374,6 +414,23 @@ public interface EntityManager {
     public Results getCollection( UUID entityId, String collectionName, Query query, Results.Level resultsLevel )
             throws Exception;
 
+    /**
+     * Gets a page of the ids in a single index bucket of an application collection. Every collection is spread over the
+     * buckets of the {@link IndexBucketLocator}, so bulk readers can scan the buckets independently and in parallel.
+     * Ids are returned in the bucket's order, not the collection's.
+     *
+     * @param collectionName the collection name
+     * @param bucket the bucket to scan, one of {@link IndexBucketLocator#getBuckets()}
+     * @param start the last id of the previous page, or null to start at the beginning of the bucket
+     * @param count the maximum number of ids to return
+     *
+     * @return the ids after start. Fewer than count ids means the bucket has been read.
+     *
+     * @throws Exception the exception
+     */
+    public List<UUID> getApplicationCollectionIds( String collectionName, String bucket, UUID start, int count )
+            throws Exception;
+
     /**
      * Adds an entity to the specified collection belonging to the specified entity entity.
      *
@@ -587,9 +644,41 @@ public interface EntityManager {
 
     public void incrementAggregateCounters( UUID userId, UUID groupId, String category, Map<String, Long> counters );
 
+    /**
+     * Increment the counters as of a time other than now, used to write counts that were accumulated in memory into
+     * the same aggregate counter rows they would have been written to at the time they happened.
+     *
+     * @param counterTimestamp The time in milliseconds the counts happened at
+     */
+    public void incrementAggregateCounters( UUID userId, UUID groupId, String category, Map<String, Long> counters,
+                                            long counterTimestamp );
+
     public boolean isPropertyValueUniqueForEntity( String entityType, String propertyName, Object propertyValue )
             throws Exception;
 
+    /**
+     * Check the unique properties of many entities of the same type with a single read of the unique index.
+     *
+     * @param entityType The type of the entities
+     * @param entities The property values to check keyed by the id of the entity that would own them
+     *
+     * @return The names of the unique properties already owned by another entity, or repeated by an earlier entity in
+     *         the map, keyed by entity id.  Entities without duplicates are omitted
+     */
+    public Map<UUID, Set<String>> getDuplicateUniqueProperties( String entityType,
+                                                                Map<UUID, Map<String, Object>> entities )
+            throws Exception;
+
+    /**
+     * Check the unique properties of a single entity with a single read of the unique index.
+     *
+     * @param entityId The id of the entity that would own the values, or null if the entity hasn't been created yet
+     *
+     * @return The names of the unique properties already owned by another entity
+     */
+    public Set<String> getDuplicateUniqueProperties( String entityType, UUID entityId, Map<String, Object> properties )
+            throws Exception;
+
     public <A extends Entity> A get( EntityRef entityRef, Class<A> entityClass ) throws Exception;
 
     public Map<String, Role> getRolesWithTitles( Set<String> roleNames ) throws Exception;
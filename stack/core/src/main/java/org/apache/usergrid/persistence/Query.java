@@ -87,6 +87,7 @@ public class Query {
 
     private Map<String, String> selectAssignments = new LinkedHashMap<String, String>();
     private boolean mergeSelectResults = false;
+    private SelectFunction selectFunction;
     private Level level = Level.ALL_PROPERTIES;
     private String connection;
     private List<String> permissions;
@@ -100,6 +101,8 @@ public class Query {
     private List<CounterFilterPredicate> counterFilters;
     private String collection;
     private String ql;
+    private boolean clausesAdded;
+    private boolean explain;
 
 
     public Query() {
@@ -116,6 +119,7 @@ public class Query {
             selectAssignments =
                     q.selectAssignments != null ? new LinkedHashMap<String, String>( q.selectAssignments ) : null;
             mergeSelectResults = q.mergeSelectResults;
+            selectFunction = q.selectFunction;
             level = q.level;
             connection = q.connection;
             permissions = q.permissions != null ? new ArrayList<String>( q.permissions ) : null;
@@ -130,6 +134,8 @@ public class Query {
             counterFilters =
                     q.counterFilters != null ? new ArrayList<CounterFilterPredicate>( q.counterFilters ) : null;
             collection = q.collection;
+            clausesAdded = q.clausesAdded;
+            explain = q.explain;
         }
     }
 
@@ -226,6 +232,7 @@ public class Query {
         }
 
         Boolean pad = firstBoolean( params.get( "pad" ) );
+        Boolean explain = firstBoolean( params.get( "explain" ) );
 
         for ( Entry<String, List<String>> param : params.entrySet() ) {
             Identifier identifier = Identifier.from( param.getKey() );
@@ -325,6 +332,11 @@ public class Query {
             q.setReversed( reversed );
         }
 
+        if ( explain != null ) {
+            q = newQueryIfNull( q );
+            q.setExplain( explain );
+        }
+
         return q;
     }
 
@@ -575,6 +587,22 @@ public class Query {
     }
 
 
+    /** The aggregate selected instead of the entities, such as count(*).  Null if the entities are selected */
+    public SelectFunction getSelectFunction() {
+        return selectFunction;
+    }
+
+
+    public void setSelectFunction( SelectFunction selectFunction ) {
+        this.selectFunction = selectFunction;
+    }
+
+
+    public boolean hasSelectFunction() {
+        return selectFunction != null;
+    }
+
+
     public Query addSort( String propertyName ) {
         if ( isBlank( propertyName ) ) {
             return this;
@@ -732,6 +760,8 @@ public class Query {
 
     private void addClause( Operand equals ) {
 
+        clausesAdded = true;
+
         if ( rootOperand == null ) {
             rootOperand = equals;
             return;
@@ -862,6 +892,17 @@ public class Query {
     }
 
 
+    /** True if the results should explain how the query was evaluated */
+    public boolean isExplain() {
+        return explain;
+    }
+
+
+    public void setExplain( boolean explain ) {
+        this.explain = explain;
+    }
+
+
     public Long getStartTime() {
         return startTime;
     }
@@ -943,7 +984,10 @@ public class Query {
             return ql;
         }
         StringBuilder s = new StringBuilder( "select " );
-        if ( selectAssignments.isEmpty() ) {
+        if ( selectFunction != null ) {
+            s.append( selectFunction.toString().toLowerCase() ).append( "(*)" );
+        }
+        else if ( selectAssignments.isEmpty() ) {
             s.append( "*" );
         }
         else {
@@ -998,6 +1042,30 @@ public class Query {
     }
 
 
+    /**
+     * Aggregates that are evaluated against the index alone.  The entities are never loaded, COUNT returns the number
+     * of matching entities and EXISTS returns true as soon as a single entity matches
+     */
+    public static enum SelectFunction {
+        COUNT, EXISTS;
+
+
+        public static SelectFunction find( String s ) {
+            if ( s == null ) {
+                return null;
+            }
+            s = s.trim().toLowerCase();
+            if ( s.equals( "count" ) ) {
+                return COUNT;
+            }
+            if ( s.equals( "exists" ) ) {
+                return EXISTS;
+            }
+            return null;
+        }
+    }
+
+
     public static enum SortDirection {
         ASCENDING, DESCENDING;
 
@@ -1291,6 +1359,13 @@ public class Query {
     }
 
 
+    /** True if the ql describes every clause of the query, clauses added with the filter methods are not in the ql */
+    @JsonIgnore
+    public boolean isDescribedByQl() {
+        return ql != null && !clausesAdded;
+    }
+
+
     public List<Identifier> getIdentifiers() {
         return identifiers;
     }
@@ -84,6 +84,9 @@ public class Results implements Iterable<Entity> {
     Object data;
     String dataName;
 
+    List<String> queryPlan;
+    Map<String, Object> explain;
+
     private QueryProcessor queryProcessor;
     private SearchVisitorFactory searchVisitorFactory;
 
@@ -126,6 +129,9 @@ public class Results implements Iterable<Entity> {
             query = r.query;
             data = r.data;
             dataName = r.dataName;
+
+            queryPlan = r.queryPlan;
+            explain = r.explain;
         }
     }
 
@@ -1263,6 +1269,30 @@ public class Results implements Iterable<Entity> {
     }
 
 
+    /** The order the query planner joined the index slices in, null if there was nothing to plan */
+    @JsonSerialize(include = Inclusion.NON_NULL)
+    public List<String> getQueryPlan() {
+        return queryPlan;
+    }
+
+
+    public void setQueryPlan( List<String> queryPlan ) {
+        this.queryPlan = queryPlan;
+    }
+
+
+    /** How the query was evaluated, null unless the query asked to be explained */
+    @JsonSerialize(include = Inclusion.NON_NULL)
+    public Map<String, Object> getExplain() {
+        return explain;
+    }
+
+
+    public void setExplain( Map<String, Object> explain ) {
+        this.explain = explain;
+    }
+
+
     protected QueryProcessor getQueryProcessor() {
         return queryProcessor;
     }
@@ -1284,8 +1314,17 @@ public class Results implements Iterable<Entity> {
             return null;
         }
 
+        return getPageResults( getCursor() );
+    }
+
+
+    /**
+     * Re-run the query that produced these results from the cursor, e.g. one saved from an earlier page.  Only
+     * results that came from a query can be paged
+     */
+    public Results getPageResults( String cursor ) throws Exception {
         Query q = new Query( query );
-        q.setCursor( getCursor() );
+        q.setCursor( cursor );
         queryProcessor.setQuery( q );
 
         return queryProcessor.getResults( searchVisitorFactory );
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,8 +37,13 @@ import org.apache.usergrid.locking.LockManager;
 import org.apache.usergrid.persistence.cassandra.index.IndexBucketScanner;
 import org.apache.usergrid.persistence.cassandra.index.IndexScanner;
 import org.apache.usergrid.persistence.cassandra.index.UUIDStartToBytes;
+import org.apache.usergrid.persistence.cassandra.util.TimedOpTag;
+import org.apache.usergrid.persistence.cassandra.util.TraceTagManager;
 import org.apache.usergrid.persistence.hector.CountingMutator;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+
 import me.prettyprint.cassandra.connection.HConnectionManager;
 import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
@@ -64,6 +70,7 @@ import me.prettyprint.hector.api.ddl.KeyspaceDefinition;
 import me.prettyprint.hector.api.factory.HFactory;
 import me.prettyprint.hector.api.mutation.Mutator;
 import me.prettyprint.hector.api.query.ColumnQuery;
+import me.prettyprint.hector.api.query.CountQuery;
 import me.prettyprint.hector.api.query.MultigetSliceQuery;
 import me.prettyprint.hector.api.query.QueryResult;
 import me.prettyprint.hector.api.query.RangeSlicesQuery;
@@ -71,6 +78,7 @@ import me.prettyprint.hector.api.query.SliceQuery;
 
 import static me.prettyprint.cassandra.service.FailoverPolicy.ON_FAIL_TRY_ALL_AVAILABLE;
 import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createCountQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createMultigetSliceQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createRangeSlicesQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
@@ -114,6 +122,8 @@ public class CassandraService {
     private static final Logger db_logger =
             LoggerFactory.getLogger( CassandraService.class.getPackage().getName() + ".DB" );
 
+    private static final Meter reads = Metrics.newMeter( CassandraService.class, "reads", "reads", TimeUnit.SECONDS );
+
     Cluster cluster;
     CassandraHostConfigurator chc;
     Properties properties;
@@ -121,6 +131,8 @@ public class CassandraService {
 
     ConsistencyLevelPolicy consistencyLevelPolicy;
 
+    TraceTagManager traceTagManager;
+
     public static String SYSTEM_KEYSPACE;
     public static String STATIC_APPLICATION_KEYSPACE;
 
@@ -231,6 +243,17 @@ public class CassandraService {
     }
 
 
+    public TraceTagManager getTraceTagManager() {
+        return traceTagManager;
+    }
+
+
+    /** Reads are added to the profile of the trace attached to the calling thread, if any */
+    public void setTraceTagManager( TraceTagManager traceTagManager ) {
+        this.traceTagManager = traceTagManager;
+    }
+
+
     /** @return keyspace for application UUID */
     public static String keyspaceForApplication( UUID applicationId ) {
         if ( USE_VIRTUAL_KEYSPACES ) {
@@ -428,9 +451,11 @@ public class CassandraService {
         q.setColumnFamily( columnFamily.toString() );
         q.setKey( bytebuffer( key ) );
         q.setRange( null, null, false, ALL_COUNT );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<ColumnSlice<N, V>> r = q.execute();
         ColumnSlice<N, V> slice = r.get();
         List<HColumn<N, V>> results = slice.getColumns();
+        stopProfiledOp( timedOpTag, "getAllColumns", columnFamily, 1, results );
 
         if ( db_logger.isInfoEnabled() ) {
             if ( results == null ) {
@@ -516,9 +541,11 @@ public class CassandraService {
      * else { q.setRange(start_bytes, finish_bytes, reversed, count); }
      */
         q.setRange( start_bytes, finish_bytes, reversed, count );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<ColumnSlice<ByteBuffer, ByteBuffer>> r = q.execute();
         ColumnSlice<ByteBuffer, ByteBuffer> slice = r.get();
         List<HColumn<ByteBuffer, ByteBuffer>> results = slice.getColumns();
+        stopProfiledOp( timedOpTag, "getColumns", columnFamily, 1, results );
 
         if ( db_logger.isDebugEnabled() ) {
             if ( results == null ) {
@@ -533,6 +560,35 @@ public class CassandraService {
     }
 
 
+    /**
+     * Count the columns between start and finish in the row.  Counting stops at max, so the result is a lower bound
+     * when max is returned.  The count is done by Cassandra, the columns are never sent to the client
+     */
+    public int countColumns( Keyspace ko, Object columnFamily, Object key, ByteBuffer start, ByteBuffer finish,
+                             int max ) throws Exception {
+
+        if ( db_logger.isDebugEnabled() ) {
+            db_logger.debug( "countColumns cf=" + columnFamily + " key=" + key + " max=" + max );
+        }
+
+        CountQuery<ByteBuffer, ByteBuffer> q = createCountQuery( ko, be, be );
+        q.setColumnFamily( columnFamily.toString() );
+        q.setKey( bytebuffer( key ) );
+        q.setRange( start, finish, max );
+
+        TimedOpTag timedOpTag = startProfiledOp();
+        Integer count = q.execute().get();
+        int result = count == null ? 0 : count;
+        stopProfiledOp( timedOpTag, "countColumns", columnFamily, 1, result );
+
+        if ( db_logger.isDebugEnabled() ) {
+            db_logger.debug( "countColumns returned " + result );
+        }
+
+        return result;
+    }
+
+
     public Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> multiGetColumns( Keyspace ko, Object columnFamily,
                                                                                    List<?> keys, Object start,
                                                                                    Object finish, int count,
@@ -570,8 +626,10 @@ public class CassandraService {
         }
 
         q.setRange( start_bytes, finish_bytes, reversed, count );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<Rows<ByteBuffer, ByteBuffer, ByteBuffer>> r = q.execute();
         Rows<ByteBuffer, ByteBuffer, ByteBuffer> rows = r.get();
+        stopProfiledOp( timedOpTag, "multiGetColumns", columnFamily, keys.size(), rows );
 
         Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> results =
                 new LinkedHashMap<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>>();
@@ -606,8 +664,10 @@ public class CassandraService {
         q.setColumnFamily( columnFamily.toString() );
         q.setKeys( keys );
         q.setRange( null, null, false, ALL_COUNT );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<Rows<K, N, V>> r = q.execute();
         Rows<K, N, V> results = r.get();
+        stopProfiledOp( timedOpTag, "getRows", columnFamily, keys.size(), results );
 
         if ( db_logger.isInfoEnabled() ) {
             if ( results == null ) {
@@ -650,9 +710,11 @@ public class CassandraService {
         q.setColumnNames( ( N[] ) nameSerializer.fromBytesSet( se.toBytesSet( new ArrayList<String>( columnNames ) ) )
                                                 .toArray() );
 
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<ColumnSlice<N, V>> r = q.execute();
         ColumnSlice<N, V> slice = r.get();
         List<HColumn<N, V>> results = slice.getColumns();
+        stopProfiledOp( timedOpTag, "getColumns", columnFamily, 1, results );
 
         if ( db_logger.isInfoEnabled() ) {
             if ( results == null ) {
@@ -694,8 +756,10 @@ public class CassandraService {
         q.setKeys( keys );
         q.setColumnNames( ( N[] ) nameSerializer.fromBytesSet( se.toBytesSet( new ArrayList<String>( columnNames ) ) )
                                                 .toArray() );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<Rows<K, N, V>> r = q.execute();
         Rows<K, N, V> results = r.get();
+        stopProfiledOp( timedOpTag, "getRows", columnFamily, keys.size(), results );
 
         if ( db_logger.isInfoEnabled() ) {
             if ( results == null ) {
@@ -737,9 +801,11 @@ public class CassandraService {
      */
 
         ColumnQuery<ByteBuffer, N, V> q = HFactory.createColumnQuery( ko, be, nameSerializer, valueSerializer );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<HColumn<N, V>> r =
                 q.setKey( bytebuffer( key ) ).setName( column ).setColumnFamily( columnFamily.toString() ).execute();
         HColumn<N, V> result = r.get();
+        stopProfiledOp( timedOpTag, "getColumn", columnFamily, 1, result == null ? 0 : 1 );
 
         if ( db_logger.isInfoEnabled() ) {
             if ( result == null ) {
@@ -766,10 +832,12 @@ public class CassandraService {
      */
 
         SliceQuery<ByteBuffer, N, V> q = HFactory.createSliceQuery( ko, be, nameSerializer, valueSerializer );
+        TimedOpTag timedOpTag = startProfiledOp();
         QueryResult<ColumnSlice<N, V>> r =
                 q.setKey( bytebuffer( key ) ).setColumnNames( columns ).setColumnFamily( columnFamily.toString() )
                  .execute();
         ColumnSlice<N, V> result = r.get();
+        stopProfiledOp( timedOpTag, "getColumns", columnFamily, 1, result == null ? null : result.getColumns() );
 
         if ( db_logger.isDebugEnabled() ) {
             if ( result == null ) {
@@ -787,6 +855,58 @@ public class CassandraService {
     }
 
 
+    /**
+     * The number of reads issued through this service since startup, across all instances and threads, including
+     * background work such as the job scheduler
+     */
+    public static long getReadCount() {
+        return reads.count();
+    }
+
+
+    /** Start timing a read for the profile of the current request.  Null if no trace is attached to this thread */
+    private TimedOpTag startProfiledOp() {
+        reads.mark();
+
+        if ( traceTagManager == null || !traceTagManager.isActive() ) {
+            return null;
+        }
+        return traceTagManager.timerInstance();
+    }
+
+
+    private void stopProfiledOp( TimedOpTag timedOpTag, String opName, Object columnFamily, int keys,
+                                 List<?> columns ) {
+        stopProfiledOp( timedOpTag, opName, columnFamily, keys, columns == null ? 0 : columns.size() );
+    }
+
+
+    private void stopProfiledOp( TimedOpTag timedOpTag, String opName, Object columnFamily, int keys,
+                                 Rows<?, ?, ?> rows ) {
+        if ( timedOpTag == null ) {
+            return;
+        }
+        int columns = 0;
+        if ( rows != null ) {
+            for ( Row<?, ?, ?> row : rows ) {
+                columns += row.getColumnSlice().getColumns().size();
+            }
+        }
+        stopProfiledOp( timedOpTag, opName, columnFamily, keys, columns );
+    }
+
+
+    private void stopProfiledOp( TimedOpTag timedOpTag, String opName, Object columnFamily, int keys,
+                                 int columns ) {
+        if ( timedOpTag == null ) {
+            return;
+        }
+        timedOpTag.stopAndApply( opName, true );
+        timedOpTag.applyOperation( columnFamily.toString(), keys, columns );
+        traceTagManager.addTimer( timedOpTag );
+    }
+
+
     public void setColumn( Keyspace ko, Object columnFamily, Object key, Object columnName, Object columnValue )
             throws Exception {
         this.setColumn( ko, columnFamily, key, columnName, columnValue, 0 );
@@ -19,10 +19,15 @@ package org.apache.usergrid.persistence.cassandra;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -31,6 +36,7 @@ import org.apache.usergrid.mq.Message;
 import org.apache.usergrid.mq.cassandra.QueuesCF;
 import org.apache.usergrid.persistence.CounterResolution;
 import org.apache.usergrid.persistence.entities.Event;
+import org.apache.usergrid.utils.JsonUtils;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -38,16 +44,29 @@ import org.apache.usergrid.count.Batcher;
 import org.apache.usergrid.count.common.Count;
 
 import me.prettyprint.cassandra.serializers.PrefixedSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.beans.CounterRow;
+import me.prettyprint.hector.api.beans.HColumn;
 import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.beans.Row;
 import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.MultigetSliceCounterQuery;
+import me.prettyprint.hector.api.query.MultigetSliceQuery;
 
 import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createColumnQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createCounterColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createMultigetSliceCounterQuery;
+import static me.prettyprint.hector.api.factory.HFactory.createMultigetSliceQuery;
+import static me.prettyprint.hector.api.factory.HFactory.createMutator;
+import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
 import static org.apache.usergrid.persistence.Schema.DICTIONARY_COUNTERS;
 import static org.apache.usergrid.persistence.cassandra.ApplicationCF.APPLICATION_AGGREGATE_COUNTERS;
 import static org.apache.usergrid.persistence.cassandra.ApplicationCF.ENTITY_COUNTERS;
 import static org.apache.usergrid.persistence.cassandra.ApplicationCF.ENTITY_DICTIONARIES;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.addDeleteToMutator;
 import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.addInsertToMutator;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.batchExecute;
 import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
 import static org.apache.usergrid.utils.ConversionUtils.bytebuffer;
 import static org.apache.usergrid.persistence.cassandra.Serializers.*;
@@ -57,10 +76,25 @@ public class CounterUtils {
 
     public static final Logger logger = LoggerFactory.getLogger( CounterUtils.class );
 
+    /**
+     * Dictionary holding the rollup checkpoint of an application, by hour the counters waiting for the rollup, and by
+     * row the rolled up counts
+     */
+    public static final String DICTIONARY_COUNTER_ROLLUPS = "counter_rollups";
+
+    /** The column of the application's rollup dictionary holding the time it was rolled up to */
+    public static final String ROLLUP_CHECKPOINT = "checkpoint";
+
+    private static final String ROLLUP_PENDING = "PENDING";
+
     private String counterType = "o";
 
     private Batcher batcher;
 
+    private boolean rollups = false;
+
+    private long rollupCatchUp = CounterResolution.DAY.interval();
+
 
     public void setBatcher( Batcher batcher ) {
         this.batcher = batcher;
@@ -83,6 +117,30 @@ public class CounterUtils {
     }
 
 
+    /**
+     * Only write the MINUTE resolution when counters are incremented and leave the coarser resolutions to the rollup
+     * job, see {@link #rollup(Keyspace, UUID, long)}.  Off by default.  The rolled up counts are only read while it is
+     * on, turning it off again drops them from the coarser resolutions.
+     */
+    public void setRollups( boolean rollups ) {
+        this.rollups = rollups;
+    }
+
+
+    public boolean getRollups() {
+        return rollups;
+    }
+
+
+    /**
+     * How far back, in milliseconds, to start rolling up an application that was never rolled up.  1 day by default.
+     * Counts pending for longer than this when the first rollup runs are not rolled up.
+     */
+    public void setRollupCatchUp( long rollupCatchUp ) {
+        this.rollupCatchUp = rollupCatchUp;
+    }
+
+
     public static class AggregateCounterSelection {
         public static final String COLON = ":";
         public static final String STAR = "*";
@@ -223,11 +281,24 @@ public class CounterUtils {
     public void batchIncrementAggregateCounters( Mutator<ByteBuffer> m, UUID applicationId, UUID userId, UUID groupId,
                                                  UUID queueId, String category, String name, long value,
                                                  long counterTimestamp, long cassandraTimestamp ) {
-        for ( CounterResolution resolution : CounterResolution.values() ) {
-            logger.debug( "BIAC for resolution {}", resolution );
-            batchIncrementAggregateCounters( m, userId, groupId, queueId, category, resolution, name, value,
-                    counterTimestamp, applicationId );
-            logger.debug( "DONE BIAC for resolution {}", resolution );
+        if ( rollups && ( m != null ) && isRollupPending( counterTimestamp ) ) {
+            // only the finest resolution now, and the pending count the rollup job adds to the coarser resolutions
+            long minute = CounterResolution.MINUTE.round( counterTimestamp );
+            for ( String row : getIncrementedRows( name, userId, groupId, queueId, category,
+                    CounterResolution.MINUTE ) ) {
+                handleAggregateCounterRow( m, row, minute, value, applicationId );
+                handleAggregateCounterRow( m, getPendingRow( row ), minute, value, applicationId );
+            }
+            addRollupPending( m, applicationId, userId, groupId, queueId, category, name, counterTimestamp,
+                    cassandraTimestamp );
+        }
+        else {
+            for ( CounterResolution resolution : CounterResolution.values() ) {
+                logger.debug( "BIAC for resolution {}", resolution );
+                batchIncrementAggregateCounters( m, userId, groupId, queueId, category, resolution, name, value,
+                        counterTimestamp, applicationId );
+                logger.debug( "DONE BIAC for resolution {}", resolution );
+            }
         }
         batchIncrementEntityCounter( m, applicationId, name, value, cassandraTimestamp, applicationId );
         if ( userId != null ) {
@@ -243,6 +314,21 @@ public class CounterUtils {
                                                   String category, CounterResolution resolution, String name,
                                                   long value, long counterTimestamp, UUID applicationId ) {
 
+        for ( String row : getIncrementedRows( name, userId, groupId, queueId, category, resolution ) ) {
+            handleAggregateCounterRow( m, row, resolution.round( counterTimestamp ), value, applicationId );
+        }
+    }
+
+
+    /**
+     * Get every aggregate counter row an increment of the counter is written to in the resolution.  That is the row of
+     * each dotted prefix of the name, alone and combined with each non null user, group, queue and category.
+     */
+    private static Set<String> getIncrementedRows( String name, UUID userId, UUID groupId, UUID queueId,
+                                                   String category, CounterResolution resolution ) {
+
+        Set<String> rows = new LinkedHashSet<String>();
+
         String[] segments = StringUtils.split( name, '.' );
         for ( int j = 0; j < segments.length; j++ ) {
             name = StringUtils.join( segments, '.', 0, j + 1 );
@@ -252,11 +338,7 @@ public class CounterUtils {
             }
 
             // *:*:*:*
-            handleAggregateCounterRow( m,
-                    AggregateCounterSelection.rowBuilder( name, null, null, null, null, resolution ),
-                    resolution.round( counterTimestamp ), value, applicationId );
-            String currentRow = null;
-            HashSet<String> rowSet = new HashSet<String>( 16 );
+            rows.add( AggregateCounterSelection.rowBuilder( name, null, null, null, null, resolution ) );
             for ( int i = 0; i < 16; i++ ) {
 
                 boolean include_user = ( i & 0x01 ) != 0;
@@ -274,17 +356,374 @@ public class CounterUtils {
                         non_null++;
                     }
                 }
-                currentRow = AggregateCounterSelection
-                        .rowBuilder( name, ( UUID ) parameters[0], ( UUID ) parameters[1], ( UUID ) parameters[2],
-                                ( String ) parameters[3], resolution );
-
-                if ( non_null > 0 && !rowSet.contains( currentRow ) ) {
-                    rowSet.add( currentRow );
-                    handleAggregateCounterRow( m, currentRow, resolution.round( counterTimestamp ), value,
-                            applicationId );
+
+                if ( non_null > 0 ) {
+                    rows.add( AggregateCounterSelection
+                            .rowBuilder( name, ( UUID ) parameters[0], ( UUID ) parameters[1], ( UUID ) parameters[2],
+                                    ( String ) parameters[3], resolution ) );
+                }
+            }
+        }
+
+        return rows;
+    }
+
+
+    /** True if a count at the time is recent enough that the rollup job hasn't passed its minute yet */
+    private boolean isRollupPending( long counterTimestamp ) {
+        return counterTimestamp >= CounterResolution.MINUTE.round( System.currentTimeMillis() ) - CounterResolution
+                .MINUTE.interval();
+    }
+
+
+    /** The row of the application holding the counters incremented in the hour that are waiting to be rolled up */
+    private static Object getRollupPendingKey( UUID applicationId, long hour ) {
+        return key( applicationId, DICTIONARY_COUNTER_ROLLUPS, hour );
+    }
+
+
+    /**
+     * Record that the counter was incremented in the minute of the timestamp.  The column name is unique to the
+     * minute and the counter, so repeated increments within a minute overwrite the same column.
+     */
+    private void addRollupPending( Mutator<ByteBuffer> m, UUID applicationId, UUID userId, UUID groupId,
+                                   UUID queueId, String category, String name, long counterTimestamp,
+                                   long cassandraTimestamp ) {
+        long minute = CounterResolution.MINUTE.round( counterTimestamp );
+
+        Map<String, Object> counter = new LinkedHashMap<String, Object>();
+        counter.put( "name", name );
+        counter.put( "user", userId );
+        counter.put( "group", groupId );
+        counter.put( "queue", queueId );
+        counter.put( "category", category );
+
+        addInsertToMutator( m, ENTITY_DICTIONARIES,
+                getRollupPendingKey( applicationId, CounterResolution.HOUR.round( minute ) ),
+                minute + AggregateCounterSelection.COLON + AggregateCounterSelection
+                        .rowBuilder( name, userId, groupId, queueId, category, CounterResolution.MINUTE ),
+                JsonUtils.mapToJsonString( counter ), cassandraTimestamp );
+    }
+
+
+    /**
+     * Get the time up to which the pending counts of the application have been rolled up, or 0 if the application was
+     * never rolled up
+     */
+    public long getRollupCheckpoint( Keyspace ko, UUID applicationId ) {
+        HColumn<String, Long> column = createColumnQuery( ko, be, se, le ).setColumnFamily(
+                ENTITY_DICTIONARIES.toString() ).setKey( bytebuffer( key( applicationId, DICTIONARY_COUNTER_ROLLUPS ) ) )
+                                                                          .setName( ROLLUP_CHECKPOINT ).execute()
+                                                                          .get();
+        if ( column != null ) {
+            return column.getValue();
+        }
+        return 0;
+    }
+
+
+    /**
+     * Add the pending counts of the application written since the checkpoint to the rolled up counts of the coarser
+     * resolutions, up to but not including the minute of until, and move the checkpoint.  Callers must make sure only
+     * one rollup of an application runs at a time, and that until is far enough in the past that no more counts will
+     * be written to those minutes.
+     * <p/>
+     * The rolled up counts are absolute values, each one recording the minute it includes the pending counts up to.
+     * They are written with the checkpoint in one synchronous batch per hour, so a rollup that failed part way or ran
+     * again from an older checkpoint never adds a pending count twice.
+     *
+     * @return the number of minute counter rows that were rolled up
+     */
+    public int rollup( Keyspace ko, UUID applicationId, long until ) throws Exception {
+        until = CounterResolution.MINUTE.round( until );
+
+        long checkpoint = getRollupCheckpoint( ko, applicationId );
+        if ( checkpoint == 0 ) {
+            checkpoint = CounterResolution.MINUTE.round( System.currentTimeMillis() - rollupCatchUp );
+        }
+        int rolled = 0;
+
+        while ( checkpoint < until ) {
+            long hour = CounterResolution.HOUR.round( checkpoint );
+            long end = Math.min( hour + CounterResolution.HOUR.interval(), until );
+
+            // the pending counts of each MINUTE row by minute
+            Map<String, Map<Long, Long>> pending = new LinkedHashMap<String, Map<Long, Long>>();
+            for ( Entry<Long, Set<String>> minute : getRollupPending( ko, applicationId, hour, checkpoint, end )
+                    .entrySet() ) {
+                for ( Entry<String, Long> row : getPendingCounts( ko, minute.getValue(), minute.getKey() )
+                        .entrySet() ) {
+                    Map<Long, Long> counts = pending.get( row.getKey() );
+                    if ( counts == null ) {
+                        counts = new TreeMap<Long, Long>();
+                        pending.put( row.getKey(), counts );
+                    }
+                    counts.put( minute.getKey(), row.getValue() );
+                    rolled++;
+                }
+            }
+
+            long timestamp = ko.createClock();
+            Mutator<ByteBuffer> m = createMutator( ko, be );
+            for ( CounterResolution resolution : CounterResolution.values() ) {
+                if ( resolution != CounterResolution.MINUTE ) {
+                    addRollupMutations( m, ko, applicationId, pending, resolution, hour, end, timestamp );
+                }
+            }
+            addInsertToMutator( m, ENTITY_DICTIONARIES, key( applicationId, DICTIONARY_COUNTER_ROLLUPS ),
+                    ROLLUP_CHECKPOINT, end, timestamp );
+            if ( end == hour + CounterResolution.HOUR.interval() ) {
+                addDeleteToMutator( m, ENTITY_DICTIONARIES, getRollupPendingKey( applicationId, hour ), timestamp );
+            }
+            batchExecute( m, CassandraService.RETRY_COUNT );
+
+            checkpoint = end;
+        }
+
+        return rolled;
+    }
+
+
+    /**
+     * Add the pending counts of the MINUTE rows to the rolled up counts of their intervals in the resolution, skipping
+     * the minutes a rolled up count already includes
+     */
+    private void addRollupMutations( Mutator<ByteBuffer> m, Keyspace ko, UUID applicationId,
+                                     Map<String, Map<Long, Long>> pending, CounterResolution resolution, long hour,
+                                     long end, long timestamp ) {
+        if ( pending.isEmpty() ) {
+            return;
+        }
+
+        Map<String, String> rows = new LinkedHashMap<String, String>();
+        for ( String minuteRow : pending.keySet() ) {
+            rows.put( minuteRow, getRollupRow( minuteRow, resolution ) );
+        }
+        Map<String, Map<Long, long[]>> rolledUp =
+                getRolledUp( ko, applicationId, rows.values(), resolution.round( hour ), resolution.round( end - 1 ) );
+
+        for ( Entry<String, Map<Long, Long>> row : pending.entrySet() ) {
+            String rollupRow = rows.get( row.getKey() );
+            Map<Long, long[]> counts = rolledUp.get( rollupRow );
+            Map<Long, long[]> updated = new TreeMap<Long, long[]>();
+
+            for ( Entry<Long, Long> minute : row.getValue().entrySet() ) {
+                long interval = resolution.round( minute.getKey() );
+                long[] count = updated.get( interval );
+                if ( count == null ) {
+                    long[] existing = counts != null ? counts.get( interval ) : null;
+                    count = existing != null ? new long[] { existing[0], existing[1] } : new long[] { 0, 0 };
+                    updated.put( interval, count );
+                }
+                // the rolled up count already includes the minutes before its own
+                if ( minute.getKey() >= count[1] ) {
+                    count[0] += minute.getValue();
+                }
+            }
+
+            for ( Entry<Long, long[]> count : updated.entrySet() ) {
+                if ( count.getValue()[1] < end ) {
+                    addInsertToMutator( m, ENTITY_DICTIONARIES, getRolledUpKey( applicationId, rollupRow ),
+                            count.getKey(), rolledUpValue( count.getValue()[0], end ), timestamp );
+                }
+            }
+        }
+    }
+
+
+    /** Get the minute rows of the counters incremented in the hour between start and end, by minute */
+    private Map<Long, Set<String>> getRollupPending( Keyspace ko, UUID applicationId, long hour, long start,
+                                                     long end ) {
+        List<HColumn<String, String>> columns =
+                createSliceQuery( ko, be, se, se ).setColumnFamily( ENTITY_DICTIONARIES.toString() )
+                                                  .setKey( bytebuffer( getRollupPendingKey( applicationId, hour ) ) )
+                                                  .setRange( null, null, false, CassandraService.ALL_COUNT )
+                                                  .execute().get().getColumns();
+
+        Map<Long, Set<String>> pending = new TreeMap<Long, Set<String>>();
+        for ( HColumn<String, String> column : columns ) {
+            String columnName = column.getName();
+            long minute = Long.parseLong(
+                    columnName.substring( 0, columnName.indexOf( AggregateCounterSelection.COLON ) ) );
+            if ( ( minute < start ) || ( minute >= end ) ) {
+                continue;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> counter = ( Map<String, Object> ) JsonUtils.parse( column.getValue() );
+
+            Set<String> rows = pending.get( minute );
+            if ( rows == null ) {
+                rows = new LinkedHashSet<String>();
+                pending.put( minute, rows );
+            }
+            rows.addAll( getIncrementedRows( ( String ) counter.get( "name" ), uuid( counter.get( "user" ) ),
+                    uuid( counter.get( "group" ) ), uuid( counter.get( "queue" ) ),
+                    ( String ) counter.get( "category" ), CounterResolution.MINUTE ) );
+        }
+
+        return pending;
+    }
+
+
+    /** Read the pending count of each of the MINUTE rows at the minute, by MINUTE row */
+    private Map<String, Long> getPendingCounts( Keyspace ko, Collection<String> minuteRows, long minute ) {
+        Map<String, String> rows = new HashMap<String, String>();
+        for ( String minuteRow : minuteRows ) {
+            rows.put( getPendingRow( minuteRow ), minuteRow );
+        }
+
+        MultigetSliceCounterQuery<String, Long> q = createMultigetSliceCounterQuery( ko, se, le );
+        q.setColumnFamily( APPLICATION_AGGREGATE_COUNTERS.toString() );
+        q.setKeys( rows.keySet() );
+        q.setColumnNames( minute );
+
+        Map<String, Long> values = new LinkedHashMap<String, Long>();
+        for ( CounterRow<String, Long> row : q.execute().get() ) {
+            for ( HCounterColumn<Long> c : row.getColumnSlice().getColumns() ) {
+                if ( c.getValue() != 0 ) {
+                    values.put( rows.get( row.getKey() ), c.getValue() );
                 }
             }
         }
+        return values;
+    }
+
+
+    /**
+     * Get the rolled up counts of the rows of a resolution between the intervals start and finish
+     *
+     * @return the count and the minute it includes the pending counts up to, by row and by interval
+     */
+    private Map<String, Map<Long, long[]>> getRolledUp( Keyspace ko, UUID applicationId, Collection<String> rows,
+                                                        long start, long finish ) {
+        Map<String, String> keys = new HashMap<String, String>();
+        for ( String row : rows ) {
+            keys.put( ( String ) getRolledUpKey( applicationId, row ), row );
+        }
+
+        MultigetSliceQuery<String, Long, ByteBuffer> q = createMultigetSliceQuery( ko, se, le, be );
+        q.setColumnFamily( ENTITY_DICTIONARIES.toString() );
+        q.setKeys( keys.keySet() );
+        q.setRange( start, finish, false, CassandraService.ALL_COUNT );
+
+        Map<String, Map<Long, long[]>> rolledUp = new HashMap<String, Map<Long, long[]>>();
+        for ( Row<String, Long, ByteBuffer> row : q.execute().get() ) {
+            Map<Long, long[]> counts = new TreeMap<Long, long[]>();
+            for ( HColumn<Long, ByteBuffer> column : row.getColumnSlice().getColumns() ) {
+                ByteBuffer value = column.getValue();
+                counts.put( column.getName(),
+                        new long[] { value.getLong( value.position() ), value.getLong( value.position() + 8 ) } );
+            }
+            rolledUp.put( keys.get( row.getKey() ), counts );
+        }
+        return rolledUp;
+    }
+
+
+    /**
+     * Get the counts of the MINUTE rows that are not in the coarser resolution counter rows, summed into the intervals
+     * of the resolution.  That is the counts the rollup job added up, and the pending counts it hasn't reached yet.  All
+     * the pending counts are read if the application was never rolled up.
+     *
+     * @param minuteRows The MINUTE resolution rows
+     * @param start The first minute to read
+     * @param finish The last minute to read
+     *
+     * @return the counts of each MINUTE row by the start time of the interval in the resolution
+     */
+    public Map<String, Map<Long, Long>> getRollupTails( Keyspace ko, UUID applicationId,
+                                                        Collection<String> minuteRows, CounterResolution resolution,
+                                                        long start, long finish ) {
+        Map<String, String> rows = new HashMap<String, String>();
+        for ( String minuteRow : minuteRows ) {
+            rows.put( getRollupRow( minuteRow, resolution ), minuteRow );
+        }
+        Map<String, Map<Long, long[]>> rolledUp =
+                getRolledUp( ko, applicationId, rows.keySet(), resolution.round( start ), resolution.round( finish ) );
+
+        Map<String, Map<Long, Long>> tails = new HashMap<String, Map<Long, Long>>();
+        Map<String, Map<Long, long[]>> rolledUpByMinuteRow = new HashMap<String, Map<Long, long[]>>();
+        for ( Entry<String, Map<Long, long[]>> row : rolledUp.entrySet() ) {
+            Map<Long, Long> tail = new TreeMap<Long, Long>();
+            for ( Entry<Long, long[]> count : row.getValue().entrySet() ) {
+                tail.put( count.getKey(), count.getValue()[0] );
+            }
+            tails.put( rows.get( row.getKey() ), tail );
+            rolledUpByMinuteRow.put( rows.get( row.getKey() ), row.getValue() );
+        }
+
+        Map<String, String> pendingRows = new HashMap<String, String>();
+        for ( String minuteRow : minuteRows ) {
+            pendingRows.put( getPendingRow( minuteRow ), minuteRow );
+        }
+
+        // pending counts before the checkpoint are rolled up
+        MultigetSliceCounterQuery<String, Long> q = createMultigetSliceCounterQuery( ko, se, le );
+        q.setColumnFamily( APPLICATION_AGGREGATE_COUNTERS.toString() );
+        q.setKeys( pendingRows.keySet() );
+        q.setRange( Math.max( start, getRollupCheckpoint( ko, applicationId ) ), finish, false,
+                CassandraService.ALL_COUNT );
+
+        for ( CounterRow<String, Long> row : q.execute().get() ) {
+            String minuteRow = pendingRows.get( row.getKey() );
+            Map<Long, long[]> counts = rolledUpByMinuteRow.get( minuteRow );
+            Map<Long, Long> tail = tails.get( minuteRow );
+            if ( tail == null ) {
+                tail = new TreeMap<Long, Long>();
+                tails.put( minuteRow, tail );
+            }
+            for ( HCounterColumn<Long> column : row.getColumnSlice().getColumns() ) {
+                long interval = resolution.round( column.getName() );
+                long[] count = counts != null ? counts.get( interval ) : null;
+                // a rollup that failed before moving the checkpoint may have included it already
+                if ( ( count != null ) && ( column.getName() < count[1] ) ) {
+                    continue;
+                }
+                Long sum = tail.get( interval );
+                tail.put( interval, ( sum != null ? sum : 0 ) + column.getValue() );
+            }
+        }
+        return tails;
+    }
+
+
+    /** Change a MINUTE row to the same row in another resolution */
+    private static String getRollupRow( String minuteRow, CounterResolution resolution ) {
+        return minuteRow.substring( 0, minuteRow.length() - CounterResolution.MINUTE.name().length() ) + resolution
+                .name();
+    }
+
+
+    /**
+     * The counter row of the counts written to a MINUTE row while rollups are on, so the rollup job adds only those to
+     * the coarser resolutions and not the counts that were written to every resolution directly
+     */
+    private static String getPendingRow( String minuteRow ) {
+        return minuteRow + AggregateCounterSelection.COLON + ROLLUP_PENDING;
+    }
+
+
+    /** The dictionary row holding the rolled up counts of a row of a coarser resolution */
+    private static Object getRolledUpKey( UUID applicationId, String row ) {
+        return key( applicationId, DICTIONARY_COUNTER_ROLLUPS, row );
+    }
+
+
+    /**
+     * A rolled up count with the minute it includes the pending counts up to, in one column so both are always written
+     * together
+     */
+    private static ByteBuffer rolledUpValue( long count, long through ) {
+        ByteBuffer value = ByteBuffer.allocate( 16 );
+        value.putLong( count ).putLong( through );
+        value.rewind();
+        return value;
+    }
+
+
+    private static UUID uuid( Object value ) {
+        return value != null ? UUID.fromString( value.toString() ) : null;
     }
 
 
@@ -41,6 +41,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.util.Assert;
 
+import org.apache.usergrid.changes.ChangeEvent;
+import org.apache.usergrid.changes.ChangeFeed;
 import org.apache.usergrid.locking.Lock;
 import org.apache.usergrid.mq.Message;
 import org.apache.usergrid.mq.QueueManager;
@@ -69,6 +71,8 @@ import org.apache.usergrid.persistence.SimpleEntityRef;
 import org.apache.usergrid.persistence.SimpleRoleRef;
 import org.apache.usergrid.persistence.TypedEntity;
 import org.apache.usergrid.persistence.cassandra.CounterUtils.AggregateCounterSelection;
+import org.apache.usergrid.persistence.cassandra.index.CassandraColumnUtils;
+import org.apache.usergrid.persistence.cassandra.index.IndexCardinalityEstimator;
 import org.apache.usergrid.persistence.cassandra.util.TraceParticipant;
 import org.apache.usergrid.persistence.entities.Application;
 import org.apache.usergrid.persistence.entities.Event;
@@ -206,6 +210,14 @@ public class EntityManagerImpl implements EntityManager {
     private CassandraService cass;
     @Resource
     private CounterUtils counterUtils;
+    @Resource
+    private UniqueValueCache uniqueValueCache;
+    @Resource
+    private IndexCardinalityEstimator indexCardinalityEstimator;
+    @Resource
+    private QueryResultCache queryResultCache;
+    @Resource
+    private ChangeFeed changeFeed;
 
     private boolean skipAggregateCounters;
 
@@ -303,6 +315,18 @@ public class EntityManagerImpl implements EntityManager {
     public Mutator<ByteBuffer> batchSetProperty( Mutator<ByteBuffer> batch, EntityRef entity, String propertyName,
                                                  Object propertyValue, boolean force, boolean noRead,
                                                  UUID timestampUuid ) throws Exception {
+        return batchSetProperty( batch, entity, propertyName, propertyValue, force, noRead, false, timestampUuid );
+    }
+
+
+    /**
+     * Batch a property write.  When uniqueVerified is true the caller has already checked the unique index for this
+     * value with {@link #getDuplicateUniqueProperties(String, Map)} and the entity is new, so no previous unique value
+     * needs to be read or removed
+     */
+    private Mutator<ByteBuffer> batchSetProperty( Mutator<ByteBuffer> batch, EntityRef entity, String propertyName,
+                                                  Object propertyValue, boolean force, boolean noRead,
+                                                  boolean uniqueVerified, UUID timestampUuid ) throws Exception {
 
         long timestamp = getTimestampInMicros( timestampUuid );
 
@@ -342,7 +366,11 @@ public class EntityManagerImpl implements EntityManager {
             /**
              * Unique property, load the old value and remove it, check if it's not a duplicate
              */
-            if ( defaultSchema.getEntityInfo( entity.getType() ).isPropertyUnique( propertyName ) ) {
+            if ( uniqueVerified ) {
+                uniquePropertyWrite( batch, Schema.defaultCollectionName( entity.getType() ), propertyName,
+                        propertyValue, entity.getUuid(), timestamp );
+            }
+            else if ( defaultSchema.getEntityInfo( entity.getType() ).isPropertyUnique( propertyName ) ) {
 
                 Lock lock = getUniqueUpdateLock( cass.getLockManager(), applicationId, propertyValue, entity.getType(),
                         propertyName );
@@ -556,6 +584,104 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    /**
+     * Check the unique properties of several entities of the same type against the unique index.  All values are
+     * resolved with a single multiget, and values repeated within the passed entities are reported as well so bulk
+     * imports can reject them before anything is written
+     *
+     * @param entityType The type of the entities
+     * @param entities The property values to check, keyed by the id of the entity that would own them
+     *
+     * @return The names of the unique properties whose values are owned by a different entity, keyed by the entity
+     *         id.  Entities without duplicates are not present in the map
+     */
+    @Override
+    @Metered( group = "core", name = "EntityManager_getDuplicateUniqueProperties" )
+    public Map<UUID, Set<String>> getDuplicateUniqueProperties( String entityType,
+                                                                Map<UUID, Map<String, Object>> entities )
+            throws Exception {
+
+        Schema schema = getDefaultSchema();
+        String collectionName = defaultCollectionName( entityType );
+
+        //the unique index key of each property we need to verify, in the order the entities were given
+        Map<UUID, Map<String, String>> entityKeys = new LinkedHashMap<UUID, Map<String, String>>( entities.size() );
+        Set<String> keys = new LinkedHashSet<String>();
+
+        for ( Map.Entry<UUID, Map<String, Object>> entity : entities.entrySet() ) {
+
+            Map<String, String> propertyKeys = new LinkedHashMap<String, String>();
+
+            for ( Map.Entry<String, Object> property : entity.getValue().entrySet() ) {
+                if ( property.getValue() == null || !schema.isPropertyUnique( entityType, property.getKey() ) ) {
+                    continue;
+                }
+
+                String key = createUniqueIndexKey( applicationId, collectionName, property.getKey(),
+                        property.getValue() );
+
+                propertyKeys.put( property.getKey(), key );
+                keys.add( key );
+            }
+
+            entityKeys.put( entity.getKey(), propertyKeys );
+        }
+
+        Map<UUID, Set<String>> duplicates = new LinkedHashMap<UUID, Set<String>>();
+
+        if ( keys.isEmpty() ) {
+            return duplicates;
+        }
+
+        Map<String, Set<UUID>> owners = getUUIDsForUniqueKeys( keys );
+
+        //the entity in this batch that claimed each key first
+        Map<String, UUID> claimed = new HashMap<String, UUID>( keys.size() );
+
+        for ( Map.Entry<UUID, Map<String, String>> entity : entityKeys.entrySet() ) {
+            for ( Map.Entry<String, String> propertyKey : entity.getValue().entrySet() ) {
+
+                Set<UUID> ownerEntityIds = owners.get( propertyKey.getValue() );
+                UUID claimedBy = claimed.get( propertyKey.getValue() );
+
+                //same rules as isPropertyValueUniqueForEntity, the value is either free or already ours
+                boolean unique = ownerEntityIds.size() == 0 || ownerEntityIds.contains( entity.getKey() );
+
+                if ( unique && ( claimedBy == null || claimedBy.equals( entity.getKey() ) ) ) {
+                    claimed.put( propertyKey.getValue(), entity.getKey() );
+                    continue;
+                }
+
+                Set<String> names = duplicates.get( entity.getKey() );
+
+                if ( names == null ) {
+                    names = new LinkedHashSet<String>();
+                    duplicates.put( entity.getKey(), names );
+                }
+
+                names.add( propertyKey.getKey() );
+            }
+        }
+
+        return duplicates;
+    }
+
+
+    @Override
+    public Set<String> getDuplicateUniqueProperties( String entityType, UUID entityId,
+                                                     Map<String, Object> properties ) throws Exception {
+        //a null id owns nothing, so any value that has an owner is a duplicate
+        Set<String> duplicates = getDuplicateUniqueProperties( entityType,
+                Collections.singletonMap( entityId, properties ) ).get( entityId );
+
+        if ( duplicates == null ) {
+            return Collections.emptySet();
+        }
+
+        return duplicates;
+    }
+
+
     /**
      * Return all UUIDs that have this unique value
      *
@@ -567,21 +693,62 @@ public class EntityManagerImpl implements EntityManager {
     private Set<UUID> getUUIDsForUniqueProperty( UUID ownerEntityId, String collectionName, String propertyName,
                                                  Object propertyValue ) throws Exception {
 
+        String key = createUniqueIndexKey( ownerEntityId, defaultCollectionName( collectionName ), propertyName,
+                propertyValue );
 
-        String collectionNameInternal = defaultCollectionName( collectionName );
+        return getUUIDsForUniqueKeys( Collections.singleton( key ) ).get( key );
+    }
+
+
+    /**
+     * Return all UUIDs for each of the unique index keys.  Keys that are not in the {@link UniqueValueCache} are read
+     * with a single multiget
+     *
+     * @param keys The unique index row keys created with {@link #createUniqueIndexKey(UUID, String, String, Object)}
+     *
+     * @return The owners of every key.  Keys without owners map to an empty set
+     */
+    private Map<String, Set<UUID>> getUUIDsForUniqueKeys( Collection<String> keys ) throws Exception {
+
+        Map<String, Set<UUID>> results = new HashMap<String, Set<UUID>>( keys.size() );
+        List<String> uncached = new ArrayList<String>( keys.size() );
 
-        Object key = createUniqueIndexKey( ownerEntityId, collectionNameInternal, propertyName, propertyValue );
+        for ( String key : keys ) {
+            Set<UUID> cached = uniqueValueCache.get( applicationId, key );
+
+            if ( cached != null ) {
+                results.put( key, cached );
+            }
+            else {
+                uncached.add( key );
+            }
+        }
+
+        if ( uncached.isEmpty() ) {
+            return results;
+        }
 
         //need to fix by asking todd as to why 2.
         //why is this set to 2?
-        List<HColumn<ByteBuffer, ByteBuffer>> cols =
-                cass.getColumns( cass.getApplicationKeyspace( applicationId ), ENTITY_UNIQUE, key, null, null, 2,
-                        false );
+        Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> rows =
+                cass.multiGetColumns( cass.getApplicationKeyspace( applicationId ), ENTITY_UNIQUE, uncached, null,
+                        null, 2, false );
+
+        Map<String, List<HColumn<ByteBuffer, ByteBuffer>>> columnsByKey =
+                new HashMap<String, List<HColumn<ByteBuffer, ByteBuffer>>>( rows.size() );
+
+        for ( Map.Entry<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> row : rows.entrySet() ) {
+            columnsByKey.put( string( row.getKey() ), row.getValue() );
+        }
+
+        for ( String key : uncached ) {
+
+            List<HColumn<ByteBuffer, ByteBuffer>> cols = columnsByKey.get( key );
 
 // TEMPORARY REMOVAL OF READ REPAIR
 
-        //check to see if the single value is valid. If it is not valid then it will be zero and go through
-        //the code below.
+            //check to see if the single value is valid. If it is not valid then it will be zero and go through
+            //the code below.
 //        if(cols.size() == 1){
 //            logger.debug("Verifying that column is still valid, if not will be removed");
 //            UUID indexCorruptionUuid = ue.fromByteBuffer( cols.get( 0 ).getName());
@@ -593,17 +760,19 @@ public class EntityManagerImpl implements EntityManager {
 //            }
 //        }
 
-        //No columns at all, it's unique
-        if ( cols.size() == 0 ) {
-            return Collections.emptySet();
-        }
+            //No columns at all, it's unique
+            if ( cols == null || cols.size() == 0 ) {
+                Set<UUID> none = Collections.emptySet();
+                results.put( key, none );
+                uniqueValueCache.put( applicationId, key, none );
+                continue;
+            }
 
-        //shouldn't happen, but it's an error case
+            //shouldn't happen, but it's an error case
 
-        if ( cols.size() > 1 ) {
-            logger.error( "INDEX CORRUPTION: More than 1 unique value exists for entities in ownerId {} of type {} on "
-                    + "property {} with value {}",
-                    new Object[] { ownerEntityId, collectionNameInternal, propertyName, propertyValue } );
+            if ( cols.size() > 1 ) {
+                logger.error( "INDEX CORRUPTION: More than 1 unique value exists for entities with unique index key {}",
+                        key );
 
 // TEMPORARY REMOVAL OF READ REPAIR
 
@@ -649,27 +818,24 @@ public class EntityManagerImpl implements EntityManager {
 //                    }
 //                }
 //            }
-        }
+            }
 
-        cols = cass.getColumns( cass.getApplicationKeyspace( applicationId ), ENTITY_UNIQUE, key, null, null, 2,
-                false );
+            /**
+             * Doing this in a loop sucks, but we need to account for possibly having more than 1 entry in the index due
+             * to corruption.  We need to allow them to update, otherwise
+             * both entities will be unable to update and must be deleted
+             */
 
-        if ( cols.size() > 1 ) {
-            logger.error( "READ REPAIR FAILURE: More than 1 unique value still exists for entities in ownerId {} of type {} on "
-                            + "property {} with value {}",
-                    new Object[] { ownerEntityId, collectionNameInternal, propertyName, propertyValue } );
-        }
+            Set<UUID> owners = new HashSet<UUID>( cols.size() );
 
-        /**
-         * Doing this in a loop sucks, but we need to account for possibly having more than 1 entry in the index due
-         * to corruption.  We need to allow them to update, otherwise
-         * both entities will be unable to update and must be deleted
-         */
+            for ( HColumn<ByteBuffer, ByteBuffer> col : cols ) {
+                owners.add( ue.fromByteBuffer( col.getName() ) );
+            }
 
-        Set<UUID> results = new HashSet<UUID>( cols.size() );
+            owners = Collections.unmodifiableSet( owners );
 
-        for ( HColumn<ByteBuffer, ByteBuffer> col : cols ) {
-            results.add( ue.fromByteBuffer( col.getName() ) );
+            results.put( key, owners );
+            uniqueValueCache.put( applicationId, key, owners );
         }
 
         return results;
@@ -699,9 +865,10 @@ public class EntityManagerImpl implements EntityManager {
         //we have an old value.  If the new value is empty, we want to delete the old value.  If the new value is
         // different we want to delete, otherwise we don't issue the delete
         if ( oldValue != null && ( propertyValue == null || !oldValue.equals( propertyValue ) ) ) {
-            Object key = createUniqueIndexKey( applicationId, collectionName, propertyName, oldValue );
+            String key = createUniqueIndexKey( applicationId, collectionName, propertyName, oldValue );
 
             addDeleteToMutator( m, ENTITY_UNIQUE, key, timestamp, entityId );
+            invalidateUniqueValue( m, key );
         }
     }
 
@@ -709,9 +876,28 @@ public class EntityManagerImpl implements EntityManager {
     /** Add this unique index to the delete */
     private void uniquePropertyWrite( Mutator<ByteBuffer> m, String collectionName, String propertyName,
                                       Object propertyValue, UUID entityId, long timestamp ) throws Exception {
-        Object key = createUniqueIndexKey( applicationId, collectionName, propertyName, propertyValue );
+        String key = createUniqueIndexKey( applicationId, collectionName, propertyName, propertyValue );
 
         addInsertToMutator( m, ENTITY_UNIQUE, key, entityId, null, timestamp );
+        invalidateUniqueValue( m, key );
+    }
+
+
+    /**
+     * Drop the cached owners of the unique value now, and again once the mutation is executed so a lookup made in
+     * between doesn't keep the old owners cached until the entry expires
+     */
+    private void invalidateUniqueValue( Mutator<ByteBuffer> m, final String key ) {
+        uniqueValueCache.invalidate( applicationId, key );
+
+        if ( m instanceof CountingMutator ) {
+            ( ( CountingMutator<ByteBuffer> ) m ).afterExecute( new Runnable() {
+                @Override
+                public void run() {
+                    uniqueValueCache.invalidate( applicationId, key );
+                }
+            } );
+        }
     }
 
 
@@ -719,8 +905,8 @@ public class EntityManagerImpl implements EntityManager {
      * Create a row key for the entity of the given type with the name and value in the property.  Used for fast unique
      * index lookups
      */
-    private Object createUniqueIndexKey( UUID ownerId, String collectionName, String propertyName, Object value ) {
-        return key( ownerId, collectionName, propertyName, value );
+    private String createUniqueIndexKey( UUID ownerId, String collectionName, String propertyName, Object value ) {
+        return ( String ) key( ownerId, collectionName, propertyName, value );
     }
 
 
@@ -768,11 +954,21 @@ public class EntityManagerImpl implements EntityManager {
 
         String propertyName = Schema.getDefaultSchema().aliasProperty( collectionName );
 
-        Map<String, EntityRef> results = new HashMap<String, EntityRef>();
+        String collectionNameInternal = defaultCollectionName( collectionName );
+
+        Map<String, String> aliasKeys = new LinkedHashMap<String, String>( aliases.size() );
 
         for ( String alias : aliases ) {
-            for ( UUID id : getUUIDsForUniqueProperty( ownerId, collectionName, propertyName, alias ) ) {
-                results.put( alias, new SimpleEntityRef( collectionName, id ) );
+            aliasKeys.put( alias, createUniqueIndexKey( ownerId, collectionNameInternal, propertyName, alias ) );
+        }
+
+        Map<String, Set<UUID>> owners = getUUIDsForUniqueKeys( aliasKeys.values() );
+
+        Map<String, EntityRef> results = new HashMap<String, EntityRef>();
+
+        for ( Map.Entry<String, String> aliasKey : aliasKeys.entrySet() ) {
+            for ( UUID id : owners.get( aliasKey.getValue() ) ) {
+                results.put( aliasKey.getKey(), new SimpleEntityRef( collectionName, id ) );
             }
         }
 
@@ -870,15 +1066,131 @@ public class EntityManagerImpl implements EntityManager {
 
         batchExecute( m, CassandraService.RETRY_COUNT );
 
+        if ( entity != null && !Event.ENTITY_TYPE.equals( entity.getType() ) ) {
+            publishEntityChange( ChangeEvent.Type.CREATE, entity, entity.getProperties() );
+        }
+
         return entity;
     }
 
 
-    @SuppressWarnings( "unchecked" )
+    @Override
+    @Metered( group = "core", name = "EntityManager_importEntities" )
+    public List<Entity> importEntities( List<Map<String, Object>> entities, boolean fresh ) throws Exception {
+
+        Schema schema = getDefaultSchema();
+
+        //the entities of each type, so the unique values of a type are verified together
+        Map<String, Map<UUID, Map<String, Object>>> byType =
+                new LinkedHashMap<String, Map<UUID, Map<String, Object>>>();
+
+        for ( Map<String, Object> properties : entities ) {
+            UUID id = uuid( properties.get( PROPERTY_UUID ) );
+            String type = string( properties.get( PROPERTY_TYPE ) );
+
+            if ( ( id == null ) || ( type == null ) ) {
+                logger.error( "Unable to import entity without a uuid and type: {}", properties );
+                continue;
+            }
+
+            Map<UUID, Map<String, Object>> ofType = byType.get( type );
+
+            if ( ofType == null ) {
+                ofType = new LinkedHashMap<UUID, Map<String, Object>>();
+                byType.put( type, ofType );
+            }
+
+            ofType.put( id, properties );
+        }
+
+        Keyspace ko = cass.getApplicationKeyspace( applicationId );
+        Mutator<ByteBuffer> m = CountingMutator.createFlushingMutator( ko, be );
+        UUID timestampUuid = newTimeUUID();
+
+        List<Entity> created = new ArrayList<Entity>( entities.size() );
+
+        for ( Map.Entry<String, Map<UUID, Map<String, Object>>> ofType : byType.entrySet() ) {
+
+            String type = ofType.getKey();
+
+            Map<UUID, Set<String>> duplicates = Collections.emptyMap();
+
+            if ( !fresh ) {
+                duplicates = getDuplicateUniqueProperties( type, ofType.getValue() );
+            }
+
+            for ( Map.Entry<UUID, Map<String, Object>> entity : ofType.getValue().entrySet() ) {
+
+                Set<String> duplicated = duplicates.get( entity.getKey() );
+
+                if ( duplicated != null ) {
+                    logger.error( "Unable to import entity {} of type {}, {} already belong to other entities",
+                            new Object[] { entity.getKey(), type, duplicated } );
+                    continue;
+                }
+
+                //every unique value has been verified, or can't be owned by anyone else in a fresh import
+                Set<String> uniqueVerified = new HashSet<String>();
+
+                for ( Map.Entry<String, Object> property : entity.getValue().entrySet() ) {
+                    if ( property.getValue() != null && schema.hasProperty( type, property.getKey() ) && schema
+                            .isPropertyUnique( type, property.getKey() ) ) {
+                        uniqueVerified.add( property.getKey() );
+                    }
+                }
+
+                Entity imported = batchCreate( m, type, null, entity.getValue(), entity.getKey(), timestampUuid,
+                        uniqueVerified );
+
+                if ( imported != null ) {
+                    created.add( imported );
+                }
+            }
+        }
+
+        batchExecute( m, CassandraService.RETRY_COUNT );
+
+        for ( Entity entity : created ) {
+            if ( !Event.ENTITY_TYPE.equals( entity.getType() ) ) {
+                publishEntityChange( ChangeEvent.Type.CREATE, entity, entity.getProperties() );
+            }
+        }
+
+        return created;
+    }
+
+
+    /** Let anything listening to the change feed know about a write that has been executed */
+    private void publishEntityChange( ChangeEvent.Type type, EntityRef entity, Map<String, Object> properties ) {
+        if ( !changeFeed.hasListeners() ) {
+            return;
+        }
+
+        //copy the properties, callers are free to keep modifying their map once we return
+        changeFeed.publish( ChangeEvent.entityChange( type, applicationId, defaultCollectionName( entity.getType() ),
+                entity.getUuid(), entity.getType(),
+                properties != null ? new LinkedHashMap<String, Object>( properties ) : null ) );
+    }
+
+
     @Metered( group = "core", name = "EntityManager_batchCreate" )
     public <A extends Entity> A batchCreate( Mutator<ByteBuffer> m, String entityType, Class<A> entityClass,
                                              Map<String, Object> properties, UUID importId, UUID timestampUuid )
             throws Exception {
+        return batchCreate( m, entityType, entityClass, properties, importId, timestampUuid, null );
+    }
+
+
+    /**
+     * Batch the creation of an entity
+     *
+     * @param uniqueVerified The unique properties the caller has already verified.  Null to verify the unique
+     * properties of new entities here
+     */
+    @SuppressWarnings( "unchecked" )
+    private <A extends Entity> A batchCreate( Mutator<ByteBuffer> m, String entityType, Class<A> entityClass,
+                                              Map<String, Object> properties, UUID importId, UUID timestampUuid,
+                                              Set<String> uniqueVerified ) throws Exception {
 
         String eType = Schema.normalizeEntityType( entityType );
 
@@ -1028,6 +1340,15 @@ public class EntityManagerImpl implements EntityManager {
             return entity;
         }
 
+        //a brand new entity can't own a previous unique value, so check them all with one read up front
+        if ( uniqueVerified == null ) {
+            uniqueVerified = Collections.emptySet();
+
+            if ( importId == null ) {
+                uniqueVerified = verifyUniqueProperties( eType, itemId, properties );
+            }
+        }
+
         for ( String prop_name : properties.keySet() ) {
 
             Object propertyValue = properties.get( prop_name );
@@ -1043,7 +1364,8 @@ public class EntityManagerImpl implements EntityManager {
 
             entity.setProperty( prop_name, propertyValue );
 
-            batchSetProperty( m, entity, prop_name, propertyValue, true, true, timestampUuid );
+            batchSetProperty( m, entity, prop_name, propertyValue, true, true, uniqueVerified.contains( prop_name ),
+                    timestampUuid );
         }
 
         if ( !is_application ) {
@@ -1054,6 +1376,61 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    /**
+     * Lock and check every unique property of a new entity with a single read of the unique index.
+     *
+     * @return The names of the unique properties that were verified
+     *
+     * @throws DuplicateUniquePropertyExistsException If any of the values is owned by another entity
+     */
+    private Set<String> verifyUniqueProperties( String entityType, UUID entityId, Map<String, Object> properties )
+            throws Exception {
+
+        Schema schema = getDefaultSchema();
+
+        //sorted so concurrent creates always acquire the locks in the same order
+        Map<String, Object> uniqueProperties = new TreeMap<String, Object>();
+
+        for ( Map.Entry<String, Object> property : properties.entrySet() ) {
+            if ( property.getValue() != null && schema.hasProperty( entityType, property.getKey() ) && schema
+                    .isPropertyUnique( entityType, property.getKey() ) ) {
+                uniqueProperties.put( property.getKey(), schema.validateEntityPropertyValue( entityType,
+                        property.getKey(), property.getValue() ) );
+            }
+        }
+
+        if ( uniqueProperties.isEmpty() ) {
+            return Collections.emptySet();
+        }
+
+        List<Lock> locks = new ArrayList<Lock>( uniqueProperties.size() );
+
+        try {
+            for ( Map.Entry<String, Object> property : uniqueProperties.entrySet() ) {
+                Lock lock = getUniqueUpdateLock( cass.getLockManager(), applicationId, property.getValue(), entityType,
+                        property.getKey() );
+                lock.lock();
+                locks.add( lock );
+            }
+
+            Set<String> duplicates = getDuplicateUniqueProperties( entityType, entityId, uniqueProperties );
+
+            if ( !duplicates.isEmpty() ) {
+                String propertyName = duplicates.iterator().next();
+                throw new DuplicateUniquePropertyExistsException( entityType, propertyName,
+                        uniqueProperties.get( propertyName ) );
+            }
+        }
+        finally {
+            for ( Lock lock : locks ) {
+                lock.unlock();
+            }
+        }
+
+        return uniqueProperties.keySet();
+    }
+
+
     private void incrementEntityCollection( String collection_name, long cassandraTimestamp ) {
         try {
             incrementAggregateCounters( null, null, null, APPLICATION_COLLECTION + collection_name,
@@ -1545,6 +1922,8 @@ public class EntityManagerImpl implements EntityManager {
 
 
         batchExecute( m, CassandraService.RETRY_COUNT );
+
+        publishEntityChange( ChangeEvent.Type.UPDATE, entity, properties );
     }
 
 
@@ -1618,6 +1997,8 @@ public class EntityManagerImpl implements EntityManager {
         //addDeleteToMutator( m, ENTITY_PROPERTIES, key( entityId ), timestamp );
 
         batchExecute( m, CassandraService.RETRY_COUNT );
+
+        publishEntityChange( ChangeEvent.Type.DELETE, entity, null );
     }
 
 
@@ -1767,7 +2148,6 @@ public class EntityManagerImpl implements EntityManager {
                                          CounterResolution resolution, long start, long finish, boolean pad ) {
         start = resolution.round( start );
         finish = resolution.round( finish );
-        long expected_time = start;
         Keyspace ko = cass.getApplicationKeyspace( applicationId );
         SliceCounterQuery<String, Long> q = createCounterSliceQuery( ko, se, le );
         q.setColumnFamily( APPLICATION_AGGREGATE_COUNTERS.toString() );
@@ -1775,10 +2155,52 @@ public class EntityManagerImpl implements EntityManager {
         QueryResult<CounterSlice<Long>> r = q.setKey(
                 counterUtils.getAggregateCounterRow( counterName, userId, groupId, queueId, category, resolution ) )
                                              .execute();
+        String minuteRow = counterUtils
+                .getAggregateCounterRow( counterName, userId, groupId, queueId, category, CounterResolution.MINUTE );
+        Map<Long, Long> tail = getRollupTails( ko, Collections.singleton( minuteRow ), resolution, start, finish )
+                .get( minuteRow );
+        List<AggregateCounter> counters =
+                getAggregateCounterList( r.get().getColumns(), tail, resolution, start, finish, pad );
+        return Results.fromCounters( new AggregateCounterSet( counterName, userId, groupId, category, counters ) );
+    }
+
+
+    /**
+     * When counters are rolled up, get the counts of the MINUTE rows that are not in the coarser resolution counter
+     * rows, by the start time of the interval they belong to
+     */
+    private Map<String, Map<Long, Long>> getRollupTails( Keyspace ko, Collection<String> minuteRows,
+                                                         CounterResolution resolution, long start, long finish ) {
+        if ( !counterUtils.getRollups() || ( resolution == CounterResolution.MINUTE ) ) {
+            return Collections.emptyMap();
+        }
+
+        // the last interval in the range ends one interval after finish
+        long end = resolution == CounterResolution.ALL ? Long.MAX_VALUE : finish + resolution.interval() - 1;
+        return counterUtils.getRollupTails( ko, applicationId, minuteRows, resolution, start, end );
+    }
+
+
+    /** Merge the counter columns with the counts that aren't rolled up yet, and pad the gaps if requested */
+    private List<AggregateCounter> getAggregateCounterList( List<HCounterColumn<Long>> columns, Map<Long, Long> tail,
+                                                            CounterResolution resolution, long start, long finish,
+                                                            boolean pad ) {
+        Map<Long, Long> values = new TreeMap<Long, Long>();
+        for ( HCounterColumn<Long> column : columns ) {
+            values.put( column.getName(), column.getValue() );
+        }
+        if ( tail != null ) {
+            for ( Map.Entry<Long, Long> count : tail.entrySet() ) {
+                Long value = values.get( count.getKey() );
+                values.put( count.getKey(), ( value != null ? value : 0 ) + count.getValue() );
+            }
+        }
+
+        long expected_time = start;
         List<AggregateCounter> counters = new ArrayList<AggregateCounter>();
-        for ( HCounterColumn<Long> column : r.get().getColumns() ) {
-            AggregateCounter count = new AggregateCounter( column.getName(), column.getValue() );
-            if ( pad && !( resolution == CounterResolution.ALL ) ) {
+        for ( Map.Entry<Long, Long> value : values.entrySet() ) {
+            AggregateCounter count = new AggregateCounter( value.getKey(), value.getValue() );
+            if ( pad && ( resolution != CounterResolution.ALL ) ) {
                 while ( count.getTimestamp() != expected_time ) {
                     counters.add( new AggregateCounter( expected_time, 0 ) );
                     expected_time = resolution.next( expected_time );
@@ -1787,13 +2209,13 @@ public class EntityManagerImpl implements EntityManager {
             }
             counters.add( count );
         }
-        if ( pad && !( resolution == CounterResolution.ALL ) ) {
+        if ( pad && ( resolution != CounterResolution.ALL ) ) {
             while ( expected_time <= finish ) {
                 counters.add( new AggregateCounter( expected_time, 0 ) );
                 expected_time = resolution.next( expected_time );
             }
         }
-        return Results.fromCounters( new AggregateCounterSet( counterName, userId, groupId, category, counters ) );
+        return counters;
     }
 
 
@@ -1815,7 +2237,6 @@ public class EntityManagerImpl implements EntityManager {
         }
         start = resolution.round( start );
         finish = resolution.round( finish );
-        long expected_time = start;
 
         if ( pad && ( resolution != CounterResolution.ALL ) ) {
             long max_counters = ( finish - start ) / resolution.interval();
@@ -1844,27 +2265,21 @@ public class EntityManagerImpl implements EntityManager {
         q.setRange( start, finish, false, ALL_COUNT );
         QueryResult<CounterRows<String, Long>> rows = q.setKeys( selections.keySet() ).execute();
 
+        Map<String, String> minuteRows = new HashMap<String, String>();
+        for ( Map.Entry<String, AggregateCounterSelection> selection : selections.entrySet() ) {
+            minuteRows.put( selection.getValue().getRow( CounterResolution.MINUTE ), selection.getKey() );
+        }
+        Map<String, Map<Long, Long>> tails = new HashMap<String, Map<Long, Long>>();
+        for ( Map.Entry<String, Map<Long, Long>> tail : getRollupTails( ko, minuteRows.keySet(), resolution, start,
+                finish ).entrySet() ) {
+            tails.put( minuteRows.get( tail.getKey() ), tail.getValue() );
+        }
+
         List<AggregateCounterSet> countSets = new ArrayList<AggregateCounterSet>();
         for ( CounterRow<String, Long> r : rows.get() ) {
-            expected_time = start;
-            List<AggregateCounter> counters = new ArrayList<AggregateCounter>();
-            for ( HCounterColumn<Long> column : r.getColumnSlice().getColumns() ) {
-                AggregateCounter count = new AggregateCounter( column.getName(), column.getValue() );
-                if ( pad && ( resolution != CounterResolution.ALL ) ) {
-                    while ( count.getTimestamp() != expected_time ) {
-                        counters.add( new AggregateCounter( expected_time, 0 ) );
-                        expected_time = resolution.next( expected_time );
-                    }
-                    expected_time = resolution.next( expected_time );
-                }
-                counters.add( count );
-            }
-            if ( pad && ( resolution != CounterResolution.ALL ) ) {
-                while ( expected_time <= finish ) {
-                    counters.add( new AggregateCounter( expected_time, 0 ) );
-                    expected_time = resolution.next( expected_time );
-                }
-            }
+            List<AggregateCounter> counters =
+                    getAggregateCounterList( r.getColumnSlice().getColumns(), tails.get( r.getKey() ), resolution,
+                            start, finish, pad );
             AggregateCounterSelection selection = selections.get( r.getKey() );
             countSets.add( new AggregateCounterSet( selection.getName(), selection.getUserId(), selection.getGroupId(),
                     selection.getCategory(), counters ) );
@@ -2113,6 +2528,37 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    @Override
+    @Metered( group = "core", name = "EntityManager_reindex" )
+    public void reindex( List<Entity> entities ) throws Exception {
+
+        Schema schema = getDefaultSchema();
+
+        Keyspace ko = cass.getApplicationKeyspace( applicationId );
+        Mutator<ByteBuffer> m = CountingMutator.createFlushingMutator( ko, be );
+
+        UUID timestampUuid = newTimeUUID();
+
+        for ( Entity entity : entities ) {
+
+            RelationManagerImpl relationManager = getRelationManager( entity );
+
+            for ( Map.Entry<String, Object> property : entity.getProperties().entrySet() ) {
+                String propertyName = property.getKey();
+
+                if ( property.getValue() == null || !schema.isPropertyIndexed( entity.getType(), propertyName ) ) {
+                    continue;
+                }
+
+                relationManager.batchUpdatePropertyIndexes( m, propertyName, property.getValue(),
+                        schema.hasProperty( entity.getType(), propertyName ), false, timestampUuid );
+            }
+        }
+
+        batchExecute( m, CassandraService.RETRY_COUNT );
+    }
+
+
     @Override
     public Object getProperty( EntityRef entityRef, String propertyName ) throws Exception {
         Entity entity = loadPartialEntity( entityRef.getUuid(), propertyName );
@@ -2213,6 +2659,9 @@ public class EntityManagerImpl implements EntityManager {
         entity.setProperty( propertyName, propertyValue );
         batch = batchSetProperty( batch, entity, propertyName, propertyValue, override, false, timestampUuid );
         batchExecute( batch, CassandraService.RETRY_COUNT );
+
+        publishEntityChange( ChangeEvent.Type.UPDATE, entity,
+                Collections.<String, Object>singletonMap( propertyName, propertyValue ) );
     }
 
 
@@ -2322,6 +2771,53 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    @Override
+    @Metered( group = "core", name = "EntityManager_getDictionaryKeys" )
+    public Map<UUID, Set<String>> getDictionaryKeys( Collection<UUID> entityIds, String dictionaryName )
+            throws Exception {
+
+        if ( !Schema.DEFAULT_DICTIONARIES.containsKey( dictionaryName ) ) {
+            throw new IllegalArgumentException( dictionaryName + " is not a default dictionary" );
+        }
+
+        Map<UUID, Set<String>> keys = new LinkedHashMap<UUID, Set<String>>();
+
+        if ( ( entityIds == null ) || entityIds.isEmpty() ) {
+            return keys;
+        }
+
+        Map<ByteBuffer, UUID> rowKeys = new LinkedHashMap<ByteBuffer, UUID>();
+        for ( UUID entityId : entityIds ) {
+            rowKeys.put( bytebuffer( key( entityId, dictionaryName ) ), entityId );
+        }
+
+        Rows<ByteBuffer, String, ByteBuffer> results =
+                cass.getRows( cass.getApplicationKeyspace( applicationId ), ENTITY_DICTIONARIES, rowKeys.keySet(), be,
+                        se, be );
+
+        if ( results == null ) {
+            return keys;
+        }
+
+        for ( Row<ByteBuffer, String, ByteBuffer> row : results ) {
+            List<HColumn<String, ByteBuffer>> columns = row.getColumnSlice().getColumns();
+
+            if ( columns.isEmpty() ) {
+                continue;
+            }
+
+            Set<String> names = new TreeSet<String>( CASE_INSENSITIVE_ORDER );
+            for ( HColumn<String, ByteBuffer> column : columns ) {
+                names.add( column.getName() );
+            }
+
+            keys.put( rowKeys.get( row.getKey() ), names );
+        }
+
+        return keys;
+    }
+
+
     @Override
     public void deleteProperty( EntityRef entityRef, String propertyName ) throws Exception {
         setProperty( entityRef, propertyName, null );
@@ -2743,6 +3239,25 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    @Override
+    public void incrementAggregateCounters( UUID userId, UUID groupId, String category, Map<String, Long> counters,
+                                            long counterTimestamp ) {
+        if ( skipAggregateCounters || counters == null || counters.isEmpty() ) {
+            return;
+        }
+
+        long timestamp = cass.createTimestamp();
+        Mutator<ByteBuffer> m =
+                CountingMutator.createFlushingMutator( cass.getApplicationKeyspace( applicationId ), be );
+        for ( Map.Entry<String, Long> counter : counters.entrySet() ) {
+            counterUtils.batchIncrementAggregateCounters( m, applicationId, userId, groupId, null, category,
+                    counter.getKey().toLowerCase(), counter.getValue(), counterTimestamp, timestamp );
+        }
+
+        batchExecute( m, CassandraService.RETRY_COUNT );
+    }
+
+
     @Override
     public Set<String> getCounterNames() throws Exception {
         Set<String> names = new TreeSet<String>( CASE_INSENSITIVE_ORDER );
@@ -2806,6 +3321,32 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    @Override
+    @Metered( group = "core", name = "EntityManager_getApplicationCollectionIds" )
+    public List<UUID> getApplicationCollectionIds( String collectionName, String bucket, UUID start, int count )
+            throws Exception {
+
+        Object collectionKey = key( applicationId, DICTIONARY_COLLECTIONS, collectionName, bucket );
+
+        //read one extra column, the start is inclusive and we'll discard it
+        List<HColumn<ByteBuffer, ByteBuffer>> results =
+                cass.getColumns( cass.getApplicationKeyspace( applicationId ), ENTITY_ID_SETS, collectionKey, start,
+                        null, start == null ? count : count + 1, false );
+
+        CassandraColumnUtils.maybeRemoveFirst( results, start == null ? null : ue.toByteBuffer( start ) );
+
+        List<UUID> ids = new ArrayList<UUID>( count );
+        for ( HColumn<ByteBuffer, ByteBuffer> column : results ) {
+            if ( ids.size() == count ) {
+                break;
+            }
+            ids.add( ue.fromByteBuffer( column.getName() ) );
+        }
+
+        return ids;
+    }
+
+
     @Override
     public Entity addToCollection( EntityRef entityRef, String collectionName, EntityRef itemRef ) throws Exception {
         return getRelationManager( entityRef ).addToCollection( collectionName, itemRef );
@@ -3016,6 +3557,48 @@ public class EntityManagerImpl implements EntityManager {
     }
 
 
+    /** @return the indexCardinalityEstimator */
+    public IndexCardinalityEstimator getCardinalityEstimator() {
+        return indexCardinalityEstimator;
+    }
+
+
+    /** @param indexCardinalityEstimator the indexCardinalityEstimator to set */
+    public void setCardinalityEstimator( IndexCardinalityEstimator indexCardinalityEstimator ) {
+        this.indexCardinalityEstimator = indexCardinalityEstimator;
+    }
+
+
+    /** @return the queryResultCache */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+
+    /** @param queryResultCache the queryResultCache to set */
+    public void setQueryResultCache( QueryResultCache queryResultCache ) {
+        this.queryResultCache = queryResultCache;
+    }
+
+
+    /** @return the uniqueValueCache */
+    public UniqueValueCache getUniqueValueCache() {
+        return uniqueValueCache;
+    }
+
+
+    /** @param uniqueValueCache the uniqueValueCache to set */
+    public void setUniqueValueCache( UniqueValueCache uniqueValueCache ) {
+        this.uniqueValueCache = uniqueValueCache;
+    }
+
+
+    /** @param counterUtils the counterUtils to set */
+    public void setCounterUtils( CounterUtils counterUtils ) {
+        this.counterUtils = counterUtils;
+    }
+
+
     @SuppressWarnings( "unchecked" )
     @Override
     public Map<String, Role> getGroupRolesWithTitles( UUID groupId ) throws Exception {
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra;
+
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.entities.Reindex;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import static org.apache.usergrid.utils.ConversionUtils.string;
+import static org.apache.usergrid.utils.ConversionUtils.uuid;
+
+
+/**
+ * Rebuilds the indexes of the collections of an application while it stays online.  Every index bucket of every
+ * collection is scanned on its own task, with the tasks spread over a fixed number of threads.  Only the index entries
+ * of the entities are written, and the writes of all the threads together are limited to a number of entities per
+ * second so the rebuild can't overwhelm the cluster.
+ * <p/>
+ * After every page the cursor of the bucket is saved in the checkpoints of the {@link Reindex} entity, so a rebuild
+ * that is run again with the same entity picks up where each bucket left off.
+ */
+public class IndexRebuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger( IndexRebuilder.class );
+
+    /** Checkpoint of a bucket that has been rebuilt */
+    public static final String DONE = "done";
+
+    /** Time in millis between heart beats while the buckets are rebuilt */
+    public static final long HEARTBEAT_INTERVAL = 5000;
+
+    private final EntityManager em;
+    private final EntityManager statusManager;
+    private final Reindex reindex;
+    private final List<String> buckets;
+    private final int threads;
+    private final RateLimiter rateLimiter;
+    private final int pageSize;
+
+    private final AtomicLong count = new AtomicLong();
+    private Map<String, Object> checkpoints;
+
+
+    /**
+     * @param em The entity manager of the application to rebuild
+     * @param statusManager The entity manager that owns the reindex entity
+     * @param reindex The reindex entity to save checkpoints in
+     * @param buckets The index buckets of the application
+     * @param threads The number of buckets to rebuild concurrently
+     * @param entitiesPerSecond The maximum number of entities to reindex per second. 0 for no limit
+     * @param pageSize The number of entities to load and reindex at once
+     */
+    public IndexRebuilder( EntityManager em, EntityManager statusManager, Reindex reindex, List<String> buckets,
+                           int threads, double entitiesPerSecond, int pageSize ) {
+        this.em = em;
+        this.statusManager = statusManager;
+        this.reindex = reindex;
+        this.buckets = buckets;
+        this.threads = Math.max( 1, threads );
+        this.rateLimiter = entitiesPerSecond > 0 ? RateLimiter.create( entitiesPerSecond ) : null;
+        this.pageSize = pageSize;
+    }
+
+
+    /**
+     * Rebuild the indexes of the collections, resuming from the checkpoints of the reindex entity
+     *
+     * @param collectionNames The collections to rebuild
+     * @param jobExecution The job to keep alive while the rebuild runs.  Null if it isn't run as a job
+     *
+     * @return The number of entities reindexed by this run
+     */
+    @SuppressWarnings("unchecked")
+    public long run( Collection<String> collectionNames, JobExecution jobExecution ) throws Exception {
+
+        checkpoints = new LinkedHashMap<String, Object>();
+
+        if ( reindex.getCheckpoints() != null ) {
+            checkpoints.putAll( reindex.getCheckpoints() );
+        }
+
+        if ( reindex.getCount() != null ) {
+            count.set( reindex.getCount() );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        CompletionService<Long> completion = new ExecutorCompletionService<Long>( executor );
+
+        int running = 0;
+
+        for ( String collectionName : new TreeSet<String>( collectionNames ) ) {
+
+            Map<String, Object> cursors = ( Map<String, Object> ) checkpoints.get( collectionName );
+
+            if ( cursors == null ) {
+                cursors = new HashMap<String, Object>();
+                checkpoints.put( collectionName, cursors );
+            }
+
+            for ( String bucket : buckets ) {
+                Object cursor = cursors.get( bucket );
+
+                if ( DONE.equals( cursor ) ) {
+                    continue;
+                }
+
+                completion.submit( new RebuildBucket( collectionName, bucket, uuid( cursor ) ) );
+                running++;
+            }
+        }
+
+        long rebuilt = 0;
+
+        try {
+            while ( running > 0 ) {
+                Future<Long> done = completion.poll( HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS );
+
+                if ( done == null ) {
+                    if ( jobExecution != null ) {
+                        jobExecution.heartbeat();
+                    }
+
+                    logger.info( "Reindexed {} entities of application {}", count.get(),
+                            em.getApplicationRef().getUuid() );
+                    continue;
+                }
+
+                running--;
+
+                try {
+                    rebuilt += done.get();
+                }
+                catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof Exception ) {
+                        throw ( Exception ) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        finally {
+            //stops the other buckets as soon as one fails
+            executor.shutdownNow();
+        }
+
+        logger.info( "Reindexed {} entities of application {} with {} threads", new Object[] {
+                rebuilt, em.getApplicationRef().getUuid(), threads
+        } );
+
+        return rebuilt;
+    }
+
+
+    /** Save the cursor of the bucket in the reindex entity */
+    @SuppressWarnings("unchecked")
+    private synchronized void checkpoint( String collectionName, String bucket, Object cursor, int reindexed )
+            throws Exception {
+
+        ( ( Map<String, Object> ) checkpoints.get( collectionName ) ).put( bucket, cursor );
+
+        reindex.setCheckpoints( checkpoints );
+        reindex.setCount( count.addAndGet( reindexed ) );
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put( "checkpoints", checkpoints );
+        properties.put( "count", reindex.getCount() );
+
+        statusManager.updateProperties( reindex, properties );
+    }
+
+
+    /** Scans one bucket of a collection in the order of the entity ids */
+    private class RebuildBucket implements Callable<Long> {
+
+        private final String collectionName;
+        private final String bucket;
+        private final UUID start;
+
+
+        private RebuildBucket( String collectionName, String bucket, UUID start ) {
+            this.collectionName = collectionName;
+            this.bucket = bucket;
+            this.start = start;
+        }
+
+
+        @Override
+        public Long call() throws Exception {
+
+            if ( start != null ) {
+                logger.info( "Resuming reindex of bucket {} of collection {} after {}", new Object[] {
+                        bucket, collectionName, start
+                } );
+            }
+
+            UUID cursor = start;
+            long rebuilt = 0;
+
+            List<UUID> ids;
+
+            do {
+                ids = em.getApplicationCollectionIds( collectionName, bucket, cursor, pageSize );
+
+                if ( ids.isEmpty() ) {
+                    break;
+                }
+
+                if ( rateLimiter != null ) {
+                    rateLimiter.acquire( ids.size() );
+                }
+
+                //the index can be ahead of a delete, those ids won't load
+                List<Entity> entities = em.get( ids, Results.Level.ALL_PROPERTIES ).getEntities();
+
+                em.reindex( entities );
+
+                cursor = ids.get( ids.size() - 1 );
+                rebuilt += entities.size();
+
+                checkpoint( collectionName, bucket, string( cursor ), entities.size() );
+            }
+            while ( ids.size() == pageSize && !Thread.currentThread().isInterrupted() );
+
+            if ( Thread.currentThread().isInterrupted() ) {
+                return rebuilt;
+            }
+
+            checkpoint( collectionName, bucket, DONE, 0 );
+
+            return rebuilt;
+        }
+    }
+}
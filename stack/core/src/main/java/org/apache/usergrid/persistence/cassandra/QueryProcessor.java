@@ -19,7 +19,10 @@ package org.apache.usergrid.persistence.cassandra;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.UUID;
 
@@ -29,10 +32,13 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.Identifier;
 import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Query.SelectFunction;
 import org.apache.usergrid.persistence.Query.SortDirection;
 import org.apache.usergrid.persistence.Query.SortPredicate;
 import org.apache.usergrid.persistence.Results;
 import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.persistence.cassandra.index.IndexCardinalityEstimator;
+import org.apache.usergrid.persistence.cassandra.util.TraceTagManager;
 import org.apache.usergrid.persistence.entities.User;
 import org.apache.usergrid.persistence.exceptions.NoFullTextIndexException;
 import org.apache.usergrid.persistence.exceptions.NoIndexException;
@@ -45,12 +51,13 @@ import org.apache.usergrid.persistence.query.ir.NotNode;
 import org.apache.usergrid.persistence.query.ir.OrNode;
 import org.apache.usergrid.persistence.query.ir.OrderByNode;
 import org.apache.usergrid.persistence.query.ir.QueryNode;
+import org.apache.usergrid.persistence.query.ir.QueryNodeExplainer;
 import org.apache.usergrid.persistence.query.ir.QuerySlice;
 import org.apache.usergrid.persistence.query.ir.SliceNode;
 import org.apache.usergrid.persistence.query.ir.UuidIdentifierNode;
 import org.apache.usergrid.persistence.query.ir.WithinNode;
+import org.apache.usergrid.persistence.query.ir.result.GatherCounter;
 import org.apache.usergrid.persistence.query.ir.result.GatherIterator;
-import org.apache.usergrid.persistence.query.ir.result.ResultIterator;
 import org.apache.usergrid.persistence.query.ir.result.ResultsLoader;
 import org.apache.usergrid.persistence.query.ir.result.ResultsLoaderFactory;
 import org.apache.usergrid.persistence.query.ir.result.ScanColumn;
@@ -99,6 +106,14 @@ public class QueryProcessor {
     private Query query;
     private int sliceCount;
 
+    private IndexCardinalityEstimator cardinalityEstimator;
+    private List<String> queryPlan;
+
+    private QueryResultCache resultCache;
+    private String resultCacheKey;
+
+    private TraceTagManager traceTagManager;
+
 
     public QueryProcessor(  EntityManager em, QueryExecutorService executorService, Query query, CollectionInfo collectionInfo,
                            ResultsLoaderFactory loaderFactory ) throws PersistenceException {
@@ -117,12 +132,30 @@ public class QueryProcessor {
 
 
     public void setQuery( Query query ) {
-        this.sorts = query.getSortPredicates();
+        // aggregates don't care about order, sorting would only force the entities to be loaded
+        this.sorts = query.hasSelectFunction() ? Collections.<SortPredicate>emptyList() : query.getSortPredicates();
         this.cursorCache = new CursorCache( query.getCursor() );
         this.rootOperand = query.getRootOperand();
         this.entityType = query.getEntityType();
-        this.size = query.getLimit();
+        this.size = getAggregatePageSize( query );
         this.query = query;
+        this.queryPlan = Collections.synchronizedList( new ArrayList<String>() );
+
+        // only the first page is cached, the next pages are requested through here with the cursor of the last one
+        this.resultCacheKey = null;
+    }
+
+
+    /**
+     * Aggregates read full pages from the index regardless of the limit.  Exists reads normal pages too, a page of 1
+     * would be pushed down to every slice of the tree, the counter stops at the first hit instead
+     */
+    private static int getAggregatePageSize( Query query ) {
+        if ( query.hasSelectFunction() ) {
+            return PAGE_SIZE;
+        }
+
+        return query.getLimit();
     }
 
 
@@ -131,6 +164,49 @@ public class QueryProcessor {
     }
 
 
+    /** The estimator used to order the operands of intersections.  Null to join operands in query order */
+    public IndexCardinalityEstimator getCardinalityEstimator() {
+        return cardinalityEstimator;
+    }
+
+
+    public void setCardinalityEstimator( IndexCardinalityEstimator cardinalityEstimator ) {
+        this.cardinalityEstimator = cardinalityEstimator;
+    }
+
+
+    /**
+     * Cache the first page of results
+     *
+     * @param resultCache The cache to read and write the page with
+     * @param resultCacheKey The key of the page.  Null if the query can't be cached
+     */
+    public void setResultCache( QueryResultCache resultCache, String resultCacheKey ) {
+        this.resultCache = resultCache;
+        this.resultCacheKey = resultCacheKey;
+    }
+
+
+    /** The trace of the calling thread is handed to the threads searching the shards, so their reads are profiled */
+    public void setTraceTagManager( TraceTagManager traceTagManager ) {
+        this.traceTagManager = traceTagManager;
+    }
+
+
+    /** Record a decision made while planning the current page. Invoked concurrently by the visitor of each shard */
+    public void addQueryPlanStep( String step ) {
+        queryPlan.add( step );
+    }
+
+
+    /** Get the decisions made while planning the current page */
+    public List<String> getQueryPlan() {
+        synchronized ( queryPlan ) {
+            return new ArrayList<String>( queryPlan );
+        }
+    }
+
+
     private void process() throws PersistenceException {
 
 
@@ -269,32 +345,63 @@ public class QueryProcessor {
             return null;
         }
 
+        if ( query.hasSelectFunction() ) {
+            return getAggregateResults( searchVisitorFactory );
+        }
+
         //use the gather iterator to collect all the          '
         final int resultSetSize = Math.min( size, Query.MAX_LIMIT );
 
-        ResultIterator itr = new GatherIterator(resultSetSize, rootNode, searchVisitorFactory.createVisitors(), executorService.getExecutor()  );
+        final long start = System.nanoTime();
+
+        GatherIterator itr = null;
+
+        List<ScanColumn> entityIds;
+
+        String cursor;
 
-        List<ScanColumn> entityIds = new ArrayList<ScanColumn>( );
+        final boolean cacheable = resultCacheKey != null && query.getCursor() == null;
 
-        CursorCache resultsCursor = new CursorCache();
+        QueryResultCache.Page cached = cacheable ? resultCache.get( resultCacheKey ) : null;
 
-        while ( entityIds.size() < size && itr.hasNext() ) {
-            entityIds.addAll( itr.next() );
+        if ( cached != null ) {
+            entityIds = new ArrayList<ScanColumn>( cached.getEntityIds() );
+            cursor = cached.getCursor();
         }
+        else {
+            itr = new GatherIterator( resultSetSize, rootNode, searchVisitorFactory.createVisitors(),
+                    executorService.getExecutor(), traceTagManager );
 
-        //set our cursor, we paged through more entities than we want to return
-        if ( entityIds.size() > 0 ) {
-            int resultSize = Math.min( entityIds.size(), size );
-            entityIds = entityIds.subList( 0, resultSize );
+            entityIds = new ArrayList<ScanColumn>();
 
-            //set our cursor on the last results
-            if ( resultSize == size ) {
-                entityIds.get( resultSize -1 ).addToCursor( resultsCursor );
+            CursorCache resultsCursor = new CursorCache();
+
+            while ( entityIds.size() < size && itr.hasNext() ) {
+                entityIds.addAll( itr.next() );
+            }
+
+            //set our cursor, we paged through more entities than we want to return
+            if ( entityIds.size() > 0 ) {
+                int resultSize = Math.min( entityIds.size(), size );
+                entityIds = entityIds.subList( 0, resultSize );
+
+                //set our cursor on the last results
+                if ( resultSize == size ) {
+                    entityIds.get( resultSize - 1 ).addToCursor( resultsCursor );
+                }
+            }
+
+            cursor = resultsCursor.asString();
+
+            if ( cacheable ) {
+                resultCache.put( resultCacheKey, entityIds, cursor );
             }
         }
+
         if ( logger.isDebugEnabled() ) {
             logger.debug( "Getting result for query: [{}],  returning entityIds size: {}", getQuery(),
                     entityIds.size() );
+            logger.debug( "Query plan for query: [{}] is {}", getQuery(), getQueryPlan() );
         }
 
         final ResultsLoader loader = loaderFactory.getResultsLoader( em, query, query.getResultsLevel() );
@@ -305,16 +412,67 @@ public class QueryProcessor {
         }
 
         // now we need to set the cursor from our tree evaluation for return
-        results.setCursor( resultsCursor.asString() );
+        results.setCursor( cursor );
 
         results.setQuery( query );
         results.setQueryProcessor( this );
+
+        List<String> plan = getQueryPlan();
+
+        if ( !plan.isEmpty() ) {
+            results.setQueryPlan( plan );
+        }
+
+        if ( query.isExplain() ) {
+            Map<String, Object> explanation = new LinkedHashMap<String, Object>();
+
+            explanation.put( "query", query.toString() );
+            explanation.put( "elapsed", ( System.nanoTime() - start ) / 1000000.0 );
+            explanation.put( "nodes", QueryNodeExplainer.explain( rootNode ) );
+            explanation.put( "plan", plan );
+            explanation.put( "shards", itr == null ? null : itr.getShardExplanations() );
+
+            results.setExplain( explanation );
+        }
         results.setSearchVisitorFactory( searchVisitorFactory );
 
         return results;
     }
 
 
+    /**
+     * Evaluate the select function against the scan columns of every shard.  The results loaders are never invoked
+     */
+    private Results getAggregateResults( final SearchVisitorFactory searchVisitorFactory ) {
+
+        final boolean existsOnly = query.getSelectFunction() == SelectFunction.EXISTS;
+
+        final GatherCounter counter =
+                new GatherCounter( rootNode, searchVisitorFactory.createVisitors(), executorService.getExecutor(),
+                        existsOnly, traceTagManager );
+
+        final Map<String, Object> data = new LinkedHashMap<String, Object>();
+
+        if ( existsOnly ) {
+            data.put( "exists", counter.exists() );
+        }
+        else {
+            data.put( "count", counter.getCount() );
+        }
+
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Aggregated query: [{}] to {}", getQuery(), data );
+        }
+
+        final Results results = Results.fromData( data );
+
+        results.setQuery( query );
+        results.setQueryProcessor( this );
+
+        return results;
+    }
+
+
     private class TreeEvaluator implements QueryVisitor {
 
         // stack for nodes that will be used to construct the tree and create
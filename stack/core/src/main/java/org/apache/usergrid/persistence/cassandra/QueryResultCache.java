@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.query.ir.result.ScanColumn;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.util.RatioGauge;
+
+
+/**
+ * Node local cache of the first page of ids returned by collection queries.  The same few queries (latest items, top
+ * N by a score) are issued over and over by clients, this lets them skip searching every index bucket.  Only the ids
+ * and the cursor of the page are cached, the entities are always loaded.
+ * <p/>
+ * Each collection has a version that is part of the key of every query cached for it.  Any index update of the
+ * collection on this node moves it to a new version, so the queries cached for the old version are never read again
+ * and simply expire.  Writes from other nodes are only seen once the entry expires.  For this reason the cache is
+ * disabled unless both a size and a time to live are configured, and the time to live should be kept to a few
+ * seconds.
+ */
+public class QueryResultCache {
+
+    private final Cache<String, Page> pages;
+
+    /** The current version of each collection.  Versions are never reused, so an evicted version can't be confused */
+    private final Cache<String, Long> versions;
+    private final AtomicLong nextVersion = new AtomicLong();
+
+    private final Meter hits;
+    private final Meter misses;
+
+
+    /**
+     * @param maxSize The maximum number of pages to hold.  0 disables the cache
+     * @param timeToLive The time in milliseconds a page is trusted for.  0 disables the cache
+     */
+    public QueryResultCache( long maxSize, long timeToLive ) {
+        this.hits = Metrics.newMeter( QueryResultCache.class, "hits", "hits", TimeUnit.SECONDS );
+        this.misses = Metrics.newMeter( QueryResultCache.class, "misses", "misses", TimeUnit.SECONDS );
+
+        Metrics.newGauge( QueryResultCache.class, "hitRatio", new RatioGauge() {
+            @Override
+            protected double getNumerator() {
+                return hits.count();
+            }
+
+
+            @Override
+            protected double getDenominator() {
+                return hits.count() + misses.count();
+            }
+        } );
+
+        if ( maxSize <= 0 || timeToLive <= 0 ) {
+            pages = null;
+            versions = null;
+            return;
+        }
+
+        pages = CacheBuilder.newBuilder().maximumSize( maxSize ).expireAfterWrite( timeToLive, TimeUnit.MILLISECONDS )
+                            .build();
+
+        versions = CacheBuilder.newBuilder().maximumSize( maxSize ).expireAfterAccess( timeToLive, TimeUnit.MILLISECONDS )
+                               .build();
+    }
+
+
+    public boolean isEnabled() {
+        return pages != null;
+    }
+
+
+    /**
+     * Get the key the first page of the query is cached under
+     *
+     * @param applicationId The application of the collection
+     * @param ownerId The owner of the collection
+     * @param collectionName The name of the collection
+     * @param query The query to search the collection with
+     *
+     * @return The key.  Null if the cache is disabled or the query isn't for a first page that can be cached
+     */
+    public String getCacheKey( UUID applicationId, UUID ownerId, String collectionName, Query query ) {
+        if ( pages == null || !isCacheable( query ) ) {
+            return null;
+        }
+
+        String collectionKey = collectionKey( applicationId, ownerId, collectionName );
+
+        StringBuilder key = new StringBuilder( collectionKey );
+
+        key.append( ':' ).append( getVersion( collectionKey ) );
+        key.append( ':' ).append( query.getEntityType() );
+        key.append( ':' ).append( query.getLimit() );
+        key.append( ':' ).append( query.getResultsLevel() );
+        key.append( ':' ).append( query.isReversed() );
+        key.append( ':' ).append( query.getSortPredicates() );
+        key.append( ':' ).append( query.getQl() == null ? "" : normalize( query.getQl() ) );
+
+        return key.toString();
+    }
+
+
+    /** Get the page cached under the key.  Null if the page is not cached */
+    public Page get( String cacheKey ) {
+        if ( pages == null || cacheKey == null ) {
+            return null;
+        }
+
+        Page page = pages.getIfPresent( cacheKey );
+
+        if ( page == null ) {
+            misses.mark();
+        }
+        else {
+            hits.mark();
+        }
+
+        return page;
+    }
+
+
+    /** Cache the ids and the cursor of the first page of the query under the key */
+    public void put( String cacheKey, List<ScanColumn> entityIds, String cursor ) {
+        if ( pages == null || cacheKey == null ) {
+            return;
+        }
+
+        pages.put( cacheKey, new Page( entityIds, cursor ) );
+    }
+
+
+    /** Drop every page cached for the collection, it's index is about to be modified */
+    public void invalidate( UUID applicationId, UUID ownerId, String collectionName ) {
+        if ( versions == null ) {
+            return;
+        }
+
+        versions.put( collectionKey( applicationId, ownerId, collectionName ), nextVersion.incrementAndGet() );
+    }
+
+
+    private long getVersion( String collectionKey ) {
+        Long version = versions.getIfPresent( collectionKey );
+
+        if ( version == null ) {
+            version = nextVersion.incrementAndGet();
+            versions.put( collectionKey, version );
+        }
+
+        return version;
+    }
+
+
+    /** Only first pages of queries that are entirely described by their ql are cached */
+    private static boolean isCacheable( Query query ) {
+        if ( query.getCursor() != null || query.getStartResult() != null || query.getIdentifiers() != null ) {
+            return false;
+        }
+
+        if ( query.isExplain() || query.hasSelectFunction() ) {
+            return false;
+        }
+
+        return query.getQl() == null ? query.getRootOperand() == null : query.isDescribedByQl();
+    }
+
+
+    private static String collectionKey( UUID applicationId, UUID ownerId, String collectionName ) {
+        return applicationId + ":" + ownerId + ":" + collectionName.toLowerCase();
+    }
+
+
+    /**
+     * The parser ignores the case of keywords and property names and runs of whitespace, so the key does too.  Quoted
+     * strings are left alone
+     */
+    static String normalize( String ql ) {
+        StringBuilder normalized = new StringBuilder( ql.length() );
+
+        boolean quoted = false;
+        boolean space = false;
+
+        for ( char c : ql.trim().toCharArray() ) {
+            if ( c == '\'' ) {
+                quoted = !quoted;
+            }
+
+            if ( !quoted && Character.isWhitespace( c ) ) {
+                space = true;
+                continue;
+            }
+
+            if ( space ) {
+                normalized.append( ' ' );
+                space = false;
+            }
+
+            normalized.append( quoted ? c : Character.toLowerCase( c ) );
+        }
+
+        return normalized.toString();
+    }
+
+
+    /** The ids and cursor of a cached first page */
+    public static class Page {
+
+        private final List<ScanColumn> entityIds;
+        private final String cursor;
+
+
+        private Page( List<ScanColumn> entityIds, String cursor ) {
+            this.entityIds = Collections.unmodifiableList( new ArrayList<ScanColumn>( entityIds ) );
+            this.cursor = cursor;
+        }
+
+
+        public List<ScanColumn> getEntityIds() {
+            return entityIds;
+        }
+
+
+        public String getCursor() {
+            return cursor;
+        }
+    }
+}
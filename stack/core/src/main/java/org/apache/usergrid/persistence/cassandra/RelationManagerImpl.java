@@ -194,6 +194,8 @@ public class RelationManagerImpl implements RelationManager {
 
         logger.debug( "batchUpdateCollectionIndex" );
 
+        invalidateQueryResults( indexUpdate.getBatch(), owner, collectionName );
+
         Entity indexedEntity = indexUpdate.getEntity();
 
         String bucketId = indexBucketLocator.getBucket( indexedEntity.getUuid() );
@@ -386,10 +388,39 @@ public class RelationManagerImpl implements RelationManager {
         addInsertToMutator( batch, ENTITY_ID_SETS, collections_key, entity.getUuid(), membershipRef.getUuid(),
                 timestamp );
 
+        invalidateQueryResults( batch, ownerRef, collectionName );
+
         return batch;
     }
 
 
+    /**
+     * Drop the cached query results of the collection, its index is being modified.  They are dropped again once the
+     * batch is executed, so a query made in between doesn't keep the old results cached until they expire
+     */
+    private void invalidateQueryResults( Mutator<ByteBuffer> batch, EntityRef ownerRef,
+                                         final String collectionName ) {
+        final QueryResultCache queryResultCache = em.getQueryResultCache();
+
+        if ( queryResultCache == null ) {
+            return;
+        }
+
+        final UUID ownerId = ownerRef.getUuid();
+
+        queryResultCache.invalidate( applicationId, ownerId, collectionName );
+
+        if ( batch instanceof CountingMutator ) {
+            ( ( CountingMutator<ByteBuffer> ) batch ).afterExecute( new Runnable() {
+                @Override
+                public void run() {
+                    queryResultCache.invalidate( applicationId, ownerId, collectionName );
+                }
+            } );
+        }
+    }
+
+
     @SuppressWarnings( "unchecked" )
     @Metered( group = "core", name = "RelationManager_batchAddToCollections" )
     public Mutator<ByteBuffer> batchAddToCollections( Mutator<ByteBuffer> batch, String ownerType, List<UUID> ownerIds,
@@ -553,6 +584,8 @@ public class RelationManagerImpl implements RelationManager {
 
         addDeleteToMutator( batch, ENTITY_ID_SETS, collections_key, entity.getUuid(), timestamp );
 
+        invalidateQueryResults( batch, headEntity, collectionName );
+
         addDeleteToMutator( batch, ENTITY_COMPOSITE_DICTIONARIES,
                 key( entity.getUuid(), Schema.DICTIONARY_CONTAINER_ENTITIES ),
                 asList( headEntity.getType(), collectionName, headEntity.getUuid() ), timestamp );
@@ -1783,6 +1816,15 @@ public class RelationManagerImpl implements RelationManager {
         // we have something to search with, visit our tree and evaluate the
         // results
         QueryProcessor qp = new QueryProcessor( em, executorService, query, collection, factory );
+        qp.setCardinalityEstimator( em.getCardinalityEstimator() );
+        qp.setTraceTagManager( cass.getTraceTagManager() );
+
+        QueryResultCache queryResultCache = em.getQueryResultCache();
+
+        if ( queryResultCache != null ) {
+            qp.setResultCache( queryResultCache,
+                    queryResultCache.getCacheKey( applicationId, headEntity.getUuid(), collectionName, query ) );
+        }
 
         CollectionSearchVisitorFactory collectionSearchVisitorFactory =
                 new CollectionSearchVisitorFactory( cass, indexBucketLocator, qp, applicationId, headEntity,
@@ -1977,6 +2019,8 @@ public class RelationManagerImpl implements RelationManager {
         final ConnectionResultsLoaderFactory factory = new ConnectionResultsLoaderFactory( connectionRef );
 
         QueryProcessor qp = new QueryProcessor( em, executorService, query, null, factory );
+        qp.setCardinalityEstimator( em.getCardinalityEstimator() );
+        qp.setTraceTagManager( cass.getTraceTagManager() );
 
         ConnectionSearchVisitorFactory collectionSearchVisitorFactory =
                 new ConnectionSearchVisitorFactory( cass, indexBucketLocator, qp, applicationId, headEntity,
@@ -2022,6 +2066,8 @@ public class RelationManagerImpl implements RelationManager {
         final ConnectionResultsLoaderFactory factory = new ConnectionResultsLoaderFactory( connectionRef );
 
         QueryProcessor qp = new QueryProcessor( em, executorService, query, null, factory );
+        qp.setCardinalityEstimator( em.getCardinalityEstimator() );
+        qp.setTraceTagManager( cass.getTraceTagManager() );
 
 
         ConnectionSearchVisitorFactory collectionSearchVisitorFactory =
@@ -2065,6 +2111,8 @@ public class RelationManagerImpl implements RelationManager {
         final ConnectionResultsLoaderFactory factory = new ConnectionResultsLoaderFactory( connectionRef );
 
         QueryProcessor qp = new QueryProcessor( em, executorService, query, null, factory );
+        qp.setCardinalityEstimator( em.getCardinalityEstimator() );
+        qp.setTraceTagManager( cass.getTraceTagManager() );
 
         ConnectionSearchVisitorFactory collectionSearchVisitorFactory =
                 new ConnectionSearchVisitorFactory( cass, indexBucketLocator, qp, applicationId, headEntity,
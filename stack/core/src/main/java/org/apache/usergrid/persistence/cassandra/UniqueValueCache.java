@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra;
+
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+
+/**
+ * Short lived, node local cache of the owners read from the ENTITY_UNIQUE index.  Retries and bulk imports check
+ * the same unique values over and over, this lets them skip the read for values that were recently confirmed.
+ * <p/>
+ * Entries are invalidated whenever this node writes or deletes the unique value, but writes from other nodes are
+ * only seen once the entry expires.  For this reason the cache is disabled unless both a size and a time to live
+ * are configured, and the time to live should be kept to a few seconds.
+ */
+public class UniqueValueCache {
+
+    private final Cache<String, Set<UUID>> owners;
+
+
+    /**
+     * @param maxSize The maximum number of unique values to hold.  0 disables the cache
+     * @param timeToLive The time in milliseconds a lookup is trusted for.  0 disables the cache
+     */
+    public UniqueValueCache( long maxSize, long timeToLive ) {
+        if ( maxSize <= 0 || timeToLive <= 0 ) {
+            owners = null;
+            return;
+        }
+
+        owners = CacheBuilder.newBuilder().maximumSize( maxSize ).expireAfterWrite( timeToLive, TimeUnit.MILLISECONDS )
+                             .build();
+    }
+
+
+    public boolean isEnabled() {
+        return owners != null;
+    }
+
+
+    /** Get the owners of the unique row key in the application.  Null if the key is not cached */
+    public Set<UUID> get( UUID applicationId, String uniqueKey ) {
+        if ( owners == null ) {
+            return null;
+        }
+
+        return owners.getIfPresent( cacheKey( applicationId, uniqueKey ) );
+    }
+
+
+    /** Set the owners read from the index for the unique row key in the application */
+    public void put( UUID applicationId, String uniqueKey, Set<UUID> ownerIds ) {
+        if ( owners == null ) {
+            return;
+        }
+
+        owners.put( cacheKey( applicationId, uniqueKey ), ownerIds );
+    }
+
+
+    /** Remove the unique row key, it's about to be modified */
+    public void invalidate( UUID applicationId, String uniqueKey ) {
+        if ( owners == null ) {
+            return;
+        }
+
+        owners.invalidate( cacheKey( applicationId, uniqueKey ) );
+    }
+
+
+    private static String cacheKey( UUID applicationId, String uniqueKey ) {
+        return applicationId + ":" + uniqueKey;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra.index;
+
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import me.prettyprint.hector.api.beans.HColumn;
+
+
+/**
+ * Index scanner that counts the pages and columns read by another scanner.  Used to explain queries
+ */
+public class ExplainIndexScanner implements IndexScanner {
+
+    private final IndexScanner scanner;
+
+    private int pages;
+    private long columns;
+    private long elapsed;
+
+
+    public ExplainIndexScanner( IndexScanner scanner ) {
+        this.scanner = scanner;
+    }
+
+
+    @Override
+    public Iterator<List<HColumn<ByteBuffer, ByteBuffer>>> iterator() {
+        return this;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        long start = System.nanoTime();
+
+        try {
+            return scanner.hasNext();
+        }
+        finally {
+            elapsed += System.nanoTime() - start;
+        }
+    }
+
+
+    @Override
+    public List<HColumn<ByteBuffer, ByteBuffer>> next() {
+        long start = System.nanoTime();
+
+        try {
+            List<HColumn<ByteBuffer, ByteBuffer>> page = scanner.next();
+
+            pages++;
+
+            if ( page != null ) {
+                columns += page.size();
+            }
+
+            return page;
+        }
+        finally {
+            elapsed += System.nanoTime() - start;
+        }
+    }
+
+
+    @Override
+    public void reset() {
+        scanner.reset();
+    }
+
+
+    @Override
+    public int getPageSize() {
+        return scanner.getPageSize();
+    }
+
+
+    @Override
+    public boolean isReversed() {
+        return scanner.isReversed();
+    }
+
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException( "Remove is not supported" );
+    }
+
+
+    /** The type of the scanner being explained */
+    public String getScannerType() {
+        return scanner.getClass().getSimpleName();
+    }
+
+
+    /** The number of pages read from the index */
+    public int getPages() {
+        return pages;
+    }
+
+
+    /** The number of columns read from the index */
+    public long getColumns() {
+        return columns;
+    }
+
+
+    /** The time in nanoseconds spent reading from the index */
+    public long getElapsed() {
+        return elapsed;
+    }
+}
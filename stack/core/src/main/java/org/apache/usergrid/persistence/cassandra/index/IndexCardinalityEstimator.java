@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra.index;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.usergrid.persistence.cassandra.ApplicationCF;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static org.apache.usergrid.utils.ConversionUtils.bytebuffer;
+
+
+/**
+ * Estimates the number of index entries a query slice will read from a single index bucket.  The query planner uses
+ * the estimates to let the most selective slice drive an intersection.
+ * <p/>
+ * Estimates are sampled by counting the columns in the slice range, stopping at the sample size, and are cached for
+ * the time to live.  The count is performed by Cassandra so the sampled columns are never transferred.  Anything at
+ * or above the sample size is treated as equally large.  The estimator is disabled unless both a sample size and a
+ * time to live are configured.
+ */
+public class IndexCardinalityEstimator {
+
+    /** Returned when the size of a slice can't be estimated */
+    public static final int UNKNOWN = -1;
+
+    private final CassandraService cass;
+    private final int sampleSize;
+    private final Cache<List<Object>, Integer> estimates;
+
+
+    /**
+     * @param cass The cassandra service to count columns with
+     * @param sampleSize The maximum number of columns to count per index row.  0 disables the estimator
+     * @param timeToLive The time in milliseconds an estimate is trusted for.  0 disables the estimator
+     * @param maxSize The maximum number of estimates to hold
+     */
+    public IndexCardinalityEstimator( CassandraService cass, int sampleSize, long timeToLive, long maxSize ) {
+        this.cass = cass;
+        this.sampleSize = sampleSize;
+
+        if ( sampleSize <= 0 || timeToLive <= 0 || maxSize <= 0 ) {
+            estimates = null;
+            return;
+        }
+
+        estimates = CacheBuilder.newBuilder().maximumSize( maxSize ).expireAfterWrite( timeToLive, TimeUnit.MILLISECONDS )
+                                .build();
+    }
+
+
+    public boolean isEnabled() {
+        return estimates != null;
+    }
+
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+
+    /**
+     * Estimate the number of columns between start and finish in the index row
+     *
+     * @param applicationId The application that owns the index
+     * @param columnFamily The index column family
+     * @param rowKey The index row key, including the bucket
+     * @param start The serialized start of the range in ascending order.  Null to start at the beginning of the row
+     * @param finish The serialized finish of the range in ascending order.  Null to read to the end of the row
+     *
+     * @return The estimate, at most the sample size.  {@link #UNKNOWN} if the estimator is disabled
+     */
+    public int estimate( UUID applicationId, ApplicationCF columnFamily, Object rowKey, ByteBuffer start,
+                         ByteBuffer finish ) throws Exception {
+
+        if ( estimates == null ) {
+            return UNKNOWN;
+        }
+
+        ByteBuffer keyBytes = bytebuffer( rowKey );
+
+        List<Object> cacheKey = Arrays.<Object>asList( applicationId, columnFamily, keyBytes, copy( start ), copy( finish ) );
+
+        Integer estimate = estimates.getIfPresent( cacheKey );
+
+        if ( estimate != null ) {
+            return estimate;
+        }
+
+        estimate = cass.countColumns( cass.getApplicationKeyspace( applicationId ), columnFamily, keyBytes,
+                copy( start ), copy( finish ), sampleSize );
+
+        estimates.put( cacheKey, estimate );
+
+        return estimate;
+    }
+
+
+    private static ByteBuffer copy( ByteBuffer buffer ) {
+        return buffer == null ? null : buffer.duplicate();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra.util;
+
+
+import com.google.common.base.Objects;
+
+
+/**
+ * Running totals for all the {@link TimedOpTag}s of a profiled {@link TraceTag} with the same tag name and column
+ * family.  A high count against a single column family with one key per call is the signature of an N+1 read.
+ */
+public class OpSummary {
+
+    private final String tagName;
+    private final String columnFamily;
+    private int count;
+    private long keys;
+    private long columns;
+    private long elapsed;
+    private long maxElapsed;
+
+
+    public OpSummary( String tagName, String columnFamily ) {
+        this.tagName = tagName;
+        this.columnFamily = columnFamily;
+    }
+
+
+    /** The key summaries are grouped under */
+    public static String keyFor( TimedOpTag timedOpTag ) {
+        return timedOpTag.getColumnFamily() == null ? timedOpTag.getTagName() :
+               timedOpTag.getTagName() + ":" + timedOpTag.getColumnFamily();
+    }
+
+
+    public void add( TimedOpTag timedOpTag ) {
+        count++;
+        keys += timedOpTag.getKeyCount();
+        columns += timedOpTag.getColumnCount();
+        elapsed += timedOpTag.getElapsed();
+        maxElapsed = Math.max( maxElapsed, timedOpTag.getElapsed() );
+    }
+
+
+    public String getTagName() {
+        return tagName;
+    }
+
+
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+
+    /** The number of operations */
+    public int getCount() {
+        return count;
+    }
+
+
+    /** The total number of row keys read */
+    public long getKeys() {
+        return keys;
+    }
+
+
+    /** The total number of columns returned */
+    public long getColumns() {
+        return columns;
+    }
+
+
+    /** The total elapsed time in milliseconds */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+
+    /** The slowest single operation in milliseconds */
+    public long getMaxElapsed() {
+        return maxElapsed;
+    }
+
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper( this ).add( "tagName", tagName ).add( "columnFamily", columnFamily )
+                      .add( "count", count ).add( "keys", keys ).add( "columns", columns ).add( "elapsed", elapsed )
+                      .add( "maxElapsed", maxElapsed ).toString();
+    }
+}
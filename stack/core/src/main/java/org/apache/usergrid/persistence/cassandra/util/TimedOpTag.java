@@ -36,6 +36,9 @@ public class TimedOpTag {
     private String tagName;
     private long elapsed = 0;
     private boolean status;
+    private String columnFamily;
+    private int keyCount;
+    private int columnCount;
 
 
     private TimedOpTag( TraceTag trace ) {
@@ -67,6 +70,14 @@ public class TimedOpTag {
     }
 
 
+    /** Record what a read touched so it can be aggregated in a request profile */
+    public void applyOperation( String cf, int keys, int columns ) {
+        this.columnFamily = cf;
+        this.keyCount = keys;
+        this.columnCount = columns;
+    }
+
+
     /** Elapsed time of this op in milliseconds. */
     public long getElapsed() {
         return elapsed;
@@ -109,9 +120,28 @@ public class TimedOpTag {
     }
 
 
+    /** @return the column family read - null if never applied */
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+
+    /** @return the number of row keys read */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+
+    /** @return the number of columns returned */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+
     @Override
     public String toString() {
         return Objects.toStringHelper( this ).add( "traceTag", traceTagName ).add( "opTag", opTag.toString() )
-                      .add( "tagName", tagName ).add( "start", getStart() ).add( "elapsed", elapsed ).toString();
+                      .add( "tagName", tagName ).add( "columnFamily", columnFamily ).add( "keys", keyCount )
+                      .add( "columns", columnCount ).add( "start", getStart() ).add( "elapsed", elapsed ).toString();
     }
 }
@@ -18,12 +18,21 @@ package org.apache.usergrid.persistence.cassandra.util;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 
-/** @author zznate */
+/**
+ * A trace of the operations made for one request.  Operations may be added from the worker threads of the request as
+ * well as the thread it was attached to, so access to the operations is synchronized.
+ *
+ * @author zznate
+ */
 public class TraceTag implements Iterable<TimedOpTag> {
 
     private final UUID tag;
@@ -31,12 +40,17 @@ public class TraceTag implements Iterable<TimedOpTag> {
     private final String traceName;
     private final List<TimedOpTag> timedOps;
     private final boolean metered;
+    private final boolean profiled;
+    private final Map<String, OpSummary> summaries;
+    private int totalOpCount;
 
 
-    private TraceTag( UUID tag, String name, boolean metered ) {
+    private TraceTag( UUID tag, String name, boolean metered, boolean profiled ) {
         this.tag = tag;
         this.name = name;
         this.metered = metered;
+        this.profiled = profiled;
+        this.summaries = profiled ? new LinkedHashMap<String, OpSummary>() : null;
         traceName = new StringBuilder( this.tag.toString() ).append( "-" ).append( this.metered ).append( "-" )
                                                             .append( this.name ).toString();
         timedOps = new ArrayList<TimedOpTag>();
@@ -44,12 +58,23 @@ public class TraceTag implements Iterable<TimedOpTag> {
 
 
     public static TraceTag getInstance( UUID tag, String name ) {
-        return new TraceTag( tag, name, false );
+        return new TraceTag( tag, name, false, false );
     }
 
 
     public static TraceTag getMeteredInstance( UUID tag, String name ) {
-        return new TraceTag( tag, name, true );
+        return new TraceTag( tag, name, true, false );
+    }
+
+
+    /** A trace that also keeps per column family totals which survive {@link #removeOps()} */
+    public static TraceTag getProfiledInstance( UUID tag, String name ) {
+        return new TraceTag( tag, name, false, true );
+    }
+
+
+    public String getName() {
+        return name;
     }
 
 
@@ -58,8 +83,19 @@ public class TraceTag implements Iterable<TimedOpTag> {
     }
 
 
-    public void add( TimedOpTag timedOpTag ) {
+    public synchronized void add( TimedOpTag timedOpTag ) {
         timedOps.add( timedOpTag );
+        totalOpCount++;
+
+        if ( profiled ) {
+            String key = OpSummary.keyFor( timedOpTag );
+            OpSummary summary = summaries.get( key );
+            if ( summary == null ) {
+                summary = new OpSummary( timedOpTag.getTagName(), timedOpTag.getColumnFamily() );
+                summaries.put( key, summary );
+            }
+            summary.add( timedOpTag );
+        }
     }
 
 
@@ -68,26 +104,47 @@ public class TraceTag implements Iterable<TimedOpTag> {
     }
 
 
+    public boolean getProfiled() {
+        return profiled;
+    }
+
+
+    /** The totals by tag name and column family in the order first seen.  Empty unless this trace is profiled */
+    public synchronized Collection<OpSummary> getOpSummaries() {
+        if ( summaries == null ) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<OpSummary>( summaries.values() );
+    }
+
+
     @Override
     public String toString() {
         return getTraceName();
     }
 
 
+    /** Iterate over a copy of the currently held {@link TimedOpTag} instances */
     @Override
-    public Iterator iterator() {
-        return timedOps.iterator();
+    public synchronized Iterator<TimedOpTag> iterator() {
+        return new ArrayList<TimedOpTag>( timedOps ).iterator();
     }
 
 
     /** The number of {@link TimedOpTag} instances currently held */
-    public int getOpCount() {
+    public synchronized int getOpCount() {
         return timedOps.size();
     }
 
 
+    /** The number of {@link TimedOpTag} instances added over the life of this trace, including removed ones */
+    public synchronized int getTotalOpCount() {
+        return totalOpCount;
+    }
+
+
     /** Remove the currently held {@link TimedOpTag} instances */
-    public void removeOps() {
+    public synchronized void removeOps() {
         timedOps.clear();
     }
 }
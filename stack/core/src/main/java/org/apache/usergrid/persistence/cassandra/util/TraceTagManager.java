@@ -17,6 +17,8 @@
 package org.apache.usergrid.persistence.cassandra.util;
 
 
+import java.util.Random;
+
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
@@ -44,6 +46,12 @@ public class TraceTagManager {
 
     private int flushAtOpCount = 100;
 
+    private boolean profileEnabled;
+
+    private double profileSampleRate;
+
+    private final Random random = new Random();
+
     @Resource
     private TraceTagReporter traceTagReporter;
 
@@ -96,6 +104,37 @@ public class TraceTagManager {
     }
 
 
+    /**
+     * Allow callers to ask for a profile of the operations made on their behalf, for example with a request header.
+     * Off by default as the profile exposes column family names.
+     */
+    public boolean getProfileEnabled() {
+        return profileEnabled;
+    }
+
+
+    public void setProfileEnabled( boolean profileEnabled ) {
+        this.profileEnabled = profileEnabled;
+    }
+
+
+    /** The fraction of requests, between 0 and 1, to profile when the caller did not ask for it. 0 by default. */
+    public double getProfileSampleRate() {
+        return profileSampleRate;
+    }
+
+
+    public void setProfileSampleRate( double profileSampleRate ) {
+        this.profileSampleRate = profileSampleRate;
+    }
+
+
+    /** Returns true if this request should be profiled according to {@link #getProfileSampleRate()} */
+    public boolean sampleProfile() {
+        return profileSampleRate > 0 && random.nextDouble() < profileSampleRate;
+    }
+
+
     /** Get the tag from a ThreadLocal. Will return null if no tag is attached. */
     public TraceTag acquire() {
         return localTraceTag.get();
@@ -117,11 +156,17 @@ public class TraceTagManager {
     public void addTimer( TimedOpTag timedOpTag ) {
         if ( isActive() ) {
             TraceTag tag = acquire();
-            if ( tag.getOpCount() >= flushAtOpCount ) {
-                traceTagReporter.report( tag );
-                tag.removeOps();
+            // workers of the same request may add to the tag concurrently
+            synchronized ( tag ) {
+                if ( tag.getOpCount() >= flushAtOpCount ) {
+                    // profiles keep their totals, only report the individual ops when tracing was asked for
+                    if ( !tag.getProfiled() || traceEnabled ) {
+                        traceTagReporter.report( tag );
+                    }
+                    tag.removeOps();
+                }
+                tag.add( timedOpTag );
             }
-            tag.add( timedOpTag );
 
             // if TraceTag#metered, send to meter by tag name
         }
@@ -169,4 +214,10 @@ public class TraceTagManager {
     public TraceTag createMetered( String tagName ) {
         return TraceTag.getMeteredInstance( UUIDUtils.newTimeUUID(), tagName );
     }
+
+
+    /** Create a TraceTag which keeps per column family totals of its operations */
+    public TraceTag createProfiled( String tagName ) {
+        return TraceTag.getProfiledInstance( UUIDUtils.newTimeUUID(), tagName );
+    }
 }
@@ -63,6 +63,7 @@ public class Activity extends TypedEntity {
     public static final String PROPERTY_ENTITY_TYPE = "entityType";
     public static final String PROPERTY_OBJECT_TYPE = "objectType";
     public static final String PROPERTY_DISPLAY_NAME = "displayName";
+    public static final String PROPERTY_PUBLISHED = "published";
 
     public static final String VERB_ADD = "add";
     public static final String VERB_CANCEL = "cancel";
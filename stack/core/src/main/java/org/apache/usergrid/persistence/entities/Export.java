@@ -18,6 +18,8 @@
 package org.apache.usergrid.persistence.entities;
 
 
+import java.util.Map;
+
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.codehaus.jackson.map.annotate.JsonSerialize;
@@ -51,6 +53,12 @@ public class Export extends TypedEntity {
     @EntityProperty
     protected String errorMessage;
 
+    /**
+     * Progress of a partitioned export, by application id.  Lets a failed export resume from the last chunk it wrote
+     */
+    @EntityProperty(indexed = false, required = false)
+    protected Map<String, Object> checkpoints;
+
 
     public Export() {
     }
@@ -85,4 +93,15 @@ public class Export extends TypedEntity {
         this.errorMessage = errorMessage;
     }
 
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Map<String, Object> getCheckpoints() {
+        return checkpoints;
+    }
+
+
+    public void setCheckpoints( final Map<String, Object> checkpoints ) {
+        this.checkpoints = checkpoints;
+    }
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.entities;
+
+
+import java.util.Map;
+import java.util.UUID;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import org.apache.usergrid.persistence.TypedEntity;
+import org.apache.usergrid.persistence.annotations.EntityProperty;
+
+
+/**
+ * Contains state information for an index rebuild
+ */
+@XmlRootElement
+public class Reindex extends TypedEntity {
+
+    public static enum State {
+        CREATED, SCHEDULED, STARTED, FINISHED, FAILED
+    }
+
+    @EntityProperty
+    protected State curState;
+
+    /**
+     * The application being reindexed
+     */
+    @EntityProperty(required = false)
+    protected UUID applicationId;
+
+    /**
+     * The collection being reindexed, null for every collection of the application
+     */
+    @EntityProperty(required = false)
+    protected String collectionName;
+
+    /**
+     * Time the rebuild started
+     */
+    @EntityProperty
+    protected Long started;
+
+    /**
+     * Number of entities reindexed so far
+     */
+    @EntityProperty(indexed = false, required = false)
+    protected Long count;
+
+    /**
+     * Error message
+     */
+    @EntityProperty
+    protected String errorMessage;
+
+    /**
+     * Resume cursor of every index bucket, by collection.  Lets a failed rebuild resume where each bucket left off
+     */
+    @EntityProperty(indexed = false, required = false)
+    protected Map<String, Object> checkpoints;
+
+
+    public Reindex() {
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    @EntityProperty
+    public State getState() {
+        return curState;
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    @EntityProperty
+    public void setState( State setter ) {
+        curState = setter;
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public UUID getApplicationId() {
+        return applicationId;
+    }
+
+
+    public void setApplicationId( final UUID applicationId ) {
+        this.applicationId = applicationId;
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+
+    public void setCollectionName( final String collectionName ) {
+        this.collectionName = collectionName;
+    }
+
+
+    public Long getStarted() {
+        return started;
+    }
+
+
+    public void setStarted( final Long started ) {
+        this.started = started;
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Long getCount() {
+        return count;
+    }
+
+
+    public void setCount( final Long count ) {
+        this.count = count;
+    }
+
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+
+    public void setErrorMessage( final String errorMessage ) {
+        this.errorMessage = errorMessage;
+    }
+
+
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Map<String, Object> getCheckpoints() {
+        return checkpoints;
+    }
+
+
+    public void setCheckpoints( final Map<String, Object> checkpoints ) {
+        this.checkpoints = checkpoints;
+    }
+}
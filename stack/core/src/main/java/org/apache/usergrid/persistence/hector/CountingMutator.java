@@ -19,6 +19,9 @@
 package org.apache.usergrid.persistence.hector;
 
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +56,11 @@ public class CountingMutator<K> implements Mutator<K> {
 
     private final Mutator<K> target;
 
+    /**
+     * Run once the mutations pending when they were added have been written
+     */
+    private final List<Runnable> afterExecute = new ArrayList<Runnable>();
+
 
     /**
      * Create a mutator that will flush if our max size is reached
@@ -217,12 +225,15 @@ public class CountingMutator<K> implements Mutator<K> {
 
     @Override
     public MutationResult execute() {
-        return target.execute();
+        MutationResult result = target.execute();
+        runAfterExecute();
+        return result;
     }
 
 
     @Override
     public Mutator<K> discardPendingMutations() {
+        afterExecute.clear();
         return target.discardPendingMutations();
     }
 
@@ -325,6 +336,31 @@ public class CountingMutator<K> implements Mutator<K> {
         if ( target.getPendingMutationCount() >= maxSize ) {
             logger.info( "Max mutation size of {} reached.  Flushing", maxSize);
             target.execute();
+            runAfterExecute();
+        }
+    }
+
+
+    /**
+     * Run the task once the mutations pending now have been written, either by a flush or by {@link #execute()}.
+     * Used to invalidate caches of the data being modified, a read between building the mutation and executing it
+     * would otherwise cache the old value again
+     */
+    public void afterExecute( Runnable task ) {
+        afterExecute.add( task );
+    }
+
+
+    private void runAfterExecute() {
+        if ( afterExecute.isEmpty() ) {
+            return;
+        }
+
+        List<Runnable> tasks = new ArrayList<Runnable>( afterExecute );
+        afterExecute.clear();
+
+        for ( Runnable task : tasks ) {
+            task.run();
         }
     }
 
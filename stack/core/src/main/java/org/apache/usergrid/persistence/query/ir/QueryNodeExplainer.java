@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.usergrid.persistence.Query.SortPredicate;
+import org.apache.usergrid.persistence.query.ir.QuerySlice.RangeValue;
+
+
+/**
+ * Visitor that describes the tree of query nodes built by the query processor.  Used to explain queries
+ */
+public class QueryNodeExplainer implements NodeVisitor {
+
+    private final Stack<Map<String, Object>> nodes = new Stack<Map<String, Object>>();
+
+
+    /** Describe the tree with the given root */
+    public static Map<String, Object> explain( QueryNode rootNode ) throws Exception {
+        if ( rootNode == null ) {
+            return null;
+        }
+
+        QueryNodeExplainer explainer = new QueryNodeExplainer();
+
+        rootNode.visit( explainer );
+
+        return explainer.nodes.pop();
+    }
+
+
+    @Override
+    public void visit( AndNode node ) throws Exception {
+        visitChildren( "AndNode", node.getLeft(), node.getRight() );
+    }
+
+
+    @Override
+    public void visit( NotNode node ) throws Exception {
+        visitChildren( "NotNode", node.getKeepNode(), node.getSubtractNode() );
+    }
+
+
+    @Override
+    public void visit( OrNode node ) throws Exception {
+        visitChildren( "OrNode", node.getLeft(), node.getRight() );
+    }
+
+
+    @Override
+    public void visit( SliceNode node ) throws Exception {
+        Map<String, Object> description = node( "SliceNode" );
+
+        List<String> slices = new ArrayList<String>();
+
+        for ( QuerySlice slice : node.getAllSlices() ) {
+            slices.add( describe( slice ) );
+        }
+
+        description.put( "slices", slices );
+
+        nodes.push( description );
+    }
+
+
+    @Override
+    public void visit( WithinNode node ) throws Exception {
+        Map<String, Object> description = node( "WithinNode" );
+
+        description.put( "property", node.getPropertyName() );
+        description.put( "distance", node.getDistance() );
+        description.put( "latitude", node.getLattitude() );
+        description.put( "longitude", node.getLongitude() );
+
+        nodes.push( description );
+    }
+
+
+    @Override
+    public void visit( AllNode node ) throws Exception {
+        nodes.push( node( "AllNode" ) );
+    }
+
+
+    @Override
+    public void visit( NameIdentifierNode nameIdentifierNode ) throws Exception {
+        Map<String, Object> description = node( "NameIdentifierNode" );
+
+        description.put( "name", nameIdentifierNode.getName() );
+
+        nodes.push( description );
+    }
+
+
+    @Override
+    public void visit( UuidIdentifierNode uuidIdentifierNode ) {
+        Map<String, Object> description = node( "UuidIdentifierNode" );
+
+        description.put( "uuid", uuidIdentifierNode.getUuid() );
+
+        nodes.push( description );
+    }
+
+
+    @Override
+    public void visit( OrderByNode orderByNode ) throws Exception {
+        Map<String, Object> description = node( "OrderByNode" );
+
+        List<String> sorts = new ArrayList<String>();
+
+        for ( QuerySlice slice : orderByNode.getFirstPredicate().getAllSlices() ) {
+            sorts.add( describe( slice ) );
+        }
+
+        for ( SortPredicate sort : orderByNode.getSecondarySorts() ) {
+            sorts.add( sort.getPropertyName() + " " + sort.getDirection() );
+        }
+
+        description.put( "sorts", sorts );
+
+        QueryNode subOperations = orderByNode.getQueryOperations();
+
+        if ( subOperations != null ) {
+            subOperations.visit( this );
+
+            List<Map<String, Object>> children = new ArrayList<Map<String, Object>>( 1 );
+            children.add( nodes.pop() );
+
+            description.put( "children", children );
+        }
+
+        nodes.push( description );
+    }
+
+
+    @Override
+    public void visit( EmailIdentifierNode emailIdentifierNode ) throws Exception {
+        Map<String, Object> description = node( "EmailIdentifierNode" );
+
+        description.put( "email", emailIdentifierNode.getIdentifier().toString() );
+
+        nodes.push( description );
+    }
+
+
+    private void visitChildren( String type, QueryNode... children ) throws Exception {
+        Map<String, Object> description = node( type );
+
+        List<Map<String, Object>> explained = new ArrayList<Map<String, Object>>( children.length );
+
+        for ( QueryNode child : children ) {
+            child.visit( this );
+            explained.add( nodes.pop() );
+        }
+
+        description.put( "children", explained );
+
+        nodes.push( description );
+    }
+
+
+    private static Map<String, Object> node( String type ) {
+        Map<String, Object> description = new LinkedHashMap<String, Object>();
+        description.put( "type", type );
+        return description;
+    }
+
+
+    /** Describe the range of the slice, I.E. "age >= 10 and < 20" */
+    public static String describe( QuerySlice slice ) {
+        StringBuilder description = new StringBuilder( slice.getPropertyName() );
+
+        RangeValue start = slice.getStart();
+        RangeValue finish = slice.getFinish();
+
+        if ( start != null ) {
+            description.append( start.isInclusive() ? " >= " : " > " ).append( start.getValue() );
+        }
+
+        if ( finish != null ) {
+            if ( start != null ) {
+                description.append( " and" );
+            }
+
+            description.append( finish.isInclusive() ? " <= " : " < " ).append( finish.getValue() );
+        }
+
+        return description.toString();
+    }
+}
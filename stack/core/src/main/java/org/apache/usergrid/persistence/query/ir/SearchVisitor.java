@@ -17,6 +17,11 @@
 package org.apache.usergrid.persistence.query.ir;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.UUID;
 
@@ -26,9 +31,13 @@ import org.apache.usergrid.persistence.IndexBucketLocator;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.cassandra.CassandraService;
 import org.apache.usergrid.persistence.cassandra.QueryProcessor;
+import org.apache.usergrid.persistence.cassandra.index.DynamicCompositeStartToBytes;
+import org.apache.usergrid.persistence.cassandra.index.ExplainIndexScanner;
+import org.apache.usergrid.persistence.cassandra.index.IndexCardinalityEstimator;
 import org.apache.usergrid.persistence.cassandra.index.IndexScanner;
 import org.apache.usergrid.persistence.cassandra.index.NoOpIndexScanner;
 import org.apache.usergrid.persistence.query.ir.result.EmptyIterator;
+import org.apache.usergrid.persistence.query.ir.result.ExplainIterator;
 import org.apache.usergrid.persistence.query.ir.result.IntersectionIterator;
 import org.apache.usergrid.persistence.query.ir.result.OrderByIterator;
 import org.apache.usergrid.persistence.query.ir.result.ResultIterator;
@@ -39,6 +48,12 @@ import org.apache.usergrid.persistence.query.ir.result.StaticIdIterator;
 import org.apache.usergrid.persistence.query.ir.result.SubtractionIterator;
 import org.apache.usergrid.persistence.query.ir.result.UnionIterator;
 
+import me.prettyprint.hector.api.beans.DynamicComposite;
+
+import static org.apache.usergrid.persistence.cassandra.ApplicationCF.ENTITY_INDEX;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.apache.usergrid.persistence.cassandra.index.IndexCardinalityEstimator.UNKNOWN;
+
 
 /**
  * Simple search visitor that performs all the joining in memory for results.
@@ -65,6 +80,17 @@ public abstract class SearchVisitor implements NodeVisitor {
     protected final IndexBucketLocator indexBucketLocator;
     protected final UUID applicationId;
 
+    /**
+     * The plan for the iterators we've pushed onto the results stack.  Used to order the operands of intersections
+     */
+    private final Map<ResultIterator, Operand> planned = new IdentityHashMap<ResultIterator, Operand>();
+
+    /** Greater than 0 while visiting the children of an intersection, their sizes are only needed for ordering */
+    private int intersectionDepth = 0;
+
+    /** True if the iterators should record their statistics so the query can be explained */
+    private final boolean explain;
+
 
     /**
      * @param cassandraService
@@ -85,6 +111,7 @@ public abstract class SearchVisitor implements NodeVisitor {
         this.queryProcessor = queryProcessor;
         this.em = queryProcessor.getEntityManager();
         this.bucket = bucket;
+        this.explain = query.isExplain();
     }
 
 
@@ -97,6 +124,12 @@ public abstract class SearchVisitor implements NodeVisitor {
     }
 
 
+    /** The index bucket this visitor searches */
+    public String getBucket() {
+        return bucket;
+    }
+
+
     /*
      * (non-Javadoc)
      *
@@ -105,21 +138,28 @@ public abstract class SearchVisitor implements NodeVisitor {
      */
     @Override
     public void visit( AndNode node ) throws Exception {
+        intersectionDepth++;
+
         node.getLeft().visit( this );
         node.getRight().visit( this );
 
+        intersectionDepth--;
+
         ResultIterator right = results.pop();
         ResultIterator left = results.pop();
 
         /**
          * NOTE: TN We should always maintain post order traversal of the tree. It
-         * is required for sorting to work correctly
+         * is required for sorting to work correctly.  Only the order the iterators
+         * are joined in is changed by the plan
          */
+        List<Operand> operands = new ArrayList<Operand>( 2 );
+        operands.add( getOperand( left ) );
+        operands.add( getOperand( right ) );
+
         IntersectionIterator intersection = new IntersectionIterator( queryProcessor.getPageSizeHint( node ) );
-        intersection.addIterator( left );
-        intersection.addIterator( right );
 
-        results.push( intersection );
+        results.push( intersect( intersection, operands ) );
     }
 
 
@@ -141,7 +181,7 @@ public abstract class SearchVisitor implements NodeVisitor {
         subtraction.setSubtractIterator( not );
         subtraction.setKeepIterator( keep );
 
-        results.push( subtraction );
+        results.push( explain( subtraction, "not", null, keep, not ) );
     }
 
 
@@ -161,15 +201,34 @@ public abstract class SearchVisitor implements NodeVisitor {
 
         final int nodeId = node.getId();
 
-        UnionIterator union = new UnionIterator( queryProcessor.getPageSizeHint( node ), nodeId, queryProcessor.getCursorCache( nodeId ) );
+        UnionIterator unionIterator =
+                new UnionIterator( queryProcessor.getPageSizeHint( node ), nodeId, queryProcessor.getCursorCache( nodeId ) );
 
         if ( left != null ) {
-            union.addIterator( left );
+            unionIterator.addIterator( left );
         }
         if ( right != null ) {
-            union.addIterator( right );
+            unionIterator.addIterator( right );
+        }
+
+        //a union reads all of its operands, it's only planned so it can be ordered within an intersection
+        Operand leftOperand = getOperand( left );
+        Operand rightOperand = getOperand( right );
+
+        int estimate = UNKNOWN;
+
+        //anything past the sample size is equally large
+        if ( leftOperand.estimate != UNKNOWN && rightOperand.estimate != UNKNOWN ) {
+            estimate = Math.min( leftOperand.estimate + rightOperand.estimate,
+                    queryProcessor.getCardinalityEstimator().getSampleSize() );
         }
 
+        String name = "(" + leftOperand.name + " | " + rightOperand.name + ")";
+
+        ResultIterator union = explain( unionIterator, name, null, left, right );
+
+        planned.put( union, new Operand( union, name, estimate, queryProcessor.getCursorCache( nodeId ) != null ) );
+
         results.push( union );
     }
 
@@ -212,12 +271,14 @@ public abstract class SearchVisitor implements NodeVisitor {
 
                 final SliceCursorGenerator sliceCursorGenerator = new SliceCursorGenerator( firstFieldSlice );
 
-                subResults =
-                        new SliceIterator( secondaryIndexScan( orderByNode, firstFieldSlice ), new SecondaryIndexSliceParser( sliceCursorGenerator ) );
+                IndexScanner scanner = explain( secondaryIndexScan( orderByNode, firstFieldSlice ) );
+
+                subResults = explain( new SliceIterator( scanner, new SecondaryIndexSliceParser( sliceCursorGenerator ) ),
+                        firstFieldSlice.getPropertyName(), scanner );
             }
 
-            orderIterator = new OrderByIterator( slice, orderByNode.getSecondarySorts(), subResults, em,
-                    queryProcessor.getPageSizeHint( orderByNode ) );
+            orderIterator = explain( new OrderByIterator( slice, orderByNode.getSecondarySorts(), subResults, em,
+                    queryProcessor.getPageSizeHint( orderByNode ) ), "order by", null, subResults );
         }
 
         //we don't have multi field sorting, we can simply do intersection with a single scan range
@@ -229,13 +290,13 @@ public abstract class SearchVisitor implements NodeVisitor {
                 scanner = new NoOpIndexScanner();
             }
             else {
-                scanner = secondaryIndexScan( orderByNode, slice.duplicate() );
+                scanner = explain( secondaryIndexScan( orderByNode, slice.duplicate() ) );
             }
 
             final SliceCursorGenerator sliceCursorGenerator = new SliceCursorGenerator( slice );
 
-            SliceIterator joinSlice = new SliceIterator( scanner, new SecondaryIndexSliceParser(
-                    sliceCursorGenerator ));
+            ResultIterator joinSlice = explain( new SliceIterator( scanner, new SecondaryIndexSliceParser(
+                    sliceCursorGenerator )), slice.getPropertyName(), scanner );
 
             IntersectionIterator union = new IntersectionIterator( queryProcessor.getPageSizeHint( orderByNode ) );
             union.addIterator( joinSlice );
@@ -244,7 +305,7 @@ public abstract class SearchVisitor implements NodeVisitor {
                 union.addIterator( subResults );
             }
 
-            orderIterator = union;
+            orderIterator = explain( union, "order by", null, joinSlice, subResults );
         }
 
         // now create our intermediate iterator with our real results
@@ -263,16 +324,210 @@ public abstract class SearchVisitor implements NodeVisitor {
     public void visit( SliceNode node ) throws Exception {
         IntersectionIterator intersections = new IntersectionIterator( queryProcessor.getPageSizeHint( node ) );
 
+        //only estimate the slices if we'll need to choose which one drives an intersection
+        boolean estimate = node.getCount() > 1 || intersectionDepth > 0;
+
+        List<Operand> operands = new ArrayList<Operand>( node.getCount() );
+
         for ( QuerySlice slice : node.getAllSlices() ) {
-            IndexScanner scanner = secondaryIndexScan( node, slice.duplicate() );
+            QuerySlice scanSlice = slice.duplicate();
+
+            IndexScanner scanner = explain( secondaryIndexScan( node, scanSlice ) );
 
             final SliceCursorGenerator sliceCursorGenerator = new SliceCursorGenerator( slice );
 
-            intersections.addIterator( new SliceIterator( scanner, new SecondaryIndexSliceParser(
-                    sliceCursorGenerator )) );
+            ResultIterator sliceIterator =
+                    explain( new SliceIterator( scanner, new SecondaryIndexSliceParser( sliceCursorGenerator ) ),
+                            QueryNodeExplainer.describe( slice ), scanner );
+
+            operands.add( new Operand( sliceIterator, slice.getPropertyName(),
+                    estimate ? estimateSliceSize( slice ) : UNKNOWN, scanSlice.hasCursor() ) );
+        }
+
+        results.push( intersect( intersections, operands ) );
+    }
+
+
+    /**
+     * Add the operands to the intersection so the most selective operand drives it.  The intersection iterates the
+     * first operand a page at a time, and scans every other operand for each of those pages.
+     * <p/>
+     * An operand that is resuming from a cursor drove the previous page, so it must drive this page as well.  Other
+     * than that operands are only reordered when the size of every operand is known, otherwise the query order is
+     * kept
+     */
+    private ResultIterator intersect( IntersectionIterator intersection, List<Operand> operands ) {
+
+        Operand resumed = null;
+        boolean estimated = true;
+
+        for ( Operand operand : operands ) {
+            if ( operand.resumed ) {
+                resumed = operand;
+            }
+
+            estimated &= operand.estimate != UNKNOWN;
+        }
+
+        if ( resumed != null ) {
+            operands.remove( resumed );
+            operands.add( 0, resumed );
+        }
+        else if ( estimated ) {
+            Collections.sort( operands );
+        }
+
+        StringBuilder name = new StringBuilder( "(" );
+        int estimate = UNKNOWN;
+        List<ResultIterator> children = new ArrayList<ResultIterator>( operands.size() );
+
+        for ( Operand operand : operands ) {
+            intersection.addIterator( operand.iterator );
+            children.add( operand.iterator );
+
+            if ( name.length() > 1 ) {
+                name.append( " & " );
+            }
+
+            name.append( operand.name );
+
+            //the intersection can't be larger than its smallest operand
+            if ( operand.estimate != UNKNOWN && ( estimate == UNKNOWN || operand.estimate < estimate ) ) {
+                estimate = operand.estimate;
+            }
+        }
+
+        name.append( ")" );
+
+        ResultIterator result =
+                explain( intersection, name.toString(), null, children.toArray( new ResultIterator[children.size()] ) );
+
+        planned.put( result, new Operand( result, name.toString(), estimate, resumed != null ) );
+
+        if ( operands.size() > 1 ) {
+            queryProcessor.addQueryPlanStep( "bucket " + bucket + ": intersect " + describe( operands ) );
         }
 
-        results.push( intersections );
+        return result;
+    }
+
+
+    /** Wrap the scanner to count the index reads if the query is being explained */
+    protected IndexScanner explain( IndexScanner scanner ) {
+        if ( !explain ) {
+            return scanner;
+        }
+
+        return new ExplainIndexScanner( scanner );
+    }
+
+
+    /**
+     * Wrap the iterator to record its statistics if the query is being explained
+     *
+     * @param iterator The iterator to explain
+     * @param node A description of the query node the iterator evaluates
+     * @param scanner The scanner the iterator reads directly, returned by {@link #explain(IndexScanner)}. May be null
+     * @param children The operands of the iterator, returned by this method.  Null children are skipped
+     */
+    protected ResultIterator explain( ResultIterator iterator, String node, IndexScanner scanner,
+                                      ResultIterator... children ) {
+        if ( !explain ) {
+            return iterator;
+        }
+
+        List<ExplainIterator> explained = new ArrayList<ExplainIterator>( children.length );
+
+        for ( ResultIterator child : children ) {
+            if ( child instanceof ExplainIterator ) {
+                explained.add( ( ExplainIterator ) child );
+            }
+        }
+
+        ExplainIndexScanner explainScanner = scanner instanceof ExplainIndexScanner ? ( ExplainIndexScanner ) scanner : null;
+
+        return new ExplainIterator( iterator, node, explainScanner, explained );
+    }
+
+
+    /** Get the plan for the iterator, the size of iterators we didn't plan is unknown */
+    private Operand getOperand( ResultIterator iterator ) {
+        Operand operand = planned.get( iterator );
+
+        if ( operand == null ) {
+            String name = iterator == null ? "none" : iterator.getClass().getSimpleName();
+            operand = new Operand( iterator, name, UNKNOWN, false );
+        }
+
+        return operand;
+    }
+
+
+    /** Describe the operands in the order they're joined */
+    private String describe( List<Operand> operands ) {
+        StringBuilder plan = new StringBuilder();
+
+        for ( Operand operand : operands ) {
+            if ( plan.length() > 0 ) {
+                plan.append( " -> " );
+            }
+
+            plan.append( operand.name ).append( "[" );
+
+            if ( operand.estimate == UNKNOWN ) {
+                plan.append( "size unknown" );
+            }
+            else {
+                IndexCardinalityEstimator estimator = queryProcessor.getCardinalityEstimator();
+
+                if ( estimator != null && operand.estimate >= estimator.getSampleSize() ) {
+                    plan.append( ">=" );
+                }
+
+                plan.append( operand.estimate );
+            }
+
+            if ( operand.resumed ) {
+                plan.append( ", cursor" );
+            }
+
+            plan.append( "]" );
+        }
+
+        return plan.toString();
+    }
+
+
+    /**
+     * Estimate the number of index entries the slice will read in this visitor's bucket.  Returns {@link
+     * IndexCardinalityEstimator#UNKNOWN} when the size can't be estimated
+     */
+    protected int estimateSliceSize( QuerySlice slice ) throws Exception {
+        return UNKNOWN;
+    }
+
+
+    /** Estimate the number of entries the slice covers in the index row for the key prefix in this bucket */
+    protected int estimateIndexSize( Object keyPrefix, QuerySlice slice ) throws Exception {
+        IndexCardinalityEstimator estimator = queryProcessor.getCardinalityEstimator();
+
+        if ( estimator == null || !estimator.isEnabled() ) {
+            return UNKNOWN;
+        }
+
+        //estimate the entire range in ascending order, regardless of the cursor or sort
+        QuerySlice range = slice.duplicate();
+        range.setCursor( null );
+
+        if ( range.isReversed() ) {
+            range.reverse();
+        }
+
+        DynamicComposite[] bounds = range.getRange();
+
+        return estimator.estimate( applicationId, ENTITY_INDEX, key( keyPrefix, bucket ),
+                DynamicCompositeStartToBytes.INSTANCE.toBytes( bounds[0] ),
+                DynamicCompositeStartToBytes.INSTANCE.toBytes( bounds[1] ) );
     }
 
 
@@ -285,7 +540,8 @@ public abstract class SearchVisitor implements NodeVisitor {
 
     @Override
     public void visit( UuidIdentifierNode uuidIdentifierNode ) {
-        this.results.push( new StaticIdIterator( uuidIdentifierNode.getUuid() ) );
+        this.results.push( explain( new StaticIdIterator( uuidIdentifierNode.getUuid() ),
+                uuidIdentifierNode.getUuid().toString(), null ) );
     }
 
 
@@ -293,11 +549,37 @@ public abstract class SearchVisitor implements NodeVisitor {
     public void visit( EmailIdentifierNode emailIdentifierNode ) throws Exception {
         EntityRef user = queryProcessor.getEntityManager().getUserByIdentifier( emailIdentifierNode.getIdentifier() );
 
+        String identifier = emailIdentifierNode.getIdentifier().toString();
+
         if ( user == null ) {
-            this.results.push( new EmptyIterator() );
+            this.results.push( explain( new EmptyIterator(), identifier, null ) );
             return;
         }
 
-        this.results.push( new StaticIdIterator( user.getUuid() ) );
+        this.results.push( explain( new StaticIdIterator( user.getUuid() ), identifier, null ) );
+    }
+
+
+    /** An iterator that is an operand in the query plan */
+    private static final class Operand implements Comparable<Operand> {
+
+        private final ResultIterator iterator;
+        private final String name;
+        private final int estimate;
+        private final boolean resumed;
+
+
+        private Operand( ResultIterator iterator, String name, int estimate, boolean resumed ) {
+            this.iterator = iterator;
+            this.name = name;
+            this.estimate = estimate;
+            this.resumed = resumed;
+        }
+
+
+        @Override
+        public int compareTo( Operand o ) {
+            return estimate < o.estimate ? -1 : ( estimate == o.estimate ? 0 : 1 );
+        }
     }
 }
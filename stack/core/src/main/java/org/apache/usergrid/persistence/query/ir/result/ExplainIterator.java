@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir.result;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.usergrid.persistence.cassandra.index.ExplainIndexScanner;
+
+
+/**
+ * Records the pages and results returned by another iterator, and the time spent in it.  The time includes the time
+ * spent in the children of the iterator, since they're invoked when the iterator advances.  Used to explain queries
+ */
+public class ExplainIterator implements ResultIterator {
+
+    private final ResultIterator iterator;
+    private final String node;
+    private final ExplainIndexScanner scanner;
+    private final List<ExplainIterator> children;
+
+    private int pages;
+    private long results;
+    private int resets;
+    private long elapsed;
+
+
+    /**
+     * @param iterator The iterator to explain
+     * @param node A description of the query node the iterator evaluates
+     * @param scanner The scanner the iterator reads the index with.  Null if it doesn't read an index directly
+     * @param children The explained iterators this iterator joins
+     */
+    public ExplainIterator( ResultIterator iterator, String node, ExplainIndexScanner scanner,
+                            List<ExplainIterator> children ) {
+        this.iterator = iterator;
+        this.node = node;
+        this.scanner = scanner;
+        this.children = children;
+    }
+
+
+    @Override
+    public Iterator<Set<ScanColumn>> iterator() {
+        return this;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        long start = System.nanoTime();
+
+        try {
+            return iterator.hasNext();
+        }
+        finally {
+            elapsed += System.nanoTime() - start;
+        }
+    }
+
+
+    @Override
+    public Set<ScanColumn> next() {
+        long start = System.nanoTime();
+
+        try {
+            Set<ScanColumn> page = iterator.next();
+
+            pages++;
+
+            if ( page != null ) {
+                results += page.size();
+            }
+
+            return page;
+        }
+        finally {
+            elapsed += System.nanoTime() - start;
+        }
+    }
+
+
+    @Override
+    public void reset() {
+        resets++;
+        iterator.reset();
+    }
+
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException( "Not implemented" );
+    }
+
+
+    /** Get the statistics of this iterator and its children */
+    public Map<String, Object> explain() {
+        Map<String, Object> explanation = new LinkedHashMap<String, Object>();
+
+        explanation.put( "iterator", iterator.getClass().getSimpleName() );
+        explanation.put( "node", node );
+        explanation.put( "pages", pages );
+        explanation.put( "results", results );
+        explanation.put( "resets", resets );
+        explanation.put( "elapsed", elapsed / 1000000.0 );
+
+        if ( scanner != null ) {
+            Map<String, Object> index = new LinkedHashMap<String, Object>();
+
+            index.put( "scanner", scanner.getScannerType() );
+            index.put( "pages", scanner.getPages() );
+            index.put( "columns", scanner.getColumns() );
+            index.put( "elapsed", scanner.getElapsed() / 1000000.0 );
+
+            explanation.put( "index", index );
+        }
+
+        if ( !children.isEmpty() ) {
+            List<Map<String, Object>> explained = new ArrayList<Map<String, Object>>( children.size() );
+
+            for ( ExplainIterator child : children ) {
+                explained.add( child.explain() );
+            }
+
+            explanation.put( "children", explained );
+        }
+
+        return explanation;
+    }
+}
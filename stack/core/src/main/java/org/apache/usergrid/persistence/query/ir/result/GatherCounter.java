@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir.result;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.usergrid.persistence.cassandra.util.TraceTag;
+import org.apache.usergrid.persistence.cassandra.util.TraceTagManager;
+import org.apache.usergrid.persistence.query.ir.QueryNode;
+import org.apache.usergrid.persistence.query.ir.SearchVisitor;
+
+
+/**
+ * Used to count the results of multiple sub iterators without loading them.  Every shard is visited in parallel and
+ * its iterator is drained page by page, only the size of each page of scan columns is kept.
+ * <p/>
+ * Entities are only ever indexed in a single shard, so the shard counts are summed.  Like paging through the results,
+ * an entity matched by several values of a multi valued property in different pages is counted once per page.
+ */
+public class GatherCounter {
+
+    private final ArrayList<Future<Long>> workers;
+
+    /** Set once any shard has found a result.  Only used to stop the other shards when checking for existence */
+    private final AtomicBoolean found = new AtomicBoolean();
+
+
+    /**
+     * @param rootNode The root of the tree to visit
+     * @param searchVisitors The visitors of each shard
+     * @param executorService The executor to visit the shards with
+     * @param existsOnly True to stop all shards once the first result has been found
+     * @param traceTagManager The manager of the trace attached to the calling thread, the workers attach the same
+     * trace.  Can be null
+     */
+    public GatherCounter( final QueryNode rootNode, final Collection<SearchVisitor> searchVisitors,
+                          final ExecutorService executorService, final boolean existsOnly,
+                          final TraceTagManager traceTagManager ) {
+
+        this.workers = new ArrayList<Future<Long>>( searchVisitors.size() );
+
+        final TraceTag traceTag = traceTagManager != null ? traceTagManager.acquire() : null;
+
+        for ( SearchVisitor visitor : searchVisitors ) {
+            workers.add( executorService.submit(
+                    new VisitorCounter( rootNode, visitor, existsOnly, traceTagManager, traceTag ) ) );
+        }
+    }
+
+
+    /** Get the number of results in all shards, once all the shards have been counted */
+    public long getCount() {
+        long count = 0;
+
+        for ( final Future<Long> future : workers ) {
+            try {
+                count += future.get();
+            }
+            catch ( Exception e ) {
+                throw new RuntimeException( "Unable to aggregate counts", e );
+            }
+        }
+
+        return count;
+    }
+
+
+    /** True if any shard has at least 1 result */
+    public boolean exists() {
+        return getCount() > 0;
+    }
+
+
+    /**
+     * Visits the tree of a single shard and counts every page of its results
+     */
+    private final class VisitorCounter implements Callable<Long> {
+
+        private final QueryNode rootNode;
+        private final SearchVisitor visitor;
+        private final boolean existsOnly;
+        private final TraceTagManager traceTagManager;
+        private final TraceTag traceTag;
+
+
+        private VisitorCounter( final QueryNode rootNode, final SearchVisitor visitor, final boolean existsOnly,
+                                final TraceTagManager traceTagManager, final TraceTag traceTag ) {
+            this.rootNode = rootNode;
+            this.visitor = visitor;
+            this.existsOnly = existsOnly;
+            this.traceTagManager = traceTagManager;
+            this.traceTag = traceTag;
+        }
+
+
+        @Override
+        public Long call() throws Exception {
+
+            // the trace is kept per thread, attach it to this worker unless it runs on the calling thread
+            final boolean attach = traceTag != null && !traceTagManager.isActive();
+
+            if ( attach ) {
+                traceTagManager.attach( traceTag );
+            }
+
+            try {
+                return count();
+            }
+            finally {
+                if ( attach ) {
+                    traceTagManager.detach();
+                }
+            }
+        }
+
+
+        private long count() throws Exception {
+
+            if ( existsOnly && found.get() ) {
+                return 0L;
+            }
+
+            try {
+                rootNode.visit( visitor );
+            }
+            catch ( Exception e ) {
+                throw new RuntimeException( "Unable to process query", e );
+            }
+
+            final ResultIterator iterator = visitor.getResults();
+
+            long count = 0;
+
+            while ( iterator.hasNext() ) {
+
+                //the iterators re-use their sets, only take the size
+                final Set<ScanColumn> page = iterator.next();
+
+                count += page.size();
+
+                if ( existsOnly && count > 0 ) {
+                    found.set( true );
+                    break;
+                }
+
+                //another shard has already found one
+                if ( existsOnly && found.get() ) {
+                    break;
+                }
+            }
+
+            return count;
+        }
+    }
+}
@@ -20,8 +20,12 @@ package org.apache.usergrid.persistence.query.ir.result;
 import java.lang.UnsupportedOperationException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
@@ -29,6 +33,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+import org.apache.usergrid.persistence.cassandra.util.TraceTag;
+import org.apache.usergrid.persistence.cassandra.util.TraceTagManager;
 import org.apache.usergrid.persistence.query.ir.QueryNode;
 import org.apache.usergrid.persistence.query.ir.SearchVisitor;
 
@@ -41,11 +47,20 @@ public class GatherIterator implements ResultIterator {
 
     private final WorkerCoordinator workerCoordinator;
 
+    /** The explanation of each shard, only populated if the visitors explain their iterators */
+    private final List<Map<String, Object>> shards =
+            Collections.synchronizedList( new ArrayList<Map<String, Object>>() );
 
+
+    /**
+     * @param traceTagManager The manager of the trace attached to the calling thread.  The workers attach the same trace
+     * so their reads are part of it.  Can be null
+     */
     public GatherIterator( final int pageSize, final QueryNode rootNode, final Collection<SearchVisitor> searchVisitors,
-                           final ExecutorService executorService ) {
+                           final ExecutorService executorService, final TraceTagManager traceTagManager ) {
 
-        this.workerCoordinator = new WorkerCoordinator( executorService, searchVisitors, rootNode, pageSize );
+        this.workerCoordinator =
+                new WorkerCoordinator( executorService, searchVisitors, rootNode, pageSize, traceTagManager );
 
         this.workerCoordinator.start();
     }
@@ -84,6 +99,16 @@ public class GatherIterator implements ResultIterator {
     }
 
 
+    /** Get the explanation of each shard that was searched, once all the shards have been searched */
+    public List<Map<String, Object>> getShardExplanations() {
+        workerCoordinator.getResults();
+
+        synchronized ( shards ) {
+            return new ArrayList<Map<String, Object>>( shards );
+        }
+    }
+
+
     /**
      * Coordinator object for all workers
      */
@@ -93,17 +118,19 @@ public class GatherIterator implements ResultIterator {
         private final Collection<SearchVisitor> searchVisitors;
         private final int pageSize;
         private final QueryNode rootNode;
+        private final TraceTagManager traceTagManager;
         private ConcurrentResultMerge merge;
         private ArrayList<Future<Void>> workers;
 
 
         private WorkerCoordinator( final ExecutorService executorService,
                                    final Collection<SearchVisitor> searchVisitors, final QueryNode rootNode,
-                                   final int pageSize ) {
+                                   final int pageSize, final TraceTagManager traceTagManager ) {
             this.executorService = executorService;
             this.searchVisitors = searchVisitors;
             this.rootNode = rootNode;
             this.pageSize = pageSize;
+            this.traceTagManager = traceTagManager;
         }
 
 
@@ -113,12 +140,14 @@ public class GatherIterator implements ResultIterator {
 
             this.workers = new ArrayList<Future<Void>>( searchVisitors.size() );
 
+            final TraceTag traceTag = traceTagManager != null ? traceTagManager.acquire() : null;
 
             /**
              * Start our search processing
              */
             for ( SearchVisitor visitor : searchVisitors ) {
-                final VisitorExecutor executor = new VisitorExecutor( rootNode, merge, visitor );
+                final VisitorExecutor executor =
+                        new VisitorExecutor( rootNode, merge, visitor, traceTagManager, traceTag );
 
 //                try {
 //                    executor.call();
@@ -161,19 +190,45 @@ public class GatherIterator implements ResultIterator {
         private final QueryNode rootNode;
         private final SearchVisitor visitor;
         private final ConcurrentResultMerge merge;
+        private final TraceTagManager traceTagManager;
+        private final TraceTag traceTag;
 
 
         private VisitorExecutor( final QueryNode rootNode, final ConcurrentResultMerge merge,
-                                 final SearchVisitor visitor ) {
+                                 final SearchVisitor visitor, final TraceTagManager traceTagManager,
+                                 final TraceTag traceTag ) {
             this.rootNode = rootNode;
             this.visitor = visitor;
             this.merge = merge;
+            this.traceTagManager = traceTagManager;
+            this.traceTag = traceTag;
         }
 
 
         @Override
         public Void call() throws Exception {
 
+            // the trace is kept per thread, attach it to this worker unless it runs on the calling thread
+            final boolean attach = traceTag != null && !traceTagManager.isActive();
+
+            if ( attach ) {
+                traceTagManager.attach( traceTag );
+            }
+
+            try {
+                return search();
+            }
+            finally {
+                if ( attach ) {
+                    traceTagManager.detach();
+                }
+            }
+        }
+
+
+        private Void search() throws Exception {
+
+            final long start = System.nanoTime();
 
             try {
                 rootNode.visit( visitor );
@@ -184,9 +239,23 @@ public class GatherIterator implements ResultIterator {
 
             final ResultIterator iterator = visitor.getResults();
 
+            int found = 0;
 
             if ( iterator.hasNext() ) {
-                merge.merge( iterator.next() );
+                final Set<ScanColumn> page = iterator.next();
+                found = page.size();
+                merge.merge( page );
+            }
+
+            if ( iterator instanceof ExplainIterator ) {
+                final Map<String, Object> shard = new LinkedHashMap<String, Object>();
+
+                shard.put( "bucket", visitor.getBucket() );
+                shard.put( "results", found );
+                shard.put( "elapsed", ( System.nanoTime() - start ) / 1000000.0 );
+                shard.put( "iterators", ( ( ExplainIterator ) iterator ).explain() );
+
+                shards.add( shard );
             }
 
             return null;
@@ -17,14 +17,13 @@
 package org.apache.usergrid.persistence.query.ir.result;
 
 
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.UUID;
 
 import org.apache.usergrid.persistence.cassandra.CursorCache;
 
-import com.google.common.collect.Sets;
-
 
 /**
  * An iterator that unions 1 or more subsets. It makes the assuming that sub iterators iterate from min(uuid) to
@@ -130,26 +129,37 @@ public class IntersectionIterator extends MultiIterator {
 
     private Set<ScanColumn> merge( Set<ScanColumn> current, ResultIterator child ) {
 
-        Set<ScanColumn> results = new LinkedHashSet<ScanColumn>( pageSize );
+        final ScanColumn[] columns = current.toArray( new ScanColumn[current.size()] );
 
-        while ( results.size() < pageSize ) {
-            if ( !child.hasNext() ) {
-                // we've iterated to the end, reset for next pass
-                child.reset();
-                return results;
-            }
+        final SortedIdSet currentIds = SortedIdSet.of( current );
+
+        //the positions in current of every id found in the child
+        final BitSet matches = new BitSet( columns.length );
 
+        int matched = 0;
+
+        //check the sizes first, once every id has been found there's no need to read further
+        while ( matched < pageSize && matched < columns.length && child.hasNext() ) {
 
             final Set<ScanColumn> childResults = child.next();
 
-            final Set<ScanColumn> intersection =  Sets.intersection( current, childResults );
+            matched += currentIds.markMatches( SortedIdSet.of( childResults ), matches );
+        }
 
-            results.addAll( intersection );
+        // reset for the next pass, the next page of current must be matched against every child page
+        child.reset();
+
+        //keep the order of the current page
+        final Set<ScanColumn> results = new LinkedHashSet<ScanColumn>( matched );
+
+        for ( int i = matches.nextSetBit( 0 ); i >= 0; i = matches.nextSetBit( i + 1 ) ) {
+            results.add( columns[i] );
         }
 
         return results;
     }
 
+
     //TODO, replace columns with slice parser here
 
 //    /*
@@ -99,6 +99,14 @@ public class SearchCollectionVisitor extends SearchVisitor {
     }
 
 
+    @Override
+    protected int estimateSliceSize( QuerySlice slice ) throws Exception {
+        Object indexKey = key( headEntity.getUuid(), collection.getName() );
+
+        return estimateIndexSize( key( indexKey, slice.getPropertyName() ), slice );
+    }
+
+
     public void visit( AllNode node ) throws Exception {
 
         String collectionName = collection.getName();
@@ -119,12 +127,12 @@ public class SearchCollectionVisitor extends SearchVisitor {
         }
 
 
-        IndexScanner indexScanner = cassandraService
+        IndexScanner indexScanner = explain( cassandraService
                 .getIdList( key( headEntity.getUuid(), DICTIONARY_COLLECTIONS, collectionName ), startId, null,
                         queryProcessor.getPageSizeHint( node ), query.isReversed(), bucket, applicationId,
-                        node.isForceKeepFirst() );
+                        node.isForceKeepFirst() ) );
 
-        this.results.push( new SliceIterator( indexScanner, uuidIndexSliceParser ) );
+        this.results.push( explain( new SliceIterator( indexScanner, uuidIndexSliceParser ), "all", indexScanner ) );
     }
 
 
@@ -153,7 +161,8 @@ public class SearchCollectionVisitor extends SearchVisitor {
         final CollectionShardFilter
                 validator = new CollectionShardFilter(indexBucketLocator, bucket );
 
-        this.results.push(  new ShardFilterIterator( validator, itr, size));
+        this.results.push( explain( new ShardFilterIterator( validator, itr, size ), "within " + node.getPropertyName(),
+                null ) );
     }
 
 
@@ -162,11 +171,11 @@ public class SearchCollectionVisitor extends SearchVisitor {
         EntityRef ref = em.getAlias( headEntity.getUuid(), collection.getType(), nameIdentifierNode.getName() );
 
         if ( ref == null ) {
-            this.results.push( new EmptyIterator() );
+            this.results.push( explain( new EmptyIterator(), nameIdentifierNode.getName(), null ) );
             return;
         }
 
-        this.results.push( new StaticIdIterator( ref.getUuid() ) );
+        this.results.push( explain( new StaticIdIterator( ref.getUuid() ), nameIdentifierNode.getName(), null ) );
     }
 
 
@@ -111,6 +111,16 @@ public class SearchConnectionVisitor extends SearchVisitor {
     }
 
 
+    @Override
+    protected int estimateSliceSize( QuerySlice slice ) throws Exception {
+
+        final UUID id = ConnectionRefImpl.getIndexId( ConnectionRefImpl.BY_CONNECTION_AND_ENTITY_TYPE, headEntity,
+                connection.getConnectionType(), connection.getConnectedEntityType(), new ConnectedEntityRef[0] );
+
+        return estimateIndexSize( key( key( id, INDEX_CONNECTIONS ), slice.getPropertyName() ), slice );
+    }
+
+
     /*
  * (non-Javadoc)
  *
@@ -139,7 +149,8 @@ public class SearchConnectionVisitor extends SearchVisitor {
                 validator = new ConnectionShardFilter(indexBucketLocator, bucket );
 
 
-        this.results.push( new ShardFilterIterator( validator, itr, size ) );
+        this.results.push( explain( new ShardFilterIterator( validator, itr, size ), "within " + node.getPropertyName(),
+                null ) );
 
     }
 
@@ -206,9 +217,9 @@ public class SearchConnectionVisitor extends SearchVisitor {
             connectionTypes = new ConnectionTypesIterator( cassandraService, applicationId, entityIdToUse, outgoing, size );
         }
 
-        IndexScanner connectionScanner =
+        IndexScanner connectionScanner = explain(
                 new ConnectedIndexScanner( cassandraService, dictionaryType, applicationId, entityIdToUse, connectionTypes,
-                        start, slice.isReversed(), size, skipFirst );
+                        start, slice.isReversed(), size, skipFirst ) );
 
         //we have to create our wrapper so validate the data we read is correct for our shard
 
@@ -219,7 +230,8 @@ public class SearchConnectionVisitor extends SearchVisitor {
         final SliceIterator sliceIterator = new SliceIterator( connectionScanner, connectionParser );
 
 
-        this.results.push(  new ShardFilterIterator( connectionShardFilter, sliceIterator, size));
+        this.results.push( explain( new ShardFilterIterator( connectionShardFilter, sliceIterator, size ), "all",
+                connectionScanner ) );
     }
 
 
@@ -230,11 +242,11 @@ public class SearchConnectionVisitor extends SearchVisitor {
                 em.getAlias( applicationId, connection.getConnectedEntityType(), nameIdentifierNode.getName() );
 
         if ( ref == null ) {
-            this.results.push( new EmptyIterator() );
+            this.results.push( explain( new EmptyIterator(), nameIdentifierNode.getName(), null ) );
             return;
         }
 
-        this.results.push( new StaticIdIterator( ref.getUuid() ) );
+        this.results.push( explain( new StaticIdIterator( ref.getUuid() ), nameIdentifierNode.getName(), null ) );
     }
 
     private IndexScanner searchIndex( Object indexKey, QuerySlice slice, int pageSize, final String shardBucket ) throws Exception {
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir.result;
+
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.UUID;
+
+
+/**
+ * An immutable set of the ids of a page of scan columns, held as sorted primitive 128 bit values.  Used by the merge
+ * iterators to join pages without hashing and boxing every id.
+ * <p/>
+ * Ids are ordered by their signed most and least significant bits.  This is not the time order of the ids, it only
+ * needs to be consistent between sets.  The position of each id in the page it was built from is kept, so matches
+ * can be reported in the order of the page.
+ */
+public final class SortedIdSet {
+
+    /** Below this size a range is sorted by insertion */
+    private static final int INSERTION_SORT_SIZE = 8;
+
+    private final long[] msb;
+    private final long[] lsb;
+    private final int[] positions;
+    private final int size;
+
+
+    private SortedIdSet( final long[] msb, final long[] lsb, final int[] positions, final int size ) {
+        this.msb = msb;
+        this.lsb = lsb;
+        this.positions = positions;
+        this.size = size;
+    }
+
+
+    /** Build the set of ids in the columns.  Duplicate ids are kept */
+    public static SortedIdSet of( final Collection<? extends ScanColumn> columns ) {
+        final int size = columns.size();
+
+        final long[] msb = new long[size];
+        final long[] lsb = new long[size];
+        final int[] positions = new int[size];
+
+        int i = 0;
+
+        for ( ScanColumn column : columns ) {
+            final UUID uuid = column.getUUID();
+
+            msb[i] = uuid.getMostSignificantBits();
+            lsb[i] = uuid.getLeastSignificantBits();
+            positions[i] = i;
+            i++;
+        }
+
+        sort( msb, lsb, positions, 0, size - 1 );
+
+        return new SortedIdSet( msb, lsb, positions, size );
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean contains( final UUID uuid ) {
+        final long m = uuid.getMostSignificantBits();
+        final long l = uuid.getLeastSignificantBits();
+
+        final int index = gallop( msb, lsb, 0, size, m, l );
+
+        return index < size && msb[index] == m && lsb[index] == l;
+    }
+
+
+    /**
+     * Set the bit of the page position of every id in this set that is also in the other set.  The smaller set is
+     * walked and gallops through the larger one, so small sets are cheap to join with large ones.
+     *
+     * @return The number of positions that were not already set
+     */
+    public int markMatches( final SortedIdSet other, final BitSet matches ) {
+        int matched = 0;
+
+        if ( size <= other.size ) {
+            int from = 0;
+
+            for ( int i = 0; i < size && from < other.size; i++ ) {
+                from = gallop( other.msb, other.lsb, from, other.size, msb[i], lsb[i] );
+
+                if ( from < other.size && other.msb[from] == msb[i] && other.lsb[from] == lsb[i]
+                        && !matches.get( positions[i] ) ) {
+                    matches.set( positions[i] );
+                    matched++;
+                }
+            }
+
+            return matched;
+        }
+
+        int from = 0;
+
+        for ( int i = 0; i < other.size && from < size; i++ ) {
+            from = gallop( msb, lsb, from, size, other.msb[i], other.lsb[i] );
+
+            //mark every copy of the id on this side
+            for ( int j = from; j < size && msb[j] == other.msb[i] && lsb[j] == other.lsb[i]; j++ ) {
+                if ( !matches.get( positions[j] ) ) {
+                    matches.set( positions[j] );
+                    matched++;
+                }
+            }
+        }
+
+        return matched;
+    }
+
+
+    /**
+     * Find the first index in [from, to) with an id greater than or equal to the key.  The distance is doubled until
+     * the key is passed, then the last gap is binary searched.
+     *
+     * @return The index, to if every id is less than the key
+     */
+    static int gallop( final long[] msb, final long[] lsb, final int from, final int to, final long keyMsb,
+                       final long keyLsb ) {
+
+        int low = from;
+        int step = 1;
+        int high = from;
+
+        while ( high < to && compare( msb[high], lsb[high], keyMsb, keyLsb ) < 0 ) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+
+        if ( high > to ) {
+            high = to;
+        }
+
+        //binary search [low, high)
+        while ( low < high ) {
+            final int mid = ( low + high ) >>> 1;
+
+            if ( compare( msb[mid], lsb[mid], keyMsb, keyLsb ) < 0 ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+
+    private static int compare( final long msb1, final long lsb1, final long msb2, final long lsb2 ) {
+        if ( msb1 != msb2 ) {
+            return msb1 < msb2 ? -1 : 1;
+        }
+
+        if ( lsb1 != lsb2 ) {
+            return lsb1 < lsb2 ? -1 : 1;
+        }
+
+        return 0;
+    }
+
+
+    /** Quick sort the parallel arrays in place between the inclusive bounds */
+    private static void sort( final long[] msb, final long[] lsb, final int[] positions, int low, int high ) {
+        while ( high - low >= INSERTION_SORT_SIZE ) {
+            final int mid = ( low + high ) >>> 1;
+
+            final long pivotMsb = msb[mid];
+            final long pivotLsb = lsb[mid];
+
+            int i = low;
+            int j = high;
+
+            while ( i <= j ) {
+                while ( compare( msb[i], lsb[i], pivotMsb, pivotLsb ) < 0 ) {
+                    i++;
+                }
+
+                while ( compare( msb[j], lsb[j], pivotMsb, pivotLsb ) > 0 ) {
+                    j--;
+                }
+
+                if ( i <= j ) {
+                    swap( msb, lsb, positions, i, j );
+                    i++;
+                    j--;
+                }
+            }
+
+            //recurse into the smaller half, loop on the larger so the stack stays shallow
+            if ( j - low < high - i ) {
+                sort( msb, lsb, positions, low, j );
+                low = i;
+            }
+            else {
+                sort( msb, lsb, positions, i, high );
+                high = j;
+            }
+        }
+
+        for ( int i = low + 1; i <= high; i++ ) {
+            for ( int j = i; j > low && compare( msb[j - 1], lsb[j - 1], msb[j], lsb[j] ) > 0; j-- ) {
+                swap( msb, lsb, positions, j, j - 1 );
+            }
+        }
+    }
+
+
+    private static void swap( final long[] msb, final long[] lsb, final int[] positions, final int i, final int j ) {
+        final long m = msb[i];
+        msb[i] = msb[j];
+        msb[j] = m;
+
+        final long l = lsb[i];
+        lsb[i] = lsb[j];
+        lsb[j] = l;
+
+        final int p = positions[i];
+        positions[i] = positions[j];
+        positions[j] = p;
+    }
+}
@@ -17,14 +17,13 @@
 package org.apache.usergrid.persistence.query.ir.result;
 
 
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.UUID;
 
 import org.apache.usergrid.persistence.cassandra.CursorCache;
 
-import com.google.common.collect.Sets;
-
 
 /**
  * Simple iterator to perform Unions
@@ -87,13 +86,24 @@ public class SubtractionIterator extends MergeIterator {
 
             Set<ScanColumn> keepPage = keepIterator.next();
 
-            while ( subtractIterator.hasNext() && keepPage.size() > 0 ) {
-                keepPage.removeAll( subtractIterator.next() );
+            ScanColumn[] columns = keepPage.toArray( new ScanColumn[keepPage.size()] );
+
+            SortedIdSet keepIds = SortedIdSet.of( keepPage );
+
+            //the positions in the keep page of every id found in the subtract pages
+            BitSet removed = new BitSet( columns.length );
+
+            int removedCount = 0;
+
+            while ( removedCount < columns.length && subtractIterator.hasNext() ) {
+                removedCount += keepIds.markMatches( SortedIdSet.of( subtractIterator.next() ), removed );
             }
 
             subtractIterator.reset();
 
-            results.addAll( keepPage );
+            for ( int i = removed.nextClearBit( 0 ); i < columns.length; i = removed.nextClearBit( i + 1 ) ) {
+                results.add( columns[i] );
+            }
         }
 
         return results;
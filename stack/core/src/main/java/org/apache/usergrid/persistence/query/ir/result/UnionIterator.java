@@ -139,18 +139,25 @@ public class UnionIterator extends MultiIterator {
 
 
         /**
-         * Add the column to this list
+         * Add the column to this list.  Columns outside the range are rejected before they're wrapped
          */
         public void add( ScanColumn col ) {
 
-            final UnionScanColumn unionScanColumn = new UnionScanColumn(col, uuidCursorGenerator );
+            final UUID uuid = col.getUUID();
 
             //less than our min, don't add
-            if ( min != null && min.compareTo( unionScanColumn ) >= 0 ) {
+            if ( min != null && UUIDComparator.staticCompare( min.getUUID(), uuid ) >= 0 ) {
                 return;
             }
 
-            int index = Collections.binarySearch( this.list, unionScanColumn );
+            final int size = this.list.size();
+
+            //full, and greater than our max, don't add
+            if ( size == maxSize && UUIDComparator.staticCompare( this.list.get( size - 1 ).getUUID(), uuid ) < 0 ) {
+                return;
+            }
+
+            int index = indexOf( uuid );
 
             //already present
             if ( index > -1 ) {
@@ -164,13 +171,37 @@ public class UnionIterator extends MultiIterator {
                 return;
             }
 
-            this.list.add( index, unionScanColumn );
+            this.list.add( index, new UnionScanColumn( col, uuidCursorGenerator ) );
+
+            if ( size + 1 > maxSize ) {
+                this.list.subList( maxSize, size + 1 ).clear();
+            }
+        }
 
-            final int size = this.list.size();
 
-            if ( size > maxSize ) {
-                this.list.subList( maxSize, size ).clear();
+        /**
+         * Binary search the list for the uuid.  Same contract as {@link Collections#binarySearch(List, Object)}
+         */
+        private int indexOf( final UUID uuid ) {
+            int low = 0;
+            int high = this.list.size() - 1;
+
+            while ( low <= high ) {
+                final int mid = ( low + high ) >>> 1;
+                final int compare = UUIDComparator.staticCompare( this.list.get( mid ).getUUID(), uuid );
+
+                if ( compare < 0 ) {
+                    low = mid + 1;
+                }
+                else if ( compare > 0 ) {
+                    high = mid - 1;
+                }
+                else {
+                    return mid;
+                }
             }
+
+            return -( low + 1 );
         }
 
 
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.changes;
+
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/** Unit tests for the in process change feed */
+public class ChangeFeedTest {
+
+    private static final UUID APP_ID = UUIDUtils.newTimeUUID();
+
+
+    @Test
+    public void noListenersNoEvents() {
+        ChangeFeed feed = new ChangeFeed( 10 );
+
+        feed.publish( event() );
+
+        assertEquals( 0, feed.getPublishedCount() );
+        assertEquals( 0, feed.getDroppedCount() );
+    }
+
+
+    @Test
+    public void listenerReceivesEvents() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed( 10 );
+
+        final CountDownLatch received = new CountDownLatch( 3 );
+
+        feed.addListener( new ChangeListener() {
+            @Override
+            public void onChange( ChangeEvent event ) {
+                received.countDown();
+            }
+        } );
+
+        feed.publish( event() );
+        feed.publish( event() );
+        feed.publish( event() );
+
+        assertTrue( "All events delivered", received.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 3, feed.getPublishedCount() );
+
+        feed.destroy();
+    }
+
+
+    @Test
+    public void fullFeedDropsEvents() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed( 2 );
+
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        //holds the dispatcher on the first event so the rest pile up
+        feed.addListener( new ChangeListener() {
+            @Override
+            public void onChange( ChangeEvent event ) {
+                blocked.countDown();
+                try {
+                    release.await();
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } );
+
+        feed.publish( event() );
+        assertTrue( blocked.await( 5, TimeUnit.SECONDS ) );
+
+        feed.publish( event() );
+        feed.publish( event() );
+        feed.publish( event() );
+
+        assertEquals( 3, feed.getPublishedCount() );
+        assertEquals( 1, feed.getDroppedCount() );
+
+        release.countDown();
+        feed.destroy();
+    }
+
+
+    private static ChangeEvent event() {
+        return ChangeEvent.entityChange( ChangeEvent.Type.CREATE, APP_ID, "users", UUIDUtils.newTimeUUID(), "user",
+                null );
+    }
+}
@@ -17,6 +17,12 @@
 package org.apache.usergrid.count;
 
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.apache.usergrid.count.common.Count;
@@ -48,4 +54,56 @@ public class SimpleBatcherTest {
         simpleBatcher.add( new Count( "Counter", "k1", "c4", 1 ) );
         assertEquals( 1, simpleBatcher.getBatchSubmissionCount() );
     }
+
+
+    @Test
+    public void testFlushSubmitsPartialBatch() {
+        SimpleBatcher simpleBatcher = new SimpleBatcher();
+        simpleBatcher.setBatchSubmitter( new Slf4JBatchSubmitter() );
+        simpleBatcher.setBatchSize( 4 );
+        simpleBatcher.add( new Count( "Counter", "k1", "counter1", 1 ) );
+        simpleBatcher.add( new Count( "Counter", "k1", "c2", 2 ) );
+
+        assertEquals( 0, simpleBatcher.getBatchSubmissionCount() );
+        simpleBatcher.flush();
+        assertEquals( 1, simpleBatcher.getBatchSubmissionCount() );
+
+        // nothing left to submit
+        simpleBatcher.flush();
+        assertEquals( 1, simpleBatcher.getBatchSubmissionCount() );
+    }
+
+
+    @Test
+    public void testFlushCountsFailedBatches() {
+        SimpleBatcher simpleBatcher = new SimpleBatcher();
+        simpleBatcher.setBatchSubmitter( new BatchSubmitter() {
+            @Override
+            public Future<?> submit( Collection<Count> counts ) {
+                FutureTask<Void> task = new FutureTask<Void>( new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        throw new IOException( "Unable to write counts" );
+                    }
+                } );
+                task.run();
+                return task;
+            }
+
+
+            @Override
+            public void shutdown() {
+            }
+        } );
+        simpleBatcher.setBatchSize( 2 );
+        simpleBatcher.add( new Count( "Counter", "k1", "c1", 1 ) );
+        simpleBatcher.add( new Count( "Counter", "k1", "c2", 1 ) );
+        simpleBatcher.add( new Count( "Counter", "k1", "c3", 1 ) );
+
+        // the full batch and the partial one
+        assertEquals( 2, simpleBatcher.flush() );
+
+        // failures are only reported once
+        assertEquals( 0, simpleBatcher.flush() );
+    }
 }
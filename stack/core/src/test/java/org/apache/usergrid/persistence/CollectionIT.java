@@ -17,11 +17,14 @@
 package org.apache.usergrid.persistence;
 
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.Rule;
@@ -33,17 +36,27 @@ import org.apache.usergrid.Application;
 import org.apache.usergrid.CoreApplication;
 import org.apache.usergrid.cassandra.Concurrent;
 import org.apache.usergrid.persistence.Results.Level;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.cassandra.EntityManagerImpl;
+import org.apache.usergrid.persistence.cassandra.QueryResultCache;
+import org.apache.usergrid.persistence.cassandra.UniqueValueCache;
 import org.apache.usergrid.persistence.entities.User;
 import org.apache.usergrid.persistence.exceptions.DuplicateUniquePropertyExistsException;
 import org.apache.usergrid.persistence.exceptions.NoIndexException;
+import org.apache.usergrid.persistence.hector.CountingMutator;
 import org.apache.usergrid.utils.JsonUtils;
 import org.apache.usergrid.utils.UUIDUtils;
 
+import me.prettyprint.hector.api.mutation.Mutator;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.batchExecute;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.apache.usergrid.persistence.cassandra.Serializers.be;
 import static org.apache.usergrid.utils.MapUtils.hashMap;
 
 
@@ -1146,6 +1159,95 @@ public class CollectionIT extends AbstractCoreIT {
     }
 
 
+    @Test
+    public void pagingWithQueryResultCache() throws Exception {
+
+        UUID applicationId = setup.createApplication( "testOrganization", "pagingWithQueryResultCache" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        ( ( EntityManagerImpl ) em ).setQueryResultCache( new QueryResultCache( 100, 60000 ) );
+
+        int size = 35;
+        List<UUID> entityIds = new ArrayList<UUID>();
+
+        for ( int i = 0; i < size; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "index", i );
+            Entity created = em.create( "cachedpage", properties );
+
+            entityIds.add( created.getUuid() );
+        }
+
+        int pageSize = 10;
+
+        // the second pass reads the first page from the cache
+        for ( int pass = 0; pass < 2; pass++ ) {
+            Query query = Query.fromQL( "select * where index >= 0" );
+            query.setLimit( pageSize );
+
+            Results r = em.searchCollection( em.getApplicationRef(), "cachedpages", query );
+
+            List<UUID> returned = new ArrayList<UUID>();
+
+            for ( int page = 0; page < 10; page++ ) {
+                for ( Entity entity : r.getEntities() ) {
+                    returned.add( entity.getUuid() );
+                }
+
+                if ( !r.hasCursor() ) {
+                    break;
+                }
+
+                r = r.getNextPageResults();
+            }
+
+            assertNull( r.getCursor() );
+            assertEquals( entityIds, returned );
+        }
+    }
+
+
+    @Test
+    public void queryResultCacheInvalidatedAfterExecute() throws Exception {
+
+        UUID applicationId = setup.createApplication( "testOrganization", "queryResultCacheInvalidatedAfterExecute" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        ( ( EntityManagerImpl ) em ).setQueryResultCache( new QueryResultCache( 100, 600000 ) );
+
+        List<Entity> entities = new ArrayList<Entity>();
+
+        for ( int i = 0; i < 3; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "index", i );
+            entities.add( em.create( "cachedremoval", properties ) );
+        }
+
+        String ql = "select * where index >= 0";
+
+        assertEquals( 3, em.searchCollection( em.getApplicationRef(), "cachedremovals", Query.fromQL( ql ) ).size() );
+
+        //a query made after the removal is batched but before it executes doesn't stay cached
+        Mutator<ByteBuffer> m = CountingMutator
+                .createFlushingMutator( setup.getCassSvc().getApplicationKeyspace( applicationId ), be );
+        ( ( EntityManagerImpl ) em ).getRelationManager( em.getApplicationRef() )
+                                    .batchRemoveFromCollection( m, "cachedremovals", entities.get( 0 ), true,
+                                            UUIDUtils.newTimeUUID() );
+
+        assertEquals( 3, em.searchCollection( em.getApplicationRef(), "cachedremovals", Query.fromQL( ql ) ).size() );
+
+        batchExecute( m, CassandraService.RETRY_COUNT );
+
+        assertEquals( 2, em.searchCollection( em.getApplicationRef(), "cachedremovals", Query.fromQL( ql ) ).size() );
+    }
+
+
     @Test
     public void subpropertyQuerying() throws Exception {
         Map<String, Object> root = new HashMap<String, Object>();
@@ -1696,4 +1798,177 @@ public class CollectionIT extends AbstractCoreIT {
 
         em.create( "restaurant", restaurant2.getProperties() );
     }
+
+
+    @Test
+    public void duplicateUniquePropertiesBatchTest() throws Exception {
+        UUID applicationId = setup.createApplication( "testOrganization", "duplicateUniquePropertiesBatchTest" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        User user = new User();
+        user.setUsername( "foobar" );
+        user.setEmail( "foobar@usergrid.org" );
+
+        Entity createUser = em.create( user );
+        assertNotNull( createUser );
+
+        Map<String, Object> ownValues = new HashMap<String, Object>();
+        ownValues.put( "username", "foobar" );
+        ownValues.put( "email", "foobar@usergrid.org" );
+
+        Map<String, Object> takenEmail = new HashMap<String, Object>();
+        takenEmail.put( "username", "foobar2" );
+        takenEmail.put( "email", "foobar@usergrid.org" );
+
+        Map<String, Object> freeValues = new HashMap<String, Object>();
+        freeValues.put( "username", "foobar3" );
+        freeValues.put( "email", "foobar3@usergrid.org" );
+
+        //repeats a value from the previous entity in the same batch
+        Map<String, Object> repeatedValues = new HashMap<String, Object>();
+        repeatedValues.put( "username", "foobar3" );
+        repeatedValues.put( "email", "foobar4@usergrid.org" );
+
+        UUID takenId = UUIDUtils.newTimeUUID();
+        UUID freeId = UUIDUtils.newTimeUUID();
+        UUID repeatedId = UUIDUtils.newTimeUUID();
+
+        Map<UUID, Map<String, Object>> entities = new LinkedHashMap<UUID, Map<String, Object>>();
+        entities.put( createUser.getUuid(), ownValues );
+        entities.put( takenId, takenEmail );
+        entities.put( freeId, freeValues );
+        entities.put( repeatedId, repeatedValues );
+
+        Map<UUID, Set<String>> duplicates = em.getDuplicateUniqueProperties( "user", entities );
+
+        assertEquals( 2, duplicates.size() );
+        assertEquals( Collections.singleton( "email" ), duplicates.get( takenId ) );
+        assertEquals( Collections.singleton( "username" ), duplicates.get( repeatedId ) );
+
+        assertTrue( em.getDuplicateUniqueProperties( "user", freeId, freeValues ).isEmpty() );
+
+        //an entity that doesn't exist yet has no id and owns none of the values
+        assertEquals( 2, em.getDuplicateUniqueProperties( "user", null, ownValues ).size() );
+        assertEquals( Collections.singleton( "email" ),
+                em.getDuplicateUniqueProperties( "user", null, takenEmail ) );
+        assertTrue( em.getDuplicateUniqueProperties( "user", null, freeValues ).isEmpty() );
+    }
+
+
+    @Test
+    public void uniqueValueCache() throws Exception {
+        UUID applicationId = setup.createApplication( "testOrganization", "uniqueValueCache" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        //long enough that only invalidation can make a lookup see a change
+        UniqueValueCache cache = new UniqueValueCache( 100, 600000 );
+        ( ( EntityManagerImpl ) em ).setUniqueValueCache( cache );
+
+        User user = new User();
+        user.setUsername( "cached1" );
+        user.setEmail( "cached@usergrid.org" );
+
+        Entity created = em.create( user );
+        assertNotNull( created );
+
+        Set<String> username = Collections.singleton( "username" );
+
+        //the first lookup caches the owner, the second is served from the cache
+        assertEquals( username, duplicateUsernames( em, "cached1" ) );
+        assertEquals( Collections.singleton( created.getUuid() ),
+                cache.get( applicationId, ( String ) key( applicationId, "users", "username", "cached1" ) ) );
+        assertEquals( username, duplicateUsernames( em, "cached1" ) );
+
+        //updating the value invalidates the old and the new value
+        em.setProperty( created, "username", "cached2" );
+
+        assertTrue( duplicateUsernames( em, "cached1" ).isEmpty() );
+        assertEquals( username, duplicateUsernames( em, "cached2" ) );
+
+        //a lookup made after the update is batched but before it executes doesn't stay cached
+        Mutator<ByteBuffer> m = CountingMutator
+                .createFlushingMutator( setup.getCassSvc().getApplicationKeyspace( applicationId ), be );
+        ( ( EntityManagerImpl ) em ).batchSetProperty( m, created, "username", "cached3", UUIDUtils.newTimeUUID() );
+
+        assertTrue( duplicateUsernames( em, "cached3" ).isEmpty() );
+        assertEquals( username, duplicateUsernames( em, "cached2" ) );
+
+        batchExecute( m, CassandraService.RETRY_COUNT );
+
+        assertEquals( username, duplicateUsernames( em, "cached3" ) );
+        assertTrue( duplicateUsernames( em, "cached2" ).isEmpty() );
+
+        //deleting the entity frees its values
+        em.delete( created );
+
+        assertTrue( duplicateUsernames( em, "cached3" ).isEmpty() );
+    }
+
+
+    private static Set<String> duplicateUsernames( EntityManager em, String username ) throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put( "username", username );
+
+        return em.getDuplicateUniqueProperties( "user", null, properties );
+    }
+
+
+    @Test
+    public void countAndExists() throws Exception {
+        UUID applicationId = setup.createApplication( "testOrganization", "testCountAndExists" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        for ( int i = 0; i < 25; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "ordinal", i );
+            properties.put( "even", i % 2 == 0 );
+
+            em.create( "thing", properties );
+        }
+
+        Results r = em.searchCollection( em.getApplicationRef(), "things",
+                Query.fromQL( "select count(*) where even = true" ) );
+
+        assertEquals( 0, r.size() );
+        assertEquals( 13l, ( ( Map<?, ?> ) r.getData() ).get( "count" ) );
+
+        //count ignores the limit
+        Query query = Query.fromQL( "select count(*) where ordinal >= 5" );
+        query.setLimit( 1 );
+
+        r = em.searchCollection( em.getApplicationRef(), "things", query );
+
+        assertEquals( 20l, ( ( Map<?, ?> ) r.getData() ).get( "count" ) );
+
+        //sorting doesn't change a count
+        r = em.searchCollection( em.getApplicationRef(), "things",
+                Query.fromQL( "select count(*) where even = true order by ordinal desc" ) );
+
+        assertEquals( 13l, ( ( Map<?, ?> ) r.getData() ).get( "count" ) );
+
+        //exists over an intersection, only the last entity matches
+        r = em.searchCollection( em.getApplicationRef(), "things",
+                Query.fromQL( "select exists(*) where even = true and ordinal > 23" ) );
+
+        assertEquals( true, ( ( Map<?, ?> ) r.getData() ).get( "exists" ) );
+
+        r = em.searchCollection( em.getApplicationRef(), "things",
+                Query.fromQL( "select exists(*) where ordinal = 24" ) );
+
+        assertEquals( true, ( ( Map<?, ?> ) r.getData() ).get( "exists" ) );
+
+        r = em.searchCollection( em.getApplicationRef(), "things",
+                Query.fromQL( "select exists(*) where ordinal = 25" ) );
+
+        assertEquals( false, ( ( Map<?, ?> ) r.getData() ).get( "exists" ) );
+    }
 }
@@ -17,6 +17,7 @@
 package org.apache.usergrid.persistence;
 
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -29,16 +30,28 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.AbstractCoreIT;
 import org.apache.usergrid.CoreITSuite;
 import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.cassandra.CounterUtils;
+import org.apache.usergrid.persistence.cassandra.EntityManagerImpl;
 import org.apache.usergrid.persistence.entities.Event;
 import org.apache.usergrid.persistence.entities.Group;
 import org.apache.usergrid.persistence.entities.User;
+import org.apache.usergrid.persistence.hector.CountingMutator;
 import org.apache.usergrid.utils.JsonUtils;
 
 import org.apache.usergrid.count.SimpleBatcher;
 
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.mutation.Mutator;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.apache.usergrid.persistence.cassandra.ApplicationCF.ENTITY_DICTIONARIES;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.addDeleteToMutator;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.batchExecute;
+import static org.apache.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
 import static org.apache.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
+import static org.apache.usergrid.persistence.cassandra.Serializers.be;
 
 
 @Concurrent()
@@ -233,4 +246,135 @@ public class CounterIT extends AbstractCoreIT {
         LOG.info( JsonUtils.mapToJsonString( r.getCounters() ) );
         assertEquals( 1, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
     }
+
+
+    @Test
+    public void testRollups() throws Exception {
+        LOG.info( "CounterIT.testRollups" );
+
+        UUID applicationId = setup.createApplication( "testOrganization", "testCounterRollups" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        CassandraService cass = CoreITSuite.cassandraResource.getBean( CassandraService.class );
+        Keyspace ko = cass.getApplicationKeyspace( applicationId );
+        SimpleBatcher batcher = CoreITSuite.cassandraResource.getBean( SimpleBatcher.class );
+
+        // a private instance of the deployed counter type, the shared one must keep writing every resolution for the
+        // other tests
+        CounterUtils counterUtils = new CounterUtils();
+        counterUtils.setBatcher( batcher );
+        counterUtils.setCounterType( "n" );
+        ( ( EntityManagerImpl ) em ).setCounterUtils( counterUtils );
+
+        UUID user = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+
+        // counted before rollups are turned on, already in every resolution
+        incrementRollupVisits( counterUtils, cass, ko, applicationId, user, 2, now );
+
+        counterUtils.setRollups( true );
+        incrementRollupVisits( counterUtils, cass, ko, applicationId, user, 3, now );
+        batcher.flush();
+
+        Results r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.MINUTE, now, now,
+                false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        // never rolled up, the pending counts are read from the minutes
+        r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.HOUR, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        assertEquals( 0, counterUtils.getRollupCheckpoint( ko, applicationId ) );
+        counterUtils.rollup( ko, applicationId, now + ( 2 * 60 * 1000 ) );
+        assertEquals( CounterResolution.MINUTE.round( now + ( 2 * 60 * 1000 ) ),
+                counterUtils.getRollupCheckpoint( ko, applicationId ) );
+
+        r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.HOUR, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        r = em.getAggregateCounters( null, null, null, "rollup", CounterResolution.ALL, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        // the checkpoint has moved past the minute, rolling up again must not count it twice
+        counterUtils.rollup( ko, applicationId, now + ( 2 * 60 * 1000 ) );
+
+        r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.DAY, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        // a rollup that wrote its counts but not the checkpoint, the counts know which minutes they include
+        Mutator<ByteBuffer> m = CountingMutator.createFlushingMutator( ko, be );
+        addDeleteToMutator( m, ENTITY_DICTIONARIES, key( applicationId, CounterUtils.DICTIONARY_COUNTER_ROLLUPS ),
+                CounterUtils.ROLLUP_CHECKPOINT, cass.createTimestamp() );
+        batchExecute( m, CassandraService.RETRY_COUNT );
+
+        r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.HOUR, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        counterUtils.rollup( ko, applicationId, now + ( 2 * 60 * 1000 ) );
+
+        r = em.getAggregateCounters( user, null, null, "rollup.visits", CounterResolution.HOUR, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+
+        r = em.getAggregateCounters( null, null, null, "rollup", CounterResolution.ALL, now, now, false );
+        assertEquals( 5, r.getCounters().get( 0 ).getValues().get( 0 ).getValue() );
+    }
+
+
+    @Test
+    public void testTimestampedIncrement() throws Exception {
+        LOG.info( "CounterIT.testTimestampedIncrement" );
+
+        UUID applicationId = setup.createApplication( "testOrganization", "testTimestampedIncrement" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        SimpleBatcher batcher = CoreITSuite.cassandraResource.getBean( SimpleBatcher.class );
+
+        // both writes must fall in the same minute
+        if ( System.currentTimeMillis() % ( 60 * 1000 ) > 50 * 1000 ) {
+            Thread.sleep( 11 * 1000 );
+        }
+
+        long now = System.currentTimeMillis();
+        long minute = CounterResolution.MINUTE.round( now );
+
+        // written per request, as of now
+        em.incrementAggregateCounters( null, null, null, "metered.requests", 1 );
+
+        // accumulated in memory and written as of the start of the minute
+        Map<String, Long> counters = new HashMap<String, Long>();
+        counters.put( "metered.requests", 2L );
+        em.incrementAggregateCounters( null, null, null, counters, minute );
+
+        batcher.flush();
+
+        for ( CounterResolution resolution : new CounterResolution[] {
+                CounterResolution.MINUTE, CounterResolution.HOUR, CounterResolution.DAY, CounterResolution.ALL
+        } ) {
+            Results r = em.getAggregateCounters( null, null, null, "metered.requests", resolution, now, now, false );
+
+            assertEquals( 1, r.getCounters().size() );
+            assertEquals( resolution.toString(), 1, r.getCounters().get( 0 ).getValues().size() );
+
+            AggregateCounter counter = r.getCounters().get( 0 ).getValues().get( 0 );
+            assertEquals( resolution.toString(), 3, counter.getValue() );
+            assertEquals( resolution.toString(), resolution.round( now ), counter.getTimestamp() );
+        }
+    }
+
+
+    private void incrementRollupVisits( CounterUtils counterUtils, CassandraService cass, Keyspace ko,
+                                        UUID applicationId, UUID user, int count, long timestamp ) throws Exception {
+        Mutator<ByteBuffer> m = CountingMutator.createFlushingMutator( ko, be );
+        for ( int i = 0; i < count; i++ ) {
+            counterUtils.batchIncrementAggregateCounters( m, applicationId, user, null, null, null, "rollup.visits", 1,
+                    timestamp, cass.createTimestamp() );
+        }
+        batchExecute( m, CassandraService.RETRY_COUNT );
+    }
 }
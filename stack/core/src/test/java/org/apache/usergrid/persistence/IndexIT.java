@@ -18,7 +18,10 @@ package org.apache.usergrid.persistence;
 
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -29,9 +32,11 @@ import org.apache.usergrid.AbstractCoreIT;
 import org.apache.usergrid.CoreITSuite;
 import org.apache.usergrid.cassandra.Concurrent;
 import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.cassandra.IndexRebuilder;
 import org.apache.usergrid.persistence.cassandra.IndexUpdate;
 import org.apache.usergrid.persistence.cassandra.IndexUpdate.IndexEntry;
 import org.apache.usergrid.persistence.cassandra.RelationManagerImpl;
+import org.apache.usergrid.persistence.entities.Reindex;
 import org.apache.usergrid.persistence.hector.CountingMutator;
 import org.apache.usergrid.utils.JsonUtils;
 import org.apache.usergrid.utils.UUIDUtils;
@@ -460,4 +465,197 @@ public class IndexIT extends AbstractCoreIT {
             fail( "The last match was null but should have been herring!" );
         }
     }
+
+
+    @Test
+    public void testIndexRebuild() throws Exception {
+        LOG.info( "testIndexRebuild" );
+
+        UUID applicationId = setup.createApplication( "testOrganization", "testIndexRebuild" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        for ( String name : alphabet ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", name );
+
+            em.create( "item", properties );
+        }
+
+        Reindex reindex = new Reindex();
+        reindex.setApplicationId( applicationId );
+        reindex = em.create( reindex );
+
+        IndexBucketLocator locator = CoreITSuite.cassandraResource.getBean( IndexBucketLocator.class );
+
+        IndexRebuilder rebuilder = new IndexRebuilder( em, em, reindex, locator.getBuckets(), 4, 0, 10 );
+
+        assertEquals( alphabet.length, rebuilder.run( Collections.singleton( "items" ), null ) );
+        assertEquals( alphabet.length, reindex.getCount().longValue() );
+
+        @SuppressWarnings("unchecked") Map<String, Object> cursors =
+                ( Map<String, Object> ) reindex.getCheckpoints().get( "items" );
+
+        for ( String bucket : locator.getBuckets() ) {
+            assertEquals( IndexRebuilder.DONE, cursors.get( bucket ) );
+        }
+
+        // the previous entries were replaced, not duplicated
+        Results r = em.searchCollection( em.getApplicationRef(), "items", Query.fromQL( "name = 'Echo'" ) );
+        assertEquals( 1, r.size() );
+
+        Query query = Query.fromQL( "order by name" );
+        query.setLimit( 100 );
+        r = em.searchCollection( em.getApplicationRef(), "items", query );
+        assertEquals( alphabet.length, r.size() );
+
+        for ( int i = 0; i < alphabet.length; i++ ) {
+            assertEquals( alphabet[i], r.getEntities().get( i ).getProperty( "name" ) );
+        }
+
+        // every bucket is checkpointed as done, nothing is left to resume
+        reindex = em.get( reindex.getUuid(), Reindex.class );
+        rebuilder = new IndexRebuilder( em, em, reindex, locator.getBuckets(), 4, 0, 10 );
+        assertEquals( 0, rebuilder.run( Collections.singleton( "items" ), null ) );
+    }
+
+
+    @Test
+    public void testIndexRebuildRestoresEntries() throws Exception {
+        LOG.info( "testIndexRebuildRestoresEntries" );
+
+        UUID applicationId = setup.createApplication( "testOrganization", "testIndexRebuildRestoresEntries" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        Entity echo = null;
+
+        for ( String name : alphabet ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", name );
+
+            Entity item = em.create( "item", properties );
+
+            if ( "Echo".equals( name ) ) {
+                echo = item;
+            }
+        }
+
+        dropNameIndex( em, applicationId, echo );
+
+        Results r = em.searchCollection( em.getApplicationRef(), "items", Query.fromQL( "name = 'Echo'" ) );
+        assertEquals( 0, r.size() );
+
+        Reindex reindex = new Reindex();
+        reindex.setApplicationId( applicationId );
+        reindex = em.create( reindex );
+
+        IndexBucketLocator locator = CoreITSuite.cassandraResource.getBean( IndexBucketLocator.class );
+
+        IndexRebuilder rebuilder = new IndexRebuilder( em, em, reindex, locator.getBuckets(), 4, 0, 10 );
+        assertEquals( alphabet.length, rebuilder.run( Collections.singleton( "items" ), null ) );
+
+        r = em.searchCollection( em.getApplicationRef(), "items", Query.fromQL( "name = 'Echo'" ) );
+        assertEquals( 1, r.size() );
+        assertEquals( echo.getUuid(), r.getEntity().getUuid() );
+    }
+
+
+    @Test
+    public void testIndexRebuildResumesMidBucket() throws Exception {
+        LOG.info( "testIndexRebuildResumesMidBucket" );
+
+        UUID applicationId = setup.createApplication( "testOrganization", "testIndexRebuildResumesMidBucket" );
+        assertNotNull( applicationId );
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        assertNotNull( em );
+
+        for ( String name : alphabet ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", name );
+
+            em.create( "item", properties );
+        }
+
+        IndexBucketLocator locator = CoreITSuite.cassandraResource.getBean( IndexBucketLocator.class );
+
+        // find a bucket with a few entities, and pretend a previous run stopped after its first one
+        String resumed = null;
+        List<UUID> ids = null;
+
+        for ( String bucket : locator.getBuckets() ) {
+            ids = em.getApplicationCollectionIds( "items", bucket, null, 100 );
+
+            if ( ids.size() >= 2 ) {
+                resumed = bucket;
+                break;
+            }
+        }
+
+        assertNotNull( "No bucket holds more than one entity", resumed );
+
+        Map<String, Object> cursors = new HashMap<String, Object>();
+
+        for ( String bucket : locator.getBuckets() ) {
+            cursors.put( bucket, IndexRebuilder.DONE );
+        }
+
+        cursors.put( resumed, ids.get( 0 ).toString() );
+
+        Map<String, Object> checkpoints = new HashMap<String, Object>();
+        checkpoints.put( "items", cursors );
+
+        Reindex reindex = new Reindex();
+        reindex.setApplicationId( applicationId );
+        reindex.setCheckpoints( checkpoints );
+        reindex.setCount( 1L );
+        reindex = em.create( reindex );
+
+        // lose the index entries of the entity at the cursor and of the last one of the bucket
+        Entity atCursor = em.get( ids.get( 0 ) );
+        Entity last = em.get( ids.get( ids.size() - 1 ) );
+
+        dropNameIndex( em, applicationId, atCursor );
+        dropNameIndex( em, applicationId, last );
+
+        reindex = em.get( reindex.getUuid(), Reindex.class );
+
+        IndexRebuilder rebuilder = new IndexRebuilder( em, em, reindex, locator.getBuckets(), 4, 0, 10 );
+
+        // only the rest of the bucket is rebuilt
+        assertEquals( ids.size() - 1, rebuilder.run( Collections.singleton( "items" ), null ) );
+        assertEquals( ids.size(), reindex.getCount().longValue() );
+        assertEquals( IndexRebuilder.DONE, ( ( Map<?, ?> ) reindex.getCheckpoints().get( "items" ) ).get( resumed ) );
+
+        Results r = em.searchCollection( em.getApplicationRef(), "items",
+                Query.fromQL( "name = '" + last.getProperty( "name" ) + "'" ) );
+        assertEquals( 1, r.size() );
+
+        r = em.searchCollection( em.getApplicationRef(), "items",
+                Query.fromQL( "name = '" + atCursor.getProperty( "name" ) + "'" ) );
+        assertEquals( 0, r.size() );
+    }
+
+
+    /** Remove the index entries of the entity's name, the name itself is left in place */
+    private void dropNameIndex( EntityManager em, UUID applicationId, Entity entity ) throws Exception {
+        CassandraService cass = CoreITSuite.cassandraResource.getBean( CassandraService.class );
+
+        Keyspace ko = cass.getApplicationKeyspace( applicationId );
+        Mutator<ByteBuffer> m = CountingMutator.createFlushingMutator( ko, ByteBufferSerializer.get() );
+
+        RelationManagerImpl impl = ( RelationManagerImpl ) em.getRelationManager( entity );
+
+        //a null value only removes the previous entries, as when the property is deleted
+        impl.batchUpdatePropertyIndexes( m, "name", null, true, false, UUIDUtils.newTimeUUID() );
+
+        m.execute();
+
+        assertEquals( entity.getProperty( "name" ), em.getProperty( entity, "name" ) );
+    }
 }
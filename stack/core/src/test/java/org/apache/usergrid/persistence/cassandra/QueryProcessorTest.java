@@ -18,7 +18,10 @@ package org.apache.usergrid.persistence.cassandra;
 
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.antlr.runtime.ANTLRStringStream;
@@ -28,11 +31,13 @@ import org.junit.Test;
 import org.apache.usergrid.cassandra.Concurrent;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.exceptions.PersistenceException;
+import org.apache.usergrid.persistence.query.ir.AllNode;
 import org.apache.usergrid.persistence.query.ir.AndNode;
 import org.apache.usergrid.persistence.query.ir.NotNode;
 import org.apache.usergrid.persistence.query.ir.OrNode;
 import org.apache.usergrid.persistence.query.ir.OrderByNode;
 import org.apache.usergrid.persistence.query.ir.QueryNode;
+import org.apache.usergrid.persistence.query.ir.QueryNodeExplainer;
 import org.apache.usergrid.persistence.query.ir.QuerySlice;
 import org.apache.usergrid.persistence.query.ir.SliceNode;
 import org.apache.usergrid.persistence.query.ir.WithinNode;
@@ -819,4 +824,86 @@ public class QueryProcessorTest {
 
 
     }
+
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void explainNodes() throws Exception {
+        String queryString = "select * where a = 5 and (b = 'foo' or c > 2)";
+
+        ANTLRStringStream in = new ANTLRStringStream( queryString );
+        QueryFilterLexer lexer = new QueryFilterLexer( in );
+        TokenRewriteStream tokens = new TokenRewriteStream( lexer );
+        QueryFilterParser parser = new QueryFilterParser( tokens );
+
+        Query query = parser.ql().query;
+
+        QueryProcessor processor = new QueryProcessor( null, null, query, null, null );
+
+        Map<String, Object> explained = QueryNodeExplainer.explain( processor.getFirstNode() );
+
+        assertEquals( "AndNode", explained.get( "type" ) );
+
+        List<Map<String, Object>> children = ( List<Map<String, Object>> ) explained.get( "children" );
+
+        assertEquals( 2, children.size() );
+
+        Map<String, Object> slice = children.get( 0 );
+
+        assertEquals( "SliceNode", slice.get( "type" ) );
+        assertEquals( Arrays.asList( "a >= 5 and <= 5" ), slice.get( "slices" ) );
+
+        Map<String, Object> or = children.get( 1 );
+
+        assertEquals( "OrNode", or.get( "type" ) );
+        assertEquals( 2, ( ( List<Map<String, Object>> ) or.get( "children" ) ).size() );
+    }
+
+
+    @Test
+    public void aggregatesReadFullPages() throws Exception {
+        String queryString = "select exists(*) where a = 5";
+
+        ANTLRStringStream in = new ANTLRStringStream( queryString );
+        QueryFilterLexer lexer = new QueryFilterLexer( in );
+        TokenRewriteStream tokens = new TokenRewriteStream( lexer );
+        QueryFilterParser parser = new QueryFilterParser( tokens );
+
+        Query query = parser.ql().query;
+        query.setLimit( 1 );
+
+        QueryProcessor processor = new QueryProcessor( null, null, query, null, null );
+
+        QueryNode node = processor.getFirstNode();
+
+        assertEquals( QueryProcessor.PAGE_SIZE, processor.getPageSizeHint( node ) );
+    }
+
+
+    @Test
+    public void aggregatesIgnoreSorts() throws Exception {
+        String queryString = "select count(*) where a = 5 order by b desc";
+
+        ANTLRStringStream in = new ANTLRStringStream( queryString );
+        QueryFilterLexer lexer = new QueryFilterLexer( in );
+        TokenRewriteStream tokens = new TokenRewriteStream( lexer );
+        QueryFilterParser parser = new QueryFilterParser( tokens );
+
+        Query query = parser.ql().query;
+
+        QueryProcessor processor = new QueryProcessor( null, null, query, null, null );
+
+        assertTrue( processor.getFirstNode() instanceof SliceNode );
+
+        in = new ANTLRStringStream( "select count(*) order by b desc" );
+        lexer = new QueryFilterLexer( in );
+        tokens = new TokenRewriteStream( lexer );
+        parser = new QueryFilterParser( tokens );
+
+        query = parser.ql().query;
+
+        processor = new QueryProcessor( null, null, query, null, null );
+
+        assertTrue( processor.getFirstNode() instanceof AllNode );
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra;
+
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.query.ir.result.ScanColumn;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+@Concurrent()
+public class QueryResultCacheTest {
+
+    private static final UUID APP_ID = UUIDUtils.newTimeUUID();
+
+
+    @Test
+    public void disabled() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 0, 1000 );
+
+        assertFalse( cache.isEnabled() );
+        assertNull( cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "select * where a = 5" ) ) );
+    }
+
+
+    @Test
+    public void normalizedQueriesShareKey() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 100, 10000 );
+
+        String key = cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "select * where a = 5" ) );
+
+        assertNotNull( key );
+        assertEquals( key, cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( " SELECT *   where a = 5" ) ) );
+
+        //whitespace in quoted strings is significant
+        assertFalse( cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "select * where a = 'b  c'" ) )
+                          .equals( cache.getCacheKey( APP_ID, APP_ID, "things",
+                                  Query.fromQL( "select * where a = 'b c'" ) ) ) );
+
+        //so is the case of quoted strings
+        assertEquals( cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "select * where name = 'Bob'" ) ),
+                cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "SELECT * WHERE NAME = 'Bob'" ) ) );
+        assertFalse( cache.getCacheKey( APP_ID, APP_ID, "things", Query.fromQL( "select * where name = 'Bob'" ) )
+                          .equals( cache.getCacheKey( APP_ID, APP_ID, "things",
+                                  Query.fromQL( "select * where name = 'bob'" ) ) ) );
+
+        Query limited = Query.fromQL( "select * where a = 5" );
+        limited.setLimit( 50 );
+
+        assertFalse( key.equals( cache.getCacheKey( APP_ID, APP_ID, "things", limited ) ) );
+    }
+
+
+    @Test
+    public void onlyFirstPagesCached() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 100, 10000 );
+
+        Query query = Query.fromQL( "select * where a = 5" );
+        query.setCursor( "foo" );
+
+        assertNull( cache.getCacheKey( APP_ID, APP_ID, "things", query ) );
+
+        query = Query.fromQL( "select * where a = 5" );
+        query.addEqualityFilter( "b", 6 );
+
+        assertNull( cache.getCacheKey( APP_ID, APP_ID, "things", query ) );
+
+        query = Query.fromQL( "select * where a = 5" );
+        query.setExplain( true );
+
+        assertNull( cache.getCacheKey( APP_ID, APP_ID, "things", query ) );
+    }
+
+
+    @Test
+    public void invalidate() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 100, 10000 );
+
+        Query query = Query.fromQL( "select * where a = 5" );
+
+        String key = cache.getCacheKey( APP_ID, APP_ID, "things", query );
+
+        cache.put( key, Collections.<ScanColumn>emptyList(), "cursor" );
+
+        assertEquals( "cursor", cache.get( key ).getCursor() );
+
+        //other collections are left alone
+        cache.invalidate( APP_ID, APP_ID, "others" );
+
+        assertEquals( key, cache.getCacheKey( APP_ID, APP_ID, "things", query ) );
+
+        cache.invalidate( APP_ID, APP_ID, "things" );
+
+        String invalidated = cache.getCacheKey( APP_ID, APP_ID, "things", query );
+
+        assertFalse( key.equals( invalidated ) );
+        assertNull( cache.get( invalidated ) );
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cassandra;
+
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+@Concurrent()
+public class UniqueValueCacheTest {
+
+    private static final UUID APP_ID = UUIDUtils.newTimeUUID();
+
+    private static final String KEY = "users:username:foobar";
+
+
+    @Test
+    public void hit() throws Exception {
+        UniqueValueCache cache = new UniqueValueCache( 100, 60000 );
+        assertTrue( cache.isEnabled() );
+
+        assertNull( cache.get( APP_ID, KEY ) );
+
+        Set<UUID> owners = Collections.singleton( UUIDUtils.newTimeUUID() );
+        cache.put( APP_ID, KEY, owners );
+
+        assertEquals( owners, cache.get( APP_ID, KEY ) );
+
+        //free values are cached too
+        Set<UUID> none = Collections.emptySet();
+        cache.put( APP_ID, "users:username:free", none );
+
+        assertEquals( none, cache.get( APP_ID, "users:username:free" ) );
+
+        //keys are per application
+        assertNull( cache.get( UUIDUtils.newTimeUUID(), KEY ) );
+    }
+
+
+    @Test
+    public void invalidate() throws Exception {
+        UniqueValueCache cache = new UniqueValueCache( 100, 60000 );
+
+        cache.put( APP_ID, KEY, Collections.singleton( UUIDUtils.newTimeUUID() ) );
+        cache.invalidate( APP_ID, KEY );
+
+        assertNull( cache.get( APP_ID, KEY ) );
+    }
+
+
+    @Test
+    public void expires() throws Exception {
+        UniqueValueCache cache = new UniqueValueCache( 100, 50 );
+
+        cache.put( APP_ID, KEY, Collections.singleton( UUIDUtils.newTimeUUID() ) );
+
+        Thread.sleep( 100 );
+
+        assertNull( cache.get( APP_ID, KEY ) );
+    }
+
+
+    @Test
+    public void disabledWithoutSize() throws Exception {
+        assertDisabled( new UniqueValueCache( 0, 60000 ) );
+    }
+
+
+    @Test
+    public void disabledWithoutTimeToLive() throws Exception {
+        assertDisabled( new UniqueValueCache( 100, 0 ) );
+    }
+
+
+    private static void assertDisabled( UniqueValueCache cache ) {
+        assertFalse( cache.isEnabled() );
+
+        cache.put( APP_ID, KEY, Collections.singleton( UUIDUtils.newTimeUUID() ) );
+        assertNull( cache.get( APP_ID, KEY ) );
+
+        //invalidating a disabled cache is a no-op
+        cache.invalidate( APP_ID, KEY );
+    }
+}
@@ -17,10 +17,19 @@
 package org.apache.usergrid.persistence.cassandra.util;
 
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 
@@ -51,4 +60,95 @@ public class TraceTagUnitTest {
         assertEquals( timedOpTag, traceTag.iterator().next() );
         traceTagManager.detach();
     }
+
+
+    @Test
+    public void profiledSummaries() throws Exception {
+        TraceTag traceTag = traceTagManager.createProfiled( "testprofile" );
+        assertTrue( traceTag.getProfiled() );
+        traceTagManager.attach( traceTag );
+
+        for ( int i = 0; i < 3; i++ ) {
+            TimedOpTag timedOpTag = traceTagManager.timerInstance();
+            timedOpTag.stopAndApply( "getColumns", true );
+            timedOpTag.applyOperation( "Entity_Properties", 1, 5 );
+            traceTagManager.addTimer( timedOpTag );
+        }
+
+        TimedOpTag timedOpTag = ( TimedOpTag ) taggedOpTimer.start( "READ" );
+        taggedOpTimer.stop( timedOpTag, "READ", true );
+
+        traceTag.removeOps();
+        traceTagManager.detach();
+
+        assertEquals( 0, traceTag.getOpCount() );
+        assertEquals( 4, traceTag.getTotalOpCount() );
+
+        Iterator<OpSummary> summaries = traceTag.getOpSummaries().iterator();
+        OpSummary summary = summaries.next();
+        assertEquals( "getColumns", summary.getTagName() );
+        assertEquals( "Entity_Properties", summary.getColumnFamily() );
+        assertEquals( 3, summary.getCount() );
+        assertEquals( 3, summary.getKeys() );
+        assertEquals( 15, summary.getColumns() );
+
+        summary = summaries.next();
+        assertEquals( "READ", summary.getTagName() );
+        assertEquals( null, summary.getColumnFamily() );
+        assertEquals( 1, summary.getCount() );
+        assertFalse( summaries.hasNext() );
+    }
+
+
+    @Test
+    public void unprofiledHasNoSummaries() throws Exception {
+        TraceTag traceTag = traceTagManager.create( "testtag2" );
+        traceTag.add( traceTagManager.timerInstance() );
+        assertFalse( traceTag.getProfiled() );
+        assertFalse( traceTag.getOpSummaries().iterator().hasNext() );
+    }
+
+
+    @Test
+    public void workersShareProfiledTrace() throws Exception {
+        final TraceTag traceTag = traceTagManager.createProfiled( "testworkers" );
+        traceTagManager.attach( traceTag );
+
+        // the workers attach the trace of the calling thread, as the shard searches do
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        for ( int i = 0; i < 4; i++ ) {
+            workers.add( executor.submit( new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    traceTagManager.attach( traceTag );
+                    try {
+                        for ( int j = 0; j < 250; j++ ) {
+                            TimedOpTag timedOpTag = traceTagManager.timerInstance();
+                            timedOpTag.stopAndApply( "getColumns", true );
+                            timedOpTag.applyOperation( "Entity_Id_Sets", 1, 2 );
+                            traceTagManager.addTimer( timedOpTag );
+                        }
+                    }
+                    finally {
+                        traceTagManager.detach();
+                    }
+                    return null;
+                }
+            } ) );
+        }
+        for ( Future<Void> worker : workers ) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        traceTagManager.detach();
+
+        assertEquals( 1000, traceTag.getTotalOpCount() );
+        assertTrue( traceTag.getOpCount() <= traceTagManager.getFlushAtOpCount() );
+
+        OpSummary summary = traceTag.getOpSummaries().iterator().next();
+        assertEquals( 1000, summary.getCount() );
+        assertEquals( 2000, summary.getColumns() );
+    }
 }
@@ -30,9 +30,13 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.cassandra.EntityManagerImpl;
 import org.apache.usergrid.persistence.cassandra.QueryProcessor;
+import org.apache.usergrid.persistence.cassandra.index.IndexCardinalityEstimator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -75,6 +79,39 @@ public class IntersectionTransitivePagingIT extends AbstractIteratingQueryIT {
     }
 
 
+    @Test
+    public void testPlanDrivesFromSmallestSlice() throws Exception {
+
+        //sampling is off by default
+        ( ( EntityManagerImpl ) app.getEm() ).setCardinalityEstimator(
+                new IndexCardinalityEstimator( setup.getCassSvc(), 1000, 60000, 10000 ) );
+
+        final CollectionIoHelper collectionIoHelper = new CollectionIoHelper( app );
+
+        performSetup( collectionIoHelper );
+
+        //only half of the entities in San Francisco have the postal code, regardless of the query order it should drive
+        testDrivenBy( collectionIoHelper, union, "intersect postalcode" );
+        testDrivenBy( collectionIoHelper, unionReverse, "intersect postalcode" );
+    }
+
+
+    @Test
+    public void testPlanKeepsQueryOrderWithoutSampling() throws Exception {
+
+        ( ( EntityManagerImpl ) app.getEm() ).setCardinalityEstimator(
+                new IndexCardinalityEstimator( setup.getCassSvc(), 0, 60000, 10000 ) );
+
+        final CollectionIoHelper collectionIoHelper = new CollectionIoHelper( app );
+
+        performSetup( collectionIoHelper );
+
+        //without estimates the first slice of the query drives the intersection
+        testDrivenBy( collectionIoHelper, union, "intersect city[size unknown]" );
+        testDrivenBy( collectionIoHelper, unionReverse, "intersect postalcode[size unknown]" );
+    }
+
+
     private List<UUID> performSetup( final IoHelper io ) throws Exception {
         io.doSetup();
 
@@ -125,6 +162,32 @@ public class IntersectionTransitivePagingIT extends AbstractIteratingQueryIT {
     }
 
 
+    private void testDrivenBy( final IoHelper io, final String queryString, final String driver ) throws Exception {
+
+        Query query = Query.fromQL( queryString );
+        query.setLimit( PAGE_SIZE );
+        query.setExplain( true );
+
+        Results results = io.getResults( query );
+
+        List<String> plan = results.getQueryPlan();
+
+        assertNotNull( "Intersection was planned", plan );
+
+        Map<String, Object> explain = results.getExplain();
+
+        assertNotNull( "Query was explained", explain );
+        assertEquals( plan, explain.get( "plan" ) );
+        assertTrue( "Every shard was explained", !( ( List<?> ) explain.get( "shards" ) ).isEmpty() );
+
+        for ( String step : plan ) {
+            LOG.info( "Plan for query '{}': {}", queryString, step );
+
+            assertTrue( step + " is driven by " + driver, step.toLowerCase().contains( driver ) );
+        }
+    }
+
+
     private void testUnionPaging( final IoHelper io, final String queryString, final List<UUID> expectedResults )
             throws Exception {
 
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.query.ir.result;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.apache.usergrid.persistence.query.ir.result.IteratorHelper.uuidColumn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SortedIdSetTest {
+
+    @Test
+    public void contains() {
+        List<ScanColumn> columns = new ArrayList<ScanColumn>();
+
+        for ( int i = 0; i < 100; i++ ) {
+            columns.add( uuidColumn( UUIDUtils.newTimeUUID() ) );
+        }
+
+        SortedIdSet set = SortedIdSet.of( columns );
+
+        assertEquals( 100, set.size() );
+
+        for ( ScanColumn column : columns ) {
+            assertTrue( set.contains( column.getUUID() ) );
+        }
+
+        assertFalse( set.contains( UUIDUtils.newTimeUUID() ) );
+    }
+
+
+    @Test
+    public void empty() {
+        SortedIdSet empty = SortedIdSet.of( new ArrayList<ScanColumn>() );
+
+        assertEquals( 0, empty.size() );
+        assertFalse( empty.contains( UUIDUtils.newTimeUUID() ) );
+
+        List<ScanColumn> columns = new ArrayList<ScanColumn>();
+        columns.add( uuidColumn( UUIDUtils.newTimeUUID() ) );
+
+        BitSet matches = new BitSet();
+
+        assertEquals( 0, SortedIdSet.of( columns ).markMatches( empty, matches ) );
+        assertEquals( 0, empty.markMatches( SortedIdSet.of( columns ), matches ) );
+        assertTrue( matches.isEmpty() );
+    }
+
+
+    /** Match sets of very different sizes in both directions, so both sides are galloped through */
+    @Test
+    public void markMatches() {
+        Random random = new Random( 42 );
+
+        UUID[] ids = new UUID[2000];
+
+        for ( int i = 0; i < ids.length; i++ ) {
+            ids[i] = UUIDUtils.newTimeUUID();
+        }
+
+        for ( int pass = 0; pass < 50; pass++ ) {
+            Set<ScanColumn> small = new LinkedHashSet<ScanColumn>();
+            Set<ScanColumn> large = new LinkedHashSet<ScanColumn>();
+
+            for ( int i = 0; i < 20; i++ ) {
+                small.add( uuidColumn( ids[random.nextInt( ids.length )] ) );
+            }
+
+            for ( int i = 0; i < 1500; i++ ) {
+                large.add( uuidColumn( ids[random.nextInt( ids.length )] ) );
+            }
+
+            assertMatches( small, large );
+            assertMatches( large, small );
+        }
+    }
+
+
+    private void assertMatches( Set<ScanColumn> current, Set<ScanColumn> other ) {
+        BitSet matches = new BitSet();
+
+        int matched = SortedIdSet.of( current ).markMatches( SortedIdSet.of( other ), matches );
+
+        int position = 0;
+        int expected = 0;
+
+        for ( ScanColumn column : current ) {
+            boolean contained = other.contains( column );
+
+            assertEquals( contained, matches.get( position ) );
+
+            if ( contained ) {
+                expected++;
+            }
+
+            position++;
+        }
+
+        assertEquals( expected, matched );
+
+        //matching again marks nothing new
+        assertEquals( 0, SortedIdSet.of( current ).markMatches( SortedIdSet.of( other ), matches ) );
+    }
+}
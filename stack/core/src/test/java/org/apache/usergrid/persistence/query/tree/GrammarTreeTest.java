@@ -32,7 +32,9 @@ import org.apache.usergrid.persistence.query.ir.OrNode;
 import antlr.NoViableAltException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -551,6 +553,48 @@ public class GrammarTreeTest {
     }
 
 
+    @Test
+    public void selectCount() throws QueryParseException {
+        Query query = Query.fromQL( "select count(*) where name = 'bob'" );
+
+        assertEquals( Query.SelectFunction.COUNT, query.getSelectFunction() );
+        assertFalse( query.hasSelectSubjects() );
+
+        Equal equal = ( Equal ) query.getRootOperand();
+
+        assertEquals( "name", equal.getProperty().getValue() );
+
+        query = Query.fromQL( "select exists(*) where name = 'bob'" );
+
+        assertEquals( Query.SelectFunction.EXISTS, query.getSelectFunction() );
+    }
+
+
+    @Test
+    public void selectPropertyNamedCount() throws QueryParseException {
+        Query query = Query.fromQL( "select count where count > 5" );
+
+        assertNull( query.getSelectFunction() );
+        assertTrue( query.getSelectSubjects().contains( "count" ) );
+
+        GreaterThan greaterThan = ( GreaterThan ) query.getRootOperand();
+
+        assertEquals( "count", greaterThan.getProperty().getValue() );
+    }
+
+
+    @Test
+    public void badSelectFunction() {
+        try {
+            Query.fromQL( "select sum(*) where name = 'bob'" );
+            fail( "sum isn't a select function" );
+        }
+        catch ( QueryParseException qpe ) {
+            //expected
+        }
+    }
+
+
     @Test
     public void badOrderByGrammar() throws QueryParseException {
         // from isn't allowed
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Drives the workers for a warmup and a measured period, each on its own thread.
+ * <p/>
+ * Closed loop, the default, sends each worker's next request as soon as the previous one returned, so it measures the
+ * most the stack sustains with that many clients.  Open loop sends requests on a fixed schedule at the given total
+ * rate.  When the stack falls behind the schedule latency is measured from when the request should have been sent,
+ * not from when it was, so a stall shows up in the percentiles of all the requests it delayed.
+ */
+public class Driver {
+
+    private static final Logger logger = LoggerFactory.getLogger( Driver.class );
+
+    private final List<Worker> workers;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final double rate;
+
+
+    /**
+     * @param workers The workers, one thread each
+     * @param warmupMillis The time to run before recording
+     * @param durationMillis The time to record for
+     * @param rate The total operations per second for an open loop, 0 for a closed loop
+     */
+    public Driver( List<Worker> workers, long warmupMillis, long durationMillis, double rate ) {
+        this.workers = workers;
+        this.warmupMillis = warmupMillis;
+        this.durationMillis = durationMillis;
+        this.rate = rate;
+    }
+
+
+    public Results run() throws InterruptedException {
+        final Results results = new Results();
+        final CountDownLatch done = new CountDownLatch( workers.size() );
+
+        final long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.MILLISECONDS.toNanos( warmupMillis );
+        final long end = measureStart + TimeUnit.MILLISECONDS.toNanos( durationMillis );
+        final long interval = rate > 0 ? ( long ) ( workers.size() * 1000000000L / rate ) : 0;
+
+        for ( int i = 0; i < workers.size(); i++ ) {
+            final Worker worker = workers.get( i );
+            final long offset = interval * i / workers.size();
+
+            Thread thread = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drive( worker, results, start + offset, interval, measureStart, end );
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }, "loadtest-worker-" + i );
+
+            thread.setDaemon( true );
+            thread.start();
+        }
+
+        done.await();
+
+        results.setElapsedMillis( durationMillis );
+
+        return results;
+    }
+
+
+    private void drive( Worker worker, Results results, long first, long interval, long measureStart, long end ) {
+        long intended = first;
+
+        while ( true ) {
+            long now = System.nanoTime();
+
+            if ( interval > 0 ) {
+                if ( intended > now ) {
+                    sleep( intended - now );
+                }
+            }
+            else {
+                intended = now;
+            }
+
+            if ( intended >= end ) {
+                return;
+            }
+
+            Operation operation = worker.next();
+
+            try {
+                operation = worker.execute( operation );
+
+                if ( intended >= measureStart ) {
+                    results.success( operation, TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - intended ) );
+                }
+            }
+            catch ( RuntimeException e ) {
+                logger.debug( "{} failed", operation, e );
+
+                if ( intended >= measureStart ) {
+                    results.error( operation );
+                }
+            }
+
+            intended += interval;
+        }
+    }
+
+
+    private static void sleep( long nanos ) {
+        try {
+            TimeUnit.NANOSECONDS.sleep( nanos );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A fixed precision histogram of latencies in microseconds, in the spirit of HdrHistogram.  Values below 128 are
+ * counted exactly, larger values in buckets 1/64th of their power of two wide, so any percentile is reported within
+ * 1.6% of the recorded value no matter the range.  Recording is lock free and allocation free, so workers share one
+ * histogram per operation.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private final AtomicLongArray counts = new AtomicLongArray( LINEAR + ( 64 - SUB_BUCKET_BITS - 1 ) * SUB_BUCKETS );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+
+    /** Record a latency, negative values are counted as 0 */
+    public void record( long micros ) {
+        if ( micros < 0 ) {
+            micros = 0;
+        }
+
+        counts.incrementAndGet( index( micros ) );
+        count.incrementAndGet();
+        total.addAndGet( micros );
+
+        long current = max.get();
+        while ( micros > current && !max.compareAndSet( current, micros ) ) {
+            current = max.get();
+        }
+    }
+
+
+    public long getCount() {
+        return count.get();
+    }
+
+
+    public long getMax() {
+        return max.get();
+    }
+
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : ( double ) total.get() / n;
+    }
+
+
+    /**
+     * Get the value at the percentile
+     *
+     * @param percentile The percentile between 0 and 100
+     *
+     * @return The highest value that is equivalent to the values recorded at the percentile, 0 if nothing was
+     *         recorded
+     */
+    public long getValueAtPercentile( double percentile ) {
+        long n = count.get();
+
+        if ( n == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, ( long ) Math.ceil( Math.min( percentile, 100 ) / 100 * n ) );
+        long seen = 0;
+
+        for ( int i = 0; i < counts.length(); i++ ) {
+            seen += counts.get( i );
+            if ( seen >= rank ) {
+                return Math.min( highestEquivalentValue( i ), getMax() );
+            }
+        }
+
+        return getMax();
+    }
+
+
+    static int index( long value ) {
+        if ( value < LINEAR ) {
+            return ( int ) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+
+        return LINEAR + ( shift - 1 ) * SUB_BUCKETS + ( int ) ( ( value >>> shift ) - SUB_BUCKETS );
+    }
+
+
+    static long highestEquivalentValue( int index ) {
+        if ( index < LINEAR ) {
+            return index;
+        }
+
+        int shift = ( index - LINEAR ) / SUB_BUCKETS + 1;
+        long mantissa = ( index - LINEAR ) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ( ( mantissa + 1 ) << shift ) - 1;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.codehaus.jackson.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.launcher.Server;
+import org.apache.usergrid.management.ApplicationInfo;
+import org.apache.usergrid.management.ManagementService;
+import org.apache.usergrid.management.OrganizationOwnerInfo;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.json.JSONConfiguration;
+
+
+/**
+ * Runs a workload against the REST api and prints the latencies and throughput per operation.
+ * <p/>
+ * By default the launcher's server is started in process with an embedded Cassandra, and the organization, admin and
+ * application the load runs in are created in it.  With <code>-url</code> a running stack is loaded instead, the
+ * organization, application and admin must exist there already.
+ * <p/>
+ * <code>java -jar target/loadtest.jar -workload default -threads 16 -duration 120 -seed 1</code>
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger( LoadTest.class );
+
+    public static final String APP_USER = "loadtest";
+    public static final String APP_USER_PASSWORD = "loadtest";
+
+
+    public static void main( String[] args ) throws Exception {
+        Options options = createOptions();
+
+        CommandLine line;
+        try {
+            line = new GnuParser().parse( options, args );
+        }
+        catch ( ParseException e ) {
+            System.out.println( e.getMessage() );
+            new HelpFormatter().printHelp( "java -jar loadtest.jar", options );
+            System.exit( -1 );
+            return;
+        }
+
+        Workload workload = Workload.load( line.getOptionValue( "workload", "default" ) );
+        int threads = Integer.parseInt( line.getOptionValue( "threads", "8" ) );
+        long warmup = Long.parseLong( line.getOptionValue( "warmup", "10" ) ) * 1000;
+        long duration = Long.parseLong( line.getOptionValue( "duration", "60" ) ) * 1000;
+        double rate = Double.parseDouble( line.getOptionValue( "rate", "0" ) );
+        long seed = Long.parseLong( line.getOptionValue( "seed", "1" ) );
+        String org = line.getOptionValue( "org", "loadtest" );
+        String app = line.getOptionValue( "app", "loadtest" );
+        String username = line.getOptionValue( "username", "loadtest" );
+        String password = line.getOptionValue( "password", "loadtest" );
+
+        Server server = null;
+        String url = line.getOptionValue( "url" );
+        String token = null;
+
+        if ( url == null ) {
+            String port = line.getOptionValue( "port", "8080" );
+            server = startServer( port );
+            url = "http://localhost:" + port;
+            token = setup( server.getManagementService(), org, app, username, password );
+        }
+
+        ClientConfig config = new DefaultClientConfig();
+        config.getFeatures().put( JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE );
+        Client client = Client.create( config );
+
+        if ( token == null ) {
+            token = client.resource( url ).path( "management" ).path( "token" ).queryParam( "grant_type", "password" )
+                          .queryParam( "username", username ).queryParam( "password", password )
+                          .accept( MediaType.APPLICATION_JSON ).get( JsonNode.class ).get( "access_token" )
+                          .getTextValue();
+        }
+
+        WebResource application = client.resource( url ).path( org ).path( app );
+
+        createAppUser( application, token );
+
+        List<Worker> workers = new ArrayList<Worker>( threads );
+        for ( int i = 0; i < threads; i++ ) {
+            workers.add( new Worker( application, token, APP_USER, APP_USER_PASSWORD, workload, seed + i, i ) );
+        }
+
+        logger.info( "Running {} {} loop workers for {}s after {}s of warmup", new Object[] {
+                threads, rate > 0 ? "open" : "closed", duration / 1000, warmup / 1000
+        } );
+
+        Results results = new Driver( workers, warmup, duration, rate ).run();
+
+        results.print( System.out );
+
+        if ( line.hasOption( "csv" ) ) {
+            PrintStream csv = new PrintStream( new FileOutputStream( line.getOptionValue( "csv" ) ), true, "UTF-8" );
+            try {
+                results.printCsv( csv );
+            }
+            finally {
+                csv.close();
+            }
+        }
+
+        client.destroy();
+
+        if ( server != null ) {
+            server.stopServer();
+        }
+
+        // the embedded cassandra doesn't stop its threads
+        System.exit( 0 );
+    }
+
+
+    static Options createOptions() {
+        Options options = new Options();
+        options.addOption( "workload", true, "A workload file, or the name of a bundled workload. Default: default" );
+        options.addOption( "threads", true, "The number of workers. Default: 8" );
+        options.addOption( "warmup", true, "Seconds to run before recording. Default: 10" );
+        options.addOption( "duration", true, "Seconds to record. Default: 60" );
+        options.addOption( "rate", true, "Total operations per second of an open loop. Default: 0, a closed loop" );
+        options.addOption( "seed", true, "The seed of the first worker, the others count up from it. Default: 1" );
+        options.addOption( "url", true, "The url of a running stack. Default: start an embedded one" );
+        options.addOption( "port", true, "The port of the embedded stack. Default: 8080" );
+        options.addOption( "org", true, "The organization. Default: loadtest" );
+        options.addOption( "app", true, "The application. Default: loadtest" );
+        options.addOption( "username", true, "The organization admin. Default: loadtest" );
+        options.addOption( "password", true, "The password of the admin. Default: loadtest" );
+        options.addOption( "csv", true, "A file to write the results to as comma separated values" );
+        return options;
+    }
+
+
+    /** Start the launcher's server with a freshly initialized embedded Cassandra */
+    static Server startServer( String port ) {
+        Server server = new Server();
+        server.setDaemon( false );
+        server.startServerFromCommandLine( new String[] { "-nogui", "-db", "-init", "-port", port } );
+
+        if ( !server.isRunning() ) {
+            throw new IllegalStateException( "The embedded server didn't start" );
+        }
+
+        return server;
+    }
+
+
+    /** Create the organization, its admin and the application, returning a token of the admin */
+    static String setup( ManagementService management, String org, String app, String username, String password )
+            throws Exception {
+
+        OrganizationOwnerInfo owner = management.createOwnerAndOrganization( org, username, username,
+                username + "@usergrid.com", password, true, false );
+
+        ApplicationInfo application = management.createApplication( owner.getOrganization().getUuid(), app );
+
+        logger.info( "Created application {} in organization {}", application.getName(), org );
+
+        return management.getAccessTokenForAdminUser( owner.getOwner().getUuid(), 0 );
+    }
+
+
+    /** Create the application user the token operation authenticates, unless it exists already */
+    static void createAppUser( WebResource application, String token ) {
+        Map<String, Object> user = new HashMap<String, Object>();
+        user.put( "username", APP_USER );
+        user.put( "password", APP_USER_PASSWORD );
+
+        try {
+            application.path( "users" ).header( HttpHeaders.AUTHORIZATION, "Bearer " + token )
+                       .accept( MediaType.APPLICATION_JSON ).type( MediaType.APPLICATION_JSON_TYPE )
+                       .post( JsonNode.class, user );
+        }
+        catch ( UniformInterfaceException e ) {
+            logger.info( "Application user {} exists already", APP_USER );
+        }
+    }
+}
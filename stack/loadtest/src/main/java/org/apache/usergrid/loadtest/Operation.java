@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+/** The operations a workload is mixed from, named by their key in the workload file */
+public enum Operation {
+
+    /** Create an entity in the workload collection */
+    CREATE( "create" ),
+
+    /** Read one of the entities created by the worker */
+    READ( "read" ),
+
+    /** Update properties of one of the entities created by the worker */
+    UPDATE( "update" ),
+
+    /** Delete one of the entities created by the worker */
+    DELETE( "delete" ),
+
+    /** Run the workload query against the collection */
+    QUERY( "query" ),
+
+    /** Connect two of the entities created by the worker */
+    CONNECT( "connect" ),
+
+    /** Post a message to the workload queue */
+    QUEUE_SEND( "queue.send" ),
+
+    /** Read messages from the workload queue as the worker's consumer */
+    QUEUE_RECEIVE( "queue.receive" ),
+
+    /** Get an access token for the application user with a password grant */
+    TOKEN( "token" );
+
+    private final String key;
+
+
+    Operation( String key ) {
+        this.key = key;
+    }
+
+
+    public String getKey() {
+        return key;
+    }
+
+
+    public static Operation fromKey( String key ) {
+        for ( Operation operation : values() ) {
+            if ( operation.key.equals( key ) ) {
+                return operation;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** The latencies and errors recorded per operation during the measured part of a run */
+public class Results {
+
+    private final Map<Operation, LatencyHistogram> latencies =
+            new EnumMap<Operation, LatencyHistogram>( Operation.class );
+    private final Map<Operation, AtomicLong> errors = new EnumMap<Operation, AtomicLong>( Operation.class );
+
+    private volatile long elapsedMillis;
+
+
+    public Results() {
+        for ( Operation operation : Operation.values() ) {
+            latencies.put( operation, new LatencyHistogram() );
+            errors.put( operation, new AtomicLong() );
+        }
+    }
+
+
+    public void success( Operation operation, long micros ) {
+        latencies.get( operation ).record( micros );
+    }
+
+
+    public void error( Operation operation ) {
+        errors.get( operation ).incrementAndGet();
+    }
+
+
+    public LatencyHistogram getLatencies( Operation operation ) {
+        return latencies.get( operation );
+    }
+
+
+    public long getErrors( Operation operation ) {
+        return errors.get( operation ).get();
+    }
+
+
+    /** The length of the measured part of the run */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+
+    public void setElapsedMillis( long elapsedMillis ) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+
+    /** The operations per second that succeeded */
+    public double getThroughput( Operation operation ) {
+        return elapsedMillis == 0 ? 0 : latencies.get( operation ).getCount() * 1000.0 / elapsedMillis;
+    }
+
+
+    /** Print a table of the operations that were run, latencies in milliseconds */
+    public void print( PrintStream out ) {
+        out.println( String.format( "%-14s %9s %7s %9s %8s %8s %8s %8s %8s %8s", "operation", "count", "errors",
+                "ops/s", "mean", "p50", "p90", "p99", "p99.9", "max" ) );
+
+        for ( Operation operation : Operation.values() ) {
+            LatencyHistogram histogram = latencies.get( operation );
+
+            if ( histogram.getCount() == 0 && getErrors( operation ) == 0 ) {
+                continue;
+            }
+
+            out.println( String.format( "%-14s %9d %7d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f", operation.getKey(),
+                    histogram.getCount(), getErrors( operation ), getThroughput( operation ),
+                    histogram.getMean() / 1000, millis( histogram, 50 ), millis( histogram, 90 ),
+                    millis( histogram, 99 ), millis( histogram, 99.9 ), histogram.getMax() / 1000.0 ) );
+        }
+    }
+
+
+    /** Print the table as comma separated values, for tracking runs over time */
+    public void printCsv( PrintStream out ) {
+        out.println( "operation,count,errors,throughput,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms" );
+
+        for ( Operation operation : Operation.values() ) {
+            LatencyHistogram histogram = latencies.get( operation );
+
+            out.println( String.format( "%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f", operation.getKey(),
+                    histogram.getCount(), getErrors( operation ), getThroughput( operation ),
+                    histogram.getMean() / 1000, millis( histogram, 50 ), millis( histogram, 90 ),
+                    millis( histogram, 99 ), millis( histogram, 99.9 ), histogram.getMax() / 1000.0 ) );
+        }
+    }
+
+
+    private static double millis( LatencyHistogram histogram, double percentile ) {
+        return histogram.getValueAtPercentile( percentile ) / 1000.0;
+    }
+}
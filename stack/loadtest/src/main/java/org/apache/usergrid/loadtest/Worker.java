@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.sun.jersey.api.client.WebResource;
+
+
+/**
+ * Performs the operations of one load generating thread against an application.  Each worker only reads, updates,
+ * connects and deletes the entities it created itself, so workers never race each other and a worker's sequence of
+ * requests only depends on its seed.  Failed requests throw.
+ */
+public class Worker {
+
+    /** The most entities a worker keeps track of, further creates don't grow the set it operates on */
+    public static final int MAX_ENTITIES = 10000;
+
+    private final WebResource application;
+    private final String authorization;
+    private final Workload workload;
+    private final Random random;
+    private final String consumer;
+    private final String username;
+    private final String password;
+
+    private final List<UUID> entities = new ArrayList<UUID>();
+
+
+    /**
+     * @param application The resource of the application, e.g. http://localhost:8080/org/app
+     * @param accessToken The token of the organization admin the requests are made as
+     * @param username The application user to get tokens for
+     * @param password The password of the application user
+     * @param workload The workload to generate
+     * @param seed The seed of the worker's random generator
+     * @param id The id of the worker, used as its queue consumer
+     */
+    public Worker( WebResource application, String accessToken, String username, String password, Workload workload,
+                   long seed, int id ) {
+        this.application = application;
+        this.authorization = "Bearer " + accessToken;
+        this.username = username;
+        this.password = password;
+        this.workload = workload;
+        this.random = new Random( seed );
+        this.consumer = "worker" + id;
+    }
+
+
+    /** Pick the next operation of the workload */
+    public Operation next() {
+        return workload.next( random );
+    }
+
+
+    /**
+     * Perform the operation.  Operations that need entities the worker hasn't created yet create one instead.
+     *
+     * @return The operation that was performed
+     */
+    public Operation execute( Operation operation ) {
+        if ( entities.size() < ( operation == Operation.CONNECT ? 2 : 1 ) && needsEntity( operation ) ) {
+            operation = Operation.CREATE;
+        }
+
+        switch ( operation ) {
+            case CREATE:
+                create();
+                break;
+            case READ:
+                request( collection().path( pick().toString() ) ).get( JsonNode.class );
+                break;
+            case UPDATE:
+                request( collection().path( pick().toString() ) ).put( JsonNode.class, score() );
+                break;
+            case DELETE:
+                UUID deleted = entities.remove( random.nextInt( entities.size() ) );
+                request( collection().path( deleted.toString() ) ).delete( JsonNode.class );
+                break;
+            case QUERY:
+                request( collection().queryParam( "ql", String.format( workload.getQuery(), random.nextInt( 1000 ) ) )
+                                     .queryParam( "limit", "10" ) ).get( JsonNode.class );
+                break;
+            case CONNECT:
+                request( collection().path( pick().toString() ).path( "likes" ).path( pick().toString() ) )
+                        .post( JsonNode.class );
+                break;
+            case QUEUE_SEND:
+                request( queue() ).post( JsonNode.class, score() );
+                break;
+            case QUEUE_RECEIVE:
+                request( queue().queryParam( "consumer", consumer ).queryParam( "limit", "10" ) ).get( JsonNode.class );
+                break;
+            case TOKEN:
+                application.path( "token" ).queryParam( "grant_type", "password" ).queryParam( "username", username )
+                           .queryParam( "password", password ).accept( MediaType.APPLICATION_JSON )
+                           .get( JsonNode.class );
+                break;
+        }
+
+        return operation;
+    }
+
+
+    private static boolean needsEntity( Operation operation ) {
+        return operation == Operation.READ || operation == Operation.UPDATE || operation == Operation.DELETE
+                || operation == Operation.CONNECT;
+    }
+
+
+    private void create() {
+        Map<String, Object> entity = score();
+
+        for ( int i = 0; i < workload.getProperties(); i++ ) {
+            entity.put( "p" + i, Long.toHexString( random.nextLong() ) );
+        }
+
+        JsonNode response = request( collection() ).post( JsonNode.class, entity );
+
+        if ( entities.size() < MAX_ENTITIES ) {
+            entities.add( UUID.fromString( response.get( "entities" ).get( 0 ).get( "uuid" ).getTextValue() ) );
+        }
+    }
+
+
+    private Map<String, Object> score() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put( "score", random.nextInt( 1000 ) );
+        return properties;
+    }
+
+
+    private UUID pick() {
+        return entities.get( random.nextInt( entities.size() ) );
+    }
+
+
+    private WebResource collection() {
+        return application.path( workload.getCollection() );
+    }
+
+
+    private WebResource queue() {
+        return application.path( "queues" ).path( workload.getQueue() );
+    }
+
+
+    private WebResource.Builder request( WebResource resource ) {
+        return resource.header( HttpHeaders.AUTHORIZATION, authorization ).accept( MediaType.APPLICATION_JSON )
+                       .type( MediaType.APPLICATION_JSON_TYPE );
+    }
+}
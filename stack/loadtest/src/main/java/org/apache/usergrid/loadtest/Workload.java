@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+
+/**
+ * A workload mix, read from a properties file.  Each <code>mix.&lt;operation&gt;</code> property gives the relative
+ * weight of an operation, the rest shape the requests:
+ * <p/>
+ * <pre>
+ * mix.create=20
+ * mix.read=40
+ * mix.query=10
+ * collection=loadtest
+ * properties=10
+ * query=select * where score &gt; %d
+ * queue=loadtest
+ * </pre>
+ * <p/>
+ * Operations are picked with a random generator owned by each worker, so the same seed replays the same sequence of
+ * operations and payloads per worker.
+ */
+public class Workload {
+
+    public static final String MIX_PREFIX = "mix.";
+
+    private final Map<Operation, Integer> weights = new EnumMap<Operation, Integer>( Operation.class );
+    private final Operation[] operations;
+    private final int[] cumulative;
+    private final String collection;
+    private final int properties;
+    private final String query;
+    private final String queue;
+
+
+    public Workload( Properties props ) {
+        for ( String name : props.stringPropertyNames() ) {
+            if ( !name.startsWith( MIX_PREFIX ) ) {
+                continue;
+            }
+
+            Operation operation = Operation.fromKey( name.substring( MIX_PREFIX.length() ) );
+
+            if ( operation == null ) {
+                throw new IllegalArgumentException( "Unknown operation " + name );
+            }
+
+            int weight = Integer.parseInt( props.getProperty( name ).trim() );
+
+            if ( weight < 0 ) {
+                throw new IllegalArgumentException( "Weight of " + name + " can't be negative" );
+            }
+
+            if ( weight > 0 ) {
+                weights.put( operation, weight );
+            }
+        }
+
+        if ( weights.isEmpty() ) {
+            throw new IllegalArgumentException( "The workload doesn't mix any operations" );
+        }
+
+        operations = weights.keySet().toArray( new Operation[weights.size()] );
+        cumulative = new int[operations.length];
+
+        int sum = 0;
+        for ( int i = 0; i < operations.length; i++ ) {
+            sum += weights.get( operations[i] );
+            cumulative[i] = sum;
+        }
+
+        collection = props.getProperty( "collection", "loadtest" );
+        properties = Integer.parseInt( props.getProperty( "properties", "10" ).trim() );
+        query = props.getProperty( "query", "select * where score > %d" );
+        queue = props.getProperty( "queue", "loadtest" );
+    }
+
+
+    /** Load a workload from a file, or from the workloads bundled with the harness by name */
+    public static Workload load( String name ) throws IOException {
+        File file = new File( name );
+
+        InputStream in = file.exists() ? new FileInputStream( file ) :
+                         Workload.class.getResourceAsStream( "/workloads/" + name + ".properties" );
+
+        if ( in == null ) {
+            throw new IOException( "No workload file or bundled workload named " + name );
+        }
+
+        try {
+            Properties props = new Properties();
+            props.load( in );
+            return new Workload( props );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /** Pick the next operation with the worker's generator */
+    public Operation next( Random random ) {
+        int pick = random.nextInt( cumulative[cumulative.length - 1] );
+
+        for ( int i = 0; i < cumulative.length; i++ ) {
+            if ( pick < cumulative[i] ) {
+                return operations[i];
+            }
+        }
+
+        return operations[operations.length - 1];
+    }
+
+
+    public Map<Operation, Integer> getWeights() {
+        return weights;
+    }
+
+
+    public String getCollection() {
+        return collection;
+    }
+
+
+    /** The number of generated properties of each entity */
+    public int getProperties() {
+        return properties;
+    }
+
+
+    /** The query, with a <code>%d</code> for a random score */
+    public String getQuery() {
+        return query;
+    }
+
+
+    public String getQueue() {
+        return queue;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals( 0, histogram.getCount() );
+        assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+        assertEquals( 0, histogram.getMean(), 0 );
+    }
+
+
+    @Test
+    public void exactBelowLinearRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for ( int i = 1; i <= 100; i++ ) {
+            histogram.record( i );
+        }
+
+        assertEquals( 100, histogram.getCount() );
+        assertEquals( 50, histogram.getValueAtPercentile( 50 ) );
+        assertEquals( 99, histogram.getValueAtPercentile( 99 ) );
+        assertEquals( 100, histogram.getValueAtPercentile( 100 ) );
+        assertEquals( 50.5, histogram.getMean(), 0.001 );
+    }
+
+
+    @Test
+    public void relativePrecision() {
+        long[] values = { 128, 1000, 12345, 999999, 60L * 1000 * 1000, Long.MAX_VALUE / 2 };
+
+        for ( long value : values ) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record( value );
+            histogram.record( value * 2 > 0 ? value * 2 : Long.MAX_VALUE );
+
+            long reported = histogram.getValueAtPercentile( 50 );
+
+            assertTrue( value + " reported as " + reported, reported >= value );
+            assertTrue( value + " reported as " + reported, reported - value <= value / 64 );
+        }
+    }
+
+
+    @Test
+    public void bucketsAreContiguous() {
+        for ( int index = 0; index < 2000; index++ ) {
+            long highest = LatencyHistogram.highestEquivalentValue( index );
+
+            assertEquals( index, LatencyHistogram.index( highest ) );
+            assertEquals( index + 1, LatencyHistogram.index( highest + 1 ) );
+        }
+    }
+
+
+    @Test
+    public void tail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for ( int i = 0; i < 990; i++ ) {
+            histogram.record( 1000 );
+        }
+        for ( int i = 0; i < 10; i++ ) {
+            histogram.record( 500000 );
+        }
+
+        assertTrue( histogram.getValueAtPercentile( 99 ) < 1020 );
+        assertTrue( histogram.getValueAtPercentile( 99.9 ) >= 500000 );
+        assertEquals( 500000, histogram.getMax() );
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.loadtest;
+
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class WorkloadTest {
+
+    @Test
+    public void bundled() throws Exception {
+        Workload workload = Workload.load( "default" );
+
+        assertEquals( Operation.values().length, workload.getWeights().size() );
+        assertEquals( "loadtest", workload.getCollection() );
+    }
+
+
+    @Test
+    public void mixFollowsWeights() {
+        Properties props = new Properties();
+        props.setProperty( "mix.create", "1" );
+        props.setProperty( "mix.read", "3" );
+        props.setProperty( "mix.token", "0" );
+
+        Workload workload = new Workload( props );
+        Random random = new Random( 1 );
+
+        Map<Operation, Integer> counts = new EnumMap<Operation, Integer>( Operation.class );
+        counts.put( Operation.CREATE, 0 );
+        counts.put( Operation.READ, 0 );
+
+        for ( int i = 0; i < 40000; i++ ) {
+            Operation operation = workload.next( random );
+            counts.put( operation, counts.get( operation ) + 1 );
+        }
+
+        assertFalse( counts.containsKey( Operation.TOKEN ) );
+        assertEquals( 10000, counts.get( Operation.CREATE ), 500 );
+        assertEquals( 30000, counts.get( Operation.READ ), 500 );
+    }
+
+
+    @Test
+    public void sameSeedSameSequence() throws Exception {
+        Workload workload = Workload.load( "default" );
+
+        assertEquals( sequence( workload, 7 ), sequence( workload, 7 ) );
+        assertTrue( !sequence( workload, 7 ).equals( sequence( workload, 8 ) ) );
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOperation() {
+        Properties props = new Properties();
+        props.setProperty( "mix.teleport", "1" );
+
+        new Workload( props );
+    }
+
+
+    private static List<Operation> sequence( Workload workload, long seed ) {
+        Random random = new Random( seed );
+        List<Operation> operations = new ArrayList<Operation>();
+
+        for ( int i = 0; i < 100; i++ ) {
+            operations.add( workload.next( random ) );
+        }
+
+        return operations;
+    }
+}
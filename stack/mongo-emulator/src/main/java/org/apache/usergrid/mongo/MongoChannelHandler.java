@@ -17,7 +17,12 @@
 package org.apache.usergrid.mongo;
 
 
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
@@ -26,8 +31,10 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.management.ManagementService;
 import org.apache.usergrid.mongo.protocol.Message;
 import org.apache.usergrid.mongo.protocol.OpCrud;
+import org.apache.usergrid.mongo.protocol.OpKillCursors;
 import org.apache.usergrid.mongo.protocol.OpReply;
 import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.services.ServiceManagerFactory;
 
 import org.apache.shiro.mgt.SessionsSecurityManager;
@@ -35,21 +42,42 @@ import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.support.SubjectThreadState;
 import org.apache.shiro.util.ThreadState;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 
 public class MongoChannelHandler extends SimpleChannelUpstreamHandler {
 
     private static final Logger logger = LoggerFactory.getLogger( MongoChannelHandler.class );
 
+    /** The maximum number of cursors a connection can hold open, the least recently used are closed first */
+    public static final int MAX_OPEN_CURSORS = 100;
+
+    /** The time in milliseconds an idle cursor is kept open, the same as mongod */
+    public static final long CURSOR_TIMEOUT = TimeUnit.MINUTES.toMillis( 10 );
+
     private final EntityManagerFactory emf;
     private final ServiceManagerFactory smf;
     private final ManagementService management;
     private final SessionsSecurityManager securityManager;
 
+    private final Cache<Long, MongoCursor> cursors;
+
+    private final Random cursorIDs = new Random();
+
     Subject subject = null;
 
 
     public MongoChannelHandler( EntityManagerFactory emf, ServiceManagerFactory smf, ManagementService management,
                                 SessionsSecurityManager securityManager ) {
+        this( emf, smf, management, securityManager, Ticker.systemTicker() );
+    }
+
+
+    /** Expire idle cursors against the given ticker */
+    MongoChannelHandler( EntityManagerFactory emf, ServiceManagerFactory smf, ManagementService management,
+                         SessionsSecurityManager securityManager, Ticker ticker ) {
         super();
 
         logger.info( "Starting new client connection..." );
@@ -58,6 +86,10 @@ public class MongoChannelHandler extends SimpleChannelUpstreamHandler {
         this.management = management;
         this.securityManager = securityManager;
 
+        // a connection's messages are handled in order, one segment keeps the eviction strictly least recently used
+        cursors = CacheBuilder.newBuilder().concurrencyLevel( 1 ).maximumSize( MAX_OPEN_CURSORS )
+                              .expireAfterAccess( CURSOR_TIMEOUT, TimeUnit.MILLISECONDS ).ticker( ticker ).build();
+
         if ( securityManager != null ) {
             subject = new Subject.Builder( securityManager ).buildSubject();
         }
@@ -84,6 +116,52 @@ public class MongoChannelHandler extends SimpleChannelUpstreamHandler {
     }
 
 
+    /**
+     * Open a cursor for the remaining results of a query
+     *
+     * @param applicationId The application the query was run against
+     * @param collectionName The collection the query was run against
+     * @param query The query, with the Usergrid cursor set to the start of the next batch
+     * @param position The number of documents already returned
+     */
+    public MongoCursor openCursor( UUID applicationId, String collectionName, Query query, int position ) {
+        long cursorID;
+        do {
+            // 0 tells the client there are no more results
+            cursorID = cursorIDs.nextLong() & Long.MAX_VALUE;
+        }
+        while ( cursorID == 0 || cursors.getIfPresent( cursorID ) != null );
+
+        MongoCursor cursor = new MongoCursor( cursorID, applicationId, collectionName, query, position );
+        cursors.put( cursorID, cursor );
+        return cursor;
+    }
+
+
+    /** Get an open cursor.  Null if the cursor was never opened, was closed or has expired */
+    public MongoCursor getCursor( long cursorID ) {
+        return cursors.getIfPresent( cursorID );
+    }
+
+
+    public void closeCursor( long cursorID ) {
+        cursors.invalidate( cursorID );
+    }
+
+
+    public long getOpenCursorCount() {
+        cursors.cleanUp();
+        return cursors.size();
+    }
+
+
+    @Override
+    public void channelClosed( ChannelHandlerContext ctx, ChannelStateEvent e ) throws Exception {
+        cursors.invalidateAll();
+        super.channelClosed( ctx, e );
+    }
+
+
     @Override
     public void messageReceived( ChannelHandlerContext ctx, MessageEvent e ) {
 
@@ -139,6 +217,14 @@ public class MongoChannelHandler extends SimpleChannelUpstreamHandler {
             return ( ( OpCrud ) message ).doOp( this, ctx, e );
         }
 
+        // mongod never replies to a kill cursors message
+        if ( message instanceof OpKillCursors ) {
+            for ( Long cursorID : ( ( OpKillCursors ) message ).getCursorIDs() ) {
+                closeCursor( cursorID );
+            }
+            return null;
+        }
+
         OpReply reply = new OpReply( message );
         return reply;
     }
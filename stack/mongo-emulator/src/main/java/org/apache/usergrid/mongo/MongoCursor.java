@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mongo;
+
+
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.Query;
+
+
+/**
+ * Server side state of an open Mongo cursor.  Only the native query and the Usergrid cursor of the next page are held,
+ * so a client can iterate a collection of any size while the server keeps a constant amount of memory per cursor.
+ */
+public class MongoCursor {
+
+    private final long cursorID;
+    private final UUID applicationId;
+    private final String collectionName;
+    private final Query query;
+    private int position;
+
+
+    public MongoCursor( long cursorID, UUID applicationId, String collectionName, Query query, int position ) {
+        this.cursorID = cursorID;
+        this.applicationId = applicationId;
+        this.collectionName = collectionName;
+        this.query = query;
+        this.position = position;
+    }
+
+
+    public long getCursorID() {
+        return cursorID;
+    }
+
+
+    public UUID getApplicationId() {
+        return applicationId;
+    }
+
+
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+
+    /** The native query, with the Usergrid cursor set to the start of the next batch */
+    public Query getQuery() {
+        return query;
+    }
+
+
+    /** The number of documents already returned to the client */
+    public int getPosition() {
+        return position;
+    }
+
+
+    public void advance( int count ) {
+        position += count;
+    }
+
+
+    @Override
+    public String toString() {
+        return "MongoCursor [cursorID=" + cursorID + ", applicationId=" + applicationId + ", collectionName="
+                + collectionName + ", position=" + position + "]";
+    }
+}
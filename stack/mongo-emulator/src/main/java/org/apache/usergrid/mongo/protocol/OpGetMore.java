@@ -23,11 +23,22 @@ import java.nio.ByteBuffer;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.apache.usergrid.mongo.MongoChannelHandler;
+import org.apache.usergrid.mongo.MongoCursor;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.security.shiro.utils.SubjectUtils;
+
+import static org.apache.usergrid.utils.MapUtils.map;
 
 
 public class OpGetMore extends OpCrud {
 
+    private static final Logger logger = LoggerFactory.getLogger( OpGetMore.class );
+
     int numberToReturn;
     long cursorID;
 
@@ -97,7 +108,44 @@ public class OpGetMore extends OpCrud {
      */
     @Override
     public OpReply doOp( MongoChannelHandler handler, ChannelHandlerContext ctx, MessageEvent messageEvent ) {
-        return new OpReply( this );
+        OpReply reply = new OpReply( this );
+
+        MongoCursor cursor = handler.getCursor( cursorID );
+        if ( cursor == null || !cursor.getCollectionName().equals( getCollectionName() ) || !SubjectUtils
+                .getSubject().isAuthenticated() ) {
+            reply.setResponseFlags( reply.getResponseFlags() | OpReply.CURSOR_NOT_FOUND );
+            return reply;
+        }
+
+        reply.setStartingFrom( cursor.getPosition() );
+
+        Query q = cursor.getQuery();
+        q.setLimit( OpQuery.getBatchSize( numberToReturn ) );
+
+        try {
+            EntityManager em = handler.getEmf().getEntityManager( cursor.getApplicationId() );
+            Results results = em.searchCollection( em.getApplicationRef(), cursor.getCollectionName(), q );
+            OpQuery.addEntities( reply, results );
+
+            if ( results.hasCursor() ) {
+                q.setCursor( results.getCursor() );
+                cursor.advance( reply.getNumberReturned() );
+                reply.setCursorID( cursorID );
+            }
+            else {
+                handler.closeCursor( cursorID );
+            }
+        }
+        catch ( Exception ex ) {
+            logger.error( "Unable to retrieve the next batch of " + cursor, ex );
+            handler.closeCursor( cursorID );
+
+            reply = new OpReply( this );
+            reply.setResponseFlags( reply.getResponseFlags() | OpReply.QUERY_FAILURE );
+            reply.addDocument( map( "$err", "Unable to retrieve the next batch" ) );
+        }
+
+        return reply;
     }
 
 
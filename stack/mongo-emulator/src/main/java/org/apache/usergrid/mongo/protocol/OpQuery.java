@@ -27,7 +27,6 @@ import java.util.Set;
 
 import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
-import org.bson.types.ObjectId;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -37,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.UserInfo;
 import org.apache.usergrid.mongo.MongoChannelHandler;
+import org.apache.usergrid.mongo.MongoCursor;
 import org.apache.usergrid.mongo.commands.MongoCommand;
 import org.apache.usergrid.mongo.query.MongoQueryParser;
 import org.apache.usergrid.mongo.utils.BSONUtils;
@@ -53,7 +53,6 @@ import org.apache.usergrid.utils.MapUtils;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.subject.Subject;
 
-import static org.apache.usergrid.utils.JsonUtils.toJsonMap;
 import static org.apache.usergrid.utils.MapUtils.entry;
 import static org.apache.usergrid.utils.MapUtils.map;
 
@@ -62,6 +61,9 @@ public class OpQuery extends OpCrud {
 
     private static final Logger logger = LoggerFactory.getLogger( OpQuery.class );
 
+    /** The batch size used when the client leaves it to the server */
+    static final int DEFAULT_BATCH_SIZE = 30;
+
     int flags;
     int numberToSkip;
     int numberToReturn;
@@ -386,46 +388,24 @@ public class OpQuery extends OpCrud {
             return reply;
         }
 
-        int count = getNumberToReturn();
-        if ( count <= 0 ) {
-            count = 30;
-        }
-
         EntityManager em = handler.getEmf().getEntityManager( application.getId() );
 
         try {
-            Results results = null;
             Query q = MongoQueryParser.toNativeQuery( query, returnFieldSelector, numberToReturn );
-            if ( q != null ) {
-                results = em.searchCollection( em.getApplicationRef(), getCollectionName(), q );
-            }
-            else {
-                results = em.getCollection( em.getApplicationRef(), getCollectionName(), null, count,
-                        Results.Level.ALL_PROPERTIES, false );
+            if ( q == null ) {
+                q = new Query();
             }
-            if ( !results.isEmpty() ) {
-                for ( Entity entity : results.getEntities() ) {
-
-                    Object savedId = entity.getProperty( "_id" );
-                    Object mongoId = null;
-
-                    //try to parse it into an ObjectId
-                    if ( savedId == null ) {
-                        mongoId = entity.getUuid();
-                    }
-                    else {
-                        try {
-                            mongoId = new ObjectId( savedId.toString() );
-                            //it's not a mongo Id, use it as is
-                        }
-                        catch ( IllegalArgumentException iae ) {
-                            mongoId = savedId;
-                        }
-                    }
-
-                    reply.addDocument( map( entry( "_id", mongoId ), toJsonMap( entity ),
-                            entry( Schema.PROPERTY_UUID, entity.getUuid().toString() ) ) );
-                }
+            q.setLimit( getBatchSize( numberToReturn ) );
+
+            Results results = em.searchCollection( em.getApplicationRef(), getCollectionName(), q );
+            addEntities( reply, results );
+
+            // a negative number to return, or 1, asks for a single batch without a cursor
+            if ( results.hasCursor() && ( numberToReturn == 0 || numberToReturn > 1 ) ) {
+                q.setCursor( results.getCursor() );
+                MongoCursor cursor =
+                        handler.openCursor( application.getId(), getCollectionName(), q, reply.getNumberReturned() );
+                reply.setCursorID( cursor.getCursorID() );
             }
         }
         catch ( Exception ex ) {
@@ -435,6 +415,28 @@ public class OpQuery extends OpCrud {
     }
 
 
+    /** Get the number of entities to load for a batch of numberToReturn documents */
+    static int getBatchSize( int numberToReturn ) {
+        if ( numberToReturn == 0 ) {
+            return DEFAULT_BATCH_SIZE;
+        }
+
+        return Math.min( Math.abs( numberToReturn ), Query.MAX_LIMIT );
+    }
+
+
+    /** Add the entities in the results to the reply as Mongo documents */
+    static void addEntities( OpReply reply, Results results ) {
+        if ( results.isEmpty() ) {
+            return;
+        }
+
+        for ( Entity entity : results.getEntities() ) {
+            reply.addEntity( entity );
+        }
+    }
+
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -19,6 +19,7 @@ package org.apache.usergrid.mongo.protocol;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -27,16 +28,37 @@ import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.apache.usergrid.mongo.utils.BSONUtils;
+import org.apache.usergrid.mongo.utils.BSONWriter;
+import org.apache.usergrid.persistence.Entity;
 
 
 public class OpReply extends Message {
 
-    int responseFlags = 8;
+    /** Set when a get more names a cursor that doesn't exist */
+    public static final int CURSOR_NOT_FOUND = 1;
+
+    /** Set when a query failed, the only document holds the error in $err */
+    public static final int QUERY_FAILURE = 2;
+
+    public static final int AWAIT_CAPABLE = 8;
+
+    /**
+     * The size of the buffers large replies are written into.  Entities are never split across buffers, and the
+     * buffers are sent as a single composite buffer, so a large reply is never copied to grow it.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The size assumed for an entity until one has been written */
+    static final int ESTIMATED_ENTITY_SIZE = 256;
+
+    int responseFlags = AWAIT_CAPABLE;
     long cursorID;
     int startingFrom;
     int numberReturned;
     List<BSONObject> documents = new ArrayList<BSONObject>();
+    List<Entity> entities = new ArrayList<Entity>();
 
 
     public OpReply() {
@@ -118,6 +140,18 @@ public class OpReply extends Message {
     }
 
 
+    /** The entities returned after the documents, they are written as BSON when the reply is encoded */
+    public List<Entity> getEntities() {
+        return entities;
+    }
+
+
+    public void addEntity( Entity entity ) {
+        entities.add( entity );
+        numberReturned = documents.size() + entities.size();
+    }
+
+
     @Override
     public void decode( ChannelBuffer buffer ) throws IOException {
         super.decode( buffer );
@@ -135,6 +169,10 @@ public class OpReply extends Message {
 
     @Override
     public ChannelBuffer encode( ChannelBuffer buffer ) {
+        if ( !entities.isEmpty() ) {
+            return encodeEntities( buffer );
+        }
+
         int l = 36; // (9 ints * 4 bytes)
 
         List<ByteBuffer> encodedDocuments = encodeDocuments( documents );
@@ -158,6 +196,75 @@ public class OpReply extends Message {
     }
 
 
+    /**
+     * Write the entities straight into the reply, without converting them to maps and encoded byte arrays first.  The
+     * message length is written once the size of the reply is known.
+     */
+    private ChannelBuffer encodeEntities( ChannelBuffer buffer ) {
+        List<ByteBuffer> encodedDocuments = encodeDocuments( documents );
+        numberReturned = encodedDocuments.size() + entities.size();
+
+        List<ChannelBuffer> chunks = new ArrayList<ChannelBuffer>();
+        ChannelBuffer chunk = buffer;
+        if ( chunk == null ) {
+            chunk = newChunk( 36 + buffersSize( encodedDocuments ), entities.size(), ESTIMATED_ENTITY_SIZE );
+        }
+
+        int start = chunk.writerIndex();
+
+        messageLength = 0;
+        super.encode( chunk );
+
+        chunk.writeInt( responseFlags );
+        chunk.writeLong( cursorID );
+        chunk.writeInt( startingFrom );
+        chunk.writeInt( numberReturned );
+
+        for ( ByteBuffer d : encodedDocuments ) {
+            chunk.writeBytes( d );
+        }
+
+        int largest = 0;
+        int remaining = entities.size();
+
+        for ( Entity entity : entities ) {
+            // start a new chunk rather than grow this one, when the entity might not fit
+            if ( buffer == null && chunk.writableBytes() < largest ) {
+                chunks.add( chunk );
+                chunk = newChunk( 0, remaining, largest );
+            }
+
+            int before = chunk.writerIndex();
+            BSONWriter.writeEntity( chunk, entity );
+            largest = Math.max( largest, chunk.writerIndex() - before );
+            remaining--;
+        }
+
+        chunks.add( chunk );
+
+        // the reply starts at the writer index the first chunk had when we were called
+        messageLength = -start;
+        for ( ChannelBuffer c : chunks ) {
+            messageLength += c.writerIndex();
+        }
+
+        chunks.get( 0 ).setInt( start, messageLength );
+
+        if ( buffer != null ) {
+            return buffer;
+        }
+
+        return ChannelBuffers.wrappedBuffer( chunks.toArray( new ChannelBuffer[chunks.size()] ) );
+    }
+
+
+    /** Get a buffer for the remaining entities, no larger than a chunk unless the header alone is */
+    private static ChannelBuffer newChunk( int header, int remaining, int entitySize ) {
+        long size = header + ( long ) remaining * entitySize;
+        return ChannelBuffers.dynamicBuffer( ByteOrder.LITTLE_ENDIAN, ( int ) Math.min( size, CHUNK_SIZE + header ) );
+    }
+
+
     public static OpReply errorReply( String message ) {
         OpReply reply = new OpReply();
         // reply.responseFlags = 1;
@@ -183,7 +290,8 @@ public class OpReply extends Message {
         }
 
         return "OpReply [responseFlags=" + responseFlags + ", cursorID=" + cursorID + ", startingFrom=" + startingFrom
-                + ", numberReturned=" + numberReturned + ", documents=" + documents + ", messageLength=" + messageLength
+                + ", numberReturned=" + numberReturned + ", documents=" + documents + ", entities=" + entities.size()
+                + ", messageLength=" + messageLength
                 + ", requestID=" + requestID + ", responseTo=" + responseTo + ", opCode=" + opCode + ", documents="
                 + docs_str + "]";
     }
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mongo.utils;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bson.types.ObjectId;
+import org.codehaus.jackson.JsonNode;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.utils.JsonUtils;
+
+import static org.apache.usergrid.persistence.Schema.PROPERTY_UUID;
+
+
+/**
+ * Writes Usergrid entities as BSON documents straight into a little endian {@link ChannelBuffer}.  Values are written
+ * the way they are seen in JSON, so UUIDs are strings and dates are timestamps, the same documents the entities
+ * produced when they were converted to maps with {@link JsonUtils#toJsonMap(Object)} before being encoded.
+ */
+public class BSONWriter {
+
+    private static final byte DOUBLE = 0x01;
+    private static final byte STRING = 0x02;
+    private static final byte DOCUMENT = 0x03;
+    private static final byte ARRAY = 0x04;
+    private static final byte BINARY = 0x05;
+    private static final byte OBJECT_ID = 0x07;
+    private static final byte BOOLEAN = 0x08;
+    private static final byte NULL = 0x0A;
+    private static final byte INT32 = 0x10;
+    private static final byte INT64 = 0x12;
+
+    private static final byte BINARY_UUID = 0x03;
+
+    private static final String[] INDEXES = new String[256];
+
+
+    static {
+        for ( int i = 0; i < INDEXES.length; i++ ) {
+            INDEXES[i] = Integer.toString( i );
+        }
+    }
+
+
+    private BSONWriter() {
+    }
+
+
+    /** Get the Mongo _id of the entity, the saved _id if there is one, otherwise the entity's uuid */
+    public static Object getMongoId( Entity entity ) {
+        Object savedId = entity.getProperty( "_id" );
+
+        if ( savedId == null ) {
+            return entity.getUuid();
+        }
+
+        //try to parse it into an ObjectId
+        try {
+            return new ObjectId( savedId.toString() );
+        }
+        //it's not a mongo Id, use it as is
+        catch ( IllegalArgumentException iae ) {
+            return savedId;
+        }
+    }
+
+
+    /** Write the entity as a document with its Mongo _id first */
+    public static void writeEntity( ChannelBuffer buffer, Entity entity ) {
+        int start = buffer.writerIndex();
+        buffer.writeInt( 0 );
+
+        writeId( buffer, getMongoId( entity ) );
+
+        for ( Map.Entry<String, Object> property : entity.getProperties().entrySet() ) {
+            String name = property.getKey();
+            if ( "_id".equals( name ) || PROPERTY_UUID.equals( name ) ) {
+                continue;
+            }
+            writeElement( buffer, name, property.getValue() );
+        }
+
+        writeElement( buffer, PROPERTY_UUID, entity.getUuid() );
+
+        buffer.writeByte( 0 );
+        buffer.setInt( start, buffer.writerIndex() - start );
+    }
+
+
+    public static void writeDocument( ChannelBuffer buffer, Map<?, ?> map ) {
+        int start = buffer.writerIndex();
+        buffer.writeInt( 0 );
+
+        for ( Map.Entry<?, ?> entry : map.entrySet() ) {
+            writeElement( buffer, String.valueOf( entry.getKey() ), entry.getValue() );
+        }
+
+        buffer.writeByte( 0 );
+        buffer.setInt( start, buffer.writerIndex() - start );
+    }
+
+
+    /** ObjectIds and UUIDs are written as their BSON types, the same as the driver's encoder */
+    private static void writeId( ChannelBuffer buffer, Object id ) {
+        if ( id instanceof UUID ) {
+            UUID uuid = ( UUID ) id;
+            writeType( buffer, BINARY, "_id" );
+            buffer.writeInt( 16 );
+            buffer.writeByte( BINARY_UUID );
+            buffer.writeLong( uuid.getMostSignificantBits() );
+            buffer.writeLong( uuid.getLeastSignificantBits() );
+        }
+        else {
+            writeElement( buffer, "_id", id );
+        }
+    }
+
+
+    private static void writeElement( ChannelBuffer buffer, String name, Object value ) {
+        if ( value == null ) {
+            writeType( buffer, NULL, name );
+        }
+        else if ( value instanceof String ) {
+            writeType( buffer, STRING, name );
+            writeString( buffer, ( String ) value );
+        }
+        else if ( value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+            writeType( buffer, INT32, name );
+            buffer.writeInt( ( ( Number ) value ).intValue() );
+        }
+        else if ( value instanceof Long ) {
+            writeType( buffer, INT64, name );
+            buffer.writeLong( ( Long ) value );
+        }
+        else if ( value instanceof Double || value instanceof Float || value instanceof BigDecimal ) {
+            writeType( buffer, DOUBLE, name );
+            buffer.writeLong( Double.doubleToRawLongBits( ( ( Number ) value ).doubleValue() ) );
+        }
+        else if ( value instanceof BigInteger ) {
+            writeBigInteger( buffer, name, ( BigInteger ) value );
+        }
+        else if ( value instanceof Boolean ) {
+            writeType( buffer, BOOLEAN, name );
+            buffer.writeByte( ( Boolean ) value ? 1 : 0 );
+        }
+        else if ( value instanceof UUID || value instanceof Character || value instanceof Enum ) {
+            writeType( buffer, STRING, name );
+            writeString( buffer, value.toString() );
+        }
+        else if ( value instanceof Date ) {
+            writeType( buffer, INT64, name );
+            buffer.writeLong( ( ( Date ) value ).getTime() );
+        }
+        else if ( value instanceof ObjectId ) {
+            writeType( buffer, OBJECT_ID, name );
+            buffer.writeBytes( ( ( ObjectId ) value ).toByteArray() );
+        }
+        else if ( value instanceof Map ) {
+            writeType( buffer, DOCUMENT, name );
+            writeDocument( buffer, ( Map<?, ?> ) value );
+        }
+        else if ( value instanceof Iterable ) {
+            writeType( buffer, ARRAY, name );
+            writeArray( buffer, ( ( Iterable<?> ) value ).iterator() );
+        }
+        else if ( value instanceof Object[] ) {
+            writeType( buffer, ARRAY, name );
+            writeArray( buffer, Arrays.asList( ( Object[] ) value ).iterator() );
+        }
+        else if ( value instanceof JsonNode ) {
+            writeNode( buffer, name, ( JsonNode ) value );
+        }
+        else {
+            // beans, byte arrays and anything else are written however jackson maps them
+            writeNode( buffer, name, JsonUtils.toJsonNode( value ) );
+        }
+    }
+
+
+    private static void writeNode( ChannelBuffer buffer, String name, JsonNode node ) {
+        if ( node == null || node.isNull() || node.isMissingNode() ) {
+            writeType( buffer, NULL, name );
+        }
+        else if ( node.isObject() ) {
+            writeType( buffer, DOCUMENT, name );
+
+            int start = buffer.writerIndex();
+            buffer.writeInt( 0 );
+
+            Iterator<Map.Entry<String, JsonNode>> fields = node.getFields();
+            while ( fields.hasNext() ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                writeNode( buffer, field.getKey(), field.getValue() );
+            }
+
+            buffer.writeByte( 0 );
+            buffer.setInt( start, buffer.writerIndex() - start );
+        }
+        else if ( node.isArray() ) {
+            writeType( buffer, ARRAY, name );
+            writeArray( buffer, node.getElements() );
+        }
+        else if ( node.isInt() ) {
+            writeElement( buffer, name, node.getIntValue() );
+        }
+        else if ( node.isLong() ) {
+            writeElement( buffer, name, node.getLongValue() );
+        }
+        else if ( node.isBigInteger() ) {
+            writeBigInteger( buffer, name, node.getBigIntegerValue() );
+        }
+        else if ( node.isNumber() ) {
+            writeElement( buffer, name, node.getDoubleValue() );
+        }
+        else if ( node.isBoolean() ) {
+            writeElement( buffer, name, node.getBooleanValue() );
+        }
+        else {
+            writeElement( buffer, name, node.asText() );
+        }
+    }
+
+
+    private static void writeArray( ChannelBuffer buffer, Iterator<?> values ) {
+        int start = buffer.writerIndex();
+        buffer.writeInt( 0 );
+
+        int i = 0;
+        while ( values.hasNext() ) {
+            Object value = values.next();
+            String index = i < INDEXES.length ? INDEXES[i] : Integer.toString( i );
+            if ( value instanceof JsonNode ) {
+                writeNode( buffer, index, ( JsonNode ) value );
+            }
+            else {
+                writeElement( buffer, index, value );
+            }
+            i++;
+        }
+
+        buffer.writeByte( 0 );
+        buffer.setInt( start, buffer.writerIndex() - start );
+    }
+
+
+    private static void writeBigInteger( ChannelBuffer buffer, String name, BigInteger value ) {
+        if ( value.bitLength() < 64 ) {
+            writeElement( buffer, name, value.longValue() );
+        }
+        else {
+            writeElement( buffer, name, value.doubleValue() );
+        }
+    }
+
+
+    private static void writeType( ChannelBuffer buffer, byte type, String name ) {
+        buffer.writeByte( type );
+        writeUTF8( buffer, name );
+        buffer.writeByte( 0 );
+    }
+
+
+    private static void writeString( ChannelBuffer buffer, String value ) {
+        int start = buffer.writerIndex();
+        buffer.writeInt( 0 );
+        writeUTF8( buffer, value );
+        buffer.writeByte( 0 );
+        buffer.setInt( start, buffer.writerIndex() - start - 4 );
+    }
+
+
+    /** Encode the string as UTF-8 in place, without the intermediate byte array of String.getBytes() */
+    private static void writeUTF8( ChannelBuffer buffer, String value ) {
+        int length = value.length();
+
+        for ( int i = 0; i < length; i++ ) {
+            char c = value.charAt( i );
+
+            if ( c < 0x80 ) {
+                buffer.writeByte( c );
+            }
+            else if ( c < 0x800 ) {
+                buffer.writeByte( 0xC0 | ( c >> 6 ) );
+                buffer.writeByte( 0x80 | ( c & 0x3F ) );
+            }
+            else if ( Character.isHighSurrogate( c ) && i + 1 < length && Character
+                    .isLowSurrogate( value.charAt( i + 1 ) ) ) {
+                int cp = Character.toCodePoint( c, value.charAt( ++i ) );
+                buffer.writeByte( 0xF0 | ( cp >> 18 ) );
+                buffer.writeByte( 0x80 | ( ( cp >> 12 ) & 0x3F ) );
+                buffer.writeByte( 0x80 | ( ( cp >> 6 ) & 0x3F ) );
+                buffer.writeByte( 0x80 | ( cp & 0x3F ) );
+            }
+            else if ( c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE ) {
+                // unpaired surrogates can't be encoded, String.getBytes() writes '?' too
+                buffer.writeByte( '?' );
+            }
+            else {
+                buffer.writeByte( 0xE0 | ( c >> 12 ) );
+                buffer.writeByte( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                buffer.writeByte( 0x80 | ( c & 0x3F ) );
+            }
+        }
+    }
+}
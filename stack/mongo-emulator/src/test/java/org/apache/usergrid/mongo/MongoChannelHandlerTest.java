@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mongo;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.apache.usergrid.mongo.protocol.OpGetMore;
+import org.apache.usergrid.mongo.protocol.OpKillCursors;
+import org.apache.usergrid.mongo.protocol.OpReply;
+import org.apache.usergrid.persistence.Query;
+
+import com.google.common.base.Ticker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class MongoChannelHandlerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final MongoChannelHandler handler = new MongoChannelHandler( null, null, null, null, new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    } );
+
+
+    @Test
+    public void killCursorsClosesThem() {
+        OpKillCursors kill = new OpKillCursors();
+
+        for ( int i = 0; i < 3; i++ ) {
+            kill.addCursorIDs( open().getCursorID() );
+        }
+
+        assertEquals( 3, handler.getOpenCursorCount() );
+
+        // what the driver sends when a cursor is closed before it is exhausted
+        assertNull( handler.handleMessage( null, null, kill ) );
+        assertEquals( 0, handler.getOpenCursorCount() );
+    }
+
+
+    @Test
+    public void unknownCursorIsNotFound() {
+        open();
+
+        assertCursorNotFound( 12345 );
+        assertEquals( 1, handler.getOpenCursorCount() );
+    }
+
+
+    @Test
+    public void closedCursorIsNotFound() {
+        long cursorID = open().getCursorID();
+
+        handler.closeCursor( cursorID );
+
+        assertEquals( 0, handler.getOpenCursorCount() );
+        assertCursorNotFound( cursorID );
+    }
+
+
+    @Test
+    public void idleCursorsExpire() {
+        long idle = open().getCursorID();
+        long used = open().getCursorID();
+
+        tick( MongoChannelHandler.CURSOR_TIMEOUT / 2 );
+        assertNotNull( handler.getCursor( used ) );
+
+        tick( MongoChannelHandler.CURSOR_TIMEOUT / 2 + 1 );
+
+        assertNull( handler.getCursor( idle ) );
+        assertNotNull( handler.getCursor( used ) );
+        assertEquals( 1, handler.getOpenCursorCount() );
+
+        assertCursorNotFound( idle );
+    }
+
+
+    @Test
+    public void leastRecentlyUsedCursorsAreEvicted() {
+        List<Long> cursorIDs = new ArrayList<Long>();
+
+        for ( int i = 0; i < MongoChannelHandler.MAX_OPEN_CURSORS; i++ ) {
+            cursorIDs.add( open().getCursorID() );
+        }
+
+        assertEquals( MongoChannelHandler.MAX_OPEN_CURSORS, handler.getOpenCursorCount() );
+
+        // reading the oldest cursor keeps it open, the next oldest makes room instead
+        assertNotNull( handler.getCursor( cursorIDs.get( 0 ) ) );
+
+        long newest = open().getCursorID();
+
+        assertEquals( MongoChannelHandler.MAX_OPEN_CURSORS, handler.getOpenCursorCount() );
+        assertNotNull( handler.getCursor( cursorIDs.get( 0 ) ) );
+        assertNotNull( handler.getCursor( newest ) );
+        assertNull( handler.getCursor( cursorIDs.get( 1 ) ) );
+
+        assertCursorNotFound( cursorIDs.get( 1 ) );
+    }
+
+
+    private MongoCursor open() {
+        return handler.openCursor( UUID.randomUUID(), "bands", new Query(), 0 );
+    }
+
+
+    private void tick( long millis ) {
+        nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( millis ) );
+    }
+
+
+    private void assertCursorNotFound( long cursorID ) {
+        OpGetMore getMore = new OpGetMore();
+        getMore.setCursorID( cursorID );
+        getMore.setNumberToReturn( 10 );
+
+        OpReply reply = getMore.doOp( handler, null, null );
+
+        assertTrue( ( reply.getResponseFlags() & OpReply.CURSOR_NOT_FOUND ) != 0 );
+        assertEquals( 0, reply.getNumberReturned() );
+        assertEquals( 0, reply.getCursorID() );
+    }
+}
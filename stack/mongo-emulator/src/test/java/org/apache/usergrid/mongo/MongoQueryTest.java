@@ -17,6 +17,7 @@
 package org.apache.usergrid.mongo;
 
 
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -516,4 +517,56 @@ public class MongoQueryTest extends AbstractMongoTest {
 
         assertTrue( cur.hasNext() );
     }
+
+
+    @Test
+    public void cursorBatches() throws Exception {
+
+        UUID appId = emf.lookupApplication( "test-organization/test-app" );
+        EntityManager em = emf.getEntityManager( appId );
+
+        for ( int i = 0; i < 75; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", "band" + i );
+            properties.put( "founded", 1950 + i );
+            em.create( "cursorbatch", properties );
+        }
+
+        Mongo m = new Mongo( "localhost", 27017 );
+
+        DB db = m.getDB( "test-organization/test-app" );
+        db.authenticate( "test", "test".toCharArray() );
+
+        DBCollection coll = db.getCollection( "cursorbatches" );
+
+        // every batch after the first is read with a get more
+        DBCursor cur = coll.find().batchSize( 20 );
+
+        Set<Object> uuids = new HashSet<Object>();
+
+        while ( cur.hasNext() ) {
+            uuids.add( cur.next().get( "uuid" ) );
+        }
+
+        assertEquals( 75, uuids.size() );
+
+        // abandoning a cursor kills it on the server, see MongoChannelHandlerTest for the server side
+        cur = coll.find().batchSize( 10 );
+
+        assertTrue( cur.hasNext() );
+        cur.next();
+        cur.close();
+
+        // a negative batch size returns a single batch
+        cur = coll.find().batchSize( -10 );
+
+        int count = 0;
+
+        while ( cur.hasNext() ) {
+            cur.next();
+            count++;
+        }
+
+        assertEquals( 10, count );
+    }
 }
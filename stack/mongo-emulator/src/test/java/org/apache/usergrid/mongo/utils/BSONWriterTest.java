@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mongo.utils;
+
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.apache.usergrid.mongo.protocol.OpReply;
+import org.apache.usergrid.persistence.DynamicEntity;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.apache.usergrid.utils.JsonUtils.toJsonMap;
+import static org.apache.usergrid.utils.MapUtils.entry;
+import static org.apache.usergrid.utils.MapUtils.map;
+import static org.junit.Assert.assertEquals;
+
+
+public class BSONWriterTest {
+
+    private static Entity restaurant( int i ) {
+        Map<String, Object> location = new LinkedHashMap<String, Object>();
+        location.put( "latitude", 37.428526 );
+        location.put( "longitude", -122.140916 );
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put( "created", 1400000000000L + i );
+        properties.put( "modified", 1400000000000L + i );
+        properties.put( "name", "restaurant \u00e9\u20ac" + i );
+        properties.put( "rating", 4.5 );
+        properties.put( "visits", i );
+        properties.put( "open", true );
+        properties.put( "owner", UUIDUtils.newTimeUUID() );
+        properties.put( "location", location );
+        properties.put( "tags", Arrays.asList( "pizza", "pasta" ) );
+
+        return new DynamicEntity( "restaurant", UUIDUtils.newTimeUUID(), properties );
+    }
+
+
+    @Test
+    public void sameDocumentAsMap() {
+        Entity entity = restaurant( 1 );
+
+        BSONObject expected = new BasicBSONObject();
+        expected.putAll( map( entry( "_id", BSONWriter.getMongoId( entity ) ), toJsonMap( entity ),
+                entry( Schema.PROPERTY_UUID, entity.getUuid().toString() ) ) );
+        expected = BSONUtils.decoder().readObject( BSONUtils.encoder().encode( expected ) );
+
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer( ByteOrder.LITTLE_ENDIAN, 256 );
+        BSONWriter.writeEntity( buffer, entity );
+
+        byte[] written = new byte[buffer.readableBytes()];
+        buffer.readBytes( written );
+
+        assertEquals( expected.toMap(), BSONUtils.decoder().readObject( written ).toMap() );
+    }
+
+
+    @Test
+    public void largeReply() throws Exception {
+        List<Entity> entities = new ArrayList<Entity>();
+
+        OpReply reply = new OpReply();
+        reply.setCursorID( 42 );
+        reply.addDocument( map( "ok", 1.0 ) );
+
+        for ( int i = 0; i < 1000; i++ ) {
+            Entity entity = restaurant( i );
+            entities.add( entity );
+            reply.addEntity( entity );
+        }
+
+        // spans several chunks
+        ChannelBuffer buffer = reply.encode( null );
+
+        assertEquals( reply.getMessageLength(), buffer.readableBytes() );
+
+        OpReply decoded = new OpReply();
+        decoded.decode( buffer );
+
+        assertEquals( 42, decoded.getCursorID() );
+        assertEquals( 1001, decoded.getNumberReturned() );
+        assertEquals( 1001, decoded.getDocuments().size() );
+        assertEquals( 1.0, decoded.getDocuments().get( 0 ).get( "ok" ) );
+
+        for ( int i = 0; i < entities.size(); i++ ) {
+            assertEquals( entities.get( i ).getUuid().toString(),
+                    decoded.getDocuments().get( i + 1 ).get( Schema.PROPERTY_UUID ) );
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.usergrid.query.validator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -25,6 +26,7 @@ import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.utils.JsonUtils;
 import org.codehaus.jackson.JsonNode;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
@@ -108,6 +110,8 @@ public class ApiServerRunner implements QueryRunner {
                     clientEntity.setProperty(key,(Float)value );
                 else if( value instanceof Boolean )
                     clientEntity.setProperty(key,(Boolean)value );
+                else if( value instanceof Double || value instanceof Map )
+                    clientEntity.setProperty(key, JsonUtils.toJsonNode(value) );
             }
             clientEntities.add(clientEntity);
         }
@@ -121,13 +125,27 @@ public class ApiServerRunner implements QueryRunner {
 
     @Override
     public List<Entity> execute(String query, int limit) {
+        List<Entity> entities = new ArrayList<Entity>();
+        execute(query, limit, null, entities);
+        return entities;
+    }
+
+    /**
+     * Execute one page of the query
+     *
+     * @param cursor The cursor of the page, null for the first page
+     * @param entities The list to add the entities of the page to
+     * @return The cursor of the next page, null if this was the last page
+     */
+    public String execute(String query, int limit, String cursor, List<Entity> entities) {
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("ql", query);
         params.put("limit", limit);
+        if( cursor != null )
+            params.put("cursor", cursor);
         ApiResponse response = client.apiRequest(HttpMethod.GET, params, null, getOrg(), getApp(), getCollection());
-        List<Entity> entities = new ArrayList<Entity>();
         if( response.getEntities() == null )
-            return entities;
+            return null;
 
         for(org.usergrid.java.client.entities.Entity clientEntitity : response.getEntities()) {
             Entity entity = new QueryEntity();
@@ -135,22 +153,34 @@ public class ApiServerRunner implements QueryRunner {
             entity.setType(clientEntitity.getType());
             Map<String, JsonNode> values = clientEntitity.getProperties();
             for( String key : values.keySet() ) {
-                JsonNode node = values.get(key);
-                if( node.isBoolean() ) {
-                    entity.setProperty(key, node.asBoolean());
-                } else if( node.isInt() ) {
-                    entity.setProperty(key, node.asInt());
-                } else if( node.isLong() ) {
-                    entity.setProperty(key, node.asLong());
-                } else if( node.isDouble() ) {
-                    entity.setProperty(key, node.asDouble());
-                } else {
-                    entity.setProperty(key, node.asText());
-                }
+                setProperty(entity, key, values.get(key));
             }
             entities.add(entity);
         }
-        return entities;
+        return response.getCursor();
+    }
+
+    /**
+     * Objects are flattened into a property per field named parent_field, the way they are stored in SQLite
+     */
+    private void setProperty(Entity entity, String key, JsonNode node) {
+        if( node.isObject() ) {
+            Iterator<String> fields = node.getFieldNames();
+            while( fields.hasNext() ) {
+                String field = fields.next();
+                setProperty(entity, key + "_" + field, node.get(field));
+            }
+        } else if( node.isBoolean() ) {
+            entity.setProperty(key, node.asBoolean());
+        } else if( node.isInt() ) {
+            entity.setProperty(key, node.asInt());
+        } else if( node.isLong() ) {
+            entity.setProperty(key, node.asLong());
+        } else if( node.isDouble() ) {
+            entity.setProperty(key, node.asDouble());
+        } else {
+            entity.setProperty(key, node.asText());
+        }
     }
 
     public String getOrg() {
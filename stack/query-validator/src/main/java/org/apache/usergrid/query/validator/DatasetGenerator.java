@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.query.validator;
+
+import org.apache.usergrid.persistence.Entity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a dataset to load into both SQLite and the api.  The same seed always generates the same entities.  Every
+ * entity has every property, a unique name, and a location within about 20km of {@link #LATITUDE}, {@link
+ * #LONGITUDE}.
+ */
+public class DatasetGenerator {
+
+    public static final double LATITUDE = 37.776753;
+    public static final double LONGITUDE = -122.407846;
+
+    static final String[] CITIES = { "seoul", "busan", "tokyo", "osaka", "paris" };
+
+    public static List<Entity> generate(String type, int count, long seed) {
+        Random random = new Random(seed);
+        List<Entity> entities = new ArrayList<Entity>(count);
+        long created = System.currentTimeMillis();
+
+        for(int i = 0; i < count; i++) {
+            Map<String, Object> location = new LinkedHashMap<String, Object>();
+            location.put("latitude", LATITUDE + (random.nextDouble() - 0.5) * 0.36);
+            location.put("longitude", LONGITUDE + (random.nextDouble() - 0.5) * 0.45);
+
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put("name", String.format("%s-%05d", type, i));
+            properties.put("age", random.nextInt(100));
+            properties.put("sex", random.nextBoolean() ? "male" : "female");
+            properties.put("city", CITIES[random.nextInt(CITIES.length)]);
+            properties.put("score", random.nextInt(1000));
+            properties.put("active", random.nextInt(4) != 0);
+            properties.put("location", location);
+
+            QueryEntity entity = new QueryEntity();
+            entity.setType(type);
+            entity.setName((String)properties.get("name"));
+            entity.setProperties(properties);
+            entity.setCreated(created + i);
+            entity.setModified(created + i);
+            entities.add(entity);
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.query.validator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.usergrid.utils.JsonUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A corpus of queries read from a json array on the classpath.  Each query gives the SQLite query and the api query
+ * that must return the same entities:
+ * <pre>
+ * {
+ *     "name" : "ageRangeAllPages",
+ *     "sql" : "SELECT * FROM visitors WHERE age &gt;= 50",
+ *     "ql" : "select * where age &gt;= 50",
+ *     "limit" : 10,
+ *     "cursor" : true,
+ *     "ordered" : true
+ * }
+ * </pre>
+ * limit defaults to 10, cursor to false and ordered to true.
+ */
+public class QueryCorpus {
+
+    @SuppressWarnings("unchecked")
+    public static List<QueryRequest> load(String resource) throws IOException {
+        InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+        if( in == null )
+            throw new IOException("No query corpus " + resource);
+
+        List<Map<String, Object>> queries;
+        try {
+            queries = (List<Map<String, Object>>) JsonUtils.parse(IOUtils.toString(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+
+        List<QueryRequest> requests = new ArrayList<QueryRequest>();
+        for(Map<String, Object> query : queries) {
+            QueryRequest request = new QueryRequest();
+            request.setName((String)query.get("name"));
+            request.setDbQuery((String)query.get("sql"));
+            request.getApiQuery().setQuery((String)query.get("ql"));
+            if( query.containsKey("limit") )
+                request.getApiQuery().setLimit(((Number)query.get("limit")).intValue());
+            if( query.containsKey("cursor") )
+                request.getApiQuery().setCursor((Boolean)query.get("cursor"));
+            if( query.containsKey("ordered") )
+                request.setOrdered((Boolean)query.get("ordered"));
+            requests.add(request);
+        }
+        return requests;
+    }
+}
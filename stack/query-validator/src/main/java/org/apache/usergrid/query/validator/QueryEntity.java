@@ -46,6 +46,12 @@ public class QueryEntity extends DynamicEntity {
             Object value = properties.get(key);
             Object otherValue = otherProperties.get(key);
 
+            if( value == null || otherValue == null ) {
+                if( value != otherValue )
+                    return false;
+                continue;
+            }
+
             if(value.getClass() == Boolean.class) {
                 value = (Boolean)value ? 1 : 0;
             }
@@ -54,7 +60,7 @@ public class QueryEntity extends DynamicEntity {
                 otherValue = (Boolean)otherValue ? 1 : 0;
             }
 
-            if( otherValue == null || !value.equals(otherValue) )
+            if( !value.equals(otherValue) )
                 return false;
         }
         return true;
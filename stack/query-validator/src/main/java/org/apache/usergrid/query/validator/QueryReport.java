@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.query.validator;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the responses of a corpus run, to report correctness, latency and Cassandra reads per query.  The csv is
+ * meant to be kept between runs, so a change to the query engine can be checked for both speed and correctness.
+ */
+public class QueryReport {
+
+    private final List<QueryResponse> responses = new ArrayList<QueryResponse>();
+
+    public void add(QueryResponse response) {
+        responses.add(response);
+    }
+
+    public List<QueryResponse> getResponses() {
+        return responses;
+    }
+
+    public List<QueryResponse> getFailures() {
+        List<QueryResponse> failures = new ArrayList<QueryResponse>();
+        for(QueryResponse response : responses) {
+            if( !response.result() )
+                failures.add(response);
+        }
+        return failures;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("%-40s %6s %6s %6s %10s %8s", "query", "result", "rows", "pages", "latency ms",
+                "reads"));
+        for(QueryResponse response : responses) {
+            out.println(String.format("%-40s %6s %6d %6d %10.2f %8d", response.getRequest().getName(),
+                    response.result() ? "ok" : "FAIL", response.getActually().size(), response.getPages(),
+                    response.getLatency() / 1000.0, response.getReads()));
+        }
+    }
+
+    public void writeCsv(File file) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("query,result,rows,pages,latency_ms,reads\n");
+        for(QueryResponse response : responses) {
+            builder.append(String.format("%s,%s,%d,%d,%.3f,%d\n", response.getRequest().getName(),
+                    response.result() ? "ok" : "fail", response.getActually().size(), response.getPages(),
+                    response.getLatency() / 1000.0, response.getReads()));
+        }
+        FileUtils.writeStringToFile(file, builder.toString(), "UTF-8");
+    }
+}
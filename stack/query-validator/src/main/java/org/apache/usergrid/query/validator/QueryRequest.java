@@ -20,13 +20,23 @@ package org.apache.usergrid.query.validator;
  * @author Sungju Jin
  */
 public class QueryRequest {
+    private String name;
     private String dbQuery;
     private ApiQuery apiQuery;
+    private boolean ordered = true;
 
     public  QueryRequest() {
         this.apiQuery = new ApiQuery();
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
     public String getDbQuery() {
         return dbQuery;
     }
@@ -39,9 +49,21 @@ public class QueryRequest {
         return apiQuery;
     }
 
+    /**
+     * False when the query doesn't define the order of its results, e.g. geo queries, they are then compared as sets
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
     static public class ApiQuery {
         private String query;
         private int limit;
+        private boolean cursor;
 
         public ApiQuery() {
             limit = 10;
@@ -62,5 +84,17 @@ public class QueryRequest {
         public void setLimit(int limit) {
             this.limit = limit;
         }
+
+        /**
+         * True to follow the cursor through all the pages of the query, which are then compared with the unlimited
+         * database query
+         */
+        public boolean isCursor() {
+            return cursor;
+        }
+
+        public void setCursor(boolean cursor) {
+            this.cursor = cursor;
+        }
     }
 }
@@ -31,6 +31,9 @@ public class QueryResponse {
     List<Entity> actually;
     String description;
     QueryRequest request;
+    long latency;
+    long reads;
+    int pages;
 
     public boolean result() {
         return result;
@@ -72,6 +75,36 @@ public class QueryResponse {
         this.request = request;
     }
 
+    /** The time in microseconds the api took to return all the pages */
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * The Cassandra reads issued while the api ran the query, only counted when the api runs in this JVM.  The meter
+     * is JVM wide, so reads by anything else running at the time, e.g. the job scheduler polling for work, are
+     * included.  Only compare the numbers of runs on an otherwise idle stack
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    public void setReads(long reads) {
+        this.reads = reads;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public void setPages(int pages) {
+        this.pages = pages;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -19,8 +19,11 @@ package org.apache.usergrid.query.validator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Sungju Jin
@@ -46,18 +49,42 @@ public class QueryValidator {
     }
 
     public QueryResponse execute(QueryRequest request) {
-        return execute(request, new DefaultQueryResultsMatcher());
+        QueryResultsMatcher matcher = request.isOrdered() ? new DefaultQueryResultsMatcher()
+                : new UnorderedQueryResultsMatcher();
+        return execute(request, matcher);
     }
 
+    /**
+     * Run the query against both SQLite and the api and compare the results.  The api is timed and its Cassandra reads
+     * are counted, from the first page to the last one when following the cursor.
+     */
     public QueryResponse execute(QueryRequest request, QueryResultsMatcher matcher) {
         List<Entity> sqlEntities = sql.execute(request.getDbQuery());
-        List<Entity> apiEntities = api.execute(request.getApiQuery().getQuery(), request.getApiQuery().getLimit());
+
+        QueryRequest.ApiQuery apiQuery = request.getApiQuery();
+        List<Entity> apiEntities = new ArrayList<Entity>();
+        int pages = 0;
+        String cursor = null;
+
+        long reads = CassandraService.getReadCount();
+        long start = System.nanoTime();
+        do {
+            cursor = api.execute(apiQuery.getQuery(), apiQuery.getLimit(), cursor, apiEntities);
+            pages++;
+        } while( apiQuery.isCursor() && cursor != null );
+        long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        reads = CassandraService.getReadCount() - reads;
+
         boolean equals = matcher.equals(sqlEntities, apiEntities);
 
         QueryResponse response = new QueryResponse();
+        response.setRequest(request);
         response.setResult(equals);
         response.setExpacted(sqlEntities);
         response.setActually(apiEntities);
+        response.setLatency(latency);
+        response.setReads(reads);
+        response.setPages(pages);
         return response;
     }
 
@@ -22,14 +22,20 @@ import org.springframework.stereotype.Component;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.Schema;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import org.apache.usergrid.persistence.geo.GeocellUtils;
+import org.apache.usergrid.persistence.geo.model.Point;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.sqlite.Function;
 
 /**
  * @author Sungju Jin
@@ -46,12 +52,33 @@ public class SqliteRunner implements QueryRunner {
 
     @Override
     public boolean setup() {
+        createFunctions();
         createTable();
         insertDatas();
 
         return true;
     }
 
+    /**
+     * Register distance(lat1, lon1, lat2, lon2) in meters, computed like the geo queries of the api do.  Functions are
+     * registered per connection, so the data source must hand out a single connection.
+     */
+    private void createFunctions() {
+        jdbcTemplate.execute(new ConnectionCallback<Object>() {
+            @Override
+            public Object doInConnection(Connection connection) throws SQLException {
+                Function.create(connection, "distance", new Function() {
+                    @Override
+                    protected void xFunc() throws SQLException {
+                        result(GeocellUtils.distance(new Point(value_double(0), value_double(1)),
+                                new Point(value_double(2), value_double(3))));
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
     private void insertDatas() {
         for( Entity entity : entities ) {
             insertData(entity);
@@ -61,37 +88,16 @@ public class SqliteRunner implements QueryRunner {
     private void insertData(Entity entity) {
         StringBuilder feilds = new StringBuilder();
         StringBuilder values = new StringBuilder();
-        Map<String, Object> properties = Schema.getDefaultSchema().getEntityProperties(entity);
-        for(String key : properties.keySet()) {
+        Map<String, Object> columns = getColumns(entity);
+        for(String key : columns.keySet()) {
             feilds.append(key);
             feilds.append(",");
 
-            Class type = null;
-            try
-            {
-                type = entity.getProperty(key).getClass();
-            } catch (NullPointerException ne) {
-                type = entity.getDynamicProperties().get(key).getClass();
-            }
-
-            Object value = null;
-            if(StringUtils.equals("name",key)) {
-                value = entity.getName();
-            } else {
-                value = entity.getProperty(key);
-            }
-            if( type == Boolean.class ) {
-                if((Boolean)value) {
-                    value = 1;
-                } else {
-                    value = 0;
-                }
-            }
-
-            String sqlType = getSqlDatatype(type);
+            Object value = columns.get(key);
+            String sqlType = getSqlDatatype(value == null ? null : value.getClass());
             if( StringUtils.equals("TEXT", sqlType) ) {
                 values.append("'");
-                values.append(value);
+                values.append(StringUtils.replace(String.valueOf(value), "'", "''"));
                 values.append("'");
             } else {
                 values.append(value);
@@ -120,20 +126,13 @@ public class SqliteRunner implements QueryRunner {
         builder.append("CREATE TABLE ");
         builder.append(collection);
         builder.append("(");
-        Map<String, Object> properties = Schema.getDefaultSchema().getEntityProperties(entity);
-        for(String key : properties.keySet()) {
+        Map<String, Object> columns = getColumns(entity);
+        for(String key : columns.keySet()) {
             builder.append(key);
             builder.append(" ");
 
-            Class type = null;
-            try
-            {
-                type = entity.getProperty(key).getClass();
-            } catch (NullPointerException ne) {
-                type = entity.getDynamicProperties().get(key).getClass();
-            }
-
-            String sqlType = getSqlDatatype(type);
+            Object value = columns.get(key);
+            String sqlType = getSqlDatatype(value == null ? null : value.getClass());
             builder.append(sqlType);
             builder.append(",");
         }
@@ -145,6 +144,43 @@ public class SqliteRunner implements QueryRunner {
         jdbcTemplate.execute(builder.toString());
     }
 
+    /**
+     * The column values of the entity.  Booleans are stored as 1 or 0, and objects are flattened into a column per
+     * field named parent_field.
+     */
+    private Map<String, Object> getColumns(Entity entity) {
+        Map<String, Object> columns = new LinkedHashMap<String, Object>();
+        Map<String, Object> properties = Schema.getDefaultSchema().getEntityProperties(entity);
+        for(String key : properties.keySet()) {
+            Object value = null;
+            if(StringUtils.equals("name",key)) {
+                value = entity.getName();
+            } else {
+                value = entity.getProperty(key);
+            }
+            if( value == null ) {
+                value = entity.getDynamicProperties().get(key);
+            }
+            if( value != null ) {
+                addColumn(columns, key, value);
+            }
+        }
+        return columns;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addColumn(Map<String, Object> columns, String key, Object value) {
+        if( value instanceof Map ) {
+            for( Map.Entry<String, Object> field : ((Map<String, Object>)value).entrySet() ) {
+                addColumn(columns, key + "_" + field.getKey(), field.getValue());
+            }
+        } else if( value instanceof Boolean ) {
+            columns.put(key, (Boolean)value ? 1 : 0);
+        } else {
+            columns.put(key, value);
+        }
+    }
+
     @Override
     public List<Entity> execute(String query) {
         List<Entity> entities = jdbcTemplate.query(query, new RowMapper<Entity>() {
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.query.validator;
+
+import org.apache.usergrid.persistence.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matches results that contain the same entities in any order, for queries that don't define the order of their
+ * results.
+ */
+public class UnorderedQueryResultsMatcher implements QueryResultsMatcher {
+    @Override
+    public boolean equals(List<Entity> expectedEntities, List<Entity> actuallyEntities) {
+        if( expectedEntities.size() != actuallyEntities.size() )
+            return false;
+
+        List<Entity> remaining = new ArrayList<Entity>(actuallyEntities);
+        for(Entity expected : expectedEntities) {
+            if( !remaining.remove(expected) )
+                return false;
+        }
+        return true;
+    }
+}
@@ -81,7 +81,10 @@ public class AbstractQueryIT {
     }
 
     protected static void createInitializationDatas(String collection) {
-        List<Entity> entities = loadEntitiesFromResource(collection);
+        createInitializationDatas(collection, loadEntitiesFromResource(collection));
+    }
+
+    protected static void createInitializationDatas(String collection, List<Entity> entities) {
         QueryValidationConfiguration configuration = new QueryValidationConfiguration();
         configuration.setEndpointUri(fullEndpoint);
         configuration.setOrg(orgName);
@@ -21,12 +21,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.apache.usergrid.cassandra.CassandraResource;
 import org.apache.usergrid.query.validator.users.UserQueryIT;
+import org.apache.usergrid.query.validator.visitors.VisitorCorpusIT;
 import org.apache.usergrid.rest.ITSetup;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses(
         {
-                UserQueryIT.class
+                UserQueryIT.class,
+                VisitorCorpusIT.class
         })
 public class QueryITSuite {
     @ClassRule
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.query.validator.visitors;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.apache.usergrid.query.validator.AbstractQueryIT;
+import org.apache.usergrid.query.validator.DatasetGenerator;
+import org.apache.usergrid.query.validator.QueryCorpus;
+import org.apache.usergrid.query.validator.QueryReport;
+import org.apache.usergrid.query.validator.QueryRequest;
+import org.apache.usergrid.query.validator.QueryResponse;
+
+import java.io.File;
+
+/**
+ * Runs the visitors corpus against a generated dataset, and reports latency and Cassandra reads per query to
+ * target/query-validator/visitors.csv.
+ */
+public class VisitorCorpusIT extends AbstractQueryIT {
+
+    @BeforeClass
+    public static void setDatas() {
+        createInitializationDatas("visitor", DatasetGenerator.generate("visitor", 500, 42));
+    }
+
+    @Test
+    public void corpus() throws Exception {
+        QueryReport report = new QueryReport();
+        for(QueryRequest request : QueryCorpus.load("queries/visitors.json")) {
+            report.add(validator.execute(request));
+        }
+
+        report.print(System.out);
+        report.writeCsv(new File("target/query-validator/visitors.csv"));
+
+        StringBuilder failures = new StringBuilder();
+        for(QueryResponse failure : report.getFailures()) {
+            failures.append(failure.getRequest().getName());
+            failures.append(failure.toString());
+        }
+        Assert.assertTrue(failures.toString(), report.getFailures().isEmpty());
+    }
+}
@@ -82,6 +82,8 @@ public class ApiResponse {
     private Map<String, List<String>> params;
     private List<AggregateCounterSet> counters;
     private ClientCredentialsInfo credentials;
+    private Map<String, Object> profile;
+    private Map<String, Object> explain;
 
     protected Map<String, Object> properties = new TreeMap<String, Object>( String.CASE_INSENSITIVE_ORDER );
 
@@ -372,6 +374,7 @@ public class ApiResponse {
             next = results.getNextResult();
             cursor = results.getCursor();
             counters = results.getCounters();
+            explain = results.getExplain();
         }
         else {
             entities = new ArrayList<Entity>();
@@ -561,6 +564,30 @@ public class ApiResponse {
     }
 
 
+    /** The Cassandra reads made for this request, only present when the caller asked for a profile */
+    @JsonSerialize( include = Inclusion.NON_NULL )
+    public Map<String, Object> getProfile() {
+        return profile;
+    }
+
+
+    public void setProfile( Map<String, Object> profile ) {
+        this.profile = profile;
+    }
+
+
+    /** How the query was evaluated, only present when the caller passed explain=true */
+    @JsonSerialize( include = Inclusion.NON_NULL )
+    public Map<String, Object> getExplain() {
+        return explain;
+    }
+
+
+    public void setExplain( Map<String, Object> explain ) {
+        this.explain = explain;
+    }
+
+
     public String getEntityPath( String url_base, Entity entity ) {
         String entity_uri = null;
         if ( !Application.ENTITY_TYPE.equals( entity.getType() ) ) {
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.ws.rs.core.StreamingOutput;
+
+
+/**
+ * Writes a region of a file with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.  The container only
+ * gives us an {@link OutputStream}, so this is not a zero copy send: the region is mapped and copied to the stream
+ * through the small, fixed size buffer of {@link Channels#newChannel(OutputStream)}.  What it does save is reading the
+ * file through a stream, and the heap used doesn't grow with the size of the region.  The channel is closed once
+ * written.
+ */
+public class FileRegionOutput implements StreamingOutput {
+
+    private final FileChannel channel;
+    private final long position;
+    private final long count;
+
+
+    /**
+     * @param channel The channel to read from
+     * @param position The position of the first byte to write
+     * @param count The number of bytes to write
+     */
+    public FileRegionOutput( FileChannel channel, long position, long count ) {
+        this.channel = channel;
+        this.position = position;
+        this.count = count;
+    }
+
+
+    @Override
+    public void write( OutputStream output ) throws IOException {
+        WritableByteChannel target = Channels.newChannel( output );
+
+        try {
+            long written = 0;
+
+            while ( written < count ) {
+                long transferred = channel.transferTo( position + written, count - written, target );
+
+                //the file was truncated underneath us
+                if ( transferred <= 0 ) {
+                    throw new IOException( "Region ended after " + written + " of " + count + " bytes" );
+                }
+
+                written += transferred;
+            }
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest;
+
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Reads and writes Smile, the binary encoding of JSON.  Responses are only written as Smile when the client asks for
+ * it, see {@link org.apache.usergrid.rest.filters.SmileFilter}
+ */
+@Provider
+@Component
+@Scope("singleton")
+@Consumes(SmileProvider.APPLICATION_SMILE)
+@Produces(SmileProvider.APPLICATION_SMILE)
+public class SmileProvider extends JacksonJsonProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger( SmileProvider.class );
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE_TYPE = MediaType.valueOf( APPLICATION_SMILE );
+
+
+    public SmileProvider() {
+        super( createMapper(), JacksonCustomMapperProvider.BASIC_ANNOTATIONS );
+        logger.info( "SmileProvider installed" );
+    }
+
+
+    /** Configured like the {@link JacksonCustomMapperProvider} mapper, there's no point indenting binary */
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper( new SmileFactory() );
+        mapper.configure( SerializationConfig.Feature.WRITE_DATES_AS_TIMESTAMPS, false );
+        return mapper;
+    }
+
+
+    @Override
+    protected boolean isJsonType( MediaType mediaType ) {
+        return isSmile( mediaType );
+    }
+
+
+    public static boolean isSmile( MediaType mediaType ) {
+        return mediaType != null && APPLICATION_SMILE_TYPE.isCompatible( mediaType ) && !mediaType.isWildcardType()
+                && !mediaType.isWildcardSubtype();
+    }
+}
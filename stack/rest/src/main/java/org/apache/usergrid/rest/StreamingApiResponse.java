@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.services.ServiceResults;
+
+
+/**
+ * Writes an {@link ApiResponse} for a collection read one page at a time.  The envelope is written as soon as the
+ * first page has been read, and the entities of each page are written and flushed before the next page is read, so
+ * only a single page of entities is held at a time.
+ * <p/>
+ * The first page is read before the response is committed, so errors from it are reported as usual.  An error reading
+ * a later page can only be logged, the client receives a truncated document.
+ */
+public class StreamingApiResponse implements StreamingOutput {
+
+    private static final Logger LOG = LoggerFactory.getLogger( StreamingApiResponse.class );
+
+    /** The fields of the response written before the entities, in the order of {@link ApiResponse} */
+    private static final Set<String> HEAD_FIELDS = new HashSet<String>(
+            Arrays.asList( "action", "application", "params", "path", "query", "uri", "status", "error",
+                    "applications", "entity" ) );
+
+    private static final String ENTITIES = "entities";
+
+    /** Configured like the {@link JacksonCustomMapperProvider} mapper, indenting is left to the generator */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+
+    static {
+        MAPPER.configure( SerializationConfig.Feature.WRITE_DATES_AS_TIMESTAMPS, false );
+    }
+
+
+    /** Reads the pages of the collection */
+    public interface PageReader {
+
+        /**
+         * Read a page of the collection
+         *
+         * @param cursor The cursor to start at, null for the first page
+         * @param limit The maximum number of entities to return
+         */
+        ServiceResults readPage( String cursor, int limit ) throws Exception;
+    }
+
+
+    private final ApiResponse response;
+    private final PageReader reader;
+    private final int limit;
+    private final int pageSize;
+    private final boolean pretty;
+    private ServiceResults firstPage;
+
+
+    /**
+     * @param response The response, without any entities
+     * @param firstPage The first page, already read with a limit of at most the page size
+     * @param reader Reads the following pages
+     * @param limit The total number of entities to return
+     * @param pageSize The number of entities to read at a time
+     * @param pretty True to indent the output
+     */
+    public StreamingApiResponse( ApiResponse response, ServiceResults firstPage, PageReader reader, int limit,
+                                 int pageSize, boolean pretty ) {
+        this.response = response;
+        this.firstPage = firstPage;
+        this.reader = reader;
+        this.limit = limit;
+        this.pageSize = pageSize;
+        this.pretty = pretty;
+
+        response.setPath( firstPage.getPath() );
+        response.setCounters( firstPage.getCounters() );
+        response.setExplain( firstPage.getExplain() );
+    }
+
+
+    @Override
+    public void write( OutputStream output ) throws IOException, WebApplicationException {
+
+        JsonGenerator gen = MAPPER.getJsonFactory().createJsonGenerator( output, JsonEncoding.UTF8 );
+        gen.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+
+        if ( pretty ) {
+            gen.useDefaultPrettyPrinter();
+        }
+
+        gen.writeStartObject();
+
+        writeFields( gen, true );
+
+        gen.writeArrayFieldStart( ENTITIES );
+
+        ServiceResults page = firstPage;
+        firstPage = null;
+
+        int count = 0;
+        String cursor = null;
+
+        try {
+            while ( page != null ) {
+                List<Entity> entities = page.getEntities();
+
+                for ( Entity entity : entities ) {
+                    gen.writeObject( entity );
+                }
+
+                count += entities.size();
+                cursor = page.getCursor();
+
+                gen.flush();
+
+                if ( cursor == null || count >= limit ) {
+                    break;
+                }
+
+                page = reader.readPage( cursor, Math.min( pageSize, limit - count ) );
+            }
+        }
+        catch ( IOException e ) {
+            throw e;
+        }
+        catch ( Exception e ) {
+            LOG.error( "Unable to read the next page of {}, the response is truncated", response.getPath(), e );
+            throw new WebApplicationException( e );
+        }
+
+        gen.writeEndArray();
+
+        response.setCursor( cursor );
+        response.setCount( count );
+
+        writeFields( gen, false );
+
+        gen.writeEndObject();
+        gen.flush();
+    }
+
+
+    /** Write the fields of the response before or after the entities */
+    private void writeFields( JsonGenerator gen, boolean head ) throws IOException {
+        ObjectNode node = MAPPER.valueToTree( response );
+
+        Iterator<Map.Entry<String, JsonNode>> fields = node.getFields();
+
+        while ( fields.hasNext() ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+
+            if ( ENTITIES.equals( field.getKey() ) || HEAD_FIELDS.contains( field.getKey() ) != head ) {
+                continue;
+            }
+
+            gen.writeFieldName( field.getKey() );
+            gen.writeTree( field.getValue() );
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.usergrid.rest.applications;
 
 
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -37,6 +38,8 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.PathSegment;
@@ -52,17 +55,29 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.EntityRef;
 import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Schema;
 import org.apache.usergrid.rest.AbstractContextResource;
 import org.apache.usergrid.rest.ApiResponse;
+import org.apache.usergrid.rest.FileRegionOutput;
+import org.apache.usergrid.rest.StreamingApiResponse;
 import org.apache.usergrid.rest.applications.assets.AssetsResource;
+import org.apache.usergrid.rest.exceptions.NotModifiedException;
+import org.apache.usergrid.rest.filters.EntityTagFilter;
 import org.apache.usergrid.rest.security.annotations.RequireApplicationAccess;
+import org.apache.usergrid.rest.utils.ByteRange;
 import org.apache.usergrid.security.oauth.AccessInfo;
+import org.apache.usergrid.security.shiro.utils.SubjectUtils;
 import org.apache.usergrid.services.assets.data.AssetUtils;
 import org.apache.usergrid.services.assets.data.BinaryStore;
+import org.apache.usergrid.services.assets.data.ChannelBinaryStore;
 import org.apache.usergrid.utils.InflectionUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.shiro.subject.Subject;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.sun.jersey.api.json.JSONWithPadding;
 import com.sun.jersey.core.provider.EntityHolder;
 import com.sun.jersey.multipart.BodyPart;
@@ -77,6 +92,7 @@ import static org.apache.usergrid.services.ServiceParameter.addParameter;
 import static org.apache.usergrid.services.ServicePayload.batchPayload;
 import static org.apache.usergrid.services.ServicePayload.idListPayload;
 import static org.apache.usergrid.services.ServicePayload.payload;
+import static org.apache.usergrid.security.shiro.utils.SubjectUtils.getPermissionFromPath;
 import static org.apache.usergrid.utils.JsonUtils.mapToJsonString;
 import static org.apache.usergrid.utils.JsonUtils.normalizeJsonTree;
 
@@ -92,6 +108,13 @@ public class ServiceResource extends AbstractContextResource {
     private static final Logger LOG = LoggerFactory.getLogger( ServiceResource.class );
     private static final String FILE_FIELD_NAME = "file";
 
+    /** The number of entities read at a time when a collection is streamed */
+    private static final int STREAM_PAGE_SIZE = 100;
+
+    /** Not in JAX-RS 1.1's Response.Status */
+    protected static final int PARTIAL_CONTENT = 206;
+    protected static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
     @Autowired
     private BinaryStore binaryStore;
 
@@ -254,6 +277,11 @@ public class ServiceResource extends AbstractContextResource {
             }
             Query query = r.getLastQuery();
             if ( query != null ) {
+                //count(*) and exists(*) only return their data, there are no entities
+                if ( query.hasSelectFunction() ) {
+                    response.setPath( results.getPath() );
+                    return results;
+                }
                 if ( query.hasSelectSubjects() ) {
                     response.setList( query.getSelectionResults( results ) );
                     response.setCount( response.getList().size() );
@@ -290,12 +318,221 @@ public class ServiceResource extends AbstractContextResource {
         response.setApplication( services.getApplication() );
         response.setParams( ui.getQueryParameters() );
 
+        if ( "true".equalsIgnoreCase( ui.getQueryParameters().getFirst( "stream" ) ) ) {
+            StreamingApiResponse stream = streamCollection( ui, response );
+
+            if ( stream != null ) {
+                return new JSONWithPadding( stream, callback );
+            }
+        }
+
+        boolean singleEntity = isSingleEntityRequest();
+
+        if ( singleEntity ) {
+            checkEntityNotModified();
+        }
+
         executeServiceRequest( ui, response, ServiceAction.GET, null );
 
+        evaluatePreconditions( response, singleEntity );
+
         return new JSONWithPadding( response, callback );
     }
 
 
+    /** True if the request addresses one entity of a collection by id or name */
+    protected boolean isSingleEntityRequest() {
+        List<ServiceParameter> parameters = getServiceParameters();
+
+        if ( parameters.size() < 2 ) {
+            return false;
+        }
+
+        if ( ServiceParameter.lastParameterIsId( parameters ) ) {
+            return true;
+        }
+
+        return ServiceParameter.lastParameterIsName( parameters ) && !InflectionUtils
+                .isPlural( parameters.get( parameters.size() - 1 ).getName() );
+    }
+
+
+    /**
+     * Answer a conditional GET of /collection/uuid from the entity's modified column alone, without loading the
+     * entity.  Anything that can't be decided from the column, including subjects that aren't plainly permitted to
+     * read the path, falls through to the full read
+     */
+    protected void checkEntityNotModified() throws Exception {
+
+        if ( httpServletRequest.getHeader( HttpHeaders.IF_NONE_MATCH ) == null
+                && httpServletRequest.getHeader( HttpHeaders.IF_MODIFIED_SINCE ) == null ) {
+            return;
+        }
+
+        List<ServiceParameter> parameters = getServiceParameters();
+
+        if ( parameters.size() != 2 || !parameters.get( 0 ).isName() || !parameters.get( 1 ).isId() ) {
+            return;
+        }
+
+        String collectionName = parameters.get( 0 ).getName();
+        UUID entityId = parameters.get( 1 ).getId();
+
+        Subject subject = SubjectUtils.getSubject();
+
+        if ( subject != null && !subject.isPermitted(
+                getPermissionFromPath( services.getApplicationId(), "get", "/" + collectionName + "/" + entityId ) ) ) {
+            return;
+        }
+
+        EntityManager em = services.getEntityManager();
+        EntityRef ref = em.getRef( entityId );
+
+        if ( ref == null || !collectionName.equalsIgnoreCase( Schema.defaultCollectionName( ref.getType() ) ) ) {
+            return;
+        }
+
+        Object modified = em.getProperty( ref, Schema.PROPERTY_MODIFIED );
+
+        if ( !( modified instanceof Number ) ) {
+            return;
+        }
+
+        EntityTag entityTag = entityTag( entityId, ( ( Number ) modified ).longValue() );
+        Date lastModified = lastModified( ( ( Number ) modified ).longValue() );
+
+        Response.ResponseBuilder builder = request.evaluatePreconditions( lastModified, entityTag );
+
+        if ( builder != null && builder.build().getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() ) {
+            throw new NotModifiedException( entityTag, lastModified );
+        }
+    }
+
+
+    /**
+     * Tag the response for revalidation.  A single entity gets a strong tag and last modified date from its uuid and
+     * modified time.  A page of entities gets a weak tag from every entity's uuid and modified time and the cursor.
+     * Responses without entities aren't tagged.  If the client's copy is current the body is discarded unwritten
+     */
+    protected void evaluatePreconditions( ApiResponse response, boolean singleEntity ) {
+
+        List<Entity> entities = response.getEntities();
+
+        if ( entities == null ) {
+            return;
+        }
+
+        EntityTag entityTag;
+        Date lastModified = null;
+
+        if ( singleEntity && entities.size() == 1 ) {
+            Entity entity = entities.get( 0 );
+            long modified = modified( entity );
+
+            entityTag = entityTag( entity.getUuid(), modified );
+            lastModified = lastModified( modified );
+        }
+        else {
+            Hasher hasher = Hashing.md5().newHasher();
+
+            for ( Entity entity : entities ) {
+                hasher.putLong( entity.getUuid().getMostSignificantBits() )
+                      .putLong( entity.getUuid().getLeastSignificantBits() ).putLong( modified( entity ) );
+            }
+
+            if ( response.getCursor() != null ) {
+                hasher.putString( response.getCursor() );
+            }
+
+            entityTag = new EntityTag( hasher.hash().toString(), true );
+        }
+
+        Response.ResponseBuilder builder = lastModified != null ? request.evaluatePreconditions( lastModified, entityTag ) :
+                                           request.evaluatePreconditions( entityTag );
+
+        if ( builder != null && builder.build().getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() ) {
+            throw new NotModifiedException( entityTag, lastModified );
+        }
+
+        httpServletRequest.setAttribute( EntityTagFilter.ENTITY_TAG, entityTag );
+
+        if ( lastModified != null ) {
+            httpServletRequest.setAttribute( EntityTagFilter.LAST_MODIFIED, lastModified );
+        }
+    }
+
+
+    private static EntityTag entityTag( UUID entityId, long modified ) {
+        return new EntityTag( entityId + "-" + modified );
+    }
+
+
+    /** HTTP dates only carry seconds */
+    private static Date lastModified( long modified ) {
+        return new Date( modified / 1000 * 1000 );
+    }
+
+
+    private static long modified( Entity entity ) {
+        Long modified = entity.getModified();
+        return modified != null ? modified : 0;
+    }
+
+
+    /**
+     * Read a collection a page at a time, writing each page before the next is read.  Each page is read with its own
+     * service request, so permissions and services behave exactly as they do when paging with a cursor.  Output is
+     * compact unless pretty=true is passed
+     *
+     * @return The response, or null if the request isn't for the entities of a collection
+     */
+    protected StreamingApiResponse streamCollection( UriInfo ui, ApiResponse response ) throws Exception {
+
+        if ( !ServiceParameter.lastParameterIsName( getServiceParameters() ) || !InflectionUtils
+                .isPlural( getServiceParameters().get( getServiceParameters().size() - 1 ).getName() ) ) {
+            return null;
+        }
+
+        MultivaluedMap<String, String> params = ui.getQueryParameters();
+
+        if ( "true".equalsIgnoreCase( params.getFirst( "tree" ) ) ) {
+            return null;
+        }
+
+        Query parsed = Query.fromQueryParams( params );
+        final Query query = parsed != null ? parsed : new Query();
+
+        if ( query.hasSelectSubjects() || query.hasSelectFunction() ) {
+            return null;
+        }
+
+        StreamingApiResponse.PageReader reader = new StreamingApiResponse.PageReader() {
+            @Override
+            public ServiceResults readPage( String cursor, int limit ) throws Exception {
+                Query page = new Query( query );
+                page.setCursor( cursor );
+                page.setLimit( limit );
+
+                List<ServiceParameter> parameters = new ArrayList<ServiceParameter>( getServiceParameters() );
+                addParameter( parameters, page );
+
+                return services.newRequest( ServiceAction.GET, false, parameters, null ).execute();
+            }
+        };
+
+        int limit = query.getLimit();
+
+        ServiceResults firstPage = reader.readPage( query.getCursor(), Math.min( limit, STREAM_PAGE_SIZE ) );
+
+        response.setServiceRequest( firstPage.getRequest() );
+
+        httpServletRequest.setAttribute( "applicationId", services.getApplicationId() );
+
+        return new StreamingApiResponse( response, firstPage, reader, limit, STREAM_PAGE_SIZE,
+                "true".equalsIgnoreCase( params.getFirst( "pretty" ) ) );
+    }
+
+
     @SuppressWarnings({ "unchecked" })
     public ServicePayload getPayload( Object json ) {
         ServicePayload payload = null;
@@ -600,7 +837,7 @@ public class ServiceResource extends AbstractContextResource {
 
         Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
 
-        // return a 302 if not modified
+        // return a 304 if not modified
         Date modified = AssetUtils.fromIfModifiedSince( modifiedSince );
         if ( modified != null ) {
             Long lastModified = ( Long ) fileMetadata.get( AssetUtils.LAST_MODIFIED );
@@ -609,55 +846,66 @@ public class ServiceResource extends AbstractContextResource {
             }
         }
 
-        boolean range = StringUtils.isNotBlank( rangeHeader );
-        long start = 0, end = 0, contentLength = 0;
-        InputStream inputStream;
+        String eTag = ( String ) fileMetadata.get( AssetUtils.E_TAG );
+        if ( eTag != null ) {
+            Response.ResponseBuilder preconditionFailed = request.evaluatePreconditions( new EntityTag( eTag ) );
+            if ( preconditionFailed != null ) {
+                return preconditionFailed.build();
+            }
+        }
+
+        Long storedLength = ( Long ) fileMetadata.get( AssetUtils.CONTENT_LENGTH );
+        long contentLength = storedLength != null ? storedLength : 0;
+        ByteRange range = ByteRange.parse( rangeHeader, contentLength );
+
+        if ( range != null && !range.isSatisfiable() ) {
+            return Response.status( REQUESTED_RANGE_NOT_SATISFIABLE ).header( "Content-Range", range.getContentRange() )
+                           .build();
+        }
 
-        if ( range ) { // honor range request, calculate start & end
+        Object body;
+        long start = range != null ? range.getStart() : 0;
+        long count = range != null ? range.getCount() : contentLength;
 
-            String rangeValue = rangeHeader.trim().substring( "bytes=".length() );
-            contentLength = ( Long ) fileMetadata.get( AssetUtils.CONTENT_LENGTH );
-            end = contentLength - 1;
-            if ( rangeValue.startsWith( "-" ) ) {
-                start = contentLength - 1 - Long.parseLong( rangeValue.substring( "-".length() ) );
+        if ( binaryStore instanceof ChannelBinaryStore ) { // serve straight from the file
+
+            FileChannel channel = ( ( ChannelBinaryStore ) binaryStore ).openChannel( getApplicationId(), entity );
+            if ( channel == null ) {
+                return Response.status( Response.Status.NOT_FOUND ).build();
             }
-            else {
-                String[] startEnd = rangeValue.split( "-" );
-                long parsedStart = Long.parseLong( startEnd[0] );
-                if ( parsedStart > start && parsedStart < end ) {
-                    start = parsedStart;
-                }
-                if ( startEnd.length > 1 ) {
-                    long parsedEnd = Long.parseLong( startEnd[1] );
-                    if ( parsedEnd > start && parsedEnd < end ) {
-                        end = parsedEnd;
-                    }
-                }
+            if ( storedLength == null ) {
+                count = channel.size();
             }
-
-            inputStream = binaryStore.read( getApplicationId(), entity, start, end - start );
+            body = new FileRegionOutput( channel, start, count );
         }
-        else { // no range
-
-            inputStream = binaryStore.read( getApplicationId(), entity );
+        else if ( range != null ) {
+            body = binaryStore.read( getApplicationId(), entity, start, count );
+        }
+        else {
+            body = binaryStore.read( getApplicationId(), entity );
         }
 
         // return 404 if not found
-        if ( inputStream == null ) {
+        if ( body == null ) {
             return Response.status( Response.Status.NOT_FOUND ).build();
         }
 
         Long lastModified = ( Long ) fileMetadata.get( AssetUtils.LAST_MODIFIED );
         Response.ResponseBuilder responseBuilder =
-                Response.ok( inputStream ).type( ( String ) fileMetadata.get( AssetUtils.CONTENT_TYPE ) )
-                        .lastModified( new Date( lastModified ) );
+                Response.status( range != null ? PARTIAL_CONTENT : Response.Status.OK.getStatusCode() ).entity( body )
+                        .type( ( String ) fileMetadata.get( AssetUtils.CONTENT_TYPE ) )
+                        .lastModified( new Date( lastModified ) ).header( "Accept-Ranges", "bytes" );
+
+        if ( eTag != null ) {
+            responseBuilder.tag( eTag );
+        }
 
-        if ( fileMetadata.get( AssetUtils.E_TAG ) != null ) {
-            responseBuilder.tag( ( String ) fileMetadata.get( AssetUtils.E_TAG ) );
+        if ( body instanceof FileRegionOutput ) {
+            responseBuilder.header( HttpHeaders.CONTENT_LENGTH, count );
         }
 
-        if ( range ) {
-            responseBuilder.header( "Content-Range", "bytes " + start + "-" + end + "/" + contentLength );
+        if ( range != null ) {
+            responseBuilder.header( "Content-Range", range.getContentRange() );
         }
 
         return responseBuilder.build();
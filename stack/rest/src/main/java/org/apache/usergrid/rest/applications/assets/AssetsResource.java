@@ -49,9 +49,9 @@ import org.apache.usergrid.persistence.entities.Asset;
 import org.apache.usergrid.rest.AbstractContextResource;
 import org.apache.usergrid.rest.applications.ServiceResource;
 import org.apache.usergrid.rest.security.annotations.RequireApplicationAccess;
+import org.apache.usergrid.rest.utils.ByteRange;
 import org.apache.usergrid.services.assets.data.AssetUtils;
 import org.apache.usergrid.services.assets.data.BinaryStore;
-import org.apache.usergrid.utils.StringUtils;
 
 import com.sun.jersey.api.json.JSONWithPadding;
 import com.sun.jersey.core.header.FormDataContentDisposition;
@@ -179,13 +179,21 @@ public class AssetsResource extends ServiceResource {
             }
         }
 
+        Object storedLength = fileMetadata.get( AssetUtils.CONTENT_LENGTH );
+        long contentLength = storedLength instanceof Number ? ( ( Number ) storedLength ).longValue() : 0;
+        ByteRange byteRange = ByteRange.parse( range, contentLength );
+
+        if ( byteRange != null && !byteRange.isSatisfiable() ) {
+            return Response.status( REQUESTED_RANGE_NOT_SATISFIABLE )
+                           .header( "Content-Range", byteRange.getContentRange() ).build();
+        }
+
         InputStream is;
-        if ( StringUtils.isBlank( range ) ) {
+        if ( byteRange == null ) {
             is = binaryStore.read( getApplicationId(), asset );
         }
         else {
-            // TODO range parser
-            is = binaryStore.read( getApplicationId(), asset );
+            is = binaryStore.read( getApplicationId(), asset, byteRange.getStart(), byteRange.getCount() );
         }
         if ( is == null ) {
             return Response.status( Response.Status.NOT_FOUND ).build();
@@ -193,15 +201,14 @@ public class AssetsResource extends ServiceResource {
 
         logger.info( "AssetResource.findAsset read inputStream, composing response" );
         Response.ResponseBuilder responseBuilder =
-                Response.ok( is ).type( fileMetadata.get( "content-type" ).toString() )
-                        .lastModified( new Date( asset.getModified() ) );
+                Response.status( byteRange != null ? PARTIAL_CONTENT : Response.Status.OK.getStatusCode() )
+                        .entity( is ).type( fileMetadata.get( "content-type" ).toString() )
+                        .lastModified( new Date( asset.getModified() ) ).header( "Accept-Ranges", "bytes" );
         if ( fileMetadata.get( AssetUtils.E_TAG ) != null ) {
             responseBuilder.tag( ( String ) fileMetadata.get( AssetUtils.E_TAG ) );
         }
-        if ( StringUtils.isNotBlank( range ) ) {
-            logger.info( "Range header was not blank, sending back Content-Range" );
-            // TODO build content range header if needed
-            //responseBuilder.header("Content-Range", );
+        if ( byteRange != null ) {
+            responseBuilder.header( "Content-Range", byteRange.getContentRange() );
         }
         return responseBuilder.build();
     }
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.exceptions;
+
+
+import java.util.Date;
+
+import javax.ws.rs.core.EntityTag;
+
+
+/** Thrown when a conditional GET finds the client's copy is current, the body is never read or written */
+public class NotModifiedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    EntityTag entityTag;
+    Date lastModified;
+
+
+    public NotModifiedException( EntityTag entityTag, Date lastModified ) {
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+
+    public EntityTag getEntityTag() {
+        return entityTag;
+    }
+
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.springframework.stereotype.Component;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+
+/**
+ * Adds the validators a resource computed for its response, so clients can revalidate their copy with a conditional
+ * GET.  Resources store the validators as request attributes because their methods return the response body only.
+ */
+@Component
+public class EntityTagFilter implements ContainerResponseFilter {
+
+    public static final String ENTITY_TAG = EntityTagFilter.class.getName() + ".entityTag";
+    public static final String LAST_MODIFIED = EntityTagFilter.class.getName() + ".lastModified";
+
+    @Context
+    private HttpServletRequest httpServletRequest;
+
+
+    @Override
+    public ContainerResponse filter( ContainerRequest request, ContainerResponse response ) {
+
+        if ( response.getStatus() != 200 ) {
+            return response;
+        }
+
+        Object entityTag = httpServletRequest.getAttribute( ENTITY_TAG );
+
+        if ( entityTag instanceof EntityTag ) {
+            response.getHttpHeaders().putSingle( HttpHeaders.ETAG, entityTag );
+        }
+
+        Object lastModified = httpServletRequest.getAttribute( LAST_MODIFIED );
+
+        if ( lastModified instanceof Date ) {
+            response.getHttpHeaders().putSingle( HttpHeaders.LAST_MODIFIED, lastModified );
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.apache.usergrid.persistence.CounterResolution;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+
+import com.google.common.base.Objects;
+
+import static org.apache.commons.collections.MapUtils.getLongValue;
+
+
+/**
+ * Sums the request counters of each application in memory and periodically writes them to the aggregate counters
+ * from a background thread, so the request thread never waits on counter mutations.
+ * <p/>
+ * Counts are kept per minute, the finest {@link CounterResolution}, and written with the start of their minute as the
+ * counter time so they land in the same aggregate counter rows and columns as if each request had been written on
+ * its own.
+ */
+@Component
+public class MeteringAccumulator {
+
+    private static final Logger logger = LoggerFactory.getLogger( MeteringAccumulator.class );
+
+    public static final String FLUSH_INTERVAL_PROPERTY = "usergrid.metering.flush.interval";
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 10000;
+
+    private EntityManagerFactory emf;
+    private Properties properties;
+
+    /** Held for read while recording and for write while the counts are swapped out, so no increment is lost */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private ConcurrentMap<Bucket, ConcurrentMap<String, AtomicLong>> buckets =
+            new ConcurrentHashMap<Bucket, ConcurrentMap<String, AtomicLong>>();
+
+    private ScheduledExecutorService flusher;
+
+
+    @Autowired
+    public void setEntityManagerFactory( EntityManagerFactory emf ) {
+        this.emf = emf;
+    }
+
+
+    @Autowired
+    public void setProperties( Properties properties ) {
+        this.properties = properties;
+    }
+
+
+    @PostConstruct
+    public void start() {
+        long interval = getLongValue( properties, FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL );
+
+        flusher = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread thread = new Thread( r, "usergrid-metering" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+        flusher.scheduleWithFixedDelay( new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+
+    /** Stop the background flush and write whatever is left */
+    @PreDestroy
+    public void stop() {
+        if ( flusher != null ) {
+            flusher.shutdown();
+        }
+        flush();
+    }
+
+
+    /** Add the value to the counter of the application for the current minute. Never blocks on I/O */
+    public void increment( UUID applicationId, String counterName, long value ) {
+        if ( applicationId == null || value == 0 ) {
+            return;
+        }
+
+        Bucket bucket = new Bucket( applicationId, CounterResolution.MINUTE.round( System.currentTimeMillis() ) );
+
+        swapLock.readLock().lock();
+        try {
+            ConcurrentMap<String, AtomicLong> counters = buckets.get( bucket );
+            if ( counters == null ) {
+                counters = new ConcurrentHashMap<String, AtomicLong>();
+                ConcurrentMap<String, AtomicLong> existing = buckets.putIfAbsent( bucket, counters );
+                if ( existing != null ) {
+                    counters = existing;
+                }
+            }
+
+            AtomicLong counter = counters.get( counterName );
+            if ( counter == null ) {
+                counter = new AtomicLong();
+                AtomicLong existing = counters.putIfAbsent( counterName, counter );
+                if ( existing != null ) {
+                    counter = existing;
+                }
+            }
+            counter.addAndGet( value );
+        }
+        finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+
+    /** Write all accumulated counts to the aggregate counters.  Counts that fail to write are logged and dropped */
+    public void flush() {
+        ConcurrentMap<Bucket, ConcurrentMap<String, AtomicLong>> flushed;
+
+        swapLock.writeLock().lock();
+        try {
+            if ( buckets.isEmpty() ) {
+                return;
+            }
+            flushed = buckets;
+            buckets = new ConcurrentHashMap<Bucket, ConcurrentMap<String, AtomicLong>>();
+        }
+        finally {
+            swapLock.writeLock().unlock();
+        }
+
+        if ( emf == null ) {
+            logger.error( "No EntityManagerFactory configured" );
+            return;
+        }
+
+        for ( Map.Entry<Bucket, ConcurrentMap<String, AtomicLong>> entry : flushed.entrySet() ) {
+            Bucket bucket = entry.getKey();
+
+            Map<String, Long> counters = new HashMap<String, Long>();
+            for ( Map.Entry<String, AtomicLong> counter : entry.getValue().entrySet() ) {
+                counters.put( counter.getKey(), counter.getValue().get() );
+            }
+
+            try {
+                emf.getEntityManager( bucket.applicationId )
+                   .incrementAggregateCounters( null, null, null, counters, bucket.timestamp );
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to write request counters {} for application {}",
+                        new Object[] { counters, bucket.applicationId, e } );
+            }
+        }
+    }
+
+
+    /** An application and the minute its counts happened in */
+    private static final class Bucket {
+
+        private final UUID applicationId;
+        private final long timestamp;
+
+
+        private Bucket( UUID applicationId, long timestamp ) {
+            this.applicationId = applicationId;
+            this.timestamp = timestamp;
+        }
+
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Bucket ) ) {
+                return false;
+            }
+            Bucket other = ( Bucket ) o;
+            return timestamp == other.timestamp && applicationId.equals( other.applicationId );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode( applicationId, timestamp );
+        }
+    }
+}
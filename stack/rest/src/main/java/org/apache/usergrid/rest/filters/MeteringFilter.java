@@ -22,8 +22,6 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -36,7 +34,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.apache.usergrid.management.ManagementService;
-import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityManagerFactory;
 import org.apache.usergrid.services.ServiceManagerFactory;
 import org.apache.usergrid.system.UsergridSystemMonitor;
@@ -63,6 +60,7 @@ public class MeteringFilter implements ContainerRequestFilter, ContainerResponse
     Properties properties;
     ManagementService management;
     UsergridSystemMonitor usergridSystemMonitor;
+    MeteringAccumulator meteringAccumulator;
     final Counter activeRequests;
     final Timer requestTimer;
 
@@ -107,6 +105,12 @@ public class MeteringFilter implements ContainerRequestFilter, ContainerResponse
     }
 
 
+    @Autowired
+    public void setMeteringAccumulator( MeteringAccumulator meteringAccumulator ) {
+        this.meteringAccumulator = meteringAccumulator;
+    }
+
+
     @Override
     public ContainerRequest filter( ContainerRequest request ) {
 
@@ -139,31 +143,21 @@ public class MeteringFilter implements ContainerRequestFilter, ContainerResponse
                     applicationId );
             if ( applicationId != null ) {
 
-                Map<String, Long> counters = new HashMap<String, Long>();
-
-
+                // counters are written in batches by the accumulator, off the request thread
                 if ( time > 0 ) {
-                    logger.info( "Application: {}, spent {} milliseconds of CPU time", applicationId, time );
-                    counters.put( "application.request.time", time );
+                    logger.debug( "Application: {}, spent {} milliseconds of CPU time", applicationId, time );
+                    meteringAccumulator.increment( applicationId, "application.request.time", time );
                 }
 
                 Long read = ( Long ) httpServletRequest.getAttribute( "application.request.upload" );
                 if ( ( read != null ) && ( read > 0 ) ) {
-                    logger.info( "Application: {}, received {} bytes", applicationId, written );
-                    counters.put( "application.request.upload", read );
+                    logger.debug( "Application: {}, received {} bytes", applicationId, read );
+                    meteringAccumulator.increment( applicationId, "application.request.upload", read );
                 }
 
                 if ( written > 0 ) {
-                    logger.info( "Application: {}, sending {} bytes", applicationId, written );
-                    counters.put( "application.request.download", written );
-                }
-
-                if ( emf != null ) {
-                    EntityManager em = emf.getEntityManager( applicationId );
-                    em.incrementAggregateCounters( null, null, null, counters );
-                }
-                else {
-                    logger.error( "No EntityManagerFactory configured" );
+                    logger.debug( "Application: {}, sending {} bytes", applicationId, written );
+                    meteringAccumulator.increment( applicationId, "application.request.download", written );
                 }
             }
         }
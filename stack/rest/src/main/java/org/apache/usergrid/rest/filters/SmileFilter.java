@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.apache.usergrid.rest.SmileProvider;
+
+import com.sun.jersey.api.json.JSONWithPadding;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+
+/**
+ * Lets clients exchange Smile instead of JSON with every resource.  Resources are only declared to consume and produce
+ * JSON, so the request is presented to them as JSON:
+ * <ul>
+ * <li>A Smile request body is transcoded to JSON as the resource reads it, a chunk at a time.</li>
+ * <li>When Smile is the first type the client accepts, the request accepts JSON and the response object is then
+ * written by the {@link SmileProvider} instead.  Streamed and pre-serialized responses stay JSON.</li>
+ * </ul>
+ * Smile only saves bytes on the wire.  A request body is parsed twice, as Smile and then as JSON, so it costs more
+ * CPU than the same body sent as JSON.  A JSONP callback can't wrap a Smile response, asking for both is a bad
+ * request.
+ */
+@Component
+public class SmileFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger( SmileFilter.class );
+
+    private static final String SMILE_REQUESTED = SmileFilter.class.getName() + ".smile";
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The number of JSON bytes transcoded ahead of the resource reading them */
+    private static final int CHUNK_SIZE = 8192;
+
+    @Context
+    private HttpServletRequest httpServletRequest;
+
+
+    public SmileFilter() {
+        logger.info( "SmileFilter is installed" );
+    }
+
+
+    @Override
+    public ContainerRequest filter( ContainerRequest request ) {
+
+        String contentType = request.getRequestHeaders().getFirst( HttpHeaders.CONTENT_TYPE );
+
+        if ( contentType != null && SmileProvider.isSmile( MediaType.valueOf( contentType ) ) ) {
+            request.setEntityInputStream( new JsonInputStream( request.getEntityInputStream() ) );
+            request.getRequestHeaders().putSingle( HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON );
+        }
+
+        //the JSONP filter has already replaced the accept header, check the one the client sent
+        String accept = httpServletRequest.getHeader( HttpHeaders.ACCEPT );
+
+        if ( isNotBlank( request.getQueryParameters().getFirst( "callback" ) ) && accept != null && isSmileAccepted(
+                Collections.singletonList( accept ) ) ) {
+            throw new WebApplicationException(
+                    Response.status( Response.Status.BAD_REQUEST ).type( MediaType.TEXT_PLAIN_TYPE )
+                            .entity( "A JSONP callback can't be combined with a Smile response" ).build() );
+        }
+
+        if ( isSmileAccepted( request.getRequestHeaders().get( HttpHeaders.ACCEPT ) ) ) {
+            httpServletRequest.setAttribute( SMILE_REQUESTED, Boolean.TRUE );
+            request.getRequestHeaders().putSingle( HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON );
+        }
+
+        return request;
+    }
+
+
+    @Override
+    public ContainerResponse filter( ContainerRequest request, ContainerResponse response ) {
+
+        if ( httpServletRequest.getAttribute( SMILE_REQUESTED ) == null ) {
+            return response;
+        }
+
+        response.getHttpHeaders().add( "Vary", HttpHeaders.ACCEPT );
+
+        Object contentType = response.getHttpHeaders().getFirst( HttpHeaders.CONTENT_TYPE );
+
+        if ( contentType != null && !MediaType.APPLICATION_JSON_TYPE
+                .isCompatible( MediaType.valueOf( contentType.toString() ) ) ) {
+            return response;
+        }
+
+        Object entity = response.getEntity();
+
+        if ( entity instanceof JSONWithPadding ) {
+            entity = ( ( JSONWithPadding ) entity ).getJsonSource();
+        }
+
+        if ( entity == null || entity instanceof StreamingOutput || entity instanceof String
+                || entity instanceof byte[] || entity instanceof InputStream ) {
+            return response;
+        }
+
+        response.setEntity( entity );
+        response.getHttpHeaders().putSingle( HttpHeaders.CONTENT_TYPE, SmileProvider.APPLICATION_SMILE_TYPE );
+
+        return response;
+    }
+
+
+    /** True if the first type in the accept headers is Smile */
+    private static boolean isSmileAccepted( List<String> accept ) {
+        if ( accept == null || accept.isEmpty() ) {
+            return false;
+        }
+
+        String first = accept.get( 0 ).split( "," )[0].trim();
+
+        try {
+            return SmileProvider.isSmile( MediaType.valueOf( first ) );
+        }
+        catch ( IllegalArgumentException e ) {
+            return false;
+        }
+    }
+
+
+    /** Transcodes a Smile stream to JSON as it is read, the body is never held in memory as a whole */
+    private static final class JsonInputStream extends InputStream {
+
+        private final InputStream smile;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream( CHUNK_SIZE );
+
+        private JsonParser parser;
+        private JsonGenerator generator;
+
+        private byte[] chunk = new byte[0];
+        private int position;
+        private boolean done;
+
+
+        private JsonInputStream( InputStream smile ) {
+            this.smile = smile;
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            if ( !fill() ) {
+                return -1;
+            }
+
+            return chunk[position++] & 0xff;
+        }
+
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            if ( len == 0 ) {
+                return 0;
+            }
+
+            if ( !fill() ) {
+                return -1;
+            }
+
+            int count = Math.min( len, chunk.length - position );
+            System.arraycopy( chunk, position, b, off, count );
+            position += count;
+
+            return count;
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            done = true;
+            smile.close();
+        }
+
+
+        /** Transcode the next chunk once the current one is read.  False at the end of the body */
+        private boolean fill() {
+            while ( position == chunk.length ) {
+                if ( done ) {
+                    return false;
+                }
+
+                pending.reset();
+
+                try {
+                    if ( parser == null ) {
+                        parser = SMILE_FACTORY.createJsonParser( smile );
+                        generator = JSON_FACTORY.createJsonGenerator( pending, JsonEncoding.UTF8 );
+                    }
+
+                    while ( pending.size() < CHUNK_SIZE ) {
+                        if ( parser.nextToken() == null ) {
+                            generator.close();
+                            parser.close();
+                            done = true;
+                            break;
+                        }
+
+                        generator.copyCurrentEvent( parser );
+                        generator.flush();
+                    }
+                }
+                catch ( IOException e ) {
+                    logger.debug( "Unable to read the Smile request body", e );
+                    throw new WebApplicationException( e, Response.Status.BAD_REQUEST );
+                }
+
+                chunk = pending.toByteArray();
+                position = 0;
+            }
+
+            return true;
+        }
+    }
+}
@@ -17,18 +17,29 @@
 package org.apache.usergrid.rest.filters;
 
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriInfo;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.apache.usergrid.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.cassandra.util.OpSummary;
+import org.apache.usergrid.persistence.cassandra.util.TimedOpTag;
 import org.apache.usergrid.persistence.cassandra.util.TraceTag;
 import org.apache.usergrid.persistence.cassandra.util.TraceTagManager;
 import org.apache.usergrid.persistence.cassandra.util.TraceTagReporter;
+import org.apache.usergrid.rest.ApiResponse;
 import org.apache.usergrid.utils.StringUtils;
 
+import com.sun.jersey.api.json.JSONWithPadding;
 import com.sun.jersey.spi.container.ContainerRequest;
 import com.sun.jersey.spi.container.ContainerRequestFilter;
 import com.sun.jersey.spi.container.ContainerResponse;
@@ -36,27 +47,50 @@ import com.sun.jersey.spi.container.ContainerResponseFilter;
 
 
 /**
- * Attach and detach trace tags at start and end of request scopes
+ * Attach and detach trace tags at start and end of request scopes.
+ * <p/>
+ * When profiling is enabled a caller can send the X-Usergrid-Profile header or the profile=true parameter to get back
+ * the Cassandra reads made for the request in the "profile" property of the response.  A sample of the other requests
+ * is also profiled.  Every profile is added to per endpoint histograms so N+1 read patterns show up in the metrics.
  *
  * @author zznate
  */
 @Component
 public class TracingFilter implements ContainerRequestFilter, ContainerResponseFilter {
 
+    public static final String PROFILE_HEADER = "X-Usergrid-Profile";
+    public static final String PROFILE_PARAM = "profile";
+
+    private static final String PROFILE_REQUESTED = TracingFilter.class.getName() + ".profile";
+
     private Logger logger = LoggerFactory.getLogger( TracingFilter.class );
 
     @Autowired
     private TraceTagManager traceTagManager;
     @Autowired
     private TraceTagReporter traceTagReporter;
+    @Autowired
+    private MetricsFactory metricsFactory;
 
 
     @Context
     private HttpServletRequest httpServletRequest;
 
+    @Context
+    private UriInfo uriInfo;
+
 
     @Override
     public ContainerRequest filter( ContainerRequest request ) {
+        boolean profileRequested = traceTagManager.getProfileEnabled() && isProfileRequested( request );
+        if ( profileRequested || traceTagManager.sampleProfile() ) {
+            if ( profileRequested ) {
+                httpServletRequest.setAttribute( PROFILE_REQUESTED, Boolean.TRUE );
+            }
+            traceTagManager.attach( traceTagManager.createProfiled( "PROFILE-".concat( request.getPath( true ) ) ) );
+            return request;
+        }
+
         if ( !traceTagManager.getTraceEnabled() && !traceTagManager.getExplicitOnly() ) {
             return request;
         }
@@ -83,8 +117,115 @@ public class TracingFilter implements ContainerRequestFilter, ContainerResponseF
     public ContainerResponse filter( ContainerRequest request, ContainerResponse response ) {
         if ( traceTagManager.isActive() ) {
             TraceTag traceTag = traceTagManager.detach();
-            traceTagReporter.report( traceTag );
+
+            if ( !traceTag.getProfiled() ) {
+                traceTagReporter.report( traceTag );
+                return response;
+            }
+
+            if ( traceTagManager.getTraceEnabled() ) {
+                traceTagReporter.report( traceTag );
+            }
+
+            updateHistograms( request, traceTag );
+
+            if ( httpServletRequest.getAttribute( PROFILE_REQUESTED ) != null ) {
+                ApiResponse apiResponse = getApiResponse( response );
+                if ( apiResponse != null ) {
+                    apiResponse.setProfile( toProfile( traceTag ) );
+                }
+            }
         }
         return response;
     }
+
+
+    private boolean isProfileRequested( ContainerRequest request ) {
+        String header = httpServletRequest.getHeader( PROFILE_HEADER );
+        if ( header != null ) {
+            return !"false".equalsIgnoreCase( header );
+        }
+        return "true".equalsIgnoreCase( request.getQueryParameters().getFirst( PROFILE_PARAM ) );
+    }
+
+
+    /** Add the totals of the profile to the histograms of the endpoint */
+    private void updateHistograms( ContainerRequest request, TraceTag traceTag ) {
+        int reads = 0;
+        long keys = 0;
+        long columns = 0;
+        long elapsed = 0;
+        for ( OpSummary summary : traceTag.getOpSummaries() ) {
+            // ops without a column family are the connection level timings of the same reads
+            if ( summary.getColumnFamily() == null ) {
+                continue;
+            }
+            reads += summary.getCount();
+            keys += summary.getKeys();
+            columns += summary.getColumns();
+            elapsed += summary.getElapsed();
+        }
+
+        String endpoint = getEndpoint( request );
+        metricsFactory.getHistogram( TracingFilter.class, endpoint + ".cassandra.reads" ).update( reads );
+        metricsFactory.getHistogram( TracingFilter.class, endpoint + ".cassandra.keys" ).update( keys );
+        metricsFactory.getHistogram( TracingFilter.class, endpoint + ".cassandra.columns" ).update( columns );
+        metricsFactory.getHistogram( TracingFilter.class, endpoint + ".cassandra.elapsed" ).update( elapsed );
+    }
+
+
+    /**
+     * Name the endpoint by the method and the chain of matched resources, i.e. GET.ApplicationResource.ServiceResource,
+     * so that entity names and ids in the path don't create a histogram per entity
+     */
+    private String getEndpoint( ContainerRequest request ) {
+        StringBuilder endpoint = new StringBuilder( request.getMethod() );
+        try {
+            List<Object> resources = uriInfo.getMatchedResources();
+            for ( int i = resources.size() - 1; i >= 0; i-- ) {
+                endpoint.append( '.' ).append( resources.get( i ).getClass().getSimpleName() );
+            }
+        }
+        catch ( RuntimeException e ) {
+            logger.debug( "Unable to get the matched resources for the profile", e );
+        }
+        return endpoint.toString();
+    }
+
+
+    private static ApiResponse getApiResponse( ContainerResponse response ) {
+        Object entity = response.getEntity();
+        if ( entity instanceof JSONWithPadding ) {
+            entity = ( ( JSONWithPadding ) entity ).getJsonSource();
+        }
+        return entity instanceof ApiResponse ? ( ApiResponse ) entity : null;
+    }
+
+
+    private static Map<String, Object> toProfile( TraceTag traceTag ) {
+        Map<String, Object> profile = new LinkedHashMap<String, Object>();
+        profile.put( "trace", traceTag.getTraceName() );
+        profile.put( "count", traceTag.getTotalOpCount() );
+        profile.put( "summary", new ArrayList<OpSummary>( traceTag.getOpSummaries() ) );
+
+        // older ops may have been flushed, only the ones still held are listed
+        List<Map<String, Object>> ops = new ArrayList<Map<String, Object>>( traceTag.getOpCount() );
+        for ( TimedOpTag timedOpTag : traceTag ) {
+            Map<String, Object> op = new LinkedHashMap<String, Object>();
+            op.put( "name", timedOpTag.getTagName() );
+            if ( timedOpTag.getColumnFamily() != null ) {
+                op.put( "columnFamily", timedOpTag.getColumnFamily() );
+                op.put( "keys", timedOpTag.getKeyCount() );
+                op.put( "columns", timedOpTag.getColumnCount() );
+            }
+            op.put( "start", timedOpTag.getStart() );
+            op.put( "elapsed", timedOpTag.getElapsed() );
+            op.put( "success", timedOpTag.getOpSuccessful() );
+            ops.add( op );
+        }
+        profile.put( "operations", ops );
+        profile.put( "truncated", ops.size() < traceTag.getTotalOpCount() );
+
+        return profile;
+    }
 }
@@ -46,6 +46,8 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.OrganizationInfo;
 import org.apache.usergrid.management.export.ExportService;
+import org.apache.usergrid.management.reindex.ReindexService;
+import org.apache.usergrid.persistence.entities.Reindex;
 import org.apache.usergrid.rest.AbstractContextResource;
 import org.apache.usergrid.rest.ApiResponse;
 import org.apache.usergrid.rest.applications.ServiceResource;
@@ -62,6 +64,8 @@ import com.sun.jersey.api.json.JSONWithPadding;
 import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
 
@@ -75,6 +79,8 @@ public class ApplicationResource extends AbstractContextResource {
 
     @Autowired
     protected ExportService exportService;
+    @Autowired
+    protected ReindexService reindexService;
     OrganizationInfo organization;
     UUID applicationId;
     ApplicationInfo application;
@@ -342,4 +348,62 @@ public class ApplicationResource extends AbstractContextResource {
 
         return Response.status( SC_ACCEPTED ).entity( uuidRet ).build();
     }
+
+
+    @POST
+    @Path("reindex")
+    @RequireOrganizationAccess
+    public Response reindexPost( @Context UriInfo ui, @QueryParam("callback") @DefaultValue("") String callback )
+            throws Exception {
+        return scheduleReindex( null, callback );
+    }
+
+
+    @POST
+    @Path("collection/{collection_name}/reindex")
+    @RequireOrganizationAccess
+    public Response reindexPost( @Context UriInfo ui, @PathParam( "collection_name" ) String collection_name,
+                                 @QueryParam("callback") @DefaultValue("") String callback ) throws Exception {
+        return scheduleReindex( collection_name, callback );
+    }
+
+
+    private Response scheduleReindex( String collectionName, String callback ) {
+        Map<String, String> uuidRet = new HashMap<String, String>();
+
+        try {
+            UUID jobUUID = reindexService.schedule( applicationId, collectionName );
+            uuidRet.put( "Reindex Entity", jobUUID.toString() );
+        }
+        catch ( Exception e ) {
+            return Response.status( SC_INTERNAL_SERVER_ERROR ).type( JSONPUtils.jsonMediaType( callback ) )
+                           .entity( ServiceResource.wrapWithCallback( e.getMessage(), callback ) ).build();
+        }
+
+        return Response.status( SC_ACCEPTED ).entity( uuidRet ).build();
+    }
+
+
+    @GET
+    @RequireOrganizationAccess
+    @Path("reindex/{reindexEntity: [A-Fa-f0-9]{8}-[A-Fa-f0-9]{4}-[A-Fa-f0-9]{4}-[A-Fa-f0-9]{4}-[A-Fa-f0-9]{12}}")
+    public Response reindexGetJson( @Context UriInfo ui, @PathParam("reindexEntity") UUID reindexEntityUUID,
+                                    @QueryParam("callback") @DefaultValue("") String callback ) throws Exception {
+
+        Reindex entity;
+        try {
+            entity = reindexService.getReindex( reindexEntityUUID );
+        }
+        catch ( Exception e ) {
+            return Response.status( SC_BAD_REQUEST ).type( JSONPUtils.jsonMediaType( callback ) )
+                           .entity( ServiceResource.wrapWithCallback( e.getMessage(), callback ) ).build();
+        }
+
+        //only the rebuilds of this application are visible through it
+        if ( entity == null || !applicationId.equals( entity.getApplicationId() ) ) {
+            return Response.status( SC_NOT_FOUND ).build();
+        }
+
+        return Response.status( SC_OK ).entity( entity ).build();
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.utils;
+
+
+import org.apache.commons.lang.StringUtils;
+
+
+/**
+ * A single range of bytes asked for with a Range header.  Only one range is served, a header asking for several is
+ * not satisfiable.  Headers that can't be parsed are ignored and the whole content is served.
+ */
+public class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long start;
+    private final long end;
+    private final long length;
+
+
+    private ByteRange( long start, long end, long length ) {
+        this.start = start;
+        this.end = end;
+        this.length = length;
+    }
+
+
+    /**
+     * Parse a Range header
+     *
+     * @param header The value of the Range header
+     * @param length The length of the content
+     *
+     * @return The range asked for.  Null if there is no range to honour
+     */
+    public static ByteRange parse( String header, long length ) {
+        if ( StringUtils.isBlank( header ) || length <= 0 ) {
+            return null;
+        }
+
+        String value = header.trim();
+
+        if ( !value.startsWith( BYTES_UNIT ) ) {
+            return null;
+        }
+
+        value = value.substring( BYTES_UNIT.length() ).trim();
+
+        if ( value.indexOf( ',' ) >= 0 ) {
+            return unsatisfiable( length );
+        }
+
+        int dash = value.indexOf( '-' );
+
+        if ( dash < 0 ) {
+            return null;
+        }
+
+        try {
+            // suffix range, the last n bytes
+            if ( dash == 0 ) {
+                long suffix = Long.parseLong( value.substring( 1 ).trim() );
+
+                if ( suffix <= 0 ) {
+                    return unsatisfiable( length );
+                }
+
+                return new ByteRange( Math.max( 0, length - suffix ), length - 1, length );
+            }
+
+            long first = Long.parseLong( value.substring( 0, dash ).trim() );
+            String last = value.substring( dash + 1 ).trim();
+
+            long end = length - 1;
+
+            if ( last.length() > 0 ) {
+                end = Long.parseLong( last );
+
+                if ( end < first ) {
+                    return null;
+                }
+            }
+
+            if ( first >= length ) {
+                return unsatisfiable( length );
+            }
+
+            return new ByteRange( first, Math.min( end, length - 1 ), length );
+        }
+        catch ( NumberFormatException e ) {
+            return null;
+        }
+    }
+
+
+    private static ByteRange unsatisfiable( long length ) {
+        return new ByteRange( -1, -1, length );
+    }
+
+
+    /** @return False if none of the content is in the range, the request should be answered with a 416 */
+    public boolean isSatisfiable() {
+        return start >= 0;
+    }
+
+
+    /** @return The first byte, inclusive */
+    public long getStart() {
+        return start;
+    }
+
+
+    /** @return The last byte, inclusive */
+    public long getEnd() {
+        return end;
+    }
+
+
+    /** @return The number of bytes in the range */
+    public long getCount() {
+        return end - start + 1;
+    }
+
+
+    /** @return The value of the Content-Range header to answer with */
+    public String getContentRange() {
+        if ( !isSatisfiable() ) {
+            return "bytes */" + length;
+        }
+
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
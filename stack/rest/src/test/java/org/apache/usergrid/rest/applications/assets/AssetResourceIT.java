@@ -19,6 +19,7 @@ package org.apache.usergrid.rest.applications.assets;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -37,8 +38,10 @@ import org.apache.usergrid.rest.AbstractRestIT;
 import org.apache.usergrid.rest.applications.utils.UserRepo;
 import org.apache.usergrid.services.assets.data.AssetUtils;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.multipart.FormDataMultiPart;
 
 import static org.apache.usergrid.management.AccountCreationProps.PROPERTIES_ADMIN_USERS_REQUIRE_CONFIRMATION;
@@ -134,6 +137,77 @@ public class AssetResourceIT extends AbstractRestIT {
     }
 
 
+    @Test
+    public void rangeAndETagOnDynamicEntity() throws Exception {
+        UserRepo.INSTANCE.load( resource(), access_token );
+
+        Map<String, String> payload = hashMap( "name", "rangename" );
+
+        JsonNode node = resource().path( "/test-organization/test-app/foos" ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_JSON ).type( MediaType.APPLICATION_JSON_TYPE )
+                .post( JsonNode.class, payload );
+
+        String uuid = node.get( "entities" ).get( 0 ).get( "uuid" ).getTextValue();
+
+        byte[] data = IOUtils.toByteArray( this.getClass().getResourceAsStream( "/cassandra_eye.jpg" ) );
+        resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .type( MediaType.APPLICATION_OCTET_STREAM_TYPE ).put( data );
+
+        // the etag is the md5 of the content
+        node = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_JSON_TYPE ).get( JsonNode.class );
+        String eTag = node.findValue( AssetUtils.E_TAG ).getTextValue();
+        assertEquals( DigestUtils.md5Hex( data ), eTag );
+
+        ClientResponse response =
+                resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                        .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "Range", "bytes=100-199" )
+                        .get( ClientResponse.class );
+
+        assertEquals( 206, response.getStatus() );
+        assertEquals( "bytes 100-199/7979", response.getHeaders().getFirst( "Content-Range" ) );
+        assertArrayEquals( Arrays.copyOfRange( data, 100, 200 ), response.getEntity( byte[].class ) );
+
+        // suffix range
+        response = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "Range", "bytes=-50" )
+                .get( ClientResponse.class );
+
+        assertEquals( 206, response.getStatus() );
+        assertArrayEquals( Arrays.copyOfRange( data, data.length - 50, data.length ),
+                response.getEntity( byte[].class ) );
+
+        // starts past the end
+        response = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "Range", "bytes=7979-" )
+                .get( ClientResponse.class );
+
+        assertEquals( 416, response.getStatus() );
+        assertEquals( "bytes */7979", response.getHeaders().getFirst( "Content-Range" ) );
+
+        // only a single range is served
+        response = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "Range", "bytes=0-9,100-199" )
+                .get( ClientResponse.class );
+
+        assertEquals( 416, response.getStatus() );
+
+        // malformed ranges are ignored
+        response = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "Range", "bytes=abc-def" )
+                .get( ClientResponse.class );
+
+        assertEquals( 200, response.getStatus() );
+        assertArrayEquals( data, response.getEntity( byte[].class ) );
+
+        response = resource().path( "/test-organization/test-app/foos/" + uuid ).queryParam( "access_token", access_token )
+                .accept( MediaType.APPLICATION_OCTET_STREAM_TYPE ).header( "If-None-Match", "\"" + eTag + "\"" )
+                .get( ClientResponse.class );
+
+        assertEquals( 304, response.getStatus() );
+    }
+
+
     @Test
     public void multipartPostFormOnDynamicEntity() throws Exception {
         UserRepo.INSTANCE.load( resource(), access_token );
@@ -302,7 +376,7 @@ public class AssetResourceIT extends AbstractRestIT {
     }
 
     @Test
-    public void fileTooLargeShouldResultInError() throws Exception {
+    public void fileTooLargeShouldBeRejected() throws Exception {
 
         Map<String, String> props = new HashMap<String, String>();
         props.put( "usergrid.binary.max-size-mb", "6" );
@@ -318,36 +392,14 @@ public class AssetResourceIT extends AbstractRestIT {
             byte[] data = IOUtils.toByteArray( this.getClass().getResourceAsStream( "/ship-larger-than-6mb.gif" ) );
             FormDataMultiPart form = new FormDataMultiPart().field( "file", data, MediaType.MULTIPART_FORM_DATA_TYPE );
 
-            // send data
-            JsonNode node = resource().path( "/test-organization/test-app/bars" ).queryParam( "access_token", access_token )
-                    .accept( MediaType.APPLICATION_JSON ).type( MediaType.MULTIPART_FORM_DATA )
-                    .post( JsonNode.class, form );
-            //logNode( node );
-            JsonNode idNode = node.get( "entities" ).get( 0 ).get( "uuid" );
-            String uuid = idNode.getTextValue();
-
-            // get entity
-            String errorMessage = null;
-            long timeout = System.currentTimeMillis() + 60000;
-            while (true) {
-                LOG.info( "Waiting for upload to finish..." );
-                Thread.sleep( 2000 );
-                node = resource().path( "/test-organization/test-app/bars/" + uuid )
-                        .queryParam( "access_token", access_token ).accept( MediaType.APPLICATION_JSON_TYPE )
-                        .get( JsonNode.class );
-                //logNode( node );
-
-                // poll for the error to happen
-                if (node.findValue( "error" ) != null) {
-                    errorMessage = node.findValue("error").asText();
-                    break;
-                }
-                if (System.currentTimeMillis() > timeout) {
-                    throw new TimeoutException();
-                }
-            }
+            // send data, the upload is rejected as soon as it reads past the max size
+            ClientResponse response = resource().path( "/test-organization/test-app/bars" )
+                    .queryParam( "access_token", access_token ).accept( MediaType.APPLICATION_JSON )
+                    .type( MediaType.MULTIPART_FORM_DATA ).post( ClientResponse.class, form );
 
-            assertTrue( errorMessage.startsWith("Asset size "));
+            assertEquals( 413, response.getStatus() );
+            JsonNode node = response.getEntity( JsonNode.class );
+            assertTrue( node.get( "error_description" ).asText().startsWith( "Asset size " ) );
 
         } finally {
             props = new HashMap<String, String>();
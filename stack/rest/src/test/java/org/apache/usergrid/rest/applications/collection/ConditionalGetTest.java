@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.applications.collection;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.apache.usergrid.rest.AbstractRestIT;
+import org.apache.usergrid.rest.TestContextSetup;
+import org.apache.usergrid.rest.test.resource.CustomCollection;
+
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+
+/** Checks entities and pages are tagged, and revalidate with 304s until they change */
+public class ConditionalGetTest extends AbstractRestIT {
+
+    @Rule
+    public TestContextSetup context = new TestContextSetup( this );
+
+
+    @Test
+    public void entityNotModified() throws Exception {
+
+        CustomCollection things = context.collection( "things" );
+
+        Map props = new HashMap();
+        props.put( "name", "thing1" );
+
+        JsonNode created = things.create( props );
+        String uuid = getEntity( created, 0 ).get( "uuid" ).getTextValue();
+
+        ClientResponse first = things().path( uuid ).accept( MediaType.APPLICATION_JSON ).get( ClientResponse.class );
+
+        assertEquals( 200, first.getStatus() );
+
+        EntityTag tag = first.getEntityTag();
+
+        assertNotNull( tag );
+        assertFalse( tag.isWeak() );
+        assertNotNull( first.getLastModified() );
+
+        //by uuid the modified column is enough, by name the entity is read
+        assertEquals( 304, revalidate( things().path( uuid ), tag ).getStatus() );
+        assertEquals( 304, revalidate( things().path( "thing1" ), tag ).getStatus() );
+
+        props.put( "color", "blue" );
+        things.entity( "thing1" ).put( props );
+
+        ClientResponse changed = revalidate( things().path( uuid ), tag );
+
+        assertEquals( 200, changed.getStatus() );
+        assertFalse( tag.equals( changed.getEntityTag() ) );
+    }
+
+
+    @Test
+    public void pageNotModified() throws Exception {
+
+        CustomCollection things = context.collection( "things" );
+
+        Map props = new HashMap();
+
+        for ( int i = 0; i < 5; i++ ) {
+            props.put( "ordinal", i );
+            things.create( props );
+        }
+
+        ClientResponse first = things().accept( MediaType.APPLICATION_JSON ).get( ClientResponse.class );
+
+        assertEquals( 200, first.getStatus() );
+
+        EntityTag tag = first.getEntityTag();
+
+        assertNotNull( tag );
+        assertTrue( tag.isWeak() );
+
+        assertEquals( 304, revalidate( things(), tag ).getStatus() );
+
+        props.put( "ordinal", 5 );
+        things.create( props );
+
+        assertEquals( 200, revalidate( things(), tag ).getStatus() );
+    }
+
+
+    private ClientResponse revalidate( WebResource resource, EntityTag tag ) {
+        return resource.accept( MediaType.APPLICATION_JSON ).header( HttpHeaders.IF_NONE_MATCH, tag.toString() )
+                       .get( ClientResponse.class );
+    }
+
+
+    private WebResource things() {
+        return resource().path( "/" + context.getOrgName() + "/" + context.getAppName() + "/things" )
+                         .queryParam( "access_token", context.getActiveUser().getToken() );
+    }
+}
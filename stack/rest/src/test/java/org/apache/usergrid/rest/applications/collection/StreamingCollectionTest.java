@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.applications.collection;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.apache.usergrid.rest.AbstractRestIT;
+import org.apache.usergrid.rest.TestContextSetup;
+import org.apache.usergrid.rest.test.resource.CustomCollection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+/** Checks a streamed collection read returns the same response as a buffered one */
+public class StreamingCollectionTest extends AbstractRestIT {
+
+    @Rule
+    public TestContextSetup context = new TestContextSetup( this );
+
+
+    @Test
+    public void streamedMatchesBuffered() {
+
+        CustomCollection things = context.collection( "things" );
+
+        Map props = new HashMap();
+
+        //more than one stream page, which holds 100
+        int size = 150;
+
+        for ( int i = 0; i < size; i++ ) {
+            props.put( "ordinal", i );
+            things.create( props );
+        }
+
+        JsonNode buffered = context.collection( "things" ).withLimit( size ).get();
+        JsonNode streamed = context.collection( "things" ).withLimit( 120 ).withParam( "stream", "true" ).get();
+
+        assertEquals( 120, streamed.get( "entities" ).size() );
+        assertEquals( 120, streamed.get( "count" ).getIntValue() );
+        assertEquals( buffered.get( "path" ), streamed.get( "path" ) );
+
+        for ( int i = 0; i < 120; i++ ) {
+            assertEquals( buffered.get( "entities" ).get( i ).get( "uuid" ),
+                    streamed.get( "entities" ).get( i ).get( "uuid" ) );
+        }
+
+        String cursor = streamed.get( "cursor" ).getTextValue();
+        assertNotNull( cursor );
+
+        //the cursor continues where the stream stopped
+        JsonNode rest = context.collection( "things" ).withLimit( 120 ).withCursor( cursor ).get();
+
+        assertEquals( size - 120, rest.get( "entities" ).size() );
+
+        for ( int i = 0; i < size - 120; i++ ) {
+            assertEquals( buffered.get( "entities" ).get( 120 + i ).get( "uuid" ),
+                    rest.get( "entities" ).get( i ).get( "uuid" ) );
+        }
+
+        assertNull( rest.get( "cursor" ) );
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.apache.usergrid.persistence.CounterResolution;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class MeteringAccumulatorTest {
+
+    private static final UUID APP1 = UUID.randomUUID();
+    private static final UUID APP2 = UUID.randomUUID();
+
+    private final EntityManagerFactory emf = mock( EntityManagerFactory.class );
+
+    /** Every write, in the order they were made */
+    private final List<Write> writes = Collections.synchronizedList( new ArrayList<Write>() );
+
+    private MeteringAccumulator accumulator;
+
+
+    @Before
+    public void setup() throws Exception {
+        when( emf.getEntityManager( APP1 ) ).thenReturn( recording( APP1 ) );
+        when( emf.getEntityManager( APP2 ) ).thenReturn( recording( APP2 ) );
+
+        Properties properties = new Properties();
+        properties.setProperty( MeteringAccumulator.FLUSH_INTERVAL_PROPERTY, "3600000" );
+
+        accumulator = new MeteringAccumulator();
+        accumulator.setEntityManagerFactory( emf );
+        accumulator.setProperties( properties );
+    }
+
+
+    @After
+    public void teardown() {
+        accumulator.stop();
+    }
+
+
+    @Test
+    public void concurrentIncrementsSumAcrossFlushes() throws Exception {
+        final int threads = 8;
+        final int increments = 10000;
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads + 1 );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicBoolean incrementing = new AtomicBoolean( true );
+
+        List<Future<?>> incrementers = new ArrayList<Future<?>>();
+
+        for ( int i = 0; i < threads; i++ ) {
+            incrementers.add( executor.submit( new Runnable() {
+                @Override
+                public void run() {
+                    await( start );
+
+                    for ( int j = 0; j < increments; j++ ) {
+                        accumulator.increment( APP1, "application.requests", 1 );
+                    }
+                }
+            } ) );
+        }
+
+        //flushes race the increments, no count may be lost or written twice
+        Future<?> flusher = executor.submit( new Runnable() {
+            @Override
+            public void run() {
+                await( start );
+
+                while ( incrementing.get() ) {
+                    accumulator.flush();
+                }
+            }
+        } );
+
+        start.countDown();
+
+        for ( Future<?> incrementer : incrementers ) {
+            incrementer.get();
+        }
+
+        incrementing.set( false );
+        flusher.get();
+        executor.shutdown();
+
+        accumulator.flush();
+
+        assertEquals( ( long ) threads * increments, total( APP1, "application.requests" ) );
+    }
+
+
+    @Test
+    public void countsAreWrittenAtTheStartOfTheirMinute() {
+        long before = CounterResolution.MINUTE.round( System.currentTimeMillis() );
+
+        accumulator.increment( APP1, "application.requests", 2 );
+        accumulator.increment( APP1, "application.requests", 3 );
+
+        long after = CounterResolution.MINUTE.round( System.currentTimeMillis() );
+
+        accumulator.flush();
+
+        assertEquals( 5, total( APP1, "application.requests" ) );
+
+        for ( Write write : writes ) {
+            assertEquals( 0, write.timestamp % 60000 );
+            assertTrue( write.timestamp == before || write.timestamp == after );
+        }
+
+        //nothing is written twice
+        writes.clear();
+        accumulator.flush();
+        assertTrue( writes.isEmpty() );
+    }
+
+
+    @Test
+    public void stopFlushesWhatIsLeft() {
+        accumulator.start();
+
+        accumulator.increment( APP1, "application.requests", 1 );
+        accumulator.increment( APP1, "application.requests.get", 1 );
+
+        //the flush interval is an hour, only stopping writes them
+        assertTrue( writes.isEmpty() );
+
+        accumulator.stop();
+
+        assertEquals( 1, total( APP1, "application.requests" ) );
+        assertEquals( 1, total( APP1, "application.requests.get" ) );
+    }
+
+
+    @Test
+    public void failedApplicationDoesNotDropOthers() throws Exception {
+        EntityManager failing = mock( EntityManager.class );
+        doThrow( new RuntimeException( "Cassandra is down" ) ).when( failing )
+                .incrementAggregateCounters( any( UUID.class ), any( UUID.class ), anyString(),
+                        any( Map.class ), anyLong() );
+
+        when( emf.getEntityManager( APP1 ) ).thenReturn( failing );
+
+        accumulator.increment( APP1, "application.requests", 1 );
+        accumulator.increment( APP2, "application.requests", 4 );
+
+        accumulator.flush();
+
+        assertEquals( 0, total( APP1, "application.requests" ) );
+        assertEquals( 4, total( APP2, "application.requests" ) );
+    }
+
+
+    @Test
+    public void ignoresEmptyCounts() {
+        accumulator.increment( null, "application.requests", 1 );
+        accumulator.increment( APP1, "application.requests", 0 );
+
+        accumulator.flush();
+
+        assertTrue( writes.isEmpty() );
+    }
+
+
+    private long total( UUID applicationId, String counterName ) {
+        long total = 0;
+
+        synchronized ( writes ) {
+            for ( Write write : writes ) {
+                if ( write.applicationId.equals( applicationId ) && write.counters.containsKey( counterName ) ) {
+                    total += write.counters.get( counterName );
+                }
+            }
+        }
+
+        return total;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private EntityManager recording( final UUID applicationId ) {
+        EntityManager em = mock( EntityManager.class );
+
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( InvocationOnMock invocation ) {
+                Object[] args = invocation.getArguments();
+                writes.add( new Write( applicationId, new HashMap<String, Long>( ( Map<String, Long> ) args[3] ),
+                        ( Long ) args[4] ) );
+                return null;
+            }
+        } ).when( em ).incrementAggregateCounters( any( UUID.class ), any( UUID.class ), anyString(),
+                any( Map.class ), anyLong() );
+
+        return em;
+    }
+
+
+    private static void await( CountDownLatch latch ) {
+        try {
+            latch.await();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static final class Write {
+
+        private final UUID applicationId;
+        private final Map<String, Long> counters;
+        private final long timestamp;
+
+
+        private Write( UUID applicationId, Map<String, Long> counters, long timestamp ) {
+            this.applicationId = applicationId;
+            this.counters = counters;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.rest.AbstractRestIT;
+import org.apache.usergrid.rest.SmileProvider;
+import org.apache.usergrid.rest.TestContextSetup;
+
+import org.apache.commons.lang.RandomStringUtils;
+
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.apache.usergrid.utils.MapUtils.hashMap;
+
+
+/** Checks Smile bodies are accepted and returned when negotiated */
+@Concurrent()
+public class SmileFilterIT extends AbstractRestIT {
+
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper( new SmileFactory() );
+
+    @Rule
+    public TestContextSetup context = new TestContextSetup( this );
+
+
+    @Test
+    public void smileRoundTrip() throws Exception {
+
+        Map<String, String> data = hashMap( "name", "Solitaire1" );
+
+        ClientResponse created = things().accept( SmileProvider.APPLICATION_SMILE )
+                                         .type( SmileProvider.APPLICATION_SMILE )
+                                         .post( ClientResponse.class, SMILE_MAPPER.writeValueAsBytes( data ) );
+
+        assertEquals( 200, created.getStatus() );
+        assertTrue( SmileProvider.isSmile( created.getType() ) );
+        assertEquals( HttpHeaders.ACCEPT, created.getHeaders().getFirst( "Vary" ) );
+
+        JsonNode node = SMILE_MAPPER.readTree( created.getEntity( byte[].class ) );
+
+        assertEquals( "Solitaire1", node.get( "entities" ).get( 0 ).get( "name" ).getTextValue() );
+
+        //the same entity read back as json
+        ClientResponse read = things().path( "Solitaire1" ).accept( MediaType.APPLICATION_JSON )
+                                      .get( ClientResponse.class );
+
+        assertTrue( MediaType.APPLICATION_JSON_TYPE.isCompatible( read.getType() ) );
+        assertEquals( "Solitaire1",
+                read.getEntity( JsonNode.class ).get( "entities" ).get( 0 ).get( "name" ).getTextValue() );
+    }
+
+
+    @Test
+    public void largeSmileBody() throws Exception {
+
+        //larger than a transcoded chunk
+        String description = RandomStringUtils.randomAlphanumeric( 50000 );
+
+        Map<String, String> data = hashMap( "name", "Solitaire2" ).map( "description", description );
+
+        ClientResponse created = things().accept( MediaType.APPLICATION_JSON ).type( SmileProvider.APPLICATION_SMILE )
+                                         .post( ClientResponse.class, SMILE_MAPPER.writeValueAsBytes( data ) );
+
+        assertEquals( 200, created.getStatus() );
+
+        JsonNode entity = created.getEntity( JsonNode.class ).get( "entities" ).get( 0 );
+
+        assertEquals( "Solitaire2", entity.get( "name" ).getTextValue() );
+        assertEquals( description, entity.get( "description" ).getTextValue() );
+    }
+
+
+    @Test
+    public void malformedSmileBody() throws Exception {
+
+        ClientResponse created = things().accept( MediaType.APPLICATION_JSON ).type( SmileProvider.APPLICATION_SMILE )
+                                         .post( ClientResponse.class, "{\"name\":\"not smile\"}".getBytes( "UTF-8" ) );
+
+        assertEquals( 400, created.getStatus() );
+    }
+
+
+    @Test
+    public void smileWithCallbackIsRejected() throws Exception {
+
+        ClientResponse read = things().queryParam( "callback", "callback" ).accept( SmileProvider.APPLICATION_SMILE )
+                                      .get( ClientResponse.class );
+
+        assertEquals( 400, read.getStatus() );
+
+        //the callback still wraps json
+        read = things().queryParam( "callback", "callback" ).accept( MediaType.APPLICATION_JSON )
+                       .get( ClientResponse.class );
+
+        assertEquals( 200, read.getStatus() );
+    }
+
+
+    private WebResource things() {
+        return resource().path( "/" + context.getOrgName() + "/" + context.getAppName() + "/things" )
+                         .queryParam( "access_token", context.getActiveUser().getToken() );
+    }
+}
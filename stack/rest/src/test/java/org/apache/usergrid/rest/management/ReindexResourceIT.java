@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.usergrid.rest.management;
+
+
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.rest.AbstractRestIT;
+import org.codehaus.jackson.JsonNode;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+
+/** Schedules index rebuilds through the management api and reads their status back */
+@Concurrent
+public class ReindexResourceIT extends AbstractRestIT {
+
+
+    public ReindexResourceIT() throws Exception {
+
+    }
+
+
+    @Test
+    public void reindexApplication() throws Exception {
+        JsonNode node = resource().path( "/management/orgs/test-organization/apps/test-app/reindex" )
+                                  .queryParam( "access_token", superAdminToken() ).accept( MediaType.APPLICATION_JSON )
+                                  .type( MediaType.APPLICATION_JSON_TYPE ).post( JsonNode.class );
+
+        assertNotNull( node.get( "Reindex Entity" ) );
+
+        String uuid = node.get( "Reindex Entity" ).getTextValue();
+
+        node = resource().path( "/management/orgs/test-organization/apps/test-app/reindex/" + uuid )
+                         .queryParam( "access_token", superAdminToken() ).accept( MediaType.APPLICATION_JSON )
+                         .type( MediaType.APPLICATION_JSON_TYPE ).get( JsonNode.class );
+
+        assertNotNull( node.get( "applicationId" ) );
+        assertTrue( node.get( "collectionName" ) == null || node.get( "collectionName" ).isNull() );
+        assertState( node );
+    }
+
+
+    @Test
+    public void reindexCollection() throws Exception {
+        ClientResponse response =
+                resource().path( "/management/orgs/test-organization/apps/test-app/collection/users/reindex" )
+                          .queryParam( "access_token", superAdminToken() ).accept( MediaType.APPLICATION_JSON )
+                          .type( MediaType.APPLICATION_JSON_TYPE ).post( ClientResponse.class );
+
+        assertEquals( ClientResponse.Status.ACCEPTED, response.getClientResponseStatus() );
+
+        String uuid = response.getEntity( JsonNode.class ).get( "Reindex Entity" ).getTextValue();
+
+        JsonNode node = resource().path( "/management/orgs/test-organization/apps/test-app/reindex/" + uuid )
+                                  .queryParam( "access_token", superAdminToken() ).accept( MediaType.APPLICATION_JSON )
+                                  .type( MediaType.APPLICATION_JSON_TYPE ).get( JsonNode.class );
+
+        assertEquals( "users", node.get( "collectionName" ).getTextValue() );
+        assertState( node );
+    }
+
+
+    @Test
+    public void reindexGetWrongUUID() throws Exception {
+        ClientResponse.Status responseStatus = ClientResponse.Status.OK;
+        UUID fake = UUID.fromString( "AAAAAAAA-FFFF-FFFF-FFFF-AAAAAAAAAAAA" );
+        try {
+            resource().path( "/management/orgs/test-organization/apps/test-app/reindex/" + fake )
+                      .queryParam( "access_token", superAdminToken() ).accept( MediaType.APPLICATION_JSON )
+                      .type( MediaType.APPLICATION_JSON_TYPE ).get( JsonNode.class );
+        }
+        catch ( UniformInterfaceException uie ) {
+            responseStatus = uie.getResponse().getClientResponseStatus();
+        }
+        assertEquals( ClientResponse.Status.NOT_FOUND, responseStatus );
+    }
+
+
+    @Test
+    public void reindexPostUnauthorized() throws Exception {
+        ClientResponse.Status responseStatus = ClientResponse.Status.OK;
+        try {
+            resource().path( "/management/orgs/test-organization/apps/test-app/reindex" )
+                      .accept( MediaType.APPLICATION_JSON ).type( MediaType.APPLICATION_JSON_TYPE )
+                      .post( JsonNode.class );
+        }
+        catch ( UniformInterfaceException uie ) {
+            responseStatus = uie.getResponse().getClientResponseStatus();
+        }
+        assertEquals( ClientResponse.Status.UNAUTHORIZED, responseStatus );
+    }
+
+
+    @Test
+    public void reindexGetUnauthorized() throws Exception {
+        ClientResponse.Status responseStatus = ClientResponse.Status.OK;
+        UUID fake = UUID.fromString( "AAAAAAAA-FFFF-FFFF-FFFF-AAAAAAAAAAAA" );
+        try {
+            resource().path( "/management/orgs/test-organization/apps/test-app/reindex/" + fake )
+                      .accept( MediaType.APPLICATION_JSON ).type( MediaType.APPLICATION_JSON_TYPE )
+                      .get( JsonNode.class );
+        }
+        catch ( UniformInterfaceException uie ) {
+            responseStatus = uie.getResponse().getClientResponseStatus();
+        }
+        assertEquals( ClientResponse.Status.UNAUTHORIZED, responseStatus );
+    }
+
+
+    /** The scheduler may or may not have picked the rebuild up yet */
+    private void assertState( JsonNode node ) {
+        assertNotNull( node.get( "state" ) );
+        assertTrue( node.get( "state" ).getTextValue(),
+                Arrays.asList( "SCHEDULED", "STARTED", "FINISHED" ).contains( node.get( "state" ).getTextValue() ) );
+    }
+}
@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -903,12 +904,17 @@ public class ManagementServiceImpl implements ManagementService {
 
         EntityManager em = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
 
-        if ( !em.isPropertyValueUniqueForEntity( "user", "username", username ) ) {
-            throw new DuplicateUniquePropertyExistsException( "user", "username", username );
-        }
+        Map<String, Object> uniqueProperties = new LinkedHashMap<String, Object>();
+        uniqueProperties.put( "username", username );
+        uniqueProperties.put( "email", email );
+
+        //the user doesn't exist yet, so it has no id that could already own these values
+        Set<String> duplicates = em.getDuplicateUniqueProperties( "user", null, uniqueProperties );
 
-        if ( !em.isPropertyValueUniqueForEntity( "user", "email", email ) ) {
-            throw new DuplicateUniquePropertyExistsException( "user", "email", email );
+        if ( !duplicates.isEmpty() ) {
+            String propertyName = duplicates.iterator().next();
+            throw new DuplicateUniquePropertyExistsException( "user", propertyName,
+                    uniqueProperties.get( propertyName ) );
         }
         return true;
     }
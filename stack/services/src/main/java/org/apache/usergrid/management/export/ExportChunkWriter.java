@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.management.export;
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the entities of one export partition into a series of chunk files. Each chunk is a JSON array of at most
+ * chunkSize entities, gzipped if requested, and is handed to the {@link S3Export} as soon as it is full. The chunks of
+ * a partition are named &lt;fileName&gt;.&lt;partition&gt;-&lt;chunk&gt;.json[.gz] so a resumed export overwrites
+ * the chunk it was writing when it failed.
+ */
+public class ExportChunkWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger( ExportChunkWriter.class );
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final JsonFactory jsonFactory = new JsonFactory( new ObjectMapper() );
+
+    private final S3Export s3Export;
+    private final Map<String, Object> config;
+    private final String fileName;
+    private final int partition;
+    private final boolean gzip;
+    private final int chunkSize;
+
+    private int chunk;
+    private int written;
+    private File ephemeral;
+    private JsonGenerator jg;
+
+
+    /**
+     * @param fileName The name of the export, without the .json extension
+     * @param partition The partition being written
+     * @param chunk The number of the first chunk to write
+     * @param gzip True to compress the chunks
+     * @param chunkSize The number of entities per chunk.  0 writes the partition into a single chunk
+     */
+    public ExportChunkWriter( S3Export s3Export, Map<String, Object> config, String fileName, int partition, int chunk,
+                              boolean gzip, int chunkSize ) {
+        this.s3Export = s3Export;
+        this.config = config;
+        this.fileName = fileName;
+        this.partition = partition;
+        this.chunk = chunk;
+        this.gzip = gzip;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /** Get the generator to write the next entity to, opening a new chunk if required */
+    public JsonGenerator getGenerator() throws IOException {
+        if ( jg == null ) {
+            open();
+        }
+
+        return jg;
+    }
+
+
+    /**
+     * Signal that an entity has been written to the generator
+     *
+     * @return True if this completed the chunk and it has been uploaded
+     */
+    public boolean entityWritten() throws IOException {
+        written++;
+
+        if ( chunkSize > 0 && written >= chunkSize ) {
+            return flush();
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Complete and upload the current chunk
+     *
+     * @return True if a chunk was uploaded, false if nothing had been written since the last one
+     */
+    public boolean flush() throws IOException {
+        if ( jg == null ) {
+            return false;
+        }
+
+        jg.writeEndArray();
+        jg.close();
+        jg = null;
+
+        String chunkName = getChunkName();
+
+        try {
+            s3Export.copyToS3( ephemeral, config, chunkName );
+        }
+        finally {
+            delete();
+        }
+
+        logger.info( "Exported {} entities to {}", written, chunkName );
+
+        chunk++;
+
+        return true;
+    }
+
+
+    /** The number of the next chunk that will be written */
+    public int getChunk() {
+        return chunk;
+    }
+
+
+    /** Discard anything written since the last chunk was uploaded */
+    public void close() {
+        if ( jg != null ) {
+            try {
+                jg.close();
+            }
+            catch ( IOException e ) {
+                logger.warn( "Unable to close export chunk {}", ephemeral, e );
+            }
+            jg = null;
+        }
+
+        delete();
+    }
+
+
+    private void open() throws IOException {
+        ephemeral = File.createTempFile( "tempExport", gzip ? ".json.gz" : ".json" );
+        ephemeral.deleteOnExit();
+
+        OutputStream out = new BufferedOutputStream( new FileOutputStream( ephemeral ), BUFFER_SIZE );
+
+        if ( gzip ) {
+            out = new GZIPOutputStream( out, BUFFER_SIZE );
+        }
+
+        jg = jsonFactory.createJsonGenerator( out, JsonEncoding.UTF8 );
+        jg.writeStartArray();
+        written = 0;
+    }
+
+
+    private void delete() {
+        if ( ephemeral != null && !ephemeral.delete() ) {
+            logger.warn( "Unable to delete export chunk {}", ephemeral );
+        }
+        ephemeral = null;
+    }
+
+
+    private String getChunkName() {
+        StringBuilder name = new StringBuilder( fileName );
+        name.append( "." ).append( partition ).append( "-" ).append( chunk ).append( ".json" );
+
+        if ( gzip ) {
+            name.append( ".gz" );
+        }
+
+        return name.toString();
+    }
+}
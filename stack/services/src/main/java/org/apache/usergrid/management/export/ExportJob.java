@@ -61,7 +61,8 @@ public class ExportJob extends OnlyOnceJob {
         catch ( Exception e ) {
             logger.error( "Export Service failed to complete job" );
             logger.error(e.getMessage());
-            return;
+            //fail the job so the scheduler retries it, partitioned exports resume from their checkpoints
+            throw e;
         }
 
         logger.info( "executed ExportJob process completed" );
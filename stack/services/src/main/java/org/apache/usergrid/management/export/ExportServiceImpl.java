@@ -19,6 +19,7 @@ package org.apache.usergrid.management.export;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +41,7 @@ import org.apache.usergrid.persistence.ConnectionRef;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.IndexBucketLocator;
 import org.apache.usergrid.persistence.PagingResultsIterator;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.Results;
@@ -49,6 +51,7 @@ import org.apache.usergrid.persistence.entities.JobData;
 import com.google.common.collect.BiMap;
 
 import static org.apache.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
+import static org.apache.usergrid.utils.ConversionUtils.getInt;
 
 
 /**
@@ -76,6 +79,21 @@ public class ExportServiceImpl implements ExportService {
     //Amount of time that has passed before sending another heart beat in millis
     public static final int TIMESTAMP_DELTA = 5000;
 
+    //Export config keys that override the partitioned export defaults
+    public static final String PARTITIONS = "partitions";
+    public static final String COMPRESSION = "compression";
+    public static final String CHUNK_SIZE = "chunkSize";
+
+    public static final String GZIP = "gzip";
+
+    //used to partition the application's collections
+    private IndexBucketLocator indexBucketLocator;
+
+    //defaults for exports that don't set the partitioning themselves
+    private int partitions = 1;
+    private String compression;
+    private int chunkSize;
+
     private JsonFactory jsonFactory = new JsonFactory();
 
 
@@ -202,6 +220,9 @@ public class ExportServiceImpl implements ExportService {
         EntityManager em = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
         Export export = em.get( exportId, Export.class );
 
+        //partitioned exports save their own checkpoints, don't write back the ones read here
+        export.setCheckpoints( null );
+
         //update the entity state to show that the job has officially started.
         export.setState( Export.State.STARTED );
         em.update( export );
@@ -236,6 +257,7 @@ public class ExportServiceImpl implements ExportService {
                 export.setErrorMessage( e.getMessage() );
                 export.setState( Export.State.FAILED );
                 em.update( export );
+                rethrowIfResumable( e, config );
                 return;
             }
         }
@@ -249,6 +271,7 @@ public class ExportServiceImpl implements ExportService {
                 export.setErrorMessage( e.getMessage() );
                 export.setState( Export.State.FAILED );
                 em.update( export );
+                rethrowIfResumable( e, config );
                 return;
             }
         }
@@ -263,6 +286,7 @@ public class ExportServiceImpl implements ExportService {
                     export.setErrorMessage( e.getMessage() );
                     export.setState( Export.State.FAILED );
                     em.update( export );
+                    rethrowIfResumable( e, config );
                     return;
                 }
             }
@@ -271,6 +295,7 @@ public class ExportServiceImpl implements ExportService {
                 export.setErrorMessage( e.getMessage() );
                 export.setState( Export.State.FAILED );
                 em.update( export );
+                rethrowIfResumable( e, config );
                 return;
             }
         }
@@ -279,6 +304,16 @@ public class ExportServiceImpl implements ExportService {
     }
 
 
+    /**
+     * Partitioned exports fail the job so the scheduler runs it again, and the export resumes from its checkpoints
+     */
+    private void rethrowIfResumable( Exception e, Map<String, Object> config ) throws Exception {
+        if ( isPartitioned( config ) ) {
+            throw e;
+        }
+    }
+
+
     public SchedulerService getSch() {
         return sch;
     }
@@ -310,6 +345,31 @@ public class ExportServiceImpl implements ExportService {
     }
 
 
+    public IndexBucketLocator getIndexBucketLocator() {
+        return indexBucketLocator;
+    }
+
+
+    public void setIndexBucketLocator( final IndexBucketLocator indexBucketLocator ) {
+        this.indexBucketLocator = indexBucketLocator;
+    }
+
+
+    public void setPartitions( final int partitions ) {
+        this.partitions = partitions;
+    }
+
+
+    public void setCompression( final String compression ) {
+        this.compression = compression;
+    }
+
+
+    public void setChunkSize( final int chunkSize ) {
+        this.chunkSize = chunkSize;
+    }
+
+
     public Export getExportEntity( final JobExecution jobExecution ) throws Exception {
 
         UUID exportId = ( UUID ) jobExecution.getJobData().getProperty( EXPORT_ID );
@@ -340,9 +400,7 @@ public class ExportServiceImpl implements ExportService {
 
             appFileName = prepareOutputFileName( "application", application.getValue(), null );
 
-            File ephemeral = collectionExportAndQuery( application.getKey(), config, export, jobExecution );
-
-            fileTransfer( export, appFileName, ephemeral, config, s3Export );
+            exportApplication( application.getKey(), appFileName, config, export, jobExecution, s3Export );
         }
     }
 
@@ -373,9 +431,7 @@ public class ExportServiceImpl implements ExportService {
         ApplicationInfo application = managementService.getApplicationInfo( applicationId );
         String appFileName = prepareOutputFileName( "application", application.getName(), null );
 
-        File ephemeral = collectionExportAndQuery( applicationId, config, export, jobExecution );
-
-        fileTransfer( export, appFileName, ephemeral, config, s3Export );
+        exportApplication( applicationId, appFileName, config, export, jobExecution, s3Export );
     }
 
 
@@ -394,9 +450,83 @@ public class ExportServiceImpl implements ExportService {
                 ( String ) config.get( "collectionName" ) );
 
 
-        File ephemeral = collectionExportAndQuery( applicationUUID, config, export, jobExecution );
+        exportApplication( applicationUUID, appFileName, config, export, jobExecution, s3Export );
+    }
+
+
+    /**
+     * Exports the collections of an application into a single file, or into the chunk files of a partitioned export.
+     */
+    protected void exportApplication( UUID applicationUUID, String appFileName, final Map<String, Object> config,
+                                      Export export, final JobExecution jobExecution, S3Export s3Export )
+            throws Exception {
+
+        if ( !isPartitioned( config ) ) {
+            File ephemeral = collectionExportAndQuery( applicationUUID, config, export, jobExecution );
+
+            fileTransfer( export, appFileName, ephemeral, config, s3Export );
+            return;
+        }
+
+        EntityManager em = emf.getEntityManager( applicationUUID );
+
+        Set<String> collectionNames = new HashSet<String>();
+        for ( String collectionName : em.getApplicationCollectionMetadata().keySet() ) {
+            if ( collectionName.equals( "exports" ) ) {
+                continue;
+            }
+
+            if ( ( config.get( "collectionName" ) == null ) || collectionName
+                    .equals( config.get( "collectionName" ) ) ) {
+                collectionNames.add( collectionName );
+            }
+        }
+
+        PartitionedExport partitionedExport =
+                new PartitionedExport( em, emf.getEntityManager( MANAGEMENT_APPLICATION_ID ), export,
+                        indexBucketLocator.getBuckets(), s3Export, config, jobExecution, getPartitions( config ),
+                        isCompressed( config ), getChunkSize( config ), MAX_ENTITY_FETCH );
+
+        //the chunks are named after the export, drop the extension
+        partitionedExport.run( appFileName.substring( 0, appFileName.length() - ".json".length() ), collectionNames );
+    }
+
+
+    /**
+     * Partitioned exports are used when the export or the configuration asks for partitions, compression or chunks.
+     * A query can't be split by index bucket, so exports with a query are always written to a single file.
+     */
+    protected boolean isPartitioned( Map<String, Object> config ) {
+        if ( config.get( "query" ) != null ) {
+            return false;
+        }
+
+        return getPartitions( config ) > 1 || isCompressed( config ) || getChunkSize( config ) > 0;
+    }
+
+
+    private int getPartitions( Map<String, Object> config ) {
+        return config.get( PARTITIONS ) == null ? partitions : getInt( config.get( PARTITIONS ) );
+    }
+
+
+    private int getChunkSize( Map<String, Object> config ) {
+        return config.get( CHUNK_SIZE ) == null ? chunkSize : getInt( config.get( CHUNK_SIZE ) );
+    }
+
+
+    private boolean isCompressed( Map<String, Object> config ) {
+        String value = config.get( COMPRESSION ) == null ? compression : config.get( COMPRESSION ).toString();
+
+        if ( value == null || value.length() == 0 || "none".equalsIgnoreCase( value ) ) {
+            return false;
+        }
+
+        if ( GZIP.equalsIgnoreCase( value ) ) {
+            return true;
+        }
 
-        fileTransfer( export, appFileName, ephemeral, config, s3Export );
+        throw new IllegalArgumentException( "Unsupported export compression " + value );
     }
 
 
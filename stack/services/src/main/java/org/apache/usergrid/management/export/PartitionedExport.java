@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.management.export;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.persistence.ConnectionRef;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.entities.Export;
+
+import static org.apache.usergrid.persistence.Schema.DICTIONARY_CONNECTED_TYPES;
+import static org.apache.usergrid.persistence.Schema.DICTIONARY_SETS;
+import static org.apache.usergrid.persistence.Schema.getDefaultSchema;
+import static org.apache.usergrid.utils.ConversionUtils.getInt;
+import static org.apache.usergrid.utils.ConversionUtils.getLong;
+import static org.apache.usergrid.utils.ConversionUtils.string;
+import static org.apache.usergrid.utils.ConversionUtils.uuid;
+
+
+/**
+ * Exports the collections of an application in parallel. The index buckets of every collection are dealt out to the
+ * partitions, and each partition scans its buckets on its own thread and writes the entities to its own chunk files.
+ * Dictionary and connection names are read for a page of entities at a time, so only entities that have any pay for
+ * the per entity reads.
+ * <p/>
+ * Whenever a partition uploads a chunk its position is saved in the checkpoints of the {@link Export} entity. When
+ * the job runs again after a failure each partition picks up after the last entity of its last uploaded chunk.
+ */
+public class PartitionedExport {
+
+    private static final Logger logger = LoggerFactory.getLogger( PartitionedExport.class );
+
+    public static final String FILE_NAME = "fileName";
+    public static final String PARTITIONS = "partitions";
+    public static final String COLLECTION = "collection";
+    public static final String BUCKET = "bucket";
+    public static final String CURSOR = "cursor";
+    public static final String CHUNK = "chunk";
+    public static final String COUNT = "count";
+    public static final String FINISHED = "finished";
+
+    private final EntityManager em;
+    private final EntityManager exportManager;
+    private final Export export;
+    private final List<String> buckets;
+    private final S3Export s3Export;
+    private final Map<String, Object> config;
+    private final JobExecution jobExecution;
+    private final boolean gzip;
+    private final int chunkSize;
+    private final int pageSize;
+
+    private int partitions;
+    private String fileName;
+    private Map<String, Object> progress;
+
+
+    /**
+     * @param em The entity manager of the application to export
+     * @param exportManager The entity manager that owns the export entity
+     * @param export The export entity to save checkpoints in
+     * @param buckets The index buckets of the application
+     * @param partitions The number of partitions to export concurrently
+     * @param gzip True to compress the chunks
+     * @param chunkSize The number of entities in each chunk. 0 writes each partition into a single chunk
+     * @param pageSize The number of entities to load at once
+     */
+    public PartitionedExport( EntityManager em, EntityManager exportManager, Export export, List<String> buckets,
+                              S3Export s3Export, Map<String, Object> config, JobExecution jobExecution,
+                              int partitions, boolean gzip, int chunkSize, int pageSize ) {
+        this.em = em;
+        this.exportManager = exportManager;
+        this.export = export;
+        this.buckets = buckets;
+        this.s3Export = s3Export;
+        this.config = config;
+        this.jobExecution = jobExecution;
+        this.partitions = Math.max( 1, Math.min( partitions, buckets.size() ) );
+        this.gzip = gzip;
+        this.chunkSize = chunkSize;
+        this.pageSize = pageSize;
+    }
+
+
+    /**
+     * Export the collections, resuming from the checkpoints of the application if there are any
+     *
+     * @param newFileName The name of the export, without the .json extension, if this isn't a resumed export
+     * @param collectionNames The collections to export
+     *
+     * @return The number of entities exported by this run
+     */
+    @SuppressWarnings("unchecked")
+    public long run( String newFileName, Collection<String> collectionNames ) throws Exception {
+
+        String applicationKey = em.getApplicationRef().getUuid().toString();
+
+        Map<String, Object> checkpoints = new LinkedHashMap<String, Object>();
+        if ( export.getCheckpoints() != null ) {
+            checkpoints.putAll( export.getCheckpoints() );
+        }
+
+        Map<String, Object> saved = ( Map<String, Object> ) checkpoints.get( applicationKey );
+
+        progress = new LinkedHashMap<String, Object>();
+
+        if ( saved == null ) {
+            progress.put( FILE_NAME, newFileName );
+            progress.put( PARTITIONS, partitions );
+        }
+        else {
+            //a resumed export keeps its partitioning, otherwise the buckets would move between partitions
+            progress.putAll( saved );
+            partitions = getInt( progress.get( PARTITIONS ) );
+            logger.info( "Resuming export of application {} into {}", applicationKey, progress.get( FILE_NAME ) );
+        }
+
+        fileName = string( progress.get( FILE_NAME ) );
+
+        checkpoints.put( applicationKey, progress );
+        export.setCheckpoints( checkpoints );
+
+        //a stable order is what lets a partition find its place again
+        List<String> collections = new ArrayList<String>( new TreeSet<String>( collectionNames ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( partitions );
+        CompletionService<Long> completion = new ExecutorCompletionService<Long>( executor );
+
+        int running = 0;
+
+        for ( int partition = 0; partition < partitions; partition++ ) {
+            Map<String, Object> checkpoint = getCheckpoint( partition );
+
+            if ( checkpoint != null && Boolean.TRUE.equals( checkpoint.get( FINISHED ) ) ) {
+                continue;
+            }
+
+            completion.submit( new ExportPartition( partition, collections, checkpoint ) );
+            running++;
+        }
+
+        long count = 0;
+
+        try {
+            while ( running > 0 ) {
+                Future<Long> done = completion.poll( ExportServiceImpl.TIMESTAMP_DELTA, TimeUnit.MILLISECONDS );
+
+                //keep the job alive while the partitions work
+                if ( done == null ) {
+                    jobExecution.heartbeat();
+                    continue;
+                }
+
+                running--;
+
+                try {
+                    count += done.get();
+                }
+                catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof Exception ) {
+                        throw ( Exception ) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        finally {
+            //stops the other partitions as soon as one fails
+            executor.shutdownNow();
+        }
+
+        logger.info( "Exported {} entities of application {} in {} partitions", new Object[] {
+                count, applicationKey, partitions
+        } );
+
+        return count;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private synchronized Map<String, Object> getCheckpoint( int partition ) {
+        return ( Map<String, Object> ) progress.get( String.valueOf( partition ) );
+    }
+
+
+    /** Save the position of the partition in the export entity */
+    private synchronized void checkpoint( int partition, Map<String, Object> checkpoint ) throws Exception {
+        progress.put( String.valueOf( partition ), checkpoint );
+        exportManager.setProperty( export, "checkpoints", export.getCheckpoints() );
+    }
+
+
+    /** Scans the buckets of one partition, in every collection */
+    private class ExportPartition implements Callable<Long> {
+
+        private final int partition;
+        private final List<String> collections;
+        private final Map<String, Object> checkpoint;
+
+        private String collection;
+        private String bucket;
+        private UUID cursor;
+        private long count;
+
+
+        private ExportPartition( int partition, List<String> collections, Map<String, Object> checkpoint ) {
+            this.partition = partition;
+            this.collections = collections;
+            this.checkpoint = checkpoint;
+        }
+
+
+        @Override
+        public Long call() throws Exception {
+
+            String resumeCollection = null;
+            String resumeBucket = null;
+            UUID resumeCursor = null;
+            int chunk = 0;
+
+            if ( checkpoint != null ) {
+                resumeCollection = string( checkpoint.get( COLLECTION ) );
+                resumeBucket = string( checkpoint.get( BUCKET ) );
+                resumeCursor = uuid( checkpoint.get( CURSOR ) );
+                chunk = getInt( checkpoint.get( CHUNK ) );
+                count = getLong( checkpoint.get( COUNT ) );
+            }
+
+            long written = 0;
+
+            ExportChunkWriter writer =
+                    new ExportChunkWriter( s3Export, config, fileName, partition, chunk, gzip, chunkSize );
+
+            try {
+                for ( String collectionName : collections ) {
+
+                    if ( resumeCollection != null && collectionName.compareTo( resumeCollection ) < 0 ) {
+                        continue;
+                    }
+
+                    for ( int i = partition; i < buckets.size(); i += partitions ) {
+
+                        String bucketName = buckets.get( i );
+                        UUID start = null;
+
+                        if ( collectionName.equals( resumeCollection ) ) {
+                            int compare = bucketName.compareTo( resumeBucket );
+
+                            if ( compare < 0 ) {
+                                continue;
+                            }
+
+                            if ( compare == 0 ) {
+                                start = resumeCursor;
+                            }
+                        }
+
+                        List<UUID> ids;
+
+                        do {
+                            ids = em.getApplicationCollectionIds( collectionName, bucketName, start, pageSize );
+
+                            if ( ids.isEmpty() ) {
+                                break;
+                            }
+
+                            written += writePage( writer, collectionName, bucketName, ids );
+
+                            start = ids.get( ids.size() - 1 );
+                        }
+                        while ( ids.size() == pageSize );
+                    }
+                }
+
+                writer.flush();
+
+                checkpoint( writer, true );
+            }
+            finally {
+                writer.close();
+            }
+
+            return written;
+        }
+
+
+        /** Write a page of entities in the order of their ids, so the last written id is a cursor into the bucket */
+        private long writePage( ExportChunkWriter writer, String collectionName, String bucketName, List<UUID> ids )
+                throws Exception {
+
+            Results results = em.get( ids, Results.Level.ALL_PROPERTIES );
+
+            Map<UUID, Entity> entities = new LinkedHashMap<UUID, Entity>();
+            for ( Entity entity : results.getEntities() ) {
+                entities.put( entity.getUuid(), entity );
+            }
+
+            Map<UUID, Set<String>> dictionaries = em.getDictionaryKeys( ids, DICTIONARY_SETS );
+            Map<UUID, Set<String>> connectionTypes = em.getDictionaryKeys( ids, DICTIONARY_CONNECTED_TYPES );
+
+            String memberCollection = ( String ) config.get( "collectionName" );
+
+            long written = 0;
+
+            for ( UUID id : ids ) {
+                Entity entity = entities.get( id );
+
+                //the index can be ahead of a delete
+                if ( entity == null ) {
+                    continue;
+                }
+
+                JsonGenerator jg = writer.getGenerator();
+
+                jg.writeStartObject();
+                jg.writeFieldName( "Metadata" );
+                jg.writeObject( entity );
+
+                writeConnections( jg, entity, connectionTypes.get( id ) );
+                writeDictionaries( jg, entity, dictionaries.get( id ) );
+
+                if ( memberCollection != null ) {
+                    writeCollectionMembers( jg, entity, memberCollection );
+                }
+
+                jg.writeEndObject();
+
+                written++;
+                count++;
+                collection = collectionName;
+                bucket = bucketName;
+                cursor = id;
+
+                if ( writer.entityWritten() ) {
+                    checkpoint( writer, false );
+                }
+            }
+
+            return written;
+        }
+
+
+        private void writeConnections( JsonGenerator jg, Entity entity, Set<String> connectionTypes )
+                throws Exception {
+
+            jg.writeFieldName( "connections" );
+            jg.writeStartObject();
+
+            if ( connectionTypes != null ) {
+                for ( String connectionType : connectionTypes ) {
+
+                    jg.writeFieldName( connectionType );
+                    jg.writeStartArray();
+
+                    Results results =
+                            em.getConnectedEntities( entity.getUuid(), connectionType, null, Results.Level.IDS );
+
+                    for ( ConnectionRef connectionRef : results.getConnections() ) {
+                        jg.writeObject( connectionRef.getConnectedEntity().getUuid() );
+                    }
+
+                    jg.writeEndArray();
+                }
+            }
+
+            jg.writeEndObject();
+        }
+
+
+        private void writeDictionaries( JsonGenerator jg, Entity entity, Set<String> stored ) throws Exception {
+
+            jg.writeFieldName( "dictionaries" );
+            jg.writeStartObject();
+
+            Set<String> dictionaryNames = new TreeSet<String>( String.CASE_INSENSITIVE_ORDER );
+
+            if ( stored != null ) {
+                dictionaryNames.addAll( stored );
+            }
+
+            Set<String> schemaDictionaries = getDefaultSchema().getDictionaryNames( entity.getType() );
+            if ( schemaDictionaries != null ) {
+                dictionaryNames.addAll( schemaDictionaries );
+            }
+
+            for ( String dictionary : dictionaryNames ) {
+
+                Map<Object, Object> dict = em.getDictionaryAsMap( entity, dictionary );
+
+                // nothing to do
+                if ( dict.isEmpty() ) {
+                    continue;
+                }
+
+                jg.writeFieldName( dictionary );
+                jg.writeStartObject();
+
+                for ( Map.Entry<Object, Object> entry : dict.entrySet() ) {
+                    jg.writeFieldName( entry.getKey().toString() );
+                    jg.writeObject( entry.getValue() );
+                }
+
+                jg.writeEndObject();
+            }
+
+            jg.writeEndObject();
+        }
+
+
+        private void writeCollectionMembers( JsonGenerator jg, Entity entity, String collectionName )
+                throws Exception {
+
+            Set<String> collectionNames = em.getCollections( entity );
+
+            if ( collectionNames == null || !collectionNames.contains( collectionName ) ) {
+                return;
+            }
+
+            jg.writeFieldName( collectionName );
+            jg.writeStartArray();
+
+            Results members = em.getCollection( entity, collectionName, null, 100000, Results.Level.IDS, false );
+
+            List<UUID> memberIds = members.getIds();
+
+            if ( memberIds != null ) {
+                for ( UUID memberId : memberIds ) {
+                    jg.writeObject( memberId.toString() );
+                }
+            }
+
+            jg.writeEndArray();
+        }
+
+
+        /** Save the position after the last entity of the last uploaded chunk */
+        private void checkpoint( ExportChunkWriter writer, boolean finished ) throws Exception {
+            Map<String, Object> position = new LinkedHashMap<String, Object>();
+            position.put( COLLECTION, collection );
+            position.put( BUCKET, bucket );
+            position.put( CURSOR, cursor );
+            position.put( CHUNK, writer.getChunk() );
+            position.put( COUNT, count );
+            position.put( FINISHED, finished );
+
+            PartitionedExport.this.checkpoint( partition, position );
+        }
+    }
+}
@@ -84,13 +84,16 @@ public class S3ExportImpl implements S3Export {
         }
         catch ( Exception ex ) {
             logger.error( "Could not start binary service: {}", ex.getMessage() );
-            return;
+            context.close();
+            throw new RuntimeException( "Unable to create bucket " + bucketName, ex );
         }
 
+        //partitioned exports upload their chunks in parallel, callers need to know a chunk didn't make it
         try {
             AsyncBlobStore blobStore = context.getAsyncBlobStore();
-            BlobBuilder blobBuilder =
-                    blobStore.blobBuilder( fn ).payload( ephemeral ).calculateMD5().contentType( "application/json" );
+            BlobBuilder blobBuilder = blobStore.blobBuilder( filename ).payload( ephemeral ).calculateMD5()
+                                               .contentType( filename.endsWith( ".gz" ) ? "application/gzip" :
+                                                             "application/json" );
 
 
             Blob blob = blobBuilder.build();
@@ -102,6 +105,10 @@ public class S3ExportImpl implements S3Export {
         }
         catch ( Exception e ) {
             logger.error( "Error uploading to blob store", e );
+            throw new RuntimeException( "Unable to upload " + filename, e );
+        }
+        finally {
+            context.close();
         }
     }
 
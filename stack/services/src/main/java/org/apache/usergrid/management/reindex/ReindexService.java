@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.management.reindex;
+
+
+import java.util.UUID;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.persistence.entities.Reindex;
+
+
+/**
+ * Rebuilds the indexes of applications in the background
+ */
+public interface ReindexService {
+
+    /**
+     * Schedules the rebuild of the indexes of an application
+     *
+     * @param applicationId The application to rebuild
+     * @param collectionName The collection to rebuild, null for every collection of the application
+     *
+     * @return The id of the reindex entity that tracks the rebuild
+     */
+    UUID schedule( UUID applicationId, String collectionName ) throws Exception;
+
+
+    /**
+     * Perform the rebuild of the scheduled reindex entity
+     */
+    void doReindex( JobExecution jobExecution ) throws Exception;
+
+
+    /**
+     * Rebuild the indexes tracked by the reindex entity in the calling thread, resuming from its checkpoints
+     *
+     * @param jobExecution The job to keep alive, null if not run as a job
+     */
+    void reindex( Reindex reindex, JobExecution jobExecution ) throws Exception;
+
+
+    /**
+     * Get the reindex entity with the id
+     */
+    Reindex getReindex( UUID uuid ) throws Exception;
+}
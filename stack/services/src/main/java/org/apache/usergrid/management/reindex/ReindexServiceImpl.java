@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.management.reindex;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.batch.service.SchedulerService;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.IndexBucketLocator;
+import org.apache.usergrid.persistence.cassandra.IndexRebuilder;
+import org.apache.usergrid.persistence.entities.JobData;
+import org.apache.usergrid.persistence.entities.Reindex;
+
+import static org.apache.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
+
+
+/**
+ * Schedules and runs index rebuilds.  The progress of a rebuild is kept in a {@link Reindex} entity in the management
+ * application.  A rebuild that fails is retried by the scheduler, and resumes from the checkpoints of the entity.
+ */
+public class ReindexServiceImpl implements ReindexService {
+
+    private static final Logger logger = LoggerFactory.getLogger( ReindexServiceImpl.class );
+
+    public static final String REINDEX_ID = "reindexId";
+    public static final String REINDEX_JOB_NAME = "reindexJob";
+
+    //Number of entities loaded and reindexed at once
+    public static final int PAGE_SIZE = 100;
+
+    private SchedulerService sch;
+
+    protected EntityManagerFactory emf;
+
+    private IndexBucketLocator indexBucketLocator;
+
+    //number of index buckets rebuilt concurrently
+    private int threads = 1;
+
+    //maximum number of entities reindexed per second, 0 for no limit
+    private double entitiesPerSecond;
+
+
+    @Override
+    public UUID schedule( UUID applicationId, String collectionName ) throws Exception {
+
+        if ( applicationId == null ) {
+            throw new IllegalArgumentException( "An application id is required" );
+        }
+
+        EntityManager em = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
+
+        Reindex reindex = new Reindex();
+        reindex.setApplicationId( applicationId );
+        reindex.setCollectionName( collectionName );
+        reindex.setState( Reindex.State.CREATED );
+
+        reindex = em.create( reindex );
+
+        JobData jobData = new JobData();
+        jobData.setProperty( REINDEX_ID, reindex.getUuid() );
+
+        long soonestPossible = System.currentTimeMillis() + 250; //sch grace period
+
+        sch.createJob( REINDEX_JOB_NAME, soonestPossible, jobData );
+
+        reindex.setState( Reindex.State.SCHEDULED );
+        em.update( reindex );
+
+        return reindex.getUuid();
+    }
+
+
+    @Override
+    public void doReindex( JobExecution jobExecution ) throws Exception {
+        UUID reindexId = ( UUID ) jobExecution.getJobData().getProperty( REINDEX_ID );
+
+        Reindex reindex = getReindex( reindexId );
+
+        if ( reindex == null ) {
+            logger.error( "No reindex entity with id {} was found", reindexId );
+            return;
+        }
+
+        reindex( reindex, jobExecution );
+    }
+
+
+    @Override
+    public void reindex( Reindex reindex, JobExecution jobExecution ) throws Exception {
+        EntityManager statusManager = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
+
+        if ( reindex.getStarted() == null ) {
+            reindex.setStarted( System.currentTimeMillis() );
+        }
+
+        reindex.setState( Reindex.State.STARTED );
+        reindex.setErrorMessage( null );
+        statusManager.update( reindex );
+
+        try {
+            EntityManager em = emf.getEntityManager( reindex.getApplicationId() );
+
+            Collection<String> collectionNames = reindex.getCollectionName() != null ?
+                                                 Collections.singleton( reindex.getCollectionName() ) :
+                                                 em.getApplicationCollections();
+
+            IndexRebuilder rebuilder =
+                    new IndexRebuilder( em, statusManager, reindex, indexBucketLocator.getBuckets(), threads,
+                            entitiesPerSecond, PAGE_SIZE );
+
+            rebuilder.run( collectionNames, jobExecution );
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to reindex application " + reindex.getApplicationId(), e );
+
+            //the checkpoints were saved by the rebuilder, a retry picks up from them
+            reindex.setErrorMessage( e.getMessage() );
+            reindex.setState( Reindex.State.FAILED );
+            statusManager.update( reindex );
+            throw e;
+        }
+
+        reindex.setState( Reindex.State.FINISHED );
+        statusManager.update( reindex );
+    }
+
+
+    @Override
+    public Reindex getReindex( UUID uuid ) throws Exception {
+        if ( uuid == null ) {
+            return null;
+        }
+
+        return emf.getEntityManager( MANAGEMENT_APPLICATION_ID ).get( uuid, Reindex.class );
+    }
+
+
+    public SchedulerService getSch() {
+        return sch;
+    }
+
+
+    public void setSch( final SchedulerService sch ) {
+        this.sch = sch;
+    }
+
+
+    public EntityManagerFactory getEmf() {
+        return emf;
+    }
+
+
+    public void setEmf( final EntityManagerFactory emf ) {
+        this.emf = emf;
+    }
+
+
+    public IndexBucketLocator getIndexBucketLocator() {
+        return indexBucketLocator;
+    }
+
+
+    public void setIndexBucketLocator( final IndexBucketLocator indexBucketLocator ) {
+        this.indexBucketLocator = indexBucketLocator;
+    }
+
+
+    public int getThreads() {
+        return threads;
+    }
+
+
+    public void setThreads( final int threads ) {
+        this.threads = threads;
+    }
+
+
+    public double getEntitiesPerSecond() {
+        return entitiesPerSecond;
+    }
+
+
+    public void setEntitiesPerSecond( final double entitiesPerSecond ) {
+        this.entitiesPerSecond = entitiesPerSecond;
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.usergrid.services;
 import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -416,6 +417,18 @@ public class ServiceManager {
     }
 
 
+    /** @return The executor to run follow on requests with.  Null if they should be executed serially */
+    public ExecutorService getRequestExecutor() {
+        return smf == null ? null : smf.getRequestExecutor();
+    }
+
+
+    /** @return The time in milliseconds a request may take.  0 for no limit */
+    public long getRequestTimeout() {
+        return smf == null ? 0 : smf.getRequestTimeout();
+    }
+
+
     public QueueManager getQueueManager() {
         return qm;
     }
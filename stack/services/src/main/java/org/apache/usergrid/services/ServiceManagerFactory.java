@@ -20,6 +20,12 @@ package org.apache.usergrid.services;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -34,6 +40,12 @@ import org.apache.usergrid.persistence.EntityManagerFactory;
 
 public class ServiceManagerFactory implements ApplicationContextAware {
 
+    /** The number of threads to execute the follow on requests of a request with.  0 executes them serially */
+    public static final String REQUEST_THREADS = "usergrid.services.request.threads";
+
+    /** The time in milliseconds a request and all its follow on requests may take.  0 for no limit */
+    public static final String REQUEST_TIMEOUT = "usergrid.services.request.timeout";
+
     private ApplicationContext applicationContext;
 
     private EntityManagerFactory emf;
@@ -45,6 +57,9 @@ public class ServiceManagerFactory implements ApplicationContextAware {
     private List<ServiceExecutionEventListener> eventListeners;
     private List<ServiceCollectionEventListener> collectionListeners;
 
+    private ExecutorService requestExecutor;
+    private boolean requestExecutorCreated;
+
 
     public ServiceManagerFactory( EntityManagerFactory emf, Properties properties, SchedulerService schedulerService,
                                   LockManager lockManager, QueueManagerFactory qmf ) {
@@ -129,4 +144,66 @@ public class ServiceManagerFactory implements ApplicationContextAware {
     public LockManager getLockManager() {
         return lockManager;
     }
+
+
+    /**
+     * Get the executor follow on requests are executed with.  The executor has no queue, once all the threads are busy
+     * requests are executed by the caller.
+     *
+     * @return The executor.  Null if follow on requests should be executed serially
+     */
+    public synchronized ExecutorService getRequestExecutor() {
+        if ( requestExecutorCreated ) {
+            return requestExecutor;
+        }
+
+        requestExecutorCreated = true;
+
+        int threads = getIntProperty( REQUEST_THREADS );
+
+        if ( threads > 0 ) {
+            requestExecutor = new ThreadPoolExecutor( threads, threads, 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new RequestThreadFactory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy() );
+        }
+
+        return requestExecutor;
+    }
+
+
+    /** @return The time in milliseconds a request may take.  0 for no limit */
+    public long getRequestTimeout() {
+        return getIntProperty( REQUEST_TIMEOUT );
+    }
+
+
+    private int getIntProperty( String name ) {
+        if ( properties == null ) {
+            return 0;
+        }
+
+        String value = properties.getProperty( name );
+
+        if ( value == null || value.trim().length() == 0 ) {
+            return 0;
+        }
+
+        return Integer.parseInt( value.trim() );
+    }
+
+
+    /** Labels the request threads for easier debugging */
+    private static final class RequestThreadFactory implements ThreadFactory {
+
+        private final AtomicLong counter = new AtomicLong();
+
+
+        @Override
+        public Thread newThread( final Runnable r ) {
+            Thread thread = new Thread( r, "service-request-" + counter.incrementAndGet() );
+            thread.setDaemon( true );
+
+            return thread;
+        }
+    }
 }
@@ -22,6 +22,12 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +35,11 @@ import org.apache.usergrid.persistence.EntityRef;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.services.ServiceParameter.QueryParameter;
 import org.apache.usergrid.services.ServiceResults.Type;
+import org.apache.usergrid.services.exceptions.ServiceInvocationException;
 
 import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.apache.usergrid.utils.ListUtils.isEmpty;
@@ -58,6 +67,9 @@ public class ServiceRequest {
     private final ServicePayload payload;
     private final List<ServiceParameter> originalParameters;
 
+    /** The time in milliseconds this request and its follow on requests must complete by.  0 if not yet started */
+    private long deadline;
+
     // return results_set, result_entity, new_service, param_list, properties
 
 
@@ -220,6 +232,11 @@ public class ServiceRequest {
 
         // initServiceName();
 
+        if ( deadline == 0 ) {
+            long timeout = services.getRequestTimeout();
+            deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        }
+
         ServiceResults results = null;
         Service s = services.getService( serviceName );
         if ( s != null ) {
@@ -242,11 +259,11 @@ public class ServiceRequest {
 
         List<ServiceRequest> requests = previousResults.getNextRequests();
 
-        if ( returnsTree ) {
+        List<ServiceResults> results = executeAll( requests, previousResults );
 
-            for ( ServiceRequest request : requests ) {
+        if ( returnsTree ) {
 
-                ServiceResults rs = request.execute( previousResults );
+            for ( ServiceResults rs : results ) {
                 if ( rs != null ) {
                     previousResults.setChildResults( rs );
                 }
@@ -257,9 +274,7 @@ public class ServiceRequest {
         else {
             ServiceResults aggregate_results = null;
 
-            for ( ServiceRequest request : requests ) {
-
-                ServiceResults rs = request.execute( previousResults );
+            for ( ServiceResults rs : results ) {
                 if ( rs != null ) {
                     if ( aggregate_results == null ) {
                         aggregate_results = rs;
@@ -275,6 +290,95 @@ public class ServiceRequest {
     }
 
 
+    /**
+     * Execute the follow on requests, returning their results in the same order as the requests.  Reads are executed
+     * concurrently when the service manager has a request executor, anything that modifies data is executed serially
+     * so a failure leaves the same partial result as it always has.  Each request is executed as the current subject
+     * so permissions are checked as they would be on this thread.
+     */
+    private List<ServiceResults> executeAll( List<ServiceRequest> requests, final ServiceResults previousResults )
+            throws Exception {
+
+        List<ServiceResults> results = new ArrayList<ServiceResults>( requests.size() );
+
+        ExecutorService executor = services.getRequestExecutor();
+
+        if ( executor == null || requests.size() < 2 || !isReadOnly() ) {
+            for ( ServiceRequest request : requests ) {
+                checkDeadline();
+                request.deadline = deadline;
+                results.add( request.execute( previousResults ) );
+            }
+
+            return results;
+        }
+
+        Subject subject = ThreadContext.getSubject();
+
+        List<Future<ServiceResults>> futures = new ArrayList<Future<ServiceResults>>( requests.size() );
+
+        try {
+            for ( final ServiceRequest request : requests ) {
+                request.deadline = deadline;
+
+                Callable<ServiceResults> task = new Callable<ServiceResults>() {
+                    @Override
+                    public ServiceResults call() throws Exception {
+                        return request.execute( previousResults );
+                    }
+                };
+
+                futures.add( executor.submit( subject == null ? task : subject.associateWith( task ) ) );
+            }
+
+            for ( Future<ServiceResults> future : futures ) {
+                results.add( await( future ) );
+            }
+        }
+        finally {
+            //only does anything if we didn't finish
+            for ( Future<ServiceResults> future : futures ) {
+                future.cancel( true );
+            }
+        }
+
+        return results;
+    }
+
+
+    private ServiceResults await( Future<ServiceResults> future ) throws Exception {
+        try {
+            if ( deadline == Long.MAX_VALUE ) {
+                return future.get();
+            }
+
+            return future.get( Math.max( deadline - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+        }
+        catch ( TimeoutException e ) {
+            throw new ServiceInvocationException( this, "Request timed out", e );
+        }
+        catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof Exception ) {
+                throw ( Exception ) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+
+    private void checkDeadline() throws ServiceInvocationException {
+        if ( System.currentTimeMillis() > deadline ) {
+            throw new ServiceInvocationException( this, "Request timed out" );
+        }
+    }
+
+
+    private boolean isReadOnly() {
+        return action == ServiceAction.GET || action == ServiceAction.HEAD;
+    }
+
+
     public List<ServiceParameter> getParameters() {
         return parameters;
     }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.IOException;
+
+
+/**
+ * Thrown as soon as an upload reads past the max asset size, before the rest of it is read.  The binary stores let it
+ * propagate so the upload is answered with a 413
+ */
+public class AssetSizeExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maxSizeBytes;
+
+
+    public AssetSizeExceededException( long maxSizeBytes ) {
+        super( "Asset size is larger than max size of " + maxSizeBytes );
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+}
@@ -21,6 +21,7 @@ import java.text.ParseException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -28,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.utils.StringUtils;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.time.DateUtils;
 
 import com.google.common.base.Preconditions;
@@ -43,6 +45,9 @@ public class AssetUtils {
     public static final String E_TAG = "etag";
     public static final String CHECKSUM = "checksum";
     public static final String LAST_MODIFIED = "last-modified";
+    public static final String ERROR = "error";
+
+    public static final String MAX_SIZE_PROP_NAME = "usergrid.binary.max-size-mb";
 
 
     /** Returns the key for the bucket in the following form: [appId]/[{@link org.apache.usergrid.persistence.entities
@@ -69,6 +74,17 @@ public class AssetUtils {
     }
 
 
+    /** The largest asset allowed in bytes, 50mb by default. Files up to 5mb are always allowed */
+    public static long getMaxSizeBytes( Properties properties ) {
+        long maxSizeBytes = 50 * FileUtils.ONE_MB;
+        String maxSizeMbString = properties != null ? properties.getProperty( MAX_SIZE_PROP_NAME, "50" ) : null;
+        if ( StringUtils.isNumeric( maxSizeMbString ) ) {
+            maxSizeBytes = Long.parseLong( maxSizeMbString ) * FileUtils.ONE_MB;
+        }
+        return Math.max( maxSizeBytes, 5 * FileUtils.ONE_MB );
+    }
+
+
     /** side-effect: sets file-metadata on the entity if not present */
     public static Map<String, Object> getFileMetadata( Entity entity ) {
         Map<String, Object> metadata = ( Map<String, Object> ) entity.getProperty( AssetUtils.FILE_METADATA );
@@ -17,25 +17,27 @@
 package org.apache.usergrid.services.assets.data;
 
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.utils.StringUtils;
 
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.Protocol;
@@ -45,35 +47,39 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.google.common.primitives.Ints;
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
-import java.io.PushbackInputStream;
-import java.util.ArrayList;
-import java.util.List;
-import org.apache.commons.codec.binary.Base64;
 
 
 public class AwsSdkS3BinaryStore implements BinaryStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(AwsSdkS3BinaryStore.class );
     private static final long FIVE_MB = ( FileUtils.ONE_MB * 5 );
-    
+    private static final int MIME_SAMPLE_SIZE = 64 * 1024;
+    private static final String WORKERS_PROP_NAME = "usergrid.binary.upload-workers";
+    private static final String PARTS_PROP_NAME = "usergrid.binary.upload-parts-per-request";
+
     private AmazonS3 s3Client;
     private String accessId;
     private String secretKey;
     private String bucketName;
     private String regionName;
+    private String endpoint;
+    private volatile ExecutorService executorService;
+
+    @Autowired
+    private Properties properties;
 
     @Autowired
     private EntityManagerFactory emf;
@@ -92,6 +98,12 @@ public class AwsSdkS3BinaryStore implements BinaryStore {
         this.bucketName = bucketName;
     }
 
+    /** Use an S3 compatible store at the endpoint instead of AWS, e.g. a local stand-in for testing */
+    public void setEndpoint( String endpoint ) {
+        this.endpoint = endpoint;
+    }
+
+
     private AmazonS3 getS3Client() {
         if ( s3Client == null ) {
             AWSCredentials credentials = new BasicAWSCredentials(accessId, secretKey);
@@ -101,101 +113,145 @@ public class AwsSdkS3BinaryStore implements BinaryStore {
             s3Client = new AmazonS3Client(credentials, clientConfig);
             if(regionName != null)
                 s3Client.setRegion( Region.getRegion(Regions.fromName(regionName)) );
+            if(endpoint != null) {
+                s3Client.setEndpoint( endpoint );
+                // S3 compatible stores are rarely set up for bucket sub domains
+                s3Client.setS3ClientOptions( new S3ClientOptions().withPathStyleAccess( true ) );
+            }
         }
 
         return s3Client;
     }
 
 
+    /** Stop the part upload threads once the uploads in progress are done */
+    @PreDestroy
+    public void destroy() {
+        if ( executorService != null ) {
+            executorService.shutdown();
+        }
+        if ( s3Client instanceof AmazonS3Client ) {
+            ( ( AmazonS3Client ) s3Client ).shutdown();
+        }
+    }
+
+
     @Override
     public void write( final UUID appId, final Entity entity, InputStream inputStream ) throws IOException {
 
-        String uploadFileName = AssetUtils.buildAssetKey( appId, entity );
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        long written = IOUtils.copyLarge( inputStream, baos, 0, FIVE_MB );
-
-        byte[] data = baos.toByteArray();
-        
-        InputStream awsInputStream = new ByteArrayInputStream(data);
-        
         final Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
+        UploadInputStream upload = new UploadInputStream( inputStream, AssetUtils.getMaxSizeBytes( properties ) );
+        S3PartWriter writer = new S3PartWriter( entity, AssetUtils.buildAssetKey( appId, entity ) );
+
+        new StreamingUpload<PartETag>( getExecutorService(), Ints.checkedCast( FIVE_MB ), getPartsPerRequest() )
+                .upload( upload, writer );
+
         fileMetadata.put( AssetUtils.LAST_MODIFIED, System.currentTimeMillis() );
+        fileMetadata.put( AssetUtils.CONTENT_LENGTH, upload.getCount() );
+        fileMetadata.put( AssetUtils.CHECKSUM, upload.getChecksum() );
+        fileMetadata.put( AssetUtils.E_TAG, writer.eTag );
+    }
 
-        String mimeType = AssetMimeHandler.get().getMimeType( entity, data );
-        
-        if ( written < FIVE_MB ) { // total smaller than 5mb
 
+    private ExecutorService getExecutorService() {
+
+        if ( executorService == null ) {
+            synchronized (this) {
+                if ( executorService == null ) {
+                    int workers = getIntProperty( WORKERS_PROP_NAME, 40 );
+                    executorService = Executors.newFixedThreadPool( workers );
+                }
+            }
+        }
+
+        return executorService;
+    }
+
+
+    private int getPartsPerRequest() {
+        return getIntProperty( PARTS_PROP_NAME, 3 );
+    }
+
+
+    private int getIntProperty( String name, int defaultValue ) {
+        String value = properties != null ? properties.getProperty( name ) : null;
+        if ( StringUtils.isNumeric( value ) ) {
+            return Integer.parseInt( value );
+        }
+        else if ( !StringUtils.isEmpty( value ) ) {
+            LOG.error( "Ignoring invalid setting for {}", name );
+        }
+        return defaultValue;
+    }
+
+
+    /** Detect the mime type from the start of the upload */
+    private String getMimeType( Entity entity, byte[] data, int length ) {
+        return AssetMimeHandler.get().getMimeType( entity, Arrays.copyOf( data, Math.min( length, MIME_SAMPLE_SIZE ) ) );
+    }
+
+
+    /** Writes small uploads with a single put, and larger ones with a multipart upload */
+    private class S3PartWriter implements StreamingUpload.PartWriter<PartETag> {
+
+        private final Entity entity;
+        private final String key;
+        private String uploadId;
+        private String eTag;
+
+
+        private S3PartWriter( Entity entity, String key ) {
+            this.entity = entity;
+            this.key = key;
+        }
+
+
+        @Override
+        public void writeObject( byte[] data, int length ) {
             ObjectMetadata om = new ObjectMetadata();
-            om.setContentLength(written);
-            om.setContentType(mimeType);
-            PutObjectResult result = getS3Client().putObject(bucketName, uploadFileName, awsInputStream, om);
-            
-            String md5sum = Hex.encodeHexString( Base64.decodeBase64(result.getContentMd5()) );
-            String eTag = result.getETag();
-            
-            fileMetadata.put( AssetUtils.CONTENT_LENGTH, written );
-
-            if(md5sum != null)
-                fileMetadata.put( AssetUtils.CHECKSUM, md5sum );
-            fileMetadata.put( AssetUtils.E_TAG, eTag );
+            om.setContentLength( length );
+            om.setContentType( getMimeType( entity, data, length ) );
+            PutObjectResult result =
+                    getS3Client().putObject( bucketName, key, new ByteArrayInputStream( data, 0, length ), om );
+            eTag = result.getETag();
         }
-        else { // bigger than 5mb... dump 5 mb tmp files and upload from them
-            written = 0; //reset written to 0, we still haven't wrote anything in fact
-            int partNumber = 1;
-            int firstByte = 0;
-            Boolean isFirstChunck = true;
-            List<PartETag> partETags = new ArrayList<PartETag>();
-            
-            InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucketName, uploadFileName);
-            InitiateMultipartUploadResult initResponse = getS3Client().initiateMultipartUpload(initRequest);  
-            
-            InputStream firstChunck = new ByteArrayInputStream(data);
-            PushbackInputStream chunckableInputStream = new PushbackInputStream(inputStream, 1);
-
-            while (-1 != (firstByte = chunckableInputStream.read())) {
-                long partSize = 0;
-                chunckableInputStream.unread(firstByte);
-                File tempFile = File.createTempFile( entity.getUuid().toString().concat("-part").concat(String.valueOf(partNumber)), "tmp" );
-
-                tempFile.deleteOnExit();
-                OutputStream os = null;
-                try {
-                    os = new BufferedOutputStream( new FileOutputStream( tempFile.getAbsolutePath() ) );
-                    
-                    if(isFirstChunck == true) {
-                        partSize = IOUtils.copyLarge( firstChunck, os, 0, ( FIVE_MB ) );
-                        isFirstChunck = false;
-                    }
-                    else {
-                        partSize = IOUtils.copyLarge( chunckableInputStream, os, 0, ( FIVE_MB ) );
-                    }
-                    written += partSize;
-                }
-                finally {
-                    IOUtils.closeQuietly( os );
-                }
-                
-                FileInputStream chunck = new FileInputStream(tempFile);
-               
-                Boolean isLastPart = -1 == (firstByte = chunckableInputStream.read());
-                if(!isLastPart)
-                    chunckableInputStream.unread(firstByte);
-                
-                UploadPartRequest uploadRequest = new UploadPartRequest().withUploadId(initResponse.getUploadId())
-                                                                         .withBucketName(bucketName)
-                                                                         .withKey(uploadFileName)
-                                                                         .withInputStream(chunck)
-                                                                         .withPartNumber(partNumber)
-                                                                         .withPartSize(partSize)
-                                                                         .withLastPart(isLastPart);
-                partETags.add( getS3Client().uploadPart(uploadRequest).getPartETag() );
-                partNumber++;
+
+
+        @Override
+        public void start( byte[] data, int length ) {
+            ObjectMetadata om = new ObjectMetadata();
+            om.setContentType( getMimeType( entity, data, length ) );
+            uploadId = getS3Client().initiateMultipartUpload(
+                    new InitiateMultipartUploadRequest( bucketName, key ).withObjectMetadata( om ) ).getUploadId();
+        }
+
+
+        @Override
+        public PartETag writePart( int partNumber, byte[] data, int length ) {
+            UploadPartRequest uploadRequest =
+                    new UploadPartRequest().withUploadId( uploadId ).withBucketName( bucketName ).withKey( key )
+                                           .withInputStream( new ByteArrayInputStream( data, 0, length ) )
+                                           .withPartNumber( partNumber ).withPartSize( length );
+            return getS3Client().uploadPart( uploadRequest ).getPartETag();
+        }
+
+
+        @Override
+        public void complete( List<PartETag> parts ) {
+            CompleteMultipartUploadResult result = getS3Client().completeMultipartUpload(
+                    new CompleteMultipartUploadRequest( bucketName, key, uploadId, parts ) );
+            eTag = result.getETag();
+        }
+
+
+        @Override
+        public void abort() {
+            try {
+                getS3Client().abortMultipartUpload( new AbortMultipartUploadRequest( bucketName, key, uploadId ) );
+            }
+            catch ( Exception e ) {
+                LOG.error( "Unable to abort upload {} of {}", uploadId, key, e );
             }
-            
-            CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucketName, uploadFileName, initResponse.getUploadId(), partETags);
-            CompleteMultipartUploadResult amazonResult = getS3Client().completeMultipartUpload(request);
-            fileMetadata.put( AssetUtils.CONTENT_LENGTH, written );
-            fileMetadata.put( AssetUtils.E_TAG, amazonResult.getETag() );
         }
     }
 
@@ -203,17 +259,16 @@ public class AwsSdkS3BinaryStore implements BinaryStore {
     @Override
     public InputStream read( UUID appId, Entity entity, long offset, long length ) throws IOException {
         
-        S3Object object = getS3Client().getObject(bucketName,  AssetUtils.buildAssetKey( appId, entity ));        
-        byte data[] = null;
-        
-        if ( offset == 0 && length == FIVE_MB ) {
-            return object.getObjectContent();
-        }
-        else {
-            object.getObjectContent().read(data, Ints.checkedCast(offset), Ints.checkedCast(length));
+        GetObjectRequest request = new GetObjectRequest( bucketName, AssetUtils.buildAssetKey( appId, entity ) );
+
+        if ( offset != 0 || length != FIVE_MB ) {
+            // the range end is inclusive
+            request.setRange( offset, offset + length - 1 );
         }
 
-        return new ByteArrayInputStream(data);
+        S3Object object = getS3Client().getObject( request );
+
+        return object == null ? null : object.getObjectContent();
     }
 
 
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.Entity;
+
+
+/**
+ * A binary store that keeps data in local files.  Callers can serve any region of the data straight from the file
+ * channel with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} instead of reading
+ * it through an input stream.
+ */
+public interface ChannelBinaryStore extends BinaryStore {
+
+    /** open a read only channel over the entity's file data. Null if there is no data. The caller must close it */
+    FileChannel openChannel( UUID appId, Entity entity ) throws IOException;
+}
@@ -19,26 +19,29 @@ package org.apache.usergrid.services.assets.data;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 
-import org.apache.commons.lang.RandomStringUtils;
 import org.apache.usergrid.persistence.Entity;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.usergrid.persistence.EntityManager;
-import org.apache.usergrid.persistence.EntityManagerFactory;
-import org.apache.usergrid.utils.StringUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 
-/** A binary store implementation using the local file system */
-public class LocalFileBinaryStore implements BinaryStore {
+/**
+ * A binary store implementation using the local file system. Uploads are checked against the max size and
+ * checksummed as they are copied to disk. The etag is the md5 of the content, so identical uploads share it
+ */
+public class LocalFileBinaryStore implements ChannelBinaryStore {
 
     private Logger LOG = LoggerFactory.getLogger( LocalFileBinaryStore.class );
 
@@ -49,9 +52,6 @@ public class LocalFileBinaryStore implements BinaryStore {
     @Autowired
     private Properties properties;
 
-    @Autowired
-    private EntityManagerFactory emf;
-
 
     /** Control where to store the file repository. In the system's temp dir by default. */
     public void setReposLocation( String reposLocation ) {
@@ -77,64 +77,62 @@ public class LocalFileBinaryStore implements BinaryStore {
     public void write( UUID appId, Entity entity, InputStream inputStream ) throws IOException {
 
         File file = path( appId, entity );
+        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
 
-        FileUtils.copyInputStreamToFile( inputStream, file );
+        // write next to the destination and move into place once complete, readers never see a partial file
+        FileUtils.forceMkdir( file.getParentFile() );
+        File tempFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
 
-        long size = FileUtils.sizeOf( file );
+        UploadInputStream upload = new UploadInputStream( inputStream, AssetUtils.getMaxSizeBytes( properties ) );
 
-        // determine max size file allowed, default to 50mb
-        long maxSizeBytes = 50 * FileUtils.ONE_MB;
-        String maxSizeMbString = properties.getProperty( "usergrid.binary.max-size-mb", "50" );
-        if (StringUtils.isNumeric( maxSizeMbString )) {
-            maxSizeBytes = Long.parseLong( maxSizeMbString ) * FileUtils.ONE_MB;
+        try {
+            FileUtils.copyInputStreamToFile( upload, tempFile );
         }
-
-        // always allow files up to 5mb
-        if (maxSizeBytes < 5 * FileUtils.ONE_MB ) {
-            maxSizeBytes = 5 * FileUtils.ONE_MB;
+        catch ( IOException e ) {
+            FileUtils.deleteQuietly( tempFile );
+            throw e;
         }
 
-        EntityManager em = emf.getEntityManager( appId );
-        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
+        FileUtils.deleteQuietly( file );
+        FileUtils.moveFile( tempFile, file );
 
-        if ( size > maxSizeBytes ) {
-            try {
-                fileMetadata.put( "error", "Asset size " + size
-                        + " is larger than max size of " + maxSizeBytes );
-                em.update( entity );
-
-            } catch ( Exception e ) {
-                LOG.error( "Error updating entity with error message", e);
-            }
-            return;
-        }
-
-        fileMetadata.put( AssetUtils.CONTENT_LENGTH, size );
+        String md5sum = upload.getChecksum();
+        fileMetadata.put( AssetUtils.CONTENT_LENGTH, upload.getCount() );
         fileMetadata.put( AssetUtils.LAST_MODIFIED, System.currentTimeMillis() );
-        fileMetadata.put( AssetUtils.E_TAG, RandomStringUtils.randomAlphanumeric( 10 ) );
-
-        try {
-            em.update( entity );
-        } catch (Exception e) {
-            throw new IOException("Unable to update entity filedata", e);
-        }
+        fileMetadata.put( AssetUtils.CHECKSUM, md5sum );
+        fileMetadata.put( AssetUtils.E_TAG, md5sum );
 
-        // if we were successful, write the mime type
-        if ( file.exists() ) {
-            AssetMimeHandler.get().getMimeType( entity, file );
-        }
+        AssetMimeHandler.get().getMimeType( entity, file );
     }
 
 
     @Override
     public InputStream read( UUID appId, Entity entity ) throws IOException {
-        return read( appId, entity, 0, FileUtils.ONE_MB * 5 );
+        return new BufferedInputStream( FileUtils.openInputStream( path( appId, entity ) ) );
     }
 
 
     @Override
     public InputStream read( UUID appId, Entity entity, long offset, long length ) throws IOException {
-        return new BufferedInputStream( FileUtils.openInputStream( path( appId, entity ) ) );
+        InputStream in = FileUtils.openInputStream( path( appId, entity ) );
+        try {
+            IOUtils.skipFully( in, offset );
+        }
+        catch ( IOException e ) {
+            IOUtils.closeQuietly( in );
+            throw e;
+        }
+        return new BufferedInputStream( new BoundedInputStream( in, length ) );
+    }
+
+
+    @Override
+    public FileChannel openChannel( UUID appId, Entity entity ) throws IOException {
+        File file = path( appId, entity );
+        if ( !file.isFile() ) {
+            return null;
+        }
+        return new FileInputStream( file ).getChannel();
     }
 
 
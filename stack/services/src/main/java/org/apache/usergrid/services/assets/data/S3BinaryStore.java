@@ -18,18 +18,20 @@ package org.apache.usergrid.services.assets.data;
 
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
 import java.util.UUID;
 import java.util.concurrent.*;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.usergrid.utils.StringUtils;
 import org.jclouds.ContextBuilder;
 import org.jclouds.blobstore.AsyncBlobStore;
@@ -49,7 +51,6 @@ import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityManagerFactory;
 
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
@@ -100,7 +101,11 @@ public class S3BinaryStore implements BinaryStore {
     }
 
 
+    @PreDestroy
     public void destroy() {
+        if ( executorService != null ) {
+            executorService.shutdown();
+        }
         if ( context != null ) {
             context.close();
         }
@@ -110,23 +115,26 @@ public class S3BinaryStore implements BinaryStore {
     @Override
     public void write( final UUID appId, final Entity entity, InputStream inputStream ) throws IOException {
 
-        // write up to 5mb of data to an byte array
+        UploadInputStream upload = new UploadInputStream( inputStream, AssetUtils.getMaxSizeBytes( properties ) );
+        final Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        long written = IOUtils.copyLarge( inputStream, baos, 0, FIVE_MB );
-        byte[] data = baos.toByteArray();
+        // read up to 5mb of data into a byte array
+
+        byte[] data = new byte[( int ) FIVE_MB];
+        int written = IOUtils.read( upload, data );
 
         if ( written < FIVE_MB ) { // total smaller than 5mb
 
+            data = Arrays.copyOf( data, written );
+
             final String uploadFileName = AssetUtils.buildAssetKey( appId, entity );
             final String mimeType = AssetMimeHandler.get().getMimeType( entity, data );
 
-            final Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
             fileMetadata.put( AssetUtils.LAST_MODIFIED, System.currentTimeMillis() );
 
             BlobStore blobStore = getContext().getBlobStore();
-            BlobBuilder.PayloadBlobBuilder bb = blobStore.blobBuilder( uploadFileName )
-                    .payload( data ).calculateMD5().contentType( mimeType );
+            BlobBuilder.PayloadBlobBuilder bb =
+                    blobStore.blobBuilder( uploadFileName ).payload( data ).calculateMD5().contentType( mimeType );
 
             fileMetadata.put( AssetUtils.CONTENT_LENGTH, written );
             if ( fileMetadata.get( AssetUtils.CONTENT_DISPOSITION ) != null ) {
@@ -134,21 +142,48 @@ public class S3BinaryStore implements BinaryStore {
             }
             final Blob blob = bb.build();
 
-            String md5sum = Hex.encodeHexString( blob.getMetadata().getContentMetadata().getContentMD5() );
-            fileMetadata.put( AssetUtils.CHECKSUM, md5sum );
+            fileMetadata.put( AssetUtils.CHECKSUM, upload.getChecksum() );
 
             String eTag = blobStore.putBlob( bucketName, blob );
             fileMetadata.put( AssetUtils.E_TAG, eTag );
         }
-        else { // bigger than 5mb... dump 5 mb tmp files and upload from them
+        else { // bigger than 5mb... spool to a temp file while the request is open, then upload it in parts
+
+            File tempFile = spool( entity, data, upload );
+            String mimeType = AssetMimeHandler.get().getMimeType( entity, data );
 
             ExecutorService executors = getExecutorService();
 
-            executors.submit( new UploadWorker( appId, entity, inputStream, data, written ) );
+            executors.submit(
+                    new UploadWorker( appId, entity, tempFile, mimeType, upload.getCount(), upload.getChecksum() ) );
         }
     }
 
 
+    /** Write the data already read and the rest of the upload to a temp file */
+    private File spool( Entity entity, byte[] data, InputStream upload ) throws IOException {
+        File tempFile = File.createTempFile( entity.getUuid().toString(), "tmp" );
+        tempFile.deleteOnExit();
+
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream( new FileOutputStream( tempFile ) );
+            os.write( data );
+            IOUtils.copyLarge( upload, os );
+        }
+        catch ( IOException e ) {
+            IOUtils.closeQuietly( os );
+            tempFile.delete();
+            throw e;
+        }
+        finally {
+            IOUtils.closeQuietly( os );
+        }
+
+        return tempFile;
+    }
+
+
     private ExecutorService getExecutorService() {
 
         if ( executorService == null ) {
@@ -178,7 +213,8 @@ public class S3BinaryStore implements BinaryStore {
             blob = blobStore.getBlob( bucketName, AssetUtils.buildAssetKey( appId, entity ) );
         }
         else {
-            GetOptions options = GetOptions.Builder.range( offset, length );
+            // the range end is inclusive
+            GetOptions options = GetOptions.Builder.range( offset, offset + length - 1 );
             blob = blobStore.getBlob( bucketName, AssetUtils.buildAssetKey( appId, entity ), options );
         }
         if ( blob == null || blob.getPayload() == null ) {
@@ -204,77 +240,27 @@ public class S3BinaryStore implements BinaryStore {
 
         private UUID appId;
         private Entity entity;
-        private InputStream inputStream;
-        private byte[] data;
+        private File tempFile;
+        private String mimeType;
         private long written;
+        private String md5sum;
 
 
-        public UploadWorker( UUID appId, Entity entity, InputStream is, byte[] data, long written ) {
+        public UploadWorker( UUID appId, Entity entity, File tempFile, String mimeType, long written,
+                             String md5sum ) {
             this.appId = appId;
             this.entity = entity;
-            this.inputStream = is;
-            this.data = data;
+            this.tempFile = tempFile;
+            this.mimeType = mimeType;
             this.written = written;
+            this.md5sum = md5sum;
         }
 
         @Override
         public Void call() {
 
-            LOG.debug( "Writing temp file for S3 upload" );
-
-            // determine max size file allowed, default to 50mb
-            long maxSizeBytes = 50 * FileUtils.ONE_MB;
-            String maxSizeMbString = properties.getProperty( "usergrid.binary.max-size-mb", "50" );
-            if (StringUtils.isNumeric( maxSizeMbString )) {
-                maxSizeBytes = Long.parseLong( maxSizeMbString ) * FileUtils.ONE_MB;
-            }
-
-            // always allow files up to 5mb
-            if (maxSizeBytes < 5 * FileUtils.ONE_MB ) {
-                maxSizeBytes = 5 * FileUtils.ONE_MB;
-            }
-
-            // write temporary file, slightly larger than our size limit
-            OutputStream os = null;
-            File tempFile;
-            try {
-                tempFile = File.createTempFile( entity.getUuid().toString(), "tmp" );
-                tempFile.deleteOnExit();
-                os = new BufferedOutputStream( new FileOutputStream( tempFile.getAbsolutePath() ) );
-                os.write( data );
-                written += IOUtils.copyLarge( inputStream, os, 0, maxSizeBytes + 1 );
-
-            } catch ( IOException e ) {
-                throw new RuntimeException( "Error creating temp file", e );
-
-            } finally {
-                if ( os != null ) {
-                    IOUtils.closeQuietly( os );
-                }
-            }
-
-            // if tempFile is too large, delete it, add error to entity file metadata and abort
-
             Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
-
-            if ( tempFile.length() > maxSizeBytes ) {
-                LOG.debug("File too large. Temp file size (bytes) = {}, " +
-                        "Max file size (bytes) = {} ", tempFile.length(), maxSizeBytes);
-                try {
-                    EntityManager em = emf.getEntityManager( appId );
-                    fileMetadata.put( "error", "Asset size " + tempFile.length()
-                                    + " is larger than max size of " + maxSizeBytes );
-                    em.update( entity );
-                    tempFile.delete();
-
-                } catch ( Exception e ) {
-                    LOG.error( "Error updating entity with error message", e);
-                }
-                return null;
-            }
-
             String uploadFileName = AssetUtils.buildAssetKey( appId, entity );
-            String mimeType = AssetMimeHandler.get().getMimeType( entity, data );
 
             try {  // start the upload
 
@@ -283,19 +269,19 @@ public class S3BinaryStore implements BinaryStore {
                 BlobStore blobStore = getContext().getBlobStore();
 
                 BlobBuilder.PayloadBlobBuilder bb =  blobStore.blobBuilder( uploadFileName )
-                        .payload( tempFile ).calculateMD5().contentType( mimeType );
+                        .payload( tempFile ).contentType( mimeType );
 
                 if ( fileMetadata.get( AssetUtils.CONTENT_DISPOSITION ) != null ) {
                     bb.contentDisposition( fileMetadata.get( AssetUtils.CONTENT_DISPOSITION ).toString() );
                 }
                 final Blob blob = bb.build();
 
-                String md5sum = Hex.encodeHexString( blob.getMetadata().getContentMetadata().getContentMD5() );
                 fileMetadata.put( AssetUtils.CHECKSUM, md5sum );
 
                 LOG.debug( "S3 upload starting" );
 
-                String eTag = blobStore.putBlob( bucketName, blob );
+                // the file is uploaded in parallel parts, read from disk as they're sent
+                String eTag = blobStore.putBlob( bucketName, blob, PutOptions.Builder.multipart() );
 
                 LOG.debug( "S3 upload complete eTag=" + eTag);
 
@@ -319,4 +305,3 @@ public class S3BinaryStore implements BinaryStore {
         }
     }
 }
-
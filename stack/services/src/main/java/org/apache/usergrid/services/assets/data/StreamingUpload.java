@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Copies an upload to a store in fixed size parts, without ever holding the whole upload.  An upload that fits in one
+ * part is written as a single object.  Larger uploads are written as parts, uploaded in parallel while the next part is
+ * read.
+ * <p/>
+ * Part buffers are reused.  An upload holds at most partsInFlight + 1 of them, so it uses a bounded amount of memory
+ * however large it is.  When every buffer is in use, reading waits for a part upload to finish.
+ *
+ * @param <T> The store's receipt for an uploaded part
+ */
+public class StreamingUpload<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger( StreamingUpload.class );
+
+
+    /** The store operations an upload is made of */
+    public interface PartWriter<T> {
+
+        /** Write the whole upload as one object */
+        void writeObject( byte[] data, int length ) throws Exception;
+
+        /** Start an upload that will be written in parts, given the data of the first part */
+        void start( byte[] data, int length ) throws Exception;
+
+        /** Write a part. Called concurrently. The data is only valid until this returns */
+        T writePart( int partNumber, byte[] data, int length ) throws Exception;
+
+        /** Complete the upload from its parts, in part order */
+        void complete( List<T> parts ) throws Exception;
+
+        /** Discard a started upload after a failure */
+        void abort();
+    }
+
+
+    private final ExecutorService executor;
+    private final int partSize;
+    private final int partsInFlight;
+
+
+    /**
+     * @param executor The executor to upload parts with
+     * @param partSize The size of each part in bytes
+     * @param partsInFlight The maximum number of parts of this upload being uploaded at once
+     */
+    public StreamingUpload( ExecutorService executor, int partSize, int partsInFlight ) {
+        this.executor = executor;
+        this.partSize = partSize;
+        this.partsInFlight = Math.max( 1, partsInFlight );
+    }
+
+
+    /**
+     * Copy the input to the writer. The input is read on the calling thread
+     *
+     * @return The number of bytes written
+     */
+    public long upload( InputStream input, final PartWriter<T> writer ) throws IOException {
+
+        final BufferPool buffers = new BufferPool( partsInFlight + 1 );
+
+        byte[] buffer = buffers.take();
+        int length = fill( input, buffer );
+
+        if ( length < partSize ) {
+            try {
+                writer.writeObject( buffer, length );
+            }
+            catch ( Exception e ) {
+                throw asIOException( e );
+            }
+            return length;
+        }
+
+        try {
+            writer.start( buffer, length );
+        }
+        catch ( Exception e ) {
+            throw asIOException( e );
+        }
+
+        List<Future<T>> parts = new ArrayList<Future<T>>();
+        long written = 0;
+
+        try {
+            while ( length > 0 ) {
+                checkFailures( parts );
+
+                final int partNumber = parts.size() + 1;
+                final byte[] data = buffer;
+                final int dataLength = length;
+
+                parts.add( executor.submit( new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        try {
+                            return writer.writePart( partNumber, data, dataLength );
+                        }
+                        finally {
+                            buffers.release( data );
+                        }
+                    }
+                } ) );
+
+                written += length;
+
+                buffer = buffers.take();
+                length = fill( input, buffer );
+            }
+
+            List<T> receipts = new ArrayList<T>( parts.size() );
+            for ( Future<T> part : parts ) {
+                receipts.add( get( part ) );
+            }
+
+            writer.complete( receipts );
+        }
+        catch ( Exception e ) {
+            for ( Future<T> part : parts ) {
+                part.cancel( true );
+            }
+            LOG.debug( "Aborting upload after {} bytes", written, e );
+            writer.abort();
+            throw asIOException( e );
+        }
+
+        return written;
+    }
+
+
+    /** Read until the buffer is full or the input ends */
+    private int fill( InputStream input, byte[] buffer ) throws IOException {
+        int length = 0;
+        while ( length < buffer.length ) {
+            int read = input.read( buffer, length, buffer.length - length );
+            if ( read == -1 ) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+
+    /** Fail fast rather than reading the rest of the upload when a part has already failed */
+    private void checkFailures( List<Future<T>> parts ) throws Exception {
+        for ( Future<T> part : parts ) {
+            if ( part.isDone() ) {
+                get( part );
+            }
+        }
+    }
+
+
+    private T get( Future<T> part ) throws Exception {
+        try {
+            return part.get();
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? ( Exception ) cause : e;
+        }
+    }
+
+
+    private static IOException asIOException( Exception e ) {
+        if ( e instanceof IOException ) {
+            return ( IOException ) e;
+        }
+        return new IOException( "Unable to upload", e );
+    }
+
+
+    /** Hands out at most max buffers, allocating them only when none are free */
+    private class BufferPool {
+
+        private final BlockingQueue<byte[]> free = new LinkedBlockingQueue<byte[]>();
+        private final int max;
+        private int allocated;
+
+
+        private BufferPool( int max ) {
+            this.max = max;
+        }
+
+
+        private byte[] take() throws IOException {
+            byte[] buffer = free.poll();
+            if ( buffer != null ) {
+                return buffer;
+            }
+
+            synchronized ( this ) {
+                if ( allocated < max ) {
+                    allocated++;
+                    return new byte[partSize];
+                }
+            }
+
+            try {
+                return free.take();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted waiting for a part to upload", e );
+            }
+        }
+
+
+        private void release( byte[] buffer ) {
+            free.offer( buffer );
+        }
+    }
+}
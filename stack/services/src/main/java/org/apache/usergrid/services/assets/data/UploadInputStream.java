@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+
+
+/**
+ * Counts and checksums an upload as it is read, and fails with an {@link AssetSizeExceededException} as soon as it
+ * reads past the max size, so oversized uploads are rejected without reading the rest.
+ */
+public class UploadInputStream extends FilterInputStream {
+
+    private final long maxSizeBytes;
+    private final MessageDigest md5;
+    private long count;
+
+
+    public UploadInputStream( InputStream in, long maxSizeBytes ) throws IOException {
+        super( in );
+        this.maxSizeBytes = maxSizeBytes;
+        try {
+            md5 = MessageDigest.getInstance( "MD5" );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IOException( "MD5 is not available", e );
+        }
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if ( b != -1 ) {
+            md5.update( ( byte ) b );
+            counted( 1 );
+        }
+        return b;
+    }
+
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        int read = in.read( b, off, len );
+        if ( read > 0 ) {
+            md5.update( b, off, read );
+            counted( read );
+        }
+        return read;
+    }
+
+
+    /** Skipped bytes must still be checksummed, so they're read */
+    @Override
+    public long skip( long n ) throws IOException {
+        byte[] buffer = new byte[( int ) Math.min( n, 8192 )];
+        long skipped = 0;
+        while ( skipped < n ) {
+            int read = read( buffer, 0, ( int ) Math.min( n - skipped, buffer.length ) );
+            if ( read == -1 ) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+
+    /** The number of bytes read so far */
+    public long getCount() {
+        return count;
+    }
+
+
+    /** The hex md5 of the bytes read. Only call once the upload has been read */
+    public String getChecksum() {
+        return Hex.encodeHexString( md5.digest() );
+    }
+
+
+    private void counted( int read ) throws AssetSizeExceededException {
+        count += read;
+        if ( count > maxSizeBytes ) {
+            throw new AssetSizeExceededException( maxSizeBytes );
+        }
+    }
+}
@@ -22,8 +22,10 @@ import java.util.*;
 import org.apache.usergrid.persistence.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.usergrid.batch.service.SchedulerService;
 import org.apache.usergrid.persistence.entities.Activity;
 import org.apache.usergrid.persistence.entities.Activity.ActivityObject;
+import org.apache.usergrid.persistence.entities.JobData;
 import org.apache.usergrid.persistence.entities.User;
 import org.apache.usergrid.services.ServiceContext;
 import org.apache.usergrid.services.ServicePayload;
@@ -35,6 +37,17 @@ public class ActivitiesService extends GenericCollectionService {
 
     private static final Logger logger = LoggerFactory.getLogger( ActivitiesService.class );
 
+    /** Set on users whose activities are merged into their followers feeds when the feeds are read */
+    public static final String PROPERTY_FAN_OUT_ON_READ = "fanOutOnRead";
+
+    /** Users with at most this many followers have their activities added to the feeds during the request */
+    public static final String FAN_OUT_SYNC_MAX = "usergrid.activities.fanout.sync.max";
+
+    /** Users with at least this many followers are switched to fan out on read.  0 to always fan out on write */
+    public static final String FAN_OUT_READ_MIN = "usergrid.activities.fanout.read.min";
+
+    private static final int DEFAULT_FAN_OUT_SYNC_MAX = 1000;
+
 
     public ActivitiesService() {
         super();
@@ -124,34 +137,97 @@ public class ActivitiesService extends GenericCollectionService {
     }
 
 
+    /**
+     * Add the activity to the feeds of the user and their followers.  Users with few followers are handled inline.
+     * Users with more followers are handed to the {@link ActivityFanOutJob}, unless they have so many followers that
+     * their activities are merged into their followers feeds when the feeds are read, see {@link
+     * org.apache.usergrid.services.users.feed.FeedService}
+     */
     public void distribute( EntityRef user, Entity activity ) throws Exception {
         if ( activity == null ) {
             return;
         }
         //add activity
         em.addToCollection( user, "feed", activity );
+
+        if ( Boolean.TRUE.equals( em.getProperty( user, PROPERTY_FAN_OUT_ON_READ ) ) ) {
+            return;
+        }
+
+        int syncMax = getIntProperty( FAN_OUT_SYNC_MAX, DEFAULT_FAN_OUT_SYNC_MAX );
+        int readMin = getIntProperty( FAN_OUT_READ_MIN, 0 );
+        SchedulerService scheduler = sm.getSchedulerService();
+
         //publish to all connections
-        Results results =  em.getConnectingEntities(user.getUuid(), "following", User.ENTITY_TYPE, Results.Level.REFS);
-        if( results != null ){
-            PagingResultsIterator itr = new PagingResultsIterator(results);
-
-            List<EntityRef> refs = new ArrayList<EntityRef>();
-            ConnectedEntityRef c;
-            int breaker = 10000;
-            //collect
-            while (itr.hasNext()) {
-                c = (ConnectedEntityRef) itr.next();
-                refs.add(c);
-                //break out when you get too big
-                if( refs.size() > breaker ){
-                    em.addToCollections(refs, "feed", activity);
-                    refs.clear();
-                }
+        Results results = em.getConnectingEntities( user.getUuid(), "following", User.ENTITY_TYPE, Results.Level.REFS,
+                Query.MAX_LIMIT );
+        if ( results == null ) {
+            return;
+        }
+
+        PagingResultsIterator itr = new PagingResultsIterator( results );
+
+        List<EntityRef> refs = new ArrayList<EntityRef>();
+        int breaker = 10000;
+        boolean inline = scheduler == null;
+        //collect
+        while ( itr.hasNext() ) {
+            refs.add( ( ConnectedEntityRef ) itr.next() );
+
+            if ( !inline && refs.size() > syncMax ) {
+                break;
             }
+
+            //break out when you get too big
+            if ( inline && refs.size() > breaker ) {
+                em.addToCollections( refs, "feed", activity );
+                refs.clear();
+            }
+        }
+
+        if ( inline || refs.size() <= syncMax ) {
             //add to collections
-            if (refs.size() > 0) {
-                em.addToCollections(refs, "feed", activity);
+            if ( refs.size() > 0 ) {
+                em.addToCollections( refs, "feed", activity );
             }
+            return;
         }
+
+        if ( readMin > 0 && countFollowers( itr, refs.size(), readMin ) >= readMin ) {
+            logger.info( "User {} has at least {} followers, their activities will be merged into feeds on read",
+                    user.getUuid(), readMin );
+            em.setProperty( user, PROPERTY_FAN_OUT_ON_READ, true );
+            return;
+        }
+
+        JobData jobData = new JobData();
+        jobData.setProperty( ActivityFanOutJob.APPLICATION_ID, sm.getApplicationId() );
+        jobData.setProperty( ActivityFanOutJob.USER_ID, user.getUuid() );
+        jobData.setProperty( ActivityFanOutJob.ACTIVITY_ID, activity.getUuid() );
+
+        scheduler.createJob( ActivityFanOutJob.JOB_NAME, System.currentTimeMillis(), jobData );
+    }
+
+
+    /** Continue counting the followers until we reach the limit */
+    private int countFollowers( PagingResultsIterator itr, int count, int limit ) {
+        while ( count < limit && itr.hasNext() ) {
+            itr.next();
+            count++;
+        }
+
+        return count;
+    }
+
+
+    private int getIntProperty( String name, int defaultValue ) {
+        Properties properties = sm.getProperties();
+        String value = properties == null ? null : properties.getProperty( name );
+
+        if ( value == null || value.trim().length() == 0 ) {
+            return defaultValue;
+        }
+
+        return Integer.parseInt( value.trim() );
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.users.activities;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.batch.job.OnlyOnceJob;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.EntityRef;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.entities.JobData;
+import org.apache.usergrid.persistence.entities.User;
+
+
+/**
+ * Adds an activity to the feeds of all the followers of the user who posted it.  The followers are processed a page
+ * at a time.  After every page the position and the number of feeds written are stored in the job data, so the
+ * progress can be queried and a job that dies resumes where it left off.  Adding an activity to a feed twice is
+ * harmless, so a page may be written again after a failure.
+ */
+@Component("activityFanOutJob")
+public class ActivityFanOutJob extends OnlyOnceJob {
+
+    public static final String JOB_NAME = "activityFanOutJob";
+
+    public static final String APPLICATION_ID = "applicationId";
+    public static final String USER_ID = "userId";
+    public static final String ACTIVITY_ID = "activityId";
+
+    /** The cursor of the next page of followers to write to */
+    public static final String CURSOR = "cursor";
+
+    /** The number of feeds the activity has been written to */
+    public static final String DISTRIBUTED = "distributed";
+
+    private static final Logger logger = LoggerFactory.getLogger( ActivityFanOutJob.class );
+
+    /** The number of pages of followers to write before rescheduling the job, which saves the job data */
+    private static final int PAGES_PER_RUN = 10;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+
+    public ActivityFanOutJob() {
+    }
+
+
+    @Override
+    protected void doJob( JobExecution execution ) throws Exception {
+
+        JobData data = execution.getJobData();
+
+        UUID applicationId = ( UUID ) data.getProperty( APPLICATION_ID );
+        UUID userId = ( UUID ) data.getProperty( USER_ID );
+        UUID activityId = ( UUID ) data.getProperty( ACTIVITY_ID );
+        String cursor = ( String ) data.getProperty( CURSOR );
+        long distributed = getDistributed( data );
+
+        EntityManager em = emf.getEntityManager( applicationId );
+
+        Entity activity = em.get( activityId );
+
+        if ( activity == null ) {
+            logger.info( "Activity {} no longer exists, nothing to distribute", activityId );
+            return;
+        }
+
+        Results results = em.getConnectingEntities( userId, "following", User.ENTITY_TYPE, Results.Level.REFS,
+                Query.MAX_LIMIT );
+
+        if ( cursor != null ) {
+            results = results.getPageResults( cursor );
+        }
+
+        for ( int pages = 1; ; pages++ ) {
+
+            List<EntityRef> refs = results.getRefs();
+
+            if ( refs != null && !refs.isEmpty() ) {
+                em.addToCollections( new ArrayList<EntityRef>( refs ), "feed", activity );
+                distributed += refs.size();
+            }
+
+            data.setProperty( DISTRIBUTED, distributed );
+
+            if ( !results.hasCursor() ) {
+                logger.info( "Distributed activity {} to {} feeds", activityId, distributed );
+                return;
+            }
+
+            data.setProperty( CURSOR, results.getCursor() );
+
+            if ( pages == PAGES_PER_RUN ) {
+                logger.debug( "Distributed activity {} to {} feeds so far", activityId, distributed );
+
+                //reschedule immediately, this saves our position
+                execution.delay( 0 );
+                return;
+            }
+
+            execution.heartbeat();
+
+            results = results.getNextPageResults();
+        }
+    }
+
+
+    private long getDistributed( JobData data ) {
+        Object distributed = data.getProperty( DISTRIBUTED );
+
+        return distributed instanceof Number ? ( ( Number ) distributed ).longValue() : 0;
+    }
+
+
+    @Override
+    protected long getDelay( JobExecution execution ) throws Exception {
+        return 1000;
+    }
+
+
+    @Override
+    public void dead( JobExecution execution ) throws Exception {
+        logger.error( "Unable to distribute activity {} after {} feeds", execution.getJobData().getProperty( ACTIVITY_ID ),
+                getDistributed( execution.getJobData() ) );
+    }
+}
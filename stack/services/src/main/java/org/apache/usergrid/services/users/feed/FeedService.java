@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.users.feed;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityRef;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Query.SortDirection;
+import org.apache.usergrid.persistence.Query.SortPredicate;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.entities.Activity;
+import org.apache.usergrid.persistence.entities.User;
+import org.apache.usergrid.services.ServiceContext;
+import org.apache.usergrid.services.ServiceResults;
+import org.apache.usergrid.services.generic.GenericCollectionService;
+import org.apache.usergrid.services.users.activities.ActivitiesService;
+import org.apache.usergrid.utils.UUIDUtils;
+
+
+/**
+ * Merges the activities of followed users that fan out on read into the feed.  Each page of the feed covers a range
+ * of published times, from the last activity on the page to the last activity on the page before it, and the
+ * activities of those users published in the same range are added to the page.  The bound of the previous page is
+ * carried in the cursor.
+ * <p/>
+ * Only feeds read in the default published order are merged.
+ */
+public class FeedService extends GenericCollectionService {
+
+    private static final Logger logger = LoggerFactory.getLogger( FeedService.class );
+
+    /** The maximum number of followed users that fan out on read to merge into a feed */
+    private static final int MAX_FAN_OUT_ON_READ_USERS = 100;
+
+    private static final SortPredicate PUBLISHED_DESC = new SortPredicate( Activity.PROPERTY_PUBLISHED,
+            SortDirection.DESCENDING );
+
+    /** Separates the published bound of the page from the feed cursor */
+    private static final char CURSOR_SEPARATOR = '~';
+
+
+    public FeedService() {
+        super();
+        logger.info( "/users/*/feed" );
+    }
+
+
+    @Override
+    public ServiceResults getItemsByQuery( ServiceContext context, Query query ) throws Exception {
+
+        if ( !isMergeable( context, query ) ) {
+            return super.getItemsByQuery( context, query );
+        }
+
+        Long upperBound = null;
+        String cursor = query.getCursor();
+        int separator = cursor == null ? -1 : cursor.indexOf( CURSOR_SEPARATOR );
+
+        if ( separator > 0 ) {
+            upperBound = Long.parseLong( cursor.substring( 0, separator ) );
+
+            query = new Query( query );
+            query.setCursor( cursor.substring( separator + 1 ) );
+        }
+
+        ServiceResults results = super.getItemsByQuery( context, query );
+
+        List<EntityRef> followed = getFanOutOnReadUsers( context );
+
+        if ( followed.isEmpty() ) {
+            return results;
+        }
+
+        List<Entity> page = results.getEntities();
+
+        //the last page takes everything older than the page before it
+        Long lowerBound = null;
+
+        if ( results.hasCursor() && !page.isEmpty() ) {
+            lowerBound = getPublished( page.get( page.size() - 1 ) );
+        }
+
+        Map<UUID, Entity> merged = new LinkedHashMap<UUID, Entity>();
+
+        for ( Entity entity : page ) {
+            merged.put( entity.getUuid(), entity );
+        }
+
+        for ( EntityRef user : followed ) {
+            Results activities = em.searchCollection( user, "activities",
+                    getActivitiesQuery( query, lowerBound, upperBound ) );
+
+            importEntities( context, activities );
+
+            for ( Entity activity : activities.getEntities() ) {
+                if ( !merged.containsKey( activity.getUuid() ) ) {
+                    merged.put( activity.getUuid(), activity );
+                }
+            }
+        }
+
+        List<Entity> entities = new ArrayList<Entity>( merged.values() );
+        Collections.sort( entities, NEWEST_FIRST );
+
+        String feedCursor = results.getCursor();
+
+        results.setEntities( entities );
+
+        if ( lowerBound != null ) {
+            results.setCursor( lowerBound + String.valueOf( CURSOR_SEPARATOR ) + feedCursor );
+        }
+
+        return results;
+    }
+
+
+    /** Only full entity pages in the default order can be merged */
+    private boolean isMergeable( ServiceContext context, Query query ) {
+        if ( query == null || context.moreParameters() || query.hasSelectFunction() ) {
+            return false;
+        }
+
+        if ( query.getIdentifiers() != null && !query.getIdentifiers().isEmpty() ) {
+            return false;
+        }
+
+        List<SortPredicate> sorts = query.getSortPredicates();
+
+        return sorts.isEmpty() || ( sorts.size() == 1 && PUBLISHED_DESC.equals( sorts.get( 0 ) ) );
+    }
+
+
+    private List<EntityRef> getFanOutOnReadUsers( ServiceContext context ) throws Exception {
+        Query query = new Query();
+        query.setConnectionType( "following" );
+        query.setEntityType( User.ENTITY_TYPE );
+        query.addEqualityFilter( ActivitiesService.PROPERTY_FAN_OUT_ON_READ, true );
+        query.setResultsLevel( Results.Level.REFS );
+        query.setLimit( MAX_FAN_OUT_ON_READ_USERS );
+
+        Results r = em.searchConnectedEntities( context.getOwner(), query );
+
+        List<EntityRef> refs = r == null ? null : r.getRefs();
+
+        return refs == null ? Collections.<EntityRef>emptyList() : refs;
+    }
+
+
+    /** Get the query of a followed user's activities published within the bounds of the page */
+    private Query getActivitiesQuery( Query query, Long lowerBound, Long upperBound ) {
+        Query activitiesQuery = new Query( query );
+        activitiesQuery.setCursor( null );
+        activitiesQuery.setResultsLevel( Results.Level.ALL_PROPERTIES );
+
+        if ( !activitiesQuery.isSortSet() ) {
+            activitiesQuery.addSort( PUBLISHED_DESC );
+        }
+
+        if ( lowerBound != null ) {
+            activitiesQuery.addGreaterThanEqualFilter( Activity.PROPERTY_PUBLISHED, lowerBound );
+        }
+
+        if ( upperBound != null ) {
+            activitiesQuery.addLessThanFilter( Activity.PROPERTY_PUBLISHED, upperBound );
+        }
+
+        return activitiesQuery;
+    }
+
+
+    /** The published time of the activity, or the time it was created if it was never set */
+    private static long getPublished( Entity entity ) {
+        Object published = entity.getProperty( Activity.PROPERTY_PUBLISHED );
+
+        if ( published instanceof Number ) {
+            return ( ( Number ) published ).longValue();
+        }
+
+        return UUIDUtils.getTimestampInMillis( entity.getUuid() );
+    }
+
+
+    private static final Comparator<Entity> NEWEST_FIRST = new Comparator<Entity>() {
+        @Override
+        public int compare( Entity first, Entity second ) {
+            long firstPublished = getPublished( first );
+            long secondPublished = getPublished( second );
+
+            if ( firstPublished != secondPublished ) {
+                return firstPublished > secondPublished ? -1 : 1;
+            }
+
+            return UUIDUtils.compare( second.getUuid(), first.getUuid() );
+        }
+    };
+}
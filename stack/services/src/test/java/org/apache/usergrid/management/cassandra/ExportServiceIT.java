@@ -20,10 +20,14 @@ package org.apache.usergrid.management.cassandra;
 
 import java.io.File;
 import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
 import org.jclouds.ContextBuilder;
@@ -67,6 +71,8 @@ import com.google.inject.Module;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -545,6 +551,117 @@ public class ExportServiceIT {
     }
 
 
+    @Test
+    public void testPartitionedExportWritesCompressedChunks() throws Exception {
+
+        int entitiesToCreate = 10;
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        em.createApplicationCollection( "chunkies" );
+
+        Set<String> created = new HashSet<String>();
+        for ( int i = 0; i < entitiesToCreate; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", "chunky" + i );
+            created.add( em.create( "chunkies", properties ).getUuid().toString() );
+        }
+
+        MockChunkS3ExportImpl s3Export = new MockChunkS3ExportImpl();
+        ExportService exportService = setup.getExportService();
+        HashMap<String, Object> payload = payloadBuilder();
+
+        payload.put( "organizationId", organization.getUuid() );
+        payload.put( "applicationId", applicationId );
+        payload.put( "collectionName", "chunkies" );
+        payload.put( "partitions", 3 );
+        payload.put( "chunkSize", 2 );
+        payload.put( "compression", "gzip" );
+
+        UUID exportUUID = exportService.schedule( payload );
+
+        JobData jobData = jobDataCreator( payload, exportUUID, s3Export );
+
+        JobExecution jobExecution = mock( JobExecution.class );
+        when( jobExecution.getJobData() ).thenReturn( jobData );
+
+        exportService.doExport( jobExecution );
+
+        assertEquals( "FINISHED", exportService.getState( exportUUID ) );
+
+        //every entity is exported exactly once
+        assertEquals( entitiesToCreate, s3Export.getUuids().size() );
+        assertEquals( created, new HashSet<String>( s3Export.getUuids() ) );
+
+        for ( String filename : s3Export.getFilenames() ) {
+            assertTrue( filename, filename.endsWith( ".json.gz" ) );
+        }
+    }
+
+
+    @Test
+    public void testPartitionedExportResumesFromCheckpoint() throws Exception {
+
+        int entitiesToCreate = 10;
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        em.createApplicationCollection( "resumables" );
+
+        Set<String> created = new HashSet<String>();
+        for ( int i = 0; i < entitiesToCreate; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", "resumable" + i );
+            created.add( em.create( "resumables", properties ).getUuid().toString() );
+        }
+
+        ExportService exportService = setup.getExportService();
+        HashMap<String, Object> payload = payloadBuilder();
+
+        payload.put( "organizationId", organization.getUuid() );
+        payload.put( "applicationId", applicationId );
+        payload.put( "collectionName", "resumables" );
+        payload.put( "partitions", 1 );
+        payload.put( "chunkSize", 2 );
+
+        UUID exportUUID = exportService.schedule( payload );
+
+        //the third chunk fails to upload
+        MockChunkS3ExportImpl failing = new MockChunkS3ExportImpl( 2 );
+
+        JobExecution jobExecution = mock( JobExecution.class );
+        when( jobExecution.getJobData() ).thenReturn( jobDataCreator( payload, exportUUID, failing ) );
+
+        try {
+            exportService.doExport( jobExecution );
+            fail( "The export should fail with the upload" );
+        }
+        catch ( RuntimeException e ) {
+            //expected
+        }
+
+        assertEquals( "FAILED", exportService.getState( exportUUID ) );
+        assertEquals( 2, failing.getFilenames().size() );
+
+        //the retry picks up at the third chunk
+        MockChunkS3ExportImpl resumed = new MockChunkS3ExportImpl();
+
+        jobExecution = mock( JobExecution.class );
+        when( jobExecution.getJobData() ).thenReturn( jobDataCreator( payload, exportUUID, resumed ) );
+
+        exportService.doExport( jobExecution );
+
+        assertEquals( "FINISHED", exportService.getState( exportUUID ) );
+
+        String first = resumed.getFilenames().get( 0 );
+        assertTrue( first, first.endsWith( ".0-2.json" ) );
+
+        List<String> exported = new ArrayList<String>( failing.getUuids() );
+        exported.addAll( resumed.getUuids() );
+
+        assertEquals( entitiesToCreate, exported.size() );
+        assertEquals( created, new HashSet<String>( exported ) );
+    }
+
+
     //@Ignore("file created won't be deleted when running tests")
     @Test
     public void testExportOneOrganization() throws Exception {
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.management.cassandra;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import org.apache.usergrid.management.export.S3Export;
+
+
+/**
+ * Reads the chunks written by a partitioned export as they are uploaded, and fails the upload numbered failAt
+ */
+public class MockChunkS3ExportImpl implements S3Export {
+
+    private final int failAt;
+
+    private final List<String> filenames = Collections.synchronizedList( new ArrayList<String>() );
+    private final List<String> uuids = Collections.synchronizedList( new ArrayList<String>() );
+
+
+    public MockChunkS3ExportImpl() {
+        this( -1 );
+    }
+
+
+    public MockChunkS3ExportImpl( int failAt ) {
+        this.failAt = failAt;
+    }
+
+
+    @Override
+    public void copyToS3( File ephemeral, final Map<String, Object> exportInfo, String filename ) {
+
+        synchronized ( this ) {
+            if ( filenames.size() == failAt ) {
+                throw new RuntimeException( "Failing upload of " + filename );
+            }
+            filenames.add( filename );
+        }
+
+        try {
+            InputStream in = new FileInputStream( ephemeral );
+
+            if ( filename.endsWith( ".gz" ) ) {
+                in = new GZIPInputStream( in );
+            }
+
+            JSONArray chunk = ( JSONArray ) new JSONParser().parse( new InputStreamReader( in, "UTF-8" ) );
+            in.close();
+
+            for ( Object element : chunk ) {
+                JSONObject metadata = ( JSONObject ) ( ( JSONObject ) element ).get( "Metadata" );
+                uuids.add( ( String ) metadata.get( "uuid" ) );
+            }
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    @Override
+    public String getFilename() {
+        return filenames.isEmpty() ? null : filenames.get( filenames.size() - 1 );
+    }
+
+
+    public List<String> getFilenames() {
+        return filenames;
+    }
+
+
+    public List<String> getUuids() {
+        return uuids;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.usergrid.management.cassandra;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.apache.usergrid.ServiceITSetup;
+import org.apache.usergrid.ServiceITSetupImpl;
+import org.apache.usergrid.ServiceITSuite;
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.batch.service.SchedulerService;
+import org.apache.usergrid.cassandra.CassandraResource;
+import org.apache.usergrid.cassandra.ClearShiroSubject;
+import org.apache.usergrid.cassandra.Concurrent;
+import org.apache.usergrid.management.ApplicationInfo;
+import org.apache.usergrid.management.OrganizationInfo;
+import org.apache.usergrid.management.UserInfo;
+import org.apache.usergrid.management.reindex.ReindexJob;
+import org.apache.usergrid.management.reindex.ReindexServiceImpl;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.IndexBucketLocator;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.entities.JobData;
+import org.apache.usergrid.persistence.entities.Reindex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/** Runs index rebuilds the way the scheduler does, through {@link ReindexJob} */
+@Concurrent
+public class ReindexServiceIT {
+
+    private static CassandraResource cassandraResource = ServiceITSuite.cassandraResource;
+
+    private static UUID applicationId;
+
+    @Rule
+    public ClearShiroSubject clearShiroSubject = new ClearShiroSubject();
+
+    @ClassRule
+    public static final ServiceITSetup setup = new ServiceITSetupImpl( cassandraResource );
+
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        UserInfo adminUser =
+                setup.getMgmtSvc().createAdminUser( "reindexer", "Re Indexer", "reindexer@usergrid.com", "test", false,
+                        false );
+        OrganizationInfo organization =
+                setup.getMgmtSvc().createOrganization( "reindex-organization", adminUser, true );
+        ApplicationInfo application =
+                setup.getMgmtSvc().createApplication( organization.getUuid(), "reindex-application" );
+        applicationId = application.getId();
+
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+
+        for ( int i = 0; i < 10; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "name", "thing" + i );
+            properties.put( "ordinal", i );
+
+            em.create( "thing", properties );
+        }
+    }
+
+
+    @Test
+    public void scheduleAndRunJob() throws Exception {
+        SchedulerService scheduler = mock( SchedulerService.class );
+
+        ReindexServiceImpl reindexService =
+                reindexService( scheduler, cassandraResource.getBean( IndexBucketLocator.class ) );
+
+        UUID reindexId = reindexService.schedule( applicationId, "things" );
+        assertNotNull( reindexId );
+
+        ArgumentCaptor<JobData> jobData = ArgumentCaptor.forClass( JobData.class );
+        verify( scheduler ).createJob( eq( ReindexServiceImpl.REINDEX_JOB_NAME ), anyLong(), jobData.capture() );
+        assertEquals( reindexId, jobData.getValue().getProperty( ReindexServiceImpl.REINDEX_ID ) );
+
+        Reindex reindex = reindexService.getReindex( reindexId );
+        assertEquals( Reindex.State.SCHEDULED, reindex.getState() );
+        assertEquals( applicationId, reindex.getApplicationId() );
+        assertEquals( "things", reindex.getCollectionName() );
+
+        JobExecution execution = execution( jobData.getValue() );
+
+        ReindexJob job = new ReindexJob();
+        job.setReindexService( reindexService );
+        job.doJob( execution );
+
+        verify( execution ).heartbeat();
+
+        reindex = reindexService.getReindex( reindexId );
+        assertEquals( Reindex.State.FINISHED, reindex.getState() );
+        assertEquals( 10L, reindex.getCount().longValue() );
+        assertNotNull( reindex.getStarted() );
+
+        // the rebuilt indexes answer queries
+        EntityManager em = setup.getEmf().getEntityManager( applicationId );
+        Results r = em.searchCollection( em.getApplicationRef(), "things", Query.fromQL( "ordinal > 6" ) );
+        assertEquals( 3, r.size() );
+    }
+
+
+    @Test
+    public void failedJobIsRetried() throws Exception {
+        SchedulerService scheduler = mock( SchedulerService.class );
+
+        IndexBucketLocator locator = mock( IndexBucketLocator.class );
+        when( locator.getBuckets() ).thenThrow( new RuntimeException( "No buckets" ) );
+
+        ReindexServiceImpl reindexService = reindexService( scheduler, locator );
+
+        UUID reindexId = reindexService.schedule( applicationId, "things" );
+
+        ArgumentCaptor<JobData> jobData = ArgumentCaptor.forClass( JobData.class );
+        verify( scheduler ).createJob( eq( ReindexServiceImpl.REINDEX_JOB_NAME ), anyLong(), jobData.capture() );
+
+        ReindexJob job = new ReindexJob();
+        job.setReindexService( reindexService );
+
+        // the failure is rethrown so the scheduler runs the job again
+        try {
+            job.doJob( execution( jobData.getValue() ) );
+            fail( "The failure should have been rethrown" );
+        }
+        catch ( RuntimeException e ) {
+            assertEquals( "No buckets", e.getMessage() );
+        }
+
+        Reindex reindex = reindexService.getReindex( reindexId );
+        assertEquals( Reindex.State.FAILED, reindex.getState() );
+        assertEquals( "No buckets", reindex.getErrorMessage() );
+    }
+
+
+    @Test
+    public void unknownReindexIsSkipped() throws Exception {
+        ReindexServiceImpl reindexService =
+                reindexService( mock( SchedulerService.class ), cassandraResource.getBean( IndexBucketLocator.class ) );
+
+        JobData jobData = new JobData();
+        jobData.setProperty( ReindexServiceImpl.REINDEX_ID, UUID.randomUUID() );
+
+        ReindexJob job = new ReindexJob();
+        job.setReindexService( reindexService );
+        job.doJob( execution( jobData ) );
+    }
+
+
+    private ReindexServiceImpl reindexService( SchedulerService scheduler, IndexBucketLocator locator ) {
+        ReindexServiceImpl reindexService = new ReindexServiceImpl();
+        reindexService.setEmf( setup.getEmf() );
+        reindexService.setSch( scheduler );
+        reindexService.setIndexBucketLocator( locator );
+        reindexService.setThreads( 2 );
+
+        return reindexService;
+    }
+
+
+    private JobExecution execution( JobData jobData ) {
+        JobExecution execution = mock( JobExecution.class );
+        when( execution.getJobData() ).thenReturn( jobData );
+
+        return execution;
+    }
+}
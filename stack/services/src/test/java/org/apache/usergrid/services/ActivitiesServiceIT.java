@@ -17,15 +17,37 @@
 package org.apache.usergrid.services;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.batch.service.SchedulerService;
 import org.apache.usergrid.cassandra.Concurrent;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.entities.Activity;
+import org.apache.usergrid.persistence.entities.JobData;
+import org.apache.usergrid.services.users.activities.ActivitiesService;
+import org.apache.usergrid.services.users.activities.ActivityFanOutJob;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
 @Concurrent()
@@ -109,4 +131,169 @@ public class ActivitiesServiceIT extends AbstractServiceIT {
 
         app.testRequest( ServiceAction.GET, 4, null, "users", userD.getUuid(), "feed" );
     }
+
+
+    @Test
+    public void testFanOutOnRead() throws Exception {
+        app.put( "username", "bmo" );
+        app.put( "email", "bmo@ooo.com" );
+
+        Entity userA = app.testRequest( ServiceAction.POST, 1, "users" ).getEntity();
+        assertNotNull( userA );
+
+        app.put( "username", "jake" );
+        app.put( "email", "jake@ooo.com" );
+
+        Entity userB = app.testRequest( ServiceAction.POST, 1, "users" ).getEntity();
+        assertNotNull( userB );
+
+        app.testRequest( ServiceAction.POST, 1, "users", userB.getUuid(), "connections", "following", userA.getUuid() );
+
+        app.add( Activity.newActivity( Activity.VERB_POST, null, "Written to the feed", null, userA, null, "tweet",
+                null, null ) );
+
+        app.testRequest( ServiceAction.POST, 1, "users", userA.getUuid(), "activities" );
+
+        // from here on userA's activities are only written to their own feed
+        app.getEm().setProperty( userA, ActivitiesService.PROPERTY_FAN_OUT_ON_READ, true );
+
+        app.add( Activity.newActivity( Activity.VERB_POST, null, "Merged into the feed", null, userA, null, "tweet",
+                null, null ) );
+
+        app.testRequest( ServiceAction.POST, 1, "users", userA.getUuid(), "activities" );
+
+        ServiceResults results = app.testRequest( ServiceAction.GET, 2, null, "users", userB.getUuid(), "feed" );
+
+        assertEquals( "Merged into the feed", results.getEntities().get( 0 ).getProperty( "content" ) );
+
+        app.testRequest( ServiceAction.GET, 1, null, "users", userB.getUuid(), "feed",
+                Query.fromQL( "select * where content contains 'merged'" ) );
+    }
+
+
+    @Test
+    public void testFanOutJob() throws Exception {
+        Entity userA = createUser( "marceline" );
+        List<Entity> followers = createFollowers( userA, "pb", 4 );
+
+        SchedulerService scheduler = useFanOutThresholds( 2, 0 );
+
+        app.add( Activity.newActivity( Activity.VERB_POST, null, "Written by the job", null, userA, null, "tweet",
+                null, null ) );
+
+        Entity activity = app.testRequest( ServiceAction.POST, 1, "users", userA.getUuid(), "activities" ).getEntity();
+        assertNotNull( activity );
+
+        // more followers than the synchronous maximum, the feeds are left to the job
+        ArgumentCaptor<JobData> jobData = ArgumentCaptor.forClass( JobData.class );
+        verify( scheduler ).createJob( eq( ActivityFanOutJob.JOB_NAME ), anyLong(), jobData.capture() );
+
+        assertEquals( app.getId(), jobData.getValue().getProperty( ActivityFanOutJob.APPLICATION_ID ) );
+        assertEquals( userA.getUuid(), jobData.getValue().getProperty( ActivityFanOutJob.USER_ID ) );
+        assertEquals( activity.getUuid(), jobData.getValue().getProperty( ActivityFanOutJob.ACTIVITY_ID ) );
+
+        app.testRequest( ServiceAction.GET, 1, null, "users", userA.getUuid(), "feed" );
+
+        for ( Entity follower : followers ) {
+            app.testRequest( ServiceAction.GET, 0, null, "users", follower.getUuid(), "feed" );
+        }
+
+        JobExecution execution = mock( JobExecution.class );
+        when( execution.getJobData() ).thenReturn( jobData.getValue() );
+
+        FanOutJob job = new FanOutJob();
+        ReflectionTestUtils.setField( job, "emf", setup.getEmf() );
+        job.run( execution );
+
+        assertEquals( 4L, jobData.getValue().getProperty( ActivityFanOutJob.DISTRIBUTED ) );
+        assertNull( jobData.getValue().getProperty( ActivityFanOutJob.CURSOR ) );
+        verify( execution, never() ).delay( anyLong() );
+
+        for ( Entity follower : followers ) {
+            ServiceResults results = app.testRequest( ServiceAction.GET, 1, null, "users", follower.getUuid(), "feed" );
+            assertEquals( activity.getUuid(), results.getEntity().getUuid() );
+        }
+
+        assertNull( app.getEm().getProperty( userA, ActivitiesService.PROPERTY_FAN_OUT_ON_READ ) );
+    }
+
+
+    @Test
+    public void testFanOutOnReadThreshold() throws Exception {
+        Entity userA = createUser( "gunter" );
+        List<Entity> followers = createFollowers( userA, "lsp", 3 );
+
+        SchedulerService scheduler = useFanOutThresholds( 1, 3 );
+
+        app.add( Activity.newActivity( Activity.VERB_POST, null, "Merged on read", null, userA, null, "tweet", null,
+                null ) );
+
+        Entity activity = app.testRequest( ServiceAction.POST, 1, "users", userA.getUuid(), "activities" ).getEntity();
+        assertNotNull( activity );
+
+        // crossing the threshold switches the user to fan out on read instead of scheduling a job
+        assertEquals( Boolean.TRUE, app.getEm().getProperty( userA, ActivitiesService.PROPERTY_FAN_OUT_ON_READ ) );
+        verify( scheduler, never() ).createJob( any( String.class ), anyLong(), any( JobData.class ) );
+
+        for ( Entity follower : followers ) {
+            ServiceResults results = app.testRequest( ServiceAction.GET, 1, null, "users", follower.getUuid(), "feed" );
+            assertEquals( activity.getUuid(), results.getEntity().getUuid() );
+        }
+    }
+
+
+    private Entity createUser( String username ) throws Exception {
+        app.put( "username", username );
+        app.put( "email", username + "@ooo.com" );
+
+        Entity user = app.testRequest( ServiceAction.POST, 1, "users" ).getEntity();
+        assertNotNull( user );
+
+        return user;
+    }
+
+
+    private List<Entity> createFollowers( Entity user, String prefix, int count ) throws Exception {
+        List<Entity> followers = new ArrayList<Entity>();
+
+        for ( int i = 0; i < count; i++ ) {
+            Entity follower = createUser( prefix + i );
+            app.testRequest( ServiceAction.POST, 1, "users", follower.getUuid(), "connections", "following",
+                    user.getUuid() );
+            followers.add( follower );
+        }
+
+        return followers;
+    }
+
+
+    /**
+     * Use the given thresholds and a mock scheduler for the requests of this test's service manager only, the
+     * properties and the service manager factory are shared with the other tests
+     */
+    private SchedulerService useFanOutThresholds( int syncMax, int readMin ) {
+        Properties properties = new Properties();
+        properties.putAll( setup.getProps() );
+        properties.setProperty( ActivitiesService.FAN_OUT_SYNC_MAX, String.valueOf( syncMax ) );
+        properties.setProperty( ActivitiesService.FAN_OUT_READ_MIN, String.valueOf( readMin ) );
+
+        SchedulerService scheduler = mock( SchedulerService.class );
+
+        ServiceManagerFactory smf = spy( setup.getSmf() );
+        doReturn( scheduler ).when( smf ).getSchedulerService();
+
+        ReflectionTestUtils.setField( app.getSm(), "properties", properties );
+        ReflectionTestUtils.setField( app.getSm(), "smf", smf );
+
+        return scheduler;
+    }
+
+
+    /** Exposes the job's work without the locking of {@link org.apache.usergrid.batch.job.OnlyOnceJob} */
+    private static class FanOutJob extends ActivityFanOutJob {
+
+        public void run( JobExecution execution ) throws Exception {
+            doJob( execution );
+        }
+    }
 }
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.apache.usergrid.persistence.DynamicEntity;
+import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.Results;
+import org.apache.usergrid.persistence.SimpleEntityRef;
+import org.apache.usergrid.services.ServiceResults.Type;
+import org.apache.usergrid.services.exceptions.ServiceInvocationException;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/** Tests how the follow on requests of a request are executed */
+public class ServiceRequestExecutionTest {
+
+    private ServiceManagerFactory smf;
+
+
+    @After
+    public void shutdown() {
+        if ( smf != null && smf.getRequestExecutor() != null ) {
+            smf.getRequestExecutor().shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void requestExecutor() {
+        assertNull( createFactory( 0, 0 ).getRequestExecutor() );
+
+        smf = createFactory( 2, 0 );
+        assertNotNull( smf.getRequestExecutor() );
+        assertSame( smf.getRequestExecutor(), smf.getRequestExecutor() );
+    }
+
+
+    @Test
+    public void resultsInRequestOrder() throws Exception {
+        smf = createFactory( 4, 0 );
+
+        final List<String> threads = Collections.synchronizedList( new ArrayList<String>() );
+        List<Entity> expected = new ArrayList<Entity>();
+        List<Service> children = new ArrayList<Service>();
+
+        for ( int i = 0; i < 4; i++ ) {
+            final Entity entity = new DynamicEntity( "thing", UUIDUtils.newTimeUUID() );
+            final long sleep = ( 4 - i ) * 50;
+
+            //the last request finishes first
+            children.add( service( new Answer<ServiceResults>() {
+                @Override
+                public ServiceResults answer( InvocationOnMock invocation ) throws Throwable {
+                    threads.add( Thread.currentThread().getName() );
+                    Thread.sleep( sleep );
+                    return results( invocation, entity, null );
+                }
+            } ) );
+
+            expected.add( entity );
+        }
+
+        ServiceResults results = execute( ServiceAction.GET, children );
+
+        assertEquals( uuids( expected ), uuids( results.getEntities() ) );
+
+        boolean parallel = false;
+        for ( String thread : threads ) {
+            parallel |= thread.startsWith( "service-request-" );
+        }
+        assertTrue( "Reads should run on the request executor", parallel );
+    }
+
+
+    @Test
+    public void deadlineCancelsAndReports() throws Exception {
+        smf = createFactory( 4, 100 );
+
+        final CountDownLatch interrupted = new CountDownLatch( 1 );
+        final Entity entity = new DynamicEntity( "thing", UUIDUtils.newTimeUUID() );
+
+        List<Service> children = new ArrayList<Service>();
+
+        children.add( service( new Answer<ServiceResults>() {
+            @Override
+            public ServiceResults answer( InvocationOnMock invocation ) throws Throwable {
+                return results( invocation, entity, null );
+            }
+        } ) );
+
+        children.add( service( new Answer<ServiceResults>() {
+            @Override
+            public ServiceResults answer( InvocationOnMock invocation ) throws Throwable {
+                try {
+                    Thread.sleep( 10000 );
+                }
+                catch ( InterruptedException e ) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return results( invocation, entity, null );
+            }
+        } ) );
+
+        long start = System.currentTimeMillis();
+
+        try {
+            execute( ServiceAction.GET, children );
+            fail( "The request should have timed out" );
+        }
+        catch ( ServiceInvocationException e ) {
+            assertEquals( "Request timed out", e.getMessage() );
+        }
+
+        assertTrue( "Should give up at the deadline", System.currentTimeMillis() - start < 5000 );
+        assertTrue( "Outstanding requests should be cancelled", interrupted.await( 5, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void writesStaySerial() throws Exception {
+        smf = createFactory( 4, 0 );
+
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger otherThreads = new AtomicInteger();
+
+        List<Entity> expected = new ArrayList<Entity>();
+        List<Service> children = new ArrayList<Service>();
+
+        for ( int i = 0; i < 4; i++ ) {
+            final Entity entity = new DynamicEntity( "thing", UUIDUtils.newTimeUUID() );
+
+            children.add( service( new Answer<ServiceResults>() {
+                @Override
+                public ServiceResults answer( InvocationOnMock invocation ) throws Throwable {
+                    int now = running.incrementAndGet();
+                    if ( now > maxRunning.get() ) {
+                        maxRunning.set( now );
+                    }
+                    if ( Thread.currentThread() != caller ) {
+                        otherThreads.incrementAndGet();
+                    }
+
+                    Thread.sleep( 20 );
+                    running.decrementAndGet();
+
+                    return results( invocation, entity, null );
+                }
+            } ) );
+
+            expected.add( entity );
+        }
+
+        ServiceResults results = execute( ServiceAction.PUT, children );
+
+        assertEquals( uuids( expected ), uuids( results.getEntities() ) );
+        assertEquals( 1, maxRunning.get() );
+        assertEquals( 0, otherThreads.get() );
+    }
+
+
+    private ServiceManagerFactory createFactory( int threads, int timeout ) {
+        Properties properties = new Properties();
+        properties.setProperty( ServiceManagerFactory.REQUEST_THREADS, String.valueOf( threads ) );
+        properties.setProperty( ServiceManagerFactory.REQUEST_TIMEOUT, String.valueOf( timeout ) );
+
+        return new ServiceManagerFactory( null, properties, null, null, null );
+    }
+
+
+    /**
+     * Execute a request whose service asks for one follow on request per child service
+     *
+     * @return The merged results of the follow on requests
+     */
+    private ServiceResults execute( ServiceAction action, List<Service> children ) throws Exception {
+        ServiceManager sm = mock( ServiceManager.class );
+        when( sm.getApplicationRef() ).thenReturn( new SimpleEntityRef( "application", UUIDUtils.newTimeUUID() ) );
+        when( sm.getRequestExecutor() ).thenReturn( smf.getRequestExecutor() );
+        when( sm.getRequestTimeout() ).thenReturn( smf.getRequestTimeout() );
+
+        final List<ServiceRequest> next = new ArrayList<ServiceRequest>();
+
+        for ( int i = 0; i < children.size(); i++ ) {
+            when( sm.getService( "child" + i ) ).thenReturn( children.get( i ) );
+            next.add( new ServiceRequest( sm, action, "child" + i, new ArrayList<ServiceParameter>(), null ) );
+        }
+
+        when( sm.getService( "parent" ) ).thenReturn( service( new Answer<ServiceResults>() {
+            @Override
+            public ServiceResults answer( InvocationOnMock invocation ) throws Throwable {
+                return results( invocation, new DynamicEntity( "thing", UUIDUtils.newTimeUUID() ), next );
+            }
+        } ) );
+
+        //not execute(), it logs failures with the shiro subject
+        return new ServiceRequest( sm, action, "parent", new ArrayList<ServiceParameter>(), null ).execute( null );
+    }
+
+
+    private Service service( Answer<ServiceResults> answer ) throws Exception {
+        Service service = mock( Service.class );
+        when( service.invoke( any( ServiceAction.class ), any( ServiceRequest.class ), any( ServiceResults.class ),
+                any( ServicePayload.class ) ) ).thenAnswer( answer );
+
+        return service;
+    }
+
+
+    private static ServiceResults results( InvocationOnMock invocation, Entity entity, List<ServiceRequest> next ) {
+        Object[] args = invocation.getArguments();
+
+        return new ServiceResults( null, ( ServiceRequest ) args[1], ( ServiceResults ) args[2], null, Type.COLLECTION,
+                Results.fromEntity( entity ), null, next );
+    }
+
+
+    private static List<UUID> uuids( List<Entity> entities ) {
+        List<UUID> uuids = new ArrayList<UUID>();
+        for ( Entity entity : entities ) {
+            uuids.add( entity.getUuid() );
+        }
+        return uuids;
+    }
+}
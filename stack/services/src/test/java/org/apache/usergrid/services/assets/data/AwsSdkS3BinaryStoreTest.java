@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.apache.usergrid.persistence.entities.Asset;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/** Runs uploads through the AWS SDK against a local stand-in for the S3 API */
+public class AwsSdkS3BinaryStoreTest {
+
+    private static final String BUCKET = "usergrid-test";
+
+    private MockS3 s3;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AwsSdkS3BinaryStore store;
+    private Properties properties;
+
+
+    @Before
+    public void start() throws IOException {
+        s3 = new MockS3();
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", s3 );
+        server.setExecutor( serverExecutor );
+        server.start();
+
+        properties = new Properties();
+        store = new AwsSdkS3BinaryStore( "access", "secret", BUCKET );
+        store.setEndpoint( "http://127.0.0.1:" + server.getAddress().getPort() );
+        ReflectionTestUtils.setField( store, "properties", properties );
+    }
+
+
+    @After
+    public void stop() {
+        store.destroy();
+        server.stop( 0 );
+        serverExecutor.shutdownNow();
+    }
+
+
+    @Test
+    public void smallUploadIsOneObject() throws Exception {
+        byte[] data = randomBytes( 1024 * 100 );
+        Asset asset = newAsset();
+        UUID appId = UUID.randomUUID();
+
+        store.write( appId, asset, new ByteArrayInputStream( data ) );
+
+        String key = BUCKET + "/" + AssetUtils.buildAssetKey( appId, asset );
+        assertArrayEquals( data, s3.objects.get( key ) );
+        assertTrue( s3.uploads.isEmpty() );
+
+        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( asset );
+        assertEquals( ( long ) data.length, fileMetadata.get( AssetUtils.CONTENT_LENGTH ) );
+        assertEquals( DigestUtils.md5Hex( data ), fileMetadata.get( AssetUtils.CHECKSUM ) );
+        assertEquals( DigestUtils.md5Hex( data ), fileMetadata.get( AssetUtils.E_TAG ) );
+    }
+
+
+    @Test
+    public void largeUploadIsMultipart() throws Exception {
+        byte[] data = randomBytes( ( int ) ( FileUtils.ONE_MB * 12 ) );
+        Asset asset = newAsset();
+        UUID appId = UUID.randomUUID();
+
+        store.write( appId, asset, new ByteArrayInputStream( data ) );
+
+        String key = BUCKET + "/" + AssetUtils.buildAssetKey( appId, asset );
+        assertArrayEquals( data, s3.objects.get( key ) );
+        assertEquals( 3, s3.completedParts );
+        assertTrue( s3.uploads.isEmpty() );
+
+        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( asset );
+        assertEquals( ( long ) data.length, fileMetadata.get( AssetUtils.CONTENT_LENGTH ) );
+        assertEquals( DigestUtils.md5Hex( data ), fileMetadata.get( AssetUtils.CHECKSUM ) );
+        assertEquals( s3.eTags.get( key ), fileMetadata.get( AssetUtils.E_TAG ) );
+    }
+
+
+    @Test
+    public void oversizedUploadIsAborted() throws Exception {
+        properties.setProperty( AssetUtils.MAX_SIZE_PROP_NAME, "5" );
+        byte[] data = randomBytes( ( int ) ( FileUtils.ONE_MB * 12 ) );
+        Asset asset = newAsset();
+        UUID appId = UUID.randomUUID();
+
+        try {
+            store.write( appId, asset, new ByteArrayInputStream( data ) );
+            fail( "The upload is larger than the max size" );
+        }
+        catch ( AssetSizeExceededException e ) {
+            assertEquals( FileUtils.ONE_MB * 5, e.getMaxSizeBytes() );
+        }
+
+        String key = BUCKET + "/" + AssetUtils.buildAssetKey( appId, asset );
+        assertFalse( s3.objects.containsKey( key ) );
+        assertEquals( 1, s3.aborted );
+        assertTrue( s3.uploads.isEmpty() );
+        assertFalse( AssetUtils.getFileMetadata( asset ).containsKey( AssetUtils.CHECKSUM ) );
+    }
+
+
+    private static Asset newAsset() {
+        Asset asset = new Asset( UUID.randomUUID() );
+        asset.setProperty( AssetUtils.FILE_METADATA, new HashMap<String, Object>() );
+        return asset;
+    }
+
+
+    private static byte[] randomBytes( int length ) {
+        byte[] data = new byte[length];
+        new Random( length ).nextBytes( data );
+        return data;
+    }
+
+
+    /** Just enough of the S3 API for single and multipart uploads, keyed by bucket/key */
+    private static class MockS3 implements HttpHandler {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+        private final Map<String, String> eTags = new ConcurrentHashMap<String, String>();
+        private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<String, Map<Integer, byte[]>>();
+        private volatile int completedParts;
+        private volatile int aborted;
+
+
+        @Override
+        public void handle( HttpExchange exchange ) throws IOException {
+            try {
+                String key = exchange.getRequestURI().getPath().substring( 1 );
+                Map<String, String> params = getParams( exchange.getRequestURI().getRawQuery() );
+                String method = exchange.getRequestMethod();
+                byte[] body = IOUtils.toByteArray( exchange.getRequestBody() );
+
+                if ( "POST".equals( method ) && params.containsKey( "uploads" ) ) {
+                    String uploadId = UUID.randomUUID().toString();
+                    uploads.put( uploadId, new ConcurrentHashMap<Integer, byte[]>() );
+                    sendXml( exchange, "<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                            + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>" );
+                }
+                else if ( "PUT".equals( method ) && params.containsKey( "uploadId" ) ) {
+                    uploads.get( params.get( "uploadId" ) )
+                           .put( Integer.parseInt( params.get( "partNumber" ) ), body );
+                    sendETag( exchange, DigestUtils.md5Hex( body ) );
+                }
+                else if ( "POST".equals( method ) && params.containsKey( "uploadId" ) ) {
+                    Map<Integer, byte[]> parts =
+                            new TreeMap<Integer, byte[]>( uploads.remove( params.get( "uploadId" ) ) );
+                    ByteArrayOutputStream object = new ByteArrayOutputStream();
+                    for ( byte[] part : parts.values() ) {
+                        object.write( part );
+                    }
+                    String eTag = DigestUtils.md5Hex( object.toByteArray() ) + "-" + parts.size();
+                    objects.put( key, object.toByteArray() );
+                    eTags.put( key, eTag );
+                    completedParts = parts.size();
+                    sendXml( exchange, "<CompleteMultipartUploadResult><Location>http://localhost/" + key
+                            + "</Location><Bucket>" + BUCKET + "</Bucket><Key>" + key + "</Key><ETag>\"" + eTag
+                            + "\"</ETag></CompleteMultipartUploadResult>" );
+                }
+                else if ( "DELETE".equals( method ) && params.containsKey( "uploadId" ) ) {
+                    uploads.remove( params.get( "uploadId" ) );
+                    aborted++;
+                    exchange.sendResponseHeaders( 204, -1 );
+                }
+                else if ( "PUT".equals( method ) ) {
+                    objects.put( key, body );
+                    eTags.put( key, DigestUtils.md5Hex( body ) );
+                    sendETag( exchange, DigestUtils.md5Hex( body ) );
+                }
+                else {
+                    exchange.sendResponseHeaders( 501, -1 );
+                }
+            }
+            finally {
+                exchange.close();
+            }
+        }
+
+
+        private static Map<String, String> getParams( String query ) {
+            Map<String, String> params = new HashMap<String, String>();
+            if ( query != null ) {
+                for ( String param : query.split( "&" ) ) {
+                    int eq = param.indexOf( '=' );
+                    params.put( eq < 0 ? param : param.substring( 0, eq ), eq < 0 ? "" : param.substring( eq + 1 ) );
+                }
+            }
+            return params;
+        }
+
+
+        private static void sendETag( HttpExchange exchange, String eTag ) throws IOException {
+            exchange.getResponseHeaders().set( "ETag", "\"" + eTag + "\"" );
+            exchange.sendResponseHeaders( 200, -1 );
+        }
+
+
+        private static void sendXml( HttpExchange exchange, String xml ) throws IOException {
+            byte[] body = xml.getBytes( "UTF-8" );
+            exchange.getResponseHeaders().set( "Content-Type", "application/xml" );
+            exchange.sendResponseHeaders( 200, body.length );
+            exchange.getResponseBody().write( body );
+        }
+    }
+}
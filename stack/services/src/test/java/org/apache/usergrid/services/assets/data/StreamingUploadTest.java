@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/** Runs uploads against an in memory stand-in for a multipart store */
+public class StreamingUploadTest {
+
+    private static final int PART_SIZE = 1024;
+
+    private static ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void smallUploadIsOneObject() throws Exception {
+        byte[] data = randomBytes( PART_SIZE - 1 );
+        MemoryStore store = new MemoryStore();
+
+        long written = new StreamingUpload<Integer>( executor, PART_SIZE, 2 ).upload( new ByteArrayInputStream( data ),
+                store );
+
+        assertEquals( data.length, written );
+        assertArrayEquals( data, store.object );
+        assertFalse( store.started );
+    }
+
+
+    @Test
+    public void largeUploadIsParts() throws Exception {
+        byte[] data = randomBytes( PART_SIZE * 10 + PART_SIZE / 2 );
+        MemoryStore store = new MemoryStore();
+        UploadInputStream upload = new UploadInputStream( new ByteArrayInputStream( data ), data.length );
+
+        long written = new StreamingUpload<Integer>( executor, PART_SIZE, 3 ).upload( upload, store );
+
+        assertEquals( data.length, written );
+        assertEquals( 11, store.parts.size() );
+        assertArrayEquals( data, store.object );
+        assertTrue( store.maxInFlight.get() <= 3 );
+        assertEquals( DigestUtils.md5Hex( data ), upload.getChecksum() );
+    }
+
+
+    @Test
+    public void oversizedUploadIsRejectedEarly() throws Exception {
+        byte[] data = randomBytes( PART_SIZE * 20 );
+        MemoryStore store = new MemoryStore();
+        UploadInputStream upload = new UploadInputStream( new ByteArrayInputStream( data ), PART_SIZE * 3 );
+
+        try {
+            new StreamingUpload<Integer>( executor, PART_SIZE, 2 ).upload( upload, store );
+            fail( "The upload is larger than the max size" );
+        }
+        catch ( AssetSizeExceededException e ) {
+            assertEquals( PART_SIZE * 3, e.getMaxSizeBytes() );
+        }
+
+        assertTrue( store.aborted );
+        assertTrue( store.object == null );
+        assertTrue( upload.getCount() <= PART_SIZE * 4 );
+    }
+
+
+    @Test
+    public void failedPartAbortsUpload() throws Exception {
+        byte[] data = randomBytes( PART_SIZE * 5 );
+        MemoryStore store = new MemoryStore();
+        store.failPart = 2;
+
+        try {
+            new StreamingUpload<Integer>( executor, PART_SIZE, 2 ).upload( new ByteArrayInputStream( data ), store );
+            fail( "Part 2 failed" );
+        }
+        catch ( IOException e ) {
+            assertEquals( "Part 2 failed", e.getCause().getMessage() );
+        }
+
+        assertTrue( store.aborted );
+        assertTrue( store.object == null );
+    }
+
+
+    private static byte[] randomBytes( int length ) {
+        byte[] data = new byte[length];
+        new Random( length ).nextBytes( data );
+        return data;
+    }
+
+
+    private static class MemoryStore implements StreamingUpload.PartWriter<Integer> {
+
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<Integer, byte[]>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private volatile int failPart;
+        private volatile boolean started;
+        private volatile boolean aborted;
+        private volatile byte[] object;
+
+
+        @Override
+        public void writeObject( byte[] data, int length ) {
+            object = Arrays.copyOf( data, length );
+        }
+
+
+        @Override
+        public void start( byte[] data, int length ) {
+            started = true;
+        }
+
+
+        @Override
+        public Integer writePart( int partNumber, byte[] data, int length ) throws Exception {
+            int current = inFlight.incrementAndGet();
+            try {
+                synchronized ( maxInFlight ) {
+                    maxInFlight.set( Math.max( maxInFlight.get(), current ) );
+                }
+                if ( partNumber == failPart ) {
+                    throw new RuntimeException( "Part " + partNumber + " failed" );
+                }
+                //give other parts a chance to overlap
+                Thread.sleep( 5 );
+                parts.put( partNumber, Arrays.copyOf( data, length ) );
+                return partNumber;
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+
+        @Override
+        public void complete( List<Integer> partNumbers ) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for ( Integer partNumber : partNumbers ) {
+                out.write( parts.get( partNumber ) );
+            }
+            object = out.toByteArray();
+        }
+
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+}
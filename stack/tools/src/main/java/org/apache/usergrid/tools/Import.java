@@ -18,12 +18,24 @@ package org.apache.usergrid.tools;
 
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonParser;
@@ -31,6 +43,8 @@ import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.apache.usergrid.count.Batcher;
 import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.OrganizationInfo;
 import org.apache.usergrid.management.UserInfo;
@@ -39,21 +53,32 @@ import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityRef;
 import org.apache.usergrid.persistence.entities.Application;
 import org.apache.usergrid.persistence.exceptions.ApplicationAlreadyExistsException;
-import org.apache.usergrid.persistence.exceptions.DuplicateUniquePropertyExistsException;
 import org.apache.usergrid.tools.bean.ExportOrg;
-import org.apache.usergrid.utils.JsonUtils;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.PrefixFileFilter;
 
-import static org.apache.usergrid.persistence.Schema.PROPERTY_TYPE;
-import static org.apache.usergrid.persistence.Schema.PROPERTY_UUID;
 import static org.apache.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
 
 
+/**
+ * Imports the files written by {@link Export}.  Organizations are imported first, then the entities of each
+ * application and finally the collections, connections and dictionaries of those entities.
+ * <p/>
+ * The entities of an application are read by a single thread and written by the write threads in batches, so the
+ * reader never gets more than a few batches ahead of the writers.  Progress is saved to a checkpoint file in the
+ * input directory as batches are written.  Running the import again skips the files that were finished and the
+ * entities of unfinished application files that were already written.
+ * <p/>
+ * java -jar usergrid-tools.jar Import -inputDir export -writeThreads 8 -batchSize 100 -fresh
+ * <p/>
+ * Only use -fresh when the applications being imported don't contain any of the entities or their unique values yet,
+ * unique values aren't read before they're written.
+ */
 public class Import extends ToolBase {
 
     private static final Logger logger = LoggerFactory.getLogger( Import.class );
@@ -65,8 +90,42 @@ public class Import extends ToolBase {
 
     static final String DEFAULT_INPUT_DIR = "export";
 
+    /** Number of threads writing entities */
+    static final String WRITE_THREAD_COUNT = "writeThreads";
+
+    /** Number of entities written together */
+    static final String BATCH_SIZE = "batchSize";
+
+    /** Skip reading the unique values before writing them */
+    static final String FRESH = "fresh";
+
+    /** Ignore and replace the saved checkpoints */
+    static final String RESTART = "restart";
+
+    /** File in the input directory the checkpoints are saved to */
+    static final String CHECKPOINT_FILE = "import.checkpoint";
+
+    /** Checkpoint value of a file that has been fully imported */
+    static final String FILE_DONE = "done";
+
     JsonFactory jsonFactory = new JsonFactory();
 
+    int writeThreadCount = 1;
+
+    int batchSize = 100;
+
+    boolean fresh = false;
+
+    Checkpoints checkpoints;
+
+    Batcher batcher;
+
+
+    @Autowired
+    public void setBatcher( Batcher batcher ) {
+        this.batcher = batcher;
+    }
+
 
     @Override
     @SuppressWarnings("static-access")
@@ -77,6 +136,19 @@ public class Import extends ToolBase {
 
         Option inputDir = OptionBuilder.hasArg().withDescription( "input directory -inputDir" ).create( INPUT_DIR );
 
+        Option writeThreads =
+                OptionBuilder.hasArg().withDescription( "Write Threads -writeThreads" ).create( WRITE_THREAD_COUNT );
+
+        Option batchSizeOption =
+                OptionBuilder.hasArg().withDescription( "Entities written together -batchSize" ).create( BATCH_SIZE );
+
+        Option freshOption = OptionBuilder
+                .withDescription( "The applications don't contain the imported entities, skip the unique reads" )
+                .create( FRESH );
+
+        Option restart =
+                OptionBuilder.withDescription( "Ignore the checkpoints of a previous import" ).create( RESTART );
+
         Option verbose =
                 OptionBuilder.withDescription( "Print on the console an echo of the content written to the file" )
                              .create( VERBOSE );
@@ -84,6 +156,10 @@ public class Import extends ToolBase {
         Options options = new Options();
         options.addOption( hostOption );
         options.addOption( inputDir );
+        options.addOption( writeThreads );
+        options.addOption( batchSizeOption );
+        options.addOption( freshOption );
+        options.addOption( restart );
         options.addOption( verbose );
 
         return options;
@@ -98,16 +174,32 @@ public class Import extends ToolBase {
 
         openImportDirectory( line );
 
+        if ( line.hasOption( WRITE_THREAD_COUNT ) ) {
+            writeThreadCount = Integer.parseInt( line.getOptionValue( WRITE_THREAD_COUNT ) );
+        }
+
+        if ( line.hasOption( BATCH_SIZE ) ) {
+            batchSize = Integer.parseInt( line.getOptionValue( BATCH_SIZE ) );
+        }
+
+        fresh = line.hasOption( FRESH );
+
+        checkpoints = new Checkpoints( new File( importDir, CHECKPOINT_FILE ), line.hasOption( RESTART ) );
+
         importOrganizations();
 
         importApplications();
 
         importCollections();
 
-        //forces the counters to flush
-        logger.info( "Sleeping 30 seconds for batcher" );
+        //write the counters that are still waiting for a full batch
+        logger.info( "Flushing counters" );
 
-        Thread.sleep( 35000 );
+        int failed = batcher.flush();
+
+        if ( failed > 0 ) {
+            logger.error( "{} batches of counters could not be saved, the imported counters are incomplete", failed );
+        }
     }
 
 
@@ -117,6 +209,11 @@ public class Import extends ToolBase {
         logger.info( "Applications to read: " + nanemspaceFileNames.length );
 
         for ( String applicationName : nanemspaceFileNames ) {
+            if ( checkpoints.isDone( applicationName ) ) {
+                logger.info( "Skipping imported application file: " + applicationName );
+                continue;
+            }
+
             try {
                 importApplication( applicationName );
             }
@@ -178,10 +275,14 @@ public class Import extends ToolBase {
 
         EntityManager em = emf.getEntityManager( appId );
 
-        // we now need to remove all roles, they'll be imported again below
+        long imported = checkpoints.getImported( applicationName );
 
-        for ( Entry<String, String> entry : em.getRoles().entrySet() ) {
-            em.deleteRole( entry.getKey() );
+        // we now need to remove all roles, they'll be imported again below. When resuming they may already have been
+
+        if ( imported == 0 ) {
+            for ( Entry<String, String> entry : em.getRoles().entrySet() ) {
+                em.deleteRole( entry.getKey() );
+            }
         }
 
         //load all the dictionaries
@@ -229,29 +330,55 @@ public class Import extends ToolBase {
         }
 
 
-        while ( jp.nextValue() != JsonToken.END_ARRAY ) {
-            @SuppressWarnings("unchecked") Map<String, Object> entityProps = jp.readValueAs( HashMap.class );
-            // Import/create the entity
-            UUID uuid = getId( entityProps );
-            String type = getType( entityProps );
+        if ( imported > 0 ) {
+            logger.info( "Resuming application file {} after {} entities", applicationName, imported );
+        }
 
-            try {
-                em.create( uuid, type, entityProps );
-            }
-            catch ( DuplicateUniquePropertyExistsException de ) {
-                logger.error( "Unable to create entity.  It appears to be a duplicate", de );
-                continue;
-            }
+        BlockingQueue<ImportBatch> workQueue = new ArrayBlockingQueue<ImportBatch>( writeThreadCount * 2 );
+        Map<ImportEntityWorker, Thread> workers = startEntityWorkers( workQueue, em );
+
+        long offset = 0;
+        List<Map<String, Object>> entities = new ArrayList<Map<String, Object>>( batchSize );
+
+        try {
+            while ( jp.nextValue() != JsonToken.END_ARRAY ) {
 
-            if ( em.get( uuid ) == null ) {
-                logger.error( "Holy hell, we wrote an entity and it's missing.  Entity Id was {} and type is {}", uuid,
-                        type );
-                System.exit( 1 );
+                //already written by a previous run
+                if ( offset < imported ) {
+                    jp.skipChildren();
+                    offset++;
+                    continue;
+                }
+
+                @SuppressWarnings("unchecked") Map<String, Object> entityProps = jp.readValueAs( HashMap.class );
+
+                echo( entityProps );
+
+                entities.add( entityProps );
+
+                if ( entities.size() == batchSize ) {
+                    workQueue.put( new ImportBatch( applicationName, offset + 1 - entities.size(), entities ) );
+                    entities = new ArrayList<Map<String, Object>>( batchSize );
+                }
+
+                offset++;
             }
 
-            logger.info( "Counts {}", JsonUtils.mapToFormattedJsonString( em.getApplicationCounters() ) );
+            if ( !entities.isEmpty() ) {
+                workQueue.put( new ImportBatch( applicationName, offset - entities.size(), entities ) );
+            }
+        }
+        finally {
+            stopEntityWorkers( workers );
+        }
 
-            echo( entityProps );
+        //only finished if every batch was written, otherwise the next run picks up after the last contiguous batch
+        if ( checkpoints.getImported( applicationName ) == offset ) {
+            checkpoints.setDone( applicationName );
+        }
+        else {
+            logger.error( "Not all entities of application file {} were imported, run the import again to retry",
+                    applicationName );
         }
 
         logger.info( "----- End of application:" + application.getName() );
@@ -259,13 +386,32 @@ public class Import extends ToolBase {
     }
 
 
-    private String getType( Map<String, Object> entityProps ) {
-        return ( String ) entityProps.get( PROPERTY_TYPE );
+    private Map<ImportEntityWorker, Thread> startEntityWorkers( BlockingQueue<ImportBatch> workQueue,
+                                                                EntityManager em ) {
+        Map<ImportEntityWorker, Thread> workers = new HashMap<ImportEntityWorker, Thread>();
+
+        for ( int x = 0; x < writeThreadCount; x++ ) {
+            ImportEntityWorker worker = new ImportEntityWorker( workQueue, em );
+            Thread workerThread = new Thread( worker, "EntityWriter-" + x );
+            workerThread.start();
+            workers.put( worker, workerThread );
+        }
+
+        logger.info( "Started {} entity workers", writeThreadCount );
+
+        return workers;
     }
 
 
-    private UUID getId( Map<String, Object> entityProps ) {
-        return UUID.fromString( ( String ) entityProps.get( PROPERTY_UUID ) );
+    /** Let the workers drain the queue, then wait for them to finish */
+    private void stopEntityWorkers( Map<ImportEntityWorker, Thread> workers ) throws InterruptedException {
+        for ( ImportEntityWorker worker : workers.keySet() ) {
+            worker.setDone( true );
+        }
+
+        for ( Thread workerThread : workers.values() ) {
+            workerThread.join();
+        }
     }
 
 
@@ -284,8 +430,14 @@ public class Import extends ToolBase {
 
         for ( String organizationFileName : organizationFileNames ) {
 
+            if ( checkpoints.isDone( organizationFileName ) ) {
+                logger.info( "Skipping imported organization file: " + organizationFileName );
+                continue;
+            }
+
             try {
                 importOrganization( organizationFileName );
+                checkpoints.setDone( organizationFileName );
             }
             catch ( Exception e ) {
                 logger.warn( "Unable to import organization:" + organizationFileName, e );
@@ -353,6 +505,11 @@ public class Import extends ToolBase {
         logger.info( "Collections to read: " + collectionsFileNames.length );
 
         for ( String collectionName : collectionsFileNames ) {
+            if ( checkpoints.isDone( collectionName ) ) {
+                logger.info( "Skipping imported collections file: " + collectionName );
+                continue;
+            }
+
             try {
                 importCollection( collectionName );
             }
@@ -434,6 +591,8 @@ public class Import extends ToolBase {
             importEntitysStuff( jp, em );
         }
 
+        checkpoints.setDone( collectionFileName );
+
         logger.info( "----- End of collections -----" );
         jp.close();
     }
@@ -543,4 +702,200 @@ public class Import extends ToolBase {
         logger.info( "Importing from:" + importDir.getAbsolutePath() );
         logger.info( "Status. Exists: " + importDir.exists() + " - Readable: " + importDir.canRead() );
     }
+
+
+    /** Entities read from an application file, and the position of the first one in the file */
+    static class ImportBatch {
+        final String fileName;
+        final long offset;
+        final List<Map<String, Object>> entities;
+
+
+        ImportBatch( String fileName, long offset, List<Map<String, Object>> entities ) {
+            this.fileName = fileName;
+            this.offset = offset;
+            this.entities = entities;
+        }
+    }
+
+
+    class ImportEntityWorker implements Runnable {
+        private final BlockingQueue<ImportBatch> workQueue;
+        private final EntityManager em;
+        private volatile boolean done;
+
+
+        public ImportEntityWorker( BlockingQueue<ImportBatch> workQueue, EntityManager em ) {
+            this.workQueue = workQueue;
+            this.em = em;
+        }
+
+
+        public void setDone( boolean done ) {
+            this.done = done;
+        }
+
+
+        @Override
+        public void run() {
+            long count = 0;
+            long batches = 0;
+            long durationSum = 0;
+
+            while ( true ) {
+                ImportBatch batch;
+
+                try {
+                    batch = workQueue.poll( 1, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if ( batch == null ) {
+                    if ( done ) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                long startTime = System.currentTimeMillis();
+
+                try {
+                    em.importEntities( batch.entities, fresh );
+                }
+                catch ( Exception e ) {
+                    //not checkpointed, the batch is retried by the next run
+                    logger.error( "Unable to import {} entities at {} of file {}",
+                            new Object[] { batch.entities.size(), batch.offset, batch.fileName, e } );
+                    continue;
+                }
+
+                checkpoints.written( batch.fileName, batch.offset, batch.entities.size() );
+
+                durationSum += System.currentTimeMillis() - startTime;
+                count += batch.entities.size();
+                batches++;
+
+                if ( batches % 100 == 0 ) {
+                    logger.info( "Imported {} entities. Average batch time: {}(ms)", count, durationSum / batches );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The progress of the import, saved after every change.  Each file maps to the number of its leading entities that
+     * have been written, or to {@link #FILE_DONE}.  Batches are written out of order so the ones past the first gap are
+     * held until the gap is filled.
+     */
+    static class Checkpoints {
+        private final File file;
+        private final Properties saved = new Properties();
+        private final Map<String, TreeMap<Long, Integer>> pending = new HashMap<String, TreeMap<Long, Integer>>();
+        private final AtomicLong saves = new AtomicLong();
+
+
+        Checkpoints( File file, boolean restart ) throws IOException {
+            this.file = file;
+
+            if ( restart || !file.exists() ) {
+                return;
+            }
+
+            InputStream in = new FileInputStream( file );
+
+            try {
+                saved.load( in );
+            }
+            finally {
+                IOUtils.closeQuietly( in );
+            }
+
+            logger.info( "Loaded {} checkpoints from {}", saved.size(), file.getAbsolutePath() );
+        }
+
+
+        synchronized boolean isDone( String fileName ) {
+            return FILE_DONE.equals( saved.getProperty( fileName ) );
+        }
+
+
+        synchronized long getImported( String fileName ) {
+            String value = saved.getProperty( fileName );
+
+            if ( value == null || FILE_DONE.equals( value ) ) {
+                return 0;
+            }
+
+            return Long.parseLong( value );
+        }
+
+
+        synchronized void setDone( String fileName ) throws IOException {
+            pending.remove( fileName );
+            saved.setProperty( fileName, FILE_DONE );
+            save();
+        }
+
+
+        /** Record that the entities at offset in the file were written */
+        synchronized void written( String fileName, long offset, int count ) {
+            TreeMap<Long, Integer> batches = pending.get( fileName );
+
+            if ( batches == null ) {
+                batches = new TreeMap<Long, Integer>();
+                pending.put( fileName, batches );
+            }
+
+            batches.put( offset, count );
+
+            long imported = getImported( fileName );
+            long advanced = imported;
+
+            Integer next;
+            while ( ( next = batches.remove( advanced ) ) != null ) {
+                advanced += next;
+            }
+
+            if ( advanced == imported ) {
+                return;
+            }
+
+            saved.setProperty( fileName, Long.toString( advanced ) );
+
+            try {
+                save();
+            }
+            catch ( IOException e ) {
+                logger.warn( "Unable to save checkpoints to " + file.getAbsolutePath(), e );
+            }
+        }
+
+
+        /** Write to a temporary file and rename it, so a crash never leaves a partial checkpoint file */
+        private void save() throws IOException {
+            File temp = new File( file.getParentFile(), file.getName() + ".tmp" );
+
+            OutputStream out = new FileOutputStream( temp );
+
+            try {
+                saved.store( out, "Import checkpoint " + saves.incrementAndGet() );
+            }
+            finally {
+                IOUtils.closeQuietly( out );
+            }
+
+            if ( !temp.renameTo( file ) ) {
+                file.delete();
+
+                if ( !temp.renameTo( file ) ) {
+                    throw new IOException( "Unable to move " + temp.getAbsolutePath() + " to " + file.getName() );
+                }
+            }
+        }
+    }
 }
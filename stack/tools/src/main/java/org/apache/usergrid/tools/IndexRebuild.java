@@ -26,12 +26,11 @@ import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.usergrid.persistence.Entity;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.apache.usergrid.persistence.EntityManager;
-import org.apache.usergrid.persistence.Query;
-import org.apache.usergrid.persistence.Results;
-import org.apache.usergrid.persistence.entities.Application;
-import org.apache.usergrid.persistence.exceptions.DuplicateUniquePropertyExistsException;
+import org.apache.usergrid.persistence.IndexBucketLocator;
+import org.apache.usergrid.persistence.cassandra.IndexRebuilder;
+import org.apache.usergrid.persistence.entities.Reindex;
 import org.apache.usergrid.utils.UUIDUtils;
 
 import org.apache.commons.cli.CommandLine;
@@ -39,11 +38,14 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 
+import static org.apache.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
 
 
 /**
- * This is a utility to load all entities in an application and re-save them, this forces the secondary indexing to be
- * updated.
+ * This is a utility to rebuild the secondary indexes of all entities in an application.  The index buckets of each
+ * collection are scanned in parallel and only the index entries of the entities are written, so the application can
+ * stay online.  The progress of each application is saved in a reindex entity, and printed when the tool starts.  Pass
+ * its id with -resume to continue a rebuild that was interrupted.
  *
  * @author tnine
  */
@@ -59,6 +61,15 @@ public class IndexRebuild extends ToolBase {
      */
     private static final String COLLECTION_ARG = "col";
 
+    /** Number of index buckets rebuilt concurrently */
+    private static final String THREADS_ARG = "threads";
+
+    /** Maximum number of entities reindexed per second */
+    private static final String RATE_ARG = "rate";
+
+    /** Id of the reindex entity of an interrupted rebuild */
+    private static final String RESUME_ARG = "resume";
+
     /**
      *
      */
@@ -67,6 +78,14 @@ public class IndexRebuild extends ToolBase {
 
     private static final Logger logger = LoggerFactory.getLogger( IndexRebuild.class );
 
+    private IndexBucketLocator indexBucketLocator;
+
+
+    @Autowired
+    public void setIndexBucketLocator( IndexBucketLocator indexBucketLocator ) {
+        this.indexBucketLocator = indexBucketLocator;
+    }
+
 
     @Override
     @SuppressWarnings("static-access")
@@ -82,11 +101,25 @@ public class IndexRebuild extends ToolBase {
         Option collectionOption = OptionBuilder.withArgName( COLLECTION_ARG ).hasArg().isRequired( false )
                                                .withDescription( "colleciton name" ).create( COLLECTION_ARG );
 
+        Option threadsOption = OptionBuilder.withArgName( THREADS_ARG ).hasArg().isRequired( false )
+                                            .withDescription( "index buckets rebuilt concurrently" )
+                                            .create( THREADS_ARG );
+
+        Option rateOption = OptionBuilder.withArgName( RATE_ARG ).hasArg().isRequired( false )
+                                         .withDescription( "maximum entities reindexed per second" )
+                                         .create( RATE_ARG );
+
+        Option resumeOption = OptionBuilder.withArgName( RESUME_ARG ).hasArg().isRequired( false )
+                                           .withDescription( "id of the reindex to resume" ).create( RESUME_ARG );
+
 
         Options options = new Options();
         options.addOption( hostOption );
         options.addOption( appOption );
         options.addOption( collectionOption );
+        options.addOption( threadsOption );
+        options.addOption( rateOption );
+        options.addOption( resumeOption );
 
         return options;
     }
@@ -104,18 +137,36 @@ public class IndexRebuild extends ToolBase {
 
         logger.info( "Starting index rebuild" );
 
-        /**
-         * Goes through each app id specified
-         */
-        for ( UUID appId : getAppIds( line ) ) {
+        int threads = Integer.parseInt( line.getOptionValue( THREADS_ARG, "1" ) );
+        double rate = Double.parseDouble( line.getOptionValue( RATE_ARG, "0" ) );
 
-            logger.info( "Reindexing for app id: {}", appId );
+        EntityManager statusManager = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
 
-            Set<String> collections = getCollections( line, appId );
+        if ( line.hasOption( RESUME_ARG ) ) {
+            Reindex reindex = statusManager.get( UUID.fromString( line.getOptionValue( RESUME_ARG ) ), Reindex.class );
 
-            for ( String collection : collections ) {
+            if ( reindex == null ) {
+                logger.error( "No reindex with id {}", line.getOptionValue( RESUME_ARG ) );
+                return;
+            }
 
-                reindex( appId, collection );
+            reindex( reindex, threads, rate );
+        }
+        else {
+
+            /**
+             * Goes through each app id specified
+             */
+            for ( UUID appId : getAppIds( line ) ) {
+
+                Reindex reindex = new Reindex();
+                reindex.setApplicationId( appId );
+                reindex.setCollectionName( line.getOptionValue( COLLECTION_ARG ) );
+                reindex = statusManager.create( reindex );
+
+                logger.info( "Reindexing for app id: {}.  Resume with -resume {}", appId, reindex.getUuid() );
+
+                reindex( reindex, threads, rate );
             }
         }
 
@@ -151,55 +202,51 @@ public class IndexRebuild extends ToolBase {
 
 
     /** Get collection names. If none are specified, all are returned */
-    private Set<String> getCollections( CommandLine line, UUID appId ) throws Exception {
+    private Set<String> getCollections( Reindex reindex ) throws Exception {
 
-        String passedName = line.getOptionValue( COLLECTION_ARG );
+        String passedName = reindex.getCollectionName();
 
         if ( passedName != null ) {
             return Collections.singleton( passedName );
         }
 
-        EntityManager em = emf.getEntityManager( appId );
+        EntityManager em = emf.getEntityManager( reindex.getApplicationId() );
 
         return em.getApplicationCollections();
     }
 
 
-    /** The application id. The collection name. */
-    private void reindex( UUID appId, String collectionName ) throws Exception {
-        logger.info( "Reindexing collection: {} for app id: {}", collectionName, appId );
+    /** Rebuild the indexes of the reindex, from where it left off */
+    private void reindex( Reindex reindex, int threads, double rate ) throws Exception {
+        UUID appId = reindex.getApplicationId();
 
+        EntityManager statusManager = emf.getEntityManager( MANAGEMENT_APPLICATION_ID );
         EntityManager em = emf.getEntityManager( appId );
-        Application app = em.getApplication();
-
-        // search for all orgs
 
-        Query query = new Query();
-        query.setLimit( PAGE_SIZE );
-        Results r = null;
+        Set<String> collections = getCollections( reindex );
 
-        do {
+        logger.info( "Reindexing collections: {} for app id: {}", collections, appId );
 
-            r = em.searchCollection( app, collectionName, query );
+        reindex.setState( Reindex.State.STARTED );
+        statusManager.update( reindex );
 
-            for ( Entity entity : r.getEntities() ) {
-                logger.info( "Updating entity type: {} with id: {} for app id: {}", new Object[] {
-                        entity.getType(), entity.getUuid(), appId
-                } );
+        IndexRebuilder rebuilder =
+                new IndexRebuilder( em, statusManager, reindex, indexBucketLocator.getBuckets(), threads, rate,
+                        PAGE_SIZE );
 
-                try {
-                    em.update( entity );
-                }
-                catch ( DuplicateUniquePropertyExistsException dupee ) {
-                    logger.error( "duplicate property for type: {} with id: {} for app id: {}.  Property name: {} , "
-                            + "value: {}", new Object[] {
-                            entity.getType(), entity.getUuid(), appId, dupee.getPropertyName(), dupee.getPropertyValue()
-                    } );
-                }
-            }
+        try {
+            rebuilder.run( collections, null );
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to reindex app id: " + appId + ".  Resume with -resume " + reindex.getUuid(), e );
 
-            query.setCursor( r.getCursor() );
+            reindex.setErrorMessage( e.getMessage() );
+            reindex.setState( Reindex.State.FAILED );
+            statusManager.update( reindex );
+            return;
         }
-        while ( r != null && r.size() == PAGE_SIZE );
+
+        reindex.setState( Reindex.State.FINISHED );
+        statusManager.update( reindex );
     }
 }
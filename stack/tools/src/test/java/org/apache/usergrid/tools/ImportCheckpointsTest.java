@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.tools;
+
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/** Tests the progress {@link Import} saves and resumes from */
+public class ImportCheckpointsTest {
+
+    private static final String FILE_NAME = "application.test.json";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void onlyAdvancesOverContiguousBatches() throws Exception {
+        Import.Checkpoints checkpoints = new Import.Checkpoints( checkpointFile(), false );
+
+        // past a gap, held until the gap is written
+        checkpoints.written( FILE_NAME, 100, 100 );
+        assertEquals( 0, checkpoints.getImported( FILE_NAME ) );
+
+        checkpoints.written( FILE_NAME, 0, 100 );
+        assertEquals( 200, checkpoints.getImported( FILE_NAME ) );
+
+        checkpoints.written( FILE_NAME, 300, 50 );
+        assertEquals( 200, checkpoints.getImported( FILE_NAME ) );
+
+        checkpoints.written( FILE_NAME, 200, 100 );
+        assertEquals( 350, checkpoints.getImported( FILE_NAME ) );
+
+        // files are independent
+        assertEquals( 0, checkpoints.getImported( "collection.test.json" ) );
+        assertFalse( checkpoints.isDone( FILE_NAME ) );
+    }
+
+
+    @Test
+    public void resumesFromSavedCheckpoint() throws Exception {
+        Import.Checkpoints checkpoints = new Import.Checkpoints( checkpointFile(), false );
+
+        checkpoints.written( FILE_NAME, 0, 100 );
+        checkpoints.written( FILE_NAME, 200, 100 );
+
+        // the batch past the gap was never saved, it is written again on resume
+        checkpoints = new Import.Checkpoints( checkpointFile(), false );
+        assertEquals( 100, checkpoints.getImported( FILE_NAME ) );
+
+        checkpoints.written( FILE_NAME, 100, 100 );
+        assertEquals( 200, checkpoints.getImported( FILE_NAME ) );
+
+        checkpoints.setDone( FILE_NAME );
+
+        checkpoints = new Import.Checkpoints( checkpointFile(), false );
+        assertTrue( checkpoints.isDone( FILE_NAME ) );
+        assertEquals( 0, checkpoints.getImported( FILE_NAME ) );
+
+        assertFalse( new File( folder.getRoot(), Import.CHECKPOINT_FILE + ".tmp" ).exists() );
+    }
+
+
+    @Test
+    public void restartIgnoresSavedCheckpoint() throws Exception {
+        Import.Checkpoints checkpoints = new Import.Checkpoints( checkpointFile(), false );
+
+        checkpoints.written( FILE_NAME, 0, 100 );
+        checkpoints.setDone( "organizations.test.json" );
+
+        checkpoints = new Import.Checkpoints( checkpointFile(), true );
+
+        assertEquals( 0, checkpoints.getImported( FILE_NAME ) );
+        assertFalse( checkpoints.isDone( "organizations.test.json" ) );
+    }
+
+
+    private File checkpointFile() {
+        return new File( folder.getRoot(), Import.CHECKPOINT_FILE );
+    }
+}
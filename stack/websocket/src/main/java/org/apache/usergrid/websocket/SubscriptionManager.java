@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.websocket;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.handler.codec.http.websocket.DefaultWebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.usergrid.changes.ChangeEvent;
+import org.apache.usergrid.changes.ChangeListener;
+import org.apache.usergrid.mq.Queue;
+import org.apache.usergrid.persistence.Schema;
+
+import static org.apache.usergrid.utils.JsonUtils.mapToJsonString;
+
+
+/**
+ * Delivers change feed events to the websocket connections subscribed to a collection or queue.
+ * <p/>
+ * Every connection gets a bounded number of frames that may be written but not yet flushed to the socket.  Once a
+ * slow client reaches that limit further events for it are dropped, and after too many drops in a row the connection
+ * is closed so the client can reconnect and catch up over REST.  Replies to a connection's commands count against
+ * the same limit, but can't be dropped, so a client that doesn't read its replies is closed as soon as it reaches it.
+ */
+public class SubscriptionManager implements ChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger( SubscriptionManager.class );
+
+    public static final int DEFAULT_MAX_PENDING = 100;
+    public static final int DEFAULT_MAX_DROPPED = 1000;
+
+    private final ConcurrentHashMap<String, ChannelGroup> subscribers = new ConcurrentHashMap<String, ChannelGroup>();
+
+    private final ConcurrentHashMap<Channel, Outbound> outbound = new ConcurrentHashMap<Channel, Outbound>();
+
+    private final int maxPending;
+    private final int maxDropped;
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+
+    public SubscriptionManager() {
+        this( DEFAULT_MAX_PENDING, DEFAULT_MAX_DROPPED );
+    }
+
+
+    /**
+     * @param maxPending The maximum number of unflushed frames per connection
+     * @param maxDropped The number of consecutive dropped frames before a connection is closed
+     */
+    public SubscriptionManager( int maxPending, int maxDropped ) {
+        this.maxPending = maxPending;
+        this.maxDropped = maxDropped;
+    }
+
+
+    /** The subscription path of an entity collection */
+    public static String collectionPath( UUID applicationId, String collectionName ) {
+        return applicationId + "/" + Schema.defaultCollectionName( collectionName ).toLowerCase();
+    }
+
+
+    /** The subscription path of a queue */
+    public static String queuePath( UUID applicationId, String queuePath ) {
+        return applicationId + "/queues" + Queue.normalizeQueuePath( queuePath );
+    }
+
+
+    // Note: subscriptions are added and removed relatively infrequently
+    // during the lifecycle of a connection, so we synchronize on the
+    // group to keep removal of empty groups safe
+
+
+    public void addSubscription( String path, Channel channel ) {
+        while ( true ) {
+            ChannelGroup group = subscribers.get( path );
+
+            if ( group == null ) {
+                group = new DefaultChannelGroup( path );
+                ChannelGroup existing = subscribers.putIfAbsent( path, group );
+                if ( existing != null ) {
+                    group = existing;
+                }
+            }
+
+            synchronized ( group ) {
+                //the group was emptied and removed while we were adding to it, try again
+                if ( subscribers.get( path ) != group ) {
+                    continue;
+                }
+
+                group.add( channel );
+            }
+
+            getOutbound( channel );
+
+            return;
+        }
+    }
+
+
+    public void removeSubscription( String path, Channel channel ) {
+        ChannelGroup group = subscribers.get( path );
+
+        if ( group == null ) {
+            return;
+        }
+
+        synchronized ( group ) {
+            group.remove( channel );
+            if ( group.isEmpty() ) {
+                subscribers.remove( path, group );
+            }
+        }
+    }
+
+
+    /** Remove the channel from every subscription, called when the connection goes away */
+    public void removeChannel( Channel channel ) {
+        for ( String path : subscribers.keySet() ) {
+            removeSubscription( path, channel );
+        }
+
+        outbound.remove( channel );
+    }
+
+
+    public ChannelGroup getSubscriptionGroup( String path ) {
+        return subscribers.get( path );
+    }
+
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+
+    @Override
+    public void onChange( ChangeEvent event ) {
+        String path = event.isQueueMessage() ? queuePath( event.getApplicationId(), event.getPath() ) :
+                      collectionPath( event.getApplicationId(), event.getPath() );
+
+        ChannelGroup group = subscribers.get( path );
+
+        if ( group == null || group.isEmpty() ) {
+            return;
+        }
+
+        //serialize once, every subscriber gets the same frame contents
+        String json = mapToJsonString( toMessage( event ) );
+
+        for ( Channel channel : group ) {
+            send( channel, json );
+        }
+    }
+
+
+    /**
+     * Send the reply to a command of the connection.  A connection that has reached its limit of unflushed frames is
+     * closed instead
+     *
+     * @return False if the reply couldn't be sent
+     */
+    public boolean reply( Channel channel, String json ) {
+        if ( !channel.isOpen() ) {
+            return false;
+        }
+
+        Outbound out = getOutbound( channel );
+
+        if ( out.pending.get() >= maxPending || !channel.isWritable() ) {
+            LOG.warn( "Closing websocket client {} that isn't reading the replies to its commands", channel );
+            channel.close();
+            return false;
+        }
+
+        write( channel, out, json );
+
+        return true;
+    }
+
+
+    private Outbound getOutbound( Channel channel ) {
+        Outbound out = outbound.get( channel );
+
+        if ( out == null ) {
+            out = new Outbound();
+            Outbound existing = outbound.putIfAbsent( channel, out );
+            if ( existing != null ) {
+                out = existing;
+            }
+        }
+
+        return out;
+    }
+
+
+    private void send( final Channel channel, String json ) {
+        Outbound out = outbound.get( channel );
+
+        if ( out == null || !channel.isOpen() ) {
+            return;
+        }
+
+        if ( out.pending.get() >= maxPending || !channel.isWritable() ) {
+            droppedCount.incrementAndGet();
+
+            if ( out.dropped.incrementAndGet() >= maxDropped ) {
+                LOG.warn( "Closing slow websocket consumer {} after {} dropped events", channel,
+                        out.dropped.get() );
+                channel.close();
+            }
+
+            return;
+        }
+
+        out.dropped.set( 0 );
+
+        write( channel, out, json );
+
+        deliveredCount.incrementAndGet();
+    }
+
+
+    private void write( final Channel channel, Outbound out, String json ) {
+        out.pending.incrementAndGet();
+
+        channel.write( new DefaultWebSocketFrame( json ) ).addListener( new ChannelFutureListener() {
+            @Override
+            public void operationComplete( ChannelFuture future ) {
+                Outbound current = outbound.get( channel );
+                if ( current != null ) {
+                    current.pending.decrementAndGet();
+                }
+            }
+        } );
+    }
+
+
+    private static Map<String, Object> toMessage( ChangeEvent event ) {
+        Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put( "event", event.getType().toString().toLowerCase() );
+        message.put( "application", event.getApplicationId() );
+
+        if ( event.isQueueMessage() ) {
+            message.put( "queue", event.getPath() );
+        }
+        else {
+            message.put( "collection", event.getPath() );
+            message.put( "type", event.getEntityType() );
+        }
+
+        message.put( "uuid", event.getUuid() );
+
+        if ( event.getProperties() != null ) {
+            message.put( event.isQueueMessage() ? "message" : "entity", event.getProperties() );
+        }
+
+        return message;
+    }
+
+
+    /** Per connection write state */
+    private static class Outbound {
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger dropped = new AtomicInteger();
+    }
+}
@@ -18,8 +18,11 @@ package org.apache.usergrid.websocket;
 
 
 import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.UUID;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -33,7 +36,6 @@ import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.channel.group.ChannelGroup;
-import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
@@ -42,21 +44,30 @@ import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.QueryStringDecoder;
-import org.jboss.netty.handler.codec.http.websocket.DefaultWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameDecoder;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameEncoder;
 import org.jboss.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.ManagementService;
+import org.apache.usergrid.management.OrganizationInfo;
+import org.apache.usergrid.management.UserInfo;
+import org.apache.usergrid.mq.Queue;
 import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.security.AuthPrincipalInfo;
+import org.apache.usergrid.security.AuthPrincipalType;
+import org.apache.usergrid.security.shiro.PrincipalCredentialsToken;
+import org.apache.usergrid.security.tokens.TokenService;
 import org.apache.usergrid.services.ServiceManagerFactory;
 
+import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.shiro.mgt.SessionsSecurityManager;
 import org.apache.shiro.subject.Subject;
 
 import static org.apache.commons.lang.StringUtils.isEmpty;
+import static org.apache.commons.lang.StringUtils.join;
 import static org.apache.commons.lang.StringUtils.removeEnd;
 import static org.apache.commons.lang.StringUtils.split;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
@@ -76,7 +87,11 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.setContentLength;
 import static org.jboss.netty.handler.codec.http.HttpMethod.GET;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.UNAUTHORIZED;
 import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.apache.usergrid.security.shiro.utils.SubjectUtils.getPermissionFromPath;
+import static org.apache.usergrid.utils.JsonUtils.mapToJsonString;
+import static org.apache.usergrid.utils.JsonUtils.parse;
 
 
 public class WebSocketChannelHandler extends SimpleChannelUpstreamHandler {
@@ -87,25 +102,26 @@ public class WebSocketChannelHandler extends SimpleChannelUpstreamHandler {
     private final ServiceManagerFactory smf;
     private final ManagementService management;
     private final SessionsSecurityManager securityManager;
+    private final TokenService tokens;
+    private final SubscriptionManager subscriptions;
     private final boolean ssl;
 
     boolean websocket = false;
 
     Subject subject = null;
 
-    private static ConcurrentHashMap<String, ChannelGroup> subscribers = new ConcurrentHashMap<String, ChannelGroup>();
-
-    List<String> subscriptions;
-
 
     public WebSocketChannelHandler( EntityManagerFactory emf, ServiceManagerFactory smf, ManagementService management,
-                                    SessionsSecurityManager securityManager, boolean ssl ) {
+                                    SessionsSecurityManager securityManager, TokenService tokens,
+                                    SubscriptionManager subscriptions, boolean ssl ) {
         super();
 
         this.emf = emf;
         this.smf = smf;
         this.management = management;
         this.securityManager = securityManager;
+        this.tokens = tokens;
+        this.subscriptions = subscriptions;
         this.ssl = ssl;
 
         if ( securityManager != null ) {
@@ -181,6 +197,7 @@ public class WebSocketChannelHandler extends SimpleChannelUpstreamHandler {
         super.channelDisconnected( ctx, e );
         if ( websocket ) {
             LOG.info( "Websocket disconnected" );
+            subscriptions.removeChannel( ctx.getChannel() );
         }
     }
 
@@ -225,6 +242,17 @@ public class WebSocketChannelHandler extends SimpleChannelUpstreamHandler {
             // Serve the WebSocket handshake request.
 
             LOG.info( "Starting new websocket connection..." );
+
+            // browsers can't set headers on a websocket request, so the token is passed in the query string
+            QueryStringDecoder params = new QueryStringDecoder( req.getUri() );
+            List<String> accessToken = params.getParameters().get( "access_token" );
+
+            if ( accessToken == null || accessToken.isEmpty() || !authenticate( accessToken.get( 0 ) ) ) {
+                LOG.info( "Rejected websocket connection without a valid access token" );
+                sendHttpResponse( ctx, req, UNAUTHORIZED );
+                return;
+            }
+
             websocket = true;
 
             // Create the WebSocket handshake response.
@@ -310,49 +338,164 @@ public class WebSocketChannelHandler extends SimpleChannelUpstreamHandler {
     }
 
 
+    /**
+     * Frames are JSON commands of the form {"subscribe":"/org/app/users"} or {"unsubscribe":"/org/app/users"}.  Queues
+     * are subscribed to with /org/app/queues/queue/path.  Every command is answered with a frame containing either the
+     * resolved path or an error, change events for the subscribed paths follow as they happen
+     */
     private void handleWebSocketFrame( ChannelHandlerContext ctx, WebSocketFrame frame ) {
-        // Send the uppercased string back.
-        ctx.getChannel().write( new DefaultWebSocketFrame( frame.getTextData().toUpperCase() ) );
+        Map<String, Object> reply = new LinkedHashMap<String, Object>();
+
+        try {
+            Object command = parse( frame.getTextData() );
+
+            if ( !( command instanceof Map ) ) {
+                throw new IllegalArgumentException( "Expected a JSON object" );
+            }
+
+            Map<?, ?> map = ( Map<?, ?> ) command;
+
+            if ( map.get( "subscribe" ) != null ) {
+                String path = map.get( "subscribe" ).toString();
+                subscriptions.addSubscription( getSubscriptionPath( path, true ), ctx.getChannel() );
+                reply.put( "subscribed", path );
+            }
+            else if ( map.get( "unsubscribe" ) != null ) {
+                String path = map.get( "unsubscribe" ).toString();
+                subscriptions.removeSubscription( getSubscriptionPath( path, false ), ctx.getChannel() );
+                reply.put( "unsubscribed", path );
+            }
+            else {
+                throw new IllegalArgumentException( "Expected a subscribe or unsubscribe command" );
+            }
+        }
+        catch ( Exception e ) {
+            LOG.info( "Invalid websocket command {}", frame.getTextData() );
+            reply.put( "error", e.getMessage() );
+        }
+
+        //a client that keeps sending commands without reading the replies is bounded like a slow event consumer
+        subscriptions.reply( ctx.getChannel(), mapToJsonString( reply ) );
     }
 
-    // TODO Review this for concurrency safety
-    // Note: subscriptions are added and removed relatively infrequently
-    // during the lifecycle of a connection i.e. typical minimum lifespan
-    // would be 10 seconds when someone opens an app, it connects, then
-    // they close the app.
 
+    /**
+     * Resolve a /org/app/collection or /org/app/queues/queue/path into the path used by the subscription manager
+     *
+     * @param authorize Check the connection may read the collection or queue
+     */
+    private String getSubscriptionPath( String path, boolean authorize ) throws Exception {
+        String[] segments = split( path, '/' );
+
+        if ( segments.length < 3 ) {
+            throw new IllegalArgumentException( "Expected /org/app/collection or /org/app/queues/path" );
+        }
+
+        UUID applicationId = emf.lookupApplication( segments[0] + "/" + segments[1] );
+
+        if ( applicationId == null ) {
+            throw new IllegalArgumentException( "Application " + segments[0] + "/" + segments[1] + " not found" );
+        }
+
+        if ( "queues".equalsIgnoreCase( segments[2] ) ) {
+            String queuePath = join( Arrays.copyOfRange( segments, 3, segments.length ), '/' );
+
+            if ( authorize ) {
+                checkReadPermission( applicationId, "/queues" + Queue.normalizeQueuePath( queuePath ) );
+            }
 
-    private ChannelGroup getChannelGroupWithDefault( String path ) {
-        ChannelGroup group = subscribers.get( path );
+            return SubscriptionManager.queuePath( applicationId, queuePath );
+        }
+
+        if ( segments.length != 3 ) {
+            throw new IllegalArgumentException( "Only collections and queues can be subscribed to" );
+        }
 
-        if ( group == null ) {
-            group = subscribers.putIfAbsent( path, new DefaultChannelGroup() );
+        if ( authorize ) {
+            checkReadPermission( applicationId, "/" + segments[2] );
         }
 
-        return group;
+        return SubscriptionManager.collectionPath( applicationId, segments[2] );
     }
 
 
-    public void addSubscription( String path, Channel channel ) {
-        ChannelGroup group = subscribers.get( path );
-        synchronized ( group ) {
-            group.add( channel );
+    /** The same permission a REST GET of the path is checked against */
+    private void checkReadPermission( UUID applicationId, String path ) {
+        String permission = getPermissionFromPath( applicationId, "get", path );
+
+        if ( subject == null || !subject.isAuthenticated() || !subject.isPermitted( permission ) ) {
+            throw new UnauthorizedException( "Not permitted to read " + path );
         }
     }
 
 
-    public void removeSubscription( String path, Channel channel ) {
-        ChannelGroup group = subscribers.get( path );
-        synchronized ( group ) {
-            group.remove( channel );
-            if ( group.isEmpty() ) {
-                subscribers.remove( path, group );
+    /** Log the connection's subject in with the access token, the same way the REST token filter does */
+    private boolean authenticate( String accessToken ) {
+        if ( subject == null || tokens == null ) {
+            return false;
+        }
+
+        try {
+            AuthPrincipalInfo principal = tokens.getTokenInfo( accessToken ).getPrincipal();
+
+            if ( principal == null ) {
+                return false;
+            }
+
+            PrincipalCredentialsToken token = null;
+
+            if ( AuthPrincipalType.ADMIN_USER.equals( principal.getType() ) ) {
+                UserInfo user = management.getAdminUserInfoFromAccessToken( accessToken );
+                if ( user != null ) {
+                    token = PrincipalCredentialsToken.getFromAdminUserInfoAndAccessToken( user, accessToken );
+                }
+            }
+            else if ( AuthPrincipalType.APPLICATION_USER.equals( principal.getType() ) ) {
+                UserInfo user = management.getAppUserFromAccessToken( accessToken );
+                if ( user != null ) {
+                    token = PrincipalCredentialsToken.getFromAppUserInfoAndAccessToken( user, accessToken );
+                }
+            }
+            else if ( AuthPrincipalType.ORGANIZATION.equals( principal.getType() ) ) {
+                OrganizationInfo organization = management.getOrganizationInfoFromAccessToken( accessToken );
+                if ( organization != null ) {
+                    token = PrincipalCredentialsToken
+                            .getFromOrganizationInfoAndAccessToken( organization, accessToken );
+                }
             }
+            else if ( AuthPrincipalType.APPLICATION.equals( principal.getType() ) ) {
+                ApplicationInfo application = management.getApplicationInfoFromAccessToken( accessToken );
+                if ( application != null ) {
+                    token = PrincipalCredentialsToken.getFromApplicationInfoAndAccessToken( application, accessToken );
+                }
+            }
+
+            if ( token == null ) {
+                return false;
+            }
+
+            subject.login( token );
+            return subject.isAuthenticated();
+        }
+        catch ( Exception e ) {
+            // bad, expired or unverifiable tokens all refuse the connection
+            LOG.info( "Unable to authenticate websocket access token: {}", e.getMessage() );
+            return false;
         }
     }
 
 
+    public void addSubscription( String path, Channel channel ) {
+        subscriptions.addSubscription( path, channel );
+    }
+
+
+    public void removeSubscription( String path, Channel channel ) {
+        subscriptions.removeSubscription( path, channel );
+    }
+
+
     public ChannelGroup getSubscriptionGroup( String path ) {
-        return subscribers.get( path );
+        return subscriptions.getSubscriptionGroup( path );
     }
 }
@@ -32,9 +32,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.apache.usergrid.changes.ChangeFeed;
 import org.apache.usergrid.management.ManagementService;
 import org.apache.usergrid.persistence.EntityManagerFactory;
 import org.apache.usergrid.persistence.cassandra.EntityManagerFactoryImpl;
+import org.apache.usergrid.security.tokens.TokenService;
 import org.apache.usergrid.services.ServiceManagerFactory;
 
 import org.apache.shiro.mgt.DefaultSecurityManager;
@@ -60,11 +62,14 @@ public class WebSocketServer {
     EntityManagerFactory emf;
     ServiceManagerFactory smf;
     ManagementService management;
+    TokenService tokens;
     Realm realm;
     SessionsSecurityManager securityManager;
     boolean ssl = false;
     Channel channel;
     Properties properties;
+    ChangeFeed changeFeed;
+    SubscriptionManager subscriptions;
 
 
     public static void main( String[] args ) throws Exception {
@@ -96,6 +101,12 @@ public class WebSocketServer {
     }
 
 
+    @Autowired
+    public void setTokenService( TokenService tokens ) {
+        this.tokens = tokens;
+    }
+
+
     public void setSsl( boolean ssl ) {
         this.ssl = ssl;
     }
@@ -107,6 +118,12 @@ public class WebSocketServer {
     }
 
 
+    @Autowired
+    public void setChangeFeed( ChangeFeed changeFeed ) {
+        this.changeFeed = changeFeed;
+    }
+
+
     public Properties getProperties() {
         return properties;
     }
@@ -152,6 +169,16 @@ public class WebSocketServer {
             securityManager = new DefaultSecurityManager( realm );
         }
 
+        subscriptions = new SubscriptionManager(
+                Integer.parseInt( getProperty( "usergrid.websocket.subscriber.maxpending",
+                        String.valueOf( SubscriptionManager.DEFAULT_MAX_PENDING ) ) ),
+                Integer.parseInt( getProperty( "usergrid.websocket.subscriber.maxdropped",
+                        String.valueOf( SubscriptionManager.DEFAULT_MAX_DROPPED ) ) ) );
+
+        if ( changeFeed != null ) {
+            changeFeed.addListener( subscriptions );
+        }
+
         ServerBootstrap bootstrap = new ServerBootstrap(
                 new NioServerSocketChannelFactory( Executors.newCachedThreadPool(), Executors.newCachedThreadPool() ) );
 
@@ -161,7 +188,8 @@ public class WebSocketServer {
 
         // Set up the event pipeline factory.
         bootstrap.setPipelineFactory(
-                new WebSocketServerPipelineFactory( emf, smf, management, securityManager, executionHandler, ssl ) );
+                new WebSocketServerPipelineFactory( emf, smf, management, securityManager, tokens, subscriptions,
+                        executionHandler, ssl ) );
 
         // Bind and start to accept incoming connections.
         channel = bootstrap.bind( new InetSocketAddress( 8088 ) );
@@ -170,8 +198,19 @@ public class WebSocketServer {
     }
 
 
+    private String getProperty( String name, String defaultValue ) {
+        if ( properties == null ) {
+            return defaultValue;
+        }
+        return properties.getProperty( name, defaultValue );
+    }
+
+
     public void stopServer() {
         logger.info( "Stopping WebSocket Server" );
+        if ( changeFeed != null && subscriptions != null ) {
+            changeFeed.removeListener( subscriptions );
+        }
         if ( channel != null ) {
             channel.close();
             channel = null;
@@ -28,6 +28,7 @@ import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.ssl.SslHandler;
 import org.apache.usergrid.management.ManagementService;
 import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.security.tokens.TokenService;
 import org.apache.usergrid.services.ServiceManagerFactory;
 
 import org.apache.shiro.mgt.SessionsSecurityManager;
@@ -42,16 +43,21 @@ public class WebSocketServerPipelineFactory implements ChannelPipelineFactory {
     private final ServiceManagerFactory smf;
     private final ManagementService management;
     private final SessionsSecurityManager securityManager;
+    private final TokenService tokens;
+    private final SubscriptionManager subscriptions;
     private final boolean ssl;
 
 
     public WebSocketServerPipelineFactory( EntityManagerFactory emf, ServiceManagerFactory smf,
                                            ManagementService management, SessionsSecurityManager securityManager,
+                                           TokenService tokens, SubscriptionManager subscriptions,
                                            ExecutionHandler executionHandler, boolean ssl ) {
         this.emf = emf;
         this.smf = smf;
         this.management = management;
         this.securityManager = securityManager;
+        this.tokens = tokens;
+        this.subscriptions = subscriptions;
         this.executionHandler = executionHandler;
         this.ssl = ssl;
     }
@@ -70,7 +76,8 @@ public class WebSocketServerPipelineFactory implements ChannelPipelineFactory {
         pipeline.addLast( "aggregator", new HttpChunkAggregator( 65536 ) );
         pipeline.addLast( "encoder", new HttpResponseEncoder() );
         pipeline.addLast( "execution", executionHandler );
-        pipeline.addLast( "handler", new WebSocketChannelHandler( emf, smf, management, securityManager, ssl ) );
+        pipeline.addLast( "handler",
+                new WebSocketChannelHandler( emf, smf, management, securityManager, tokens, subscriptions, ssl ) );
         return pipeline;
     }
 }
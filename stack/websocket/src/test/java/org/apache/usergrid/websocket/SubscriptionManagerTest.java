@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.websocket;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.apache.usergrid.changes.ChangeEvent;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class SubscriptionManagerTest {
+
+    private static final UUID APP_ID = UUIDUtils.newTimeUUID();
+
+    private static int nextChannelId = 1;
+
+
+    /** A channel whose writes only complete when the test flushes them */
+    private static class TestChannel {
+
+        final Channel channel = mock( Channel.class );
+        final List<ChannelFuture> unflushed = new ArrayList<ChannelFuture>();
+        final List<ChannelFutureListener> listeners = new ArrayList<ChannelFutureListener>();
+
+
+        TestChannel() {
+            when( channel.getId() ).thenReturn( nextChannelId++ );
+            when( channel.isOpen() ).thenReturn( true );
+            when( channel.isWritable() ).thenReturn( true );
+            when( channel.getCloseFuture() ).thenReturn( mock( ChannelFuture.class ) );
+
+            when( channel.write( any() ) ).thenAnswer( new Answer<ChannelFuture>() {
+                @Override
+                public ChannelFuture answer( InvocationOnMock invocation ) {
+                    final ChannelFuture future = mock( ChannelFuture.class );
+
+                    when( future.addListener( any( ChannelFutureListener.class ) ) ).thenAnswer( new Answer<Void>() {
+                        @Override
+                        public Void answer( InvocationOnMock invocation ) {
+                            unflushed.add( future );
+                            listeners.add( ( ChannelFutureListener ) invocation.getArguments()[0] );
+                            return null;
+                        }
+                    } );
+
+                    return future;
+                }
+            } );
+        }
+
+
+        /** Complete every pending write */
+        void flush() throws Exception {
+            for ( int i = 0; i < listeners.size(); i++ ) {
+                listeners.get( i ).operationComplete( unflushed.get( i ) );
+            }
+            unflushed.clear();
+            listeners.clear();
+        }
+    }
+
+
+    private static ChangeEvent create( String collection ) {
+        return ChangeEvent.entityChange( ChangeEvent.Type.CREATE, APP_ID, collection, UUIDUtils.newTimeUUID(),
+                "thing", null );
+    }
+
+
+    @Test
+    public void deliversToSubscribers() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager();
+
+        TestChannel things = new TestChannel();
+        TestChannel others = new TestChannel();
+
+        subscriptions.addSubscription( SubscriptionManager.collectionPath( APP_ID, "things" ), things.channel );
+        subscriptions.addSubscription( SubscriptionManager.collectionPath( APP_ID, "others" ), others.channel );
+
+        subscriptions.onChange( create( "things" ) );
+
+        verify( things.channel, times( 1 ) ).write( any() );
+        verify( others.channel, never() ).write( any() );
+        assertEquals( 1, subscriptions.getDeliveredCount() );
+    }
+
+
+    @Test
+    public void unsubscribe() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager();
+
+        String path = SubscriptionManager.collectionPath( APP_ID, "things" );
+
+        TestChannel channel = new TestChannel();
+
+        subscriptions.addSubscription( path, channel.channel );
+        subscriptions.onChange( create( "things" ) );
+
+        subscriptions.removeSubscription( path, channel.channel );
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel.channel, times( 1 ) ).write( any() );
+
+        //the empty group is dropped
+        assertNull( subscriptions.getSubscriptionGroup( path ) );
+
+        //closed connections are removed from every subscription
+        subscriptions.addSubscription( path, channel.channel );
+        subscriptions.removeChannel( channel.channel );
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel.channel, times( 1 ) ).write( any() );
+        assertNull( subscriptions.getSubscriptionGroup( path ) );
+    }
+
+
+    @Test
+    public void boundedPendingFrames() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager( 2, 100 );
+
+        TestChannel channel = new TestChannel();
+
+        subscriptions.addSubscription( SubscriptionManager.collectionPath( APP_ID, "things" ), channel.channel );
+
+        for ( int i = 0; i < 5; i++ ) {
+            subscriptions.onChange( create( "things" ) );
+        }
+
+        verify( channel.channel, times( 2 ) ).write( any() );
+        assertEquals( 2, subscriptions.getDeliveredCount() );
+        assertEquals( 3, subscriptions.getDroppedCount() );
+
+        //once the client catches up it receives events again
+        channel.flush();
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel.channel, times( 3 ) ).write( any() );
+        verify( channel.channel, never() ).close();
+    }
+
+
+    @Test
+    public void closesSlowConsumer() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager( 1, 3 );
+
+        TestChannel slow = new TestChannel();
+        TestChannel fast = new TestChannel();
+
+        String path = SubscriptionManager.collectionPath( APP_ID, "things" );
+        subscriptions.addSubscription( path, slow.channel );
+        subscriptions.addSubscription( path, fast.channel );
+
+        for ( int i = 0; i < 4; i++ ) {
+            subscriptions.onChange( create( "things" ) );
+            fast.flush();
+        }
+
+        //the slow consumer only got the first event, and was closed after 3 drops in a row
+        verify( slow.channel, times( 1 ) ).write( any() );
+        verify( slow.channel, times( 1 ) ).close();
+
+        //a fast consumer on the same path is unaffected
+        verify( fast.channel, times( 4 ) ).write( any() );
+        verify( fast.channel, never() ).close();
+    }
+
+
+    @Test
+    public void repliesShareTheBound() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager( 2, 100 );
+
+        TestChannel channel = new TestChannel();
+
+        subscriptions.addSubscription( SubscriptionManager.collectionPath( APP_ID, "things" ), channel.channel );
+
+        assertTrue( subscriptions.reply( channel.channel, "{\"subscribed\":\"/org/app/things\"}" ) );
+        subscriptions.onChange( create( "things" ) );
+
+        //the reply and the event fill the bound, so the next event is dropped
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel.channel, times( 2 ) ).write( any() );
+        assertEquals( 1, subscriptions.getDroppedCount() );
+
+        channel.flush();
+        assertTrue( subscriptions.reply( channel.channel, "{\"unsubscribed\":\"/org/app/things\"}" ) );
+
+        verify( channel.channel, times( 3 ) ).write( any() );
+        verify( channel.channel, never() ).close();
+    }
+
+
+    @Test
+    public void closesClientNotReadingReplies() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager( 3, 100 );
+
+        TestChannel channel = new TestChannel();
+
+        //replies can't be dropped, so the first one over the bound closes the connection
+        for ( int i = 0; i < 3; i++ ) {
+            assertTrue( subscriptions.reply( channel.channel, "{\"error\":\"bad command\"}" ) );
+        }
+
+        assertFalse( subscriptions.reply( channel.channel, "{\"error\":\"bad command\"}" ) );
+
+        verify( channel.channel, times( 3 ) ).write( any() );
+        verify( channel.channel, times( 1 ) ).close();
+    }
+
+
+    @Test
+    public void closesUnwritableClientOnReply() throws Exception {
+        SubscriptionManager subscriptions = new SubscriptionManager();
+
+        TestChannel channel = new TestChannel();
+        when( channel.channel.isWritable() ).thenReturn( false );
+
+        assertFalse( subscriptions.reply( channel.channel, "{\"error\":\"bad command\"}" ) );
+
+        verify( channel.channel, never() ).write( any() );
+        verify( channel.channel, times( 1 ) ).close();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.websocket;
+
+
+import java.util.UUID;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
+import org.jboss.netty.handler.codec.http.HttpHeaders.Values;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.websocket.DefaultWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocket.WebSocketFrame;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.apache.usergrid.changes.ChangeEvent;
+import org.apache.usergrid.management.ManagementService;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.security.tokens.TokenService;
+import org.apache.usergrid.security.tokens.exceptions.InvalidTokenException;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.subject.Subject;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Values.WEBSOCKET;
+import static org.jboss.netty.handler.codec.http.HttpMethod.GET;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.UNAUTHORIZED;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class WebSocketChannelHandlerTest {
+
+    private static final UUID APP_ID = UUIDUtils.newTimeUUID();
+
+    private EntityManagerFactory emf;
+    private TokenService tokens;
+    private SubscriptionManager subscriptions;
+
+    private Channel channel;
+    private ChannelHandlerContext ctx;
+
+
+    @Before
+    public void setup() throws Exception {
+        emf = mock( EntityManagerFactory.class );
+        when( emf.lookupApplication( "org/app" ) ).thenReturn( APP_ID );
+
+        tokens = mock( TokenService.class );
+        when( tokens.getTokenInfo( anyString() ) ).thenThrow( new InvalidTokenException( "Invalid token" ) );
+
+        subscriptions = new SubscriptionManager();
+
+        channel = mock( Channel.class );
+        when( channel.isOpen() ).thenReturn( true );
+        when( channel.isWritable() ).thenReturn( true );
+        when( channel.getCloseFuture() ).thenReturn( mock( ChannelFuture.class ) );
+        when( channel.write( any() ) ).thenReturn( mock( ChannelFuture.class ) );
+
+        ctx = mock( ChannelHandlerContext.class );
+        when( ctx.getChannel() ).thenReturn( channel );
+    }
+
+
+    private WebSocketChannelHandler handler() {
+        return new WebSocketChannelHandler( emf, null, mock( ManagementService.class ), new DefaultSecurityManager(),
+                tokens, subscriptions, false );
+    }
+
+
+    private void receive( WebSocketChannelHandler handler, Object message ) throws Exception {
+        MessageEvent event = mock( MessageEvent.class );
+        when( event.getMessage() ).thenReturn( message );
+        when( event.getChannel() ).thenReturn( channel );
+
+        handler.messageReceived( ctx, event );
+    }
+
+
+    private static HttpRequest handshake( String uri ) {
+        HttpRequest req = new DefaultHttpRequest( HTTP_1_1, GET, uri );
+        req.setHeader( Names.CONNECTION, Values.UPGRADE );
+        req.setHeader( Names.UPGRADE, WEBSOCKET );
+        req.setHeader( Names.HOST, "localhost" );
+        return req;
+    }
+
+
+    /** The authenticated subject of a connection that passed the handshake */
+    private static Subject subject( boolean permitted ) {
+        Subject subject = mock( Subject.class );
+        when( subject.isAuthenticated() ).thenReturn( true );
+        when( subject.isPermitted( anyString() ) ).thenReturn( permitted );
+        return subject;
+    }
+
+
+    private <T> T lastWritten( Class<T> type, int writes ) {
+        ArgumentCaptor<Object> written = ArgumentCaptor.forClass( Object.class );
+        verify( channel, times( writes ) ).write( written.capture() );
+        return type.cast( written.getValue() );
+    }
+
+
+    private static ChangeEvent create( String collection ) {
+        return ChangeEvent.entityChange( ChangeEvent.Type.CREATE, APP_ID, collection, UUIDUtils.newTimeUUID(),
+                "thing", null );
+    }
+
+
+    @Test
+    public void handshakeWithoutTokenIsUnauthorized() throws Exception {
+        WebSocketChannelHandler handler = handler();
+
+        receive( handler, handshake( "/org/app/things" ) );
+
+        HttpResponse res = lastWritten( HttpResponse.class, 1 );
+        assertEquals( UNAUTHORIZED, res.getStatus() );
+        assertFalse( handler.websocket );
+    }
+
+
+    @Test
+    public void handshakeWithInvalidTokenIsUnauthorized() throws Exception {
+        WebSocketChannelHandler handler = handler();
+
+        receive( handler, handshake( "/org/app/things?access_token=YWMtbad" ) );
+
+        verify( tokens ).getTokenInfo( "YWMtbad" );
+
+        HttpResponse res = lastWritten( HttpResponse.class, 1 );
+        assertEquals( UNAUTHORIZED, res.getStatus() );
+        assertFalse( handler.websocket );
+    }
+
+
+    @Test
+    public void subscribeWithoutReadPermission() throws Exception {
+        WebSocketChannelHandler handler = handler();
+        handler.websocket = true;
+        handler.subject = subject( false );
+
+        receive( handler, new DefaultWebSocketFrame( "{\"subscribe\":\"/org/app/things\"}" ) );
+
+        WebSocketFrame reply = lastWritten( WebSocketFrame.class, 1 );
+        assertTrue( reply.getTextData().contains( "\"error\"" ) );
+        assertNull( subscriptions.getSubscriptionGroup( SubscriptionManager.collectionPath( APP_ID, "things" ) ) );
+
+        //no events for the collection reach the connection
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel, times( 1 ) ).write( any() );
+        assertEquals( 0, subscriptions.getDeliveredCount() );
+    }
+
+
+    @Test
+    public void subscribeWithReadPermission() throws Exception {
+        WebSocketChannelHandler handler = handler();
+        handler.websocket = true;
+        handler.subject = subject( true );
+
+        receive( handler, new DefaultWebSocketFrame( "{\"subscribe\":\"/org/app/things\"}" ) );
+
+        WebSocketFrame reply = lastWritten( WebSocketFrame.class, 1 );
+        assertTrue( reply.getTextData().contains( "\"subscribed\"" ) );
+        assertNotNull( subscriptions.getSubscriptionGroup( SubscriptionManager.collectionPath( APP_ID, "things" ) ) );
+
+        subscriptions.onChange( create( "things" ) );
+
+        verify( channel, times( 2 ) ).write( any() );
+        assertEquals( 1, subscriptions.getDeliveredCount() );
+    }
+
+
+    @Test
+    public void closesClientNotReadingReplies() throws Exception {
+        subscriptions = new SubscriptionManager( 2, 100 );
+
+        WebSocketChannelHandler handler = handler();
+        handler.websocket = true;
+        handler.subject = subject( false );
+
+        //the writes never complete, so the third reply is over the bound
+        for ( int i = 0; i < 3; i++ ) {
+            receive( handler, new DefaultWebSocketFrame( "{\"subscribe\":\"/org/app/things\"}" ) );
+        }
+
+        verify( channel, times( 2 ) ).write( any() );
+        verify( channel, times( 1 ) ).close();
+    }
+
+
+    @Test
+    public void invalidCommandIsAnswered() throws Exception {
+        WebSocketChannelHandler handler = handler();
+        handler.websocket = true;
+        handler.subject = subject( false );
+
+        receive( handler, new DefaultWebSocketFrame( "not json" ) );
+
+        WebSocketFrame reply = lastWritten( WebSocketFrame.class, 1 );
+        assertTrue( reply.getTextData().contains( "\"error\"" ) );
+        verify( channel, never() ).close();
+    }
+}